@@ -0,0 +1,26 @@
+package org.vwap.benchmark;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Runs parallel stream work on a pool of a chosen size, since parallel streams started inside a ForkJoinPool task use
+ * that pool instead of the common pool
+ */
+class BenchmarkThreads {
+
+    private final ForkJoinPool pool;
+
+    BenchmarkThreads(int threads) {
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    <T> T run(Callable<T> task) throws ExecutionException, InterruptedException {
+        return pool.submit(task).get();
+    }
+
+    void shutdown() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,61 @@
+package org.vwap.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.vwap.model.Trade;
+import org.vwap.model.TradeBatch;
+import org.vwap.util.FileReader;
+import org.vwap.util.MappedCSVReader;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading a CSV file of trades into memory
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CSVParsingBenchmark {
+
+    @Param({"1000000"})
+    private int tradeCount;
+
+    @Param({"25"})
+    private int pairCount;
+
+    @Param({"24"})
+    private int hourSpread;
+
+    @Param({"1", "4"})
+    private int threads;
+
+    private Path file;
+    private BenchmarkThreads pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        file = Files.createTempFile("vwap-benchmark", ".csv");
+        new SyntheticTrades(tradeCount, pairCount, hourSpread, 42).writeCSV(file);
+        pool = new BenchmarkThreads(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        pool.shutdown();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public List<Trade> fileReader() throws Exception {
+        return pool.run(() -> FileReader.readFromCSVFile(file.toString(), ",", true));
+    }
+
+    @Benchmark
+    public TradeBatch mappedReader() throws Exception {
+        return pool.run(() -> MappedCSVReader.readTradeBatchFromCSVFile(file.toString(), ",", true));
+    }
+}
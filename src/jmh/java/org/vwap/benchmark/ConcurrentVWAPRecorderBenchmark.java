@@ -0,0 +1,60 @@
+package org.vwap.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.vwap.calculator.ConcurrentVWAPRecorder;
+import org.vwap.calculator.VWAPAccumulator;
+import org.vwap.model.Trade;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Measures how the time to record a fixed number of trades into one ConcurrentVWAPRecorder changes as the trades are
+ * split between more producer threads
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ConcurrentVWAPRecorderBenchmark {
+
+    @Param({"1000000"})
+    private int tradeCount;
+
+    @Param({"25"})
+    private int pairCount;
+
+    @Param({"1", "2", "4", "8"})
+    private int threads;
+
+    private List<Trade> trades;
+    private BenchmarkThreads pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        trades = new SyntheticTrades(tradeCount, pairCount, 24, 42).toTrades();
+        pool = new BenchmarkThreads(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public VWAPAccumulator record() throws Exception {
+        ConcurrentVWAPRecorder recorder = new ConcurrentVWAPRecorder();
+        int share = (tradeCount + threads - 1) / threads;
+        pool.run(() -> {
+            IntStream.range(0, threads).parallel().forEach(producer -> {
+                for (int i = producer * share; i < Math.min((producer + 1) * share, tradeCount); i++) {
+                    recorder.record(trades.get(i));
+                }
+            });
+            return null;
+        });
+        return recorder.snapshot();
+    }
+}
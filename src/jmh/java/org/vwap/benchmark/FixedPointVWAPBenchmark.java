@@ -0,0 +1,63 @@
+package org.vwap.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.vwap.calculator.FixedPointVWAP;
+import org.vwap.model.TradeBatch;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the fixed-point VWAP kernel with a plain double loop over the same price and volume columns, and the
+ * parallel kernel across thread counts
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FixedPointVWAPBenchmark {
+
+    @Param({"10000000"})
+    private int tradeCount;
+
+    @Param({"1", "4"})
+    private int threads;
+
+    private double[] prices;
+    private int[] volumes;
+    private BenchmarkThreads pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        TradeBatch trades = new SyntheticTrades(tradeCount, 1, 24, 42).toTradeBatch();
+        prices = trades.priceColumn();
+        volumes = trades.volumeColumn();
+        pool = new BenchmarkThreads(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public double doubleLoop() {
+        double volumePrice = 0;
+        double volume = 0;
+        for (int i = 0; i < tradeCount; i++) {
+            volumePrice += prices[i] * volumes[i];
+            volume += volumes[i];
+        }
+        return volumePrice / volume;
+    }
+
+    @Benchmark
+    public double fixedPoint() {
+        return FixedPointVWAP.of(prices, volumes, 0, tradeCount).getVWAP();
+    }
+
+    @Benchmark
+    public double fixedPointParallel() throws Exception {
+        return pool.run(() -> FixedPointVWAP.parallelOf(prices, volumes, 0, tradeCount, threads * 4).getVWAP());
+    }
+}
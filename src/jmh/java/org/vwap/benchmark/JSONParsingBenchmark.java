@@ -0,0 +1,65 @@
+package org.vwap.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.vwap.calculator.VWAPAccumulator;
+import org.vwap.model.CurrencyPairDictionary;
+import org.vwap.model.TradeBatch;
+import org.vwap.util.MappedJSONReader;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading a JSON file of trades, the same trades as {@link CSVParsingBenchmark}, including the parallel
+ * search for the boundaries between objects
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class JSONParsingBenchmark {
+
+    @Param({"1000000"})
+    private int tradeCount;
+
+    @Param({"25"})
+    private int pairCount;
+
+    @Param({"24"})
+    private int hourSpread;
+
+    @Param({"1", "4"})
+    private int threads;
+
+    private Path file;
+    private BenchmarkThreads pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        file = Files.createTempFile("vwap-benchmark", MappedJSONReader.FILE_EXTENSION);
+        new SyntheticTrades(tradeCount, pairCount, hourSpread, 42).writeJSON(file);
+        pool = new BenchmarkThreads(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        pool.shutdown();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public TradeBatch mappedReader() throws Exception {
+        return pool.run(() -> MappedJSONReader.readTradeBatchFromJSONFile(file.toString()));
+    }
+
+    @Benchmark
+    public VWAPAccumulator accumulate() throws Exception {
+        return pool.run(() -> {
+            VWAPAccumulator accumulator = new VWAPAccumulator(new CurrencyPairDictionary());
+            MappedJSONReader.accumulateFromJSONFile(file.toString(), accumulator, 4 * 1024 * 1024);
+            return accumulator;
+        });
+    }
+}
@@ -0,0 +1,69 @@
+package org.vwap.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.vwap.calculator.SortedVWAPCalculator;
+import org.vwap.calculator.VWAPAccumulator;
+import org.vwap.model.Trade;
+import org.vwap.model.TradeBatch;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares run-length aggregation of time-ordered trades with the hash table of {@link VWAPAccumulator} over the same
+ * trades, and a plain scan of the columns as the floor
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SortedVWAPBenchmark {
+
+    @Param({"1000000"})
+    private int tradeCount;
+
+    @Param({"25"})
+    private int pairCount;
+
+    @Param({"24"})
+    private int hourSpread;
+
+    private TradeBatch trades;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Trade> sorted = new SyntheticTrades(tradeCount, pairCount, hourSpread, 42).toTrades();
+        sorted.sort(Comparator.comparing(Trade::getTimestamp));
+        trades = TradeBatch.of(sorted);
+    }
+
+    @Benchmark
+    public double plainScan() {
+        double[] prices = trades.priceColumn();
+        int[] volumes = trades.volumeColumn();
+        long[] epochMillis = trades.epochMillisColumn();
+        double volumePrice = 0;
+        long latest = 0;
+        for (int i = 0; i < trades.size(); i++) {
+            volumePrice += prices[i] * volumes[i];
+            latest = Math.max(latest, epochMillis[i]);
+        }
+        return volumePrice + latest;
+    }
+
+    @Benchmark
+    public int hashAggregation() {
+        VWAPAccumulator accumulator = new VWAPAccumulator(trades.getCurrencyPairs());
+        accumulator.addAll(trades);
+        return accumulator.size();
+    }
+
+    @Benchmark
+    public int runLengthAggregation() {
+        SortedVWAPCalculator calculator = new SortedVWAPCalculator(trades.getCurrencyPairs());
+        calculator.addAll(trades);
+        return calculator.size();
+    }
+}
@@ -0,0 +1,151 @@
+package org.vwap.benchmark;
+
+import org.vwap.model.CurrencyPairDictionary;
+import org.vwap.model.Trade;
+import org.vwap.model.TradeBatch;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates reproducible random trades in the JVM, in the same shape as generate_test_data.py, so that benchmarks can
+ * run anywhere without Python
+ */
+public class SyntheticTrades {
+
+    private static final String[] CURRENCIES = {
+            "USD", "EUR", "JPY", "GBP", "AUD", "CAD", "CHF", "NZD", "SEK", "NOK",
+            "DKK", "SGD", "HKD", "MXN", "ZAR", "PLN", "CZK", "HUF", "TRY", "CNH"
+    };
+    private static final long START_MILLIS = Instant.parse("2024-10-20T10:00:00Z").toEpochMilli();
+
+    private final int tradeCount;
+    private final String[] currencyPairs;
+    private final long spreadMillis;
+    private final long seed;
+
+    /**
+     * @param tradeCount Number of trades to generate
+     * @param pairCount  Number of distinct currency pairs, at most 380
+     * @param hourSpread Number of hours the trade timestamps are spread over
+     * @param seed       Seed of the random generator, the same seed always produces the same trades
+     */
+    public SyntheticTrades(int tradeCount, int pairCount, int hourSpread, long seed) {
+        if (pairCount < 1 || pairCount > CURRENCIES.length * (CURRENCIES.length - 1)) {
+            throw new IllegalArgumentException("Unsupported number of currency pairs: " + pairCount);
+        }
+        if (hourSpread < 1) {
+            throw new IllegalArgumentException("Trades must be spread over at least one hour");
+        }
+        this.tradeCount = tradeCount;
+        this.currencyPairs = new String[pairCount];
+        for (int i = 0, base = 0; i < pairCount; base++) {
+            for (int quote = 0; quote < CURRENCIES.length && i < pairCount; quote++) {
+                if (quote != base) {
+                    currencyPairs[i++] = CURRENCIES[base] + "/" + CURRENCIES[quote];
+                }
+            }
+        }
+        this.spreadMillis = hourSpread * 3600000L;
+        this.seed = seed;
+    }
+
+    public List<Trade> toTrades() {
+        List<Trade> trades = new ArrayList<>(tradeCount);
+        generate((epochMilli, currencyPair, price, volume) ->
+                trades.add(new Trade(Instant.ofEpochMilli(epochMilli), currencyPair, price, volume)));
+        return trades;
+    }
+
+    public TradeBatch toTradeBatch() {
+        TradeBatch trades = new TradeBatch(new CurrencyPairDictionary(), tradeCount);
+        generate((epochMilli, currencyPair, price, volume) ->
+                trades.add(epochMilli, trades.getCurrencyPairs().intern(currencyPair), price, volume));
+        return trades;
+    }
+
+    /**
+     * Writes the trades as a comma separated file with a header, in timestamp order like generate_test_data.py
+     */
+    public void writeCSV(Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("Timestamp,Currency-pair,Price,Volume\n");
+            IOException[] failure = new IOException[1];
+            generateSorted((epochMilli, currencyPair, price, volume) -> {
+                try {
+                    writer.write(Instant.ofEpochMilli(epochMilli) + "," + currencyPair + "," + price + "," + volume + "\n");
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        }
+    }
+
+    /**
+     * Writes the same trades as {@link #writeCSV(Path)} as a JSON array of objects, one per line
+     */
+    public void writeJSON(Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("[");
+            IOException[] failure = new IOException[1];
+            boolean[] first = {true};
+            generateSorted((epochMilli, currencyPair, price, volume) -> {
+                try {
+                    writer.write((first[0] ? "\n" : ",\n") + "{\"timestamp\": \"" + Instant.ofEpochMilli(epochMilli) +
+                            "\", \"currencyPair\": \"" + currencyPair + "\", \"price\": " + price + ", \"volume\": " +
+                            volume + "}");
+                    first[0] = false;
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            writer.write("\n]\n");
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        }
+    }
+
+    private void generate(TradeConsumer consumer) {
+        Random random = new Random(seed);
+        for (int i = 0; i < tradeCount; i++) {
+            consumer.accept(START_MILLIS + (long) (random.nextDouble() * spreadMillis), nextPair(random),
+                    nextPrice(random), nextVolume(random));
+        }
+    }
+
+    private void generateSorted(TradeConsumer consumer) {
+        Random random = new Random(seed);
+        double step = (double) spreadMillis / Math.max(tradeCount, 1);
+        for (int i = 0; i < tradeCount; i++) {
+            consumer.accept(START_MILLIS + (long) (i * step), nextPair(random), nextPrice(random), nextVolume(random));
+        }
+    }
+
+    private String nextPair(Random random) {
+        return currencyPairs[random.nextInt(currencyPairs.length)];
+    }
+
+    private static double nextPrice(Random random) {
+        return Math.round((0.5 + random.nextDouble()) * 10000) / 100.0;
+    }
+
+    private static int nextVolume(Random random) {
+        return 500 + random.nextInt(2501);
+    }
+
+    @FunctionalInterface
+    private interface TradeConsumer {
+        void accept(long epochMilli, String currencyPair, double price, int volume);
+    }
+}
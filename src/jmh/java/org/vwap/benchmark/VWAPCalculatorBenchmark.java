@@ -0,0 +1,70 @@
+package org.vwap.benchmark;
+
+import javafx.util.Pair;
+import org.openjdk.jmh.annotations.*;
+import org.vwap.calculator.VWAPCalculator;
+import org.vwap.model.Trade;
+import org.vwap.model.TradeBatch;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the grouping step (VWAPCalculator construction) and the hourly aggregation separately, alongside the
+ * single-pass TradeBatch path
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class VWAPCalculatorBenchmark {
+
+    @Param({"1000000"})
+    private int tradeCount;
+
+    @Param({"25"})
+    private int pairCount;
+
+    @Param({"24"})
+    private int hourSpread;
+
+    @Param({"1", "4"})
+    private int threads;
+
+    private List<Trade> trades;
+    private TradeBatch tradeBatch;
+    private VWAPCalculator calculator;
+    private BenchmarkThreads pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        SyntheticTrades syntheticTrades = new SyntheticTrades(tradeCount, pairCount, hourSpread, 42);
+        trades = syntheticTrades.toTrades();
+        tradeBatch = syntheticTrades.toTradeBatch();
+        pool = new BenchmarkThreads(threads);
+        calculator = pool.run(() -> new VWAPCalculator(trades));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public VWAPCalculator group() throws Exception {
+        return pool.run(() -> new VWAPCalculator(trades));
+    }
+
+    @Benchmark
+    public Map<String, List<Pair<Instant, Double>>> calculateHourlyVWAPs() throws Exception {
+        return pool.run(() -> calculator.calculateHourlyVWAPs());
+    }
+
+    @Benchmark
+    public Map<String, List<Pair<Instant, Double>>> calculateHourlyVWAPsFromTradeBatch() throws Exception {
+        return pool.run(() -> VWAPCalculator.calculateHourlyVWAPs(tradeBatch));
+    }
+}
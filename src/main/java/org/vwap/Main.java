@@ -1,56 +1,182 @@
 package org.vwap;
 
 
-import javafx.util.Pair;
-import org.vwap.model.Trade;
-import org.vwap.calculator.VWAPCalculator;
+import org.vwap.cache.PartialAggregateCache;
+import org.vwap.calculator.BatchVWAPCalculator;
+import org.vwap.calculator.OutOfCoreVWAPCalculator;
+import org.vwap.calculator.SortedVWAPCalculator;
+import org.vwap.calculator.VWAPAccumulator;
+import org.vwap.metrics.Metrics;
+import org.vwap.metrics.RejectedRowSink;
+import org.vwap.model.CurrencyPairDictionary;
+import org.vwap.shard.PartialSums;
+import org.vwap.shard.ShardCoordinator;
+import org.vwap.shard.ShardSpec;
+import org.vwap.util.BinaryTradeFile;
+import org.vwap.util.PipelinedCSVReader;
+import org.vwap.util.ResultWriter;
+import org.vwap.util.SortedCSVMerger;
 
 import java.io.IOException;
-import java.time.Instant;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-
-import static org.vwap.util.FileReader.readFromCSVFile;
 
 public class Main {
+
+    private static final String CHUNK_SIZE_OPTION = "-chunkMB=";
+    private static final String REJECTED_ROWS_OPTION = "-rejectedRows=";
+    private static final String CACHE_DIRECTORY_OPTION = "-cacheDir=";
+    private static final String CACHE_SIZE_OPTION = "-cacheMB=";
+    private static final String OUTPUT_OPTION = "-output=";
+    private static final String SHARD_OPTION = "-shard=";
+    private static final String SEND_OPTION = "-send=";
+    private static final String LISTEN_OPTION = "-listen=";
+    private static final String WORKERS_OPTION = "-workers=";
+
     public static void main(String[] args) throws IOException {
 
         boolean debug = Arrays.asList(args).contains("-debug");
-
-        Map<String, List<Pair<Instant, Double>>> categorisedHourlyVWAPs = new HashMap<>();
+        boolean convert = Arrays.asList(args).contains("-convert");
+        boolean pipeline = Arrays.asList(args).contains("-pipeline");
+        boolean sorted = Arrays.asList(args).contains("-sorted");
+        boolean cacheSampled = Arrays.asList(args).contains("-cacheSampled");
+        int chunkSize = 0;
+        String cacheDirectory = null;
+        String output = null;
+        ShardSpec shard = null;
+        String send = null;
+        String listen = null;
+        int workers = 1;
+        long cacheSize = 1024L * 1024 * 1024;
+        List<String> filepaths = new ArrayList<>();
         for (String arg : args) {
-            if (!arg.equals("-debug")) {
-                List<Trade> trades = readFromCSVFile(arg, ",", true);
-
-                long startTime = System.nanoTime();
-                VWAPCalculator vwapCalculator = new VWAPCalculator(trades);
-                categorisedHourlyVWAPs = vwapCalculator.calculateHourlyVWAPs();
-                long endTime = System.nanoTime();
-                long totalTime = endTime - startTime;
-
-                // TODO: Use a logging library e.g. log4j
-                System.out.println("Calculating VWAP of " + trades.size() + " records took: " + totalTime / 1000000 + " milliseconds");
-            }
-
-            // TODO: Use logging profiles
-            if (debug) {
-                // Log the results sequentially
-                categorisedHourlyVWAPs.forEach((currencyPair, hourlyAverages) ->
-                        hourlyAverages.forEach(hourlyAverage -> {
-                            if (hourlyAverage.getValue() != null) {
-                                System.out.println(hourlyAverage.getKey() +
-                                        " VWAP(" + currencyPair + ")" + " = " + hourlyAverage.getValue());
-                            } else {
-                                System.err.println(hourlyAverage.getKey() + " VWAP(" + currencyPair + ")" + " = null");
-                            }
-                        })
-                );
+            if (arg.startsWith(CHUNK_SIZE_OPTION)) {
+                chunkSize = Integer.parseInt(arg.substring(CHUNK_SIZE_OPTION.length())) * 1024 * 1024;
+            } else if (arg.startsWith(CACHE_DIRECTORY_OPTION)) {
+                cacheDirectory = arg.substring(CACHE_DIRECTORY_OPTION.length());
+            } else if (arg.startsWith(CACHE_SIZE_OPTION)) {
+                cacheSize = Long.parseLong(arg.substring(CACHE_SIZE_OPTION.length())) * 1024 * 1024;
+            } else if (arg.startsWith(OUTPUT_OPTION)) {
+                output = arg.substring(OUTPUT_OPTION.length());
+            } else if (arg.startsWith(SHARD_OPTION)) {
+                shard = ShardSpec.parse(arg.substring(SHARD_OPTION.length()));
+            } else if (arg.startsWith(SEND_OPTION)) {
+                send = arg.substring(SEND_OPTION.length());
+            } else if (arg.startsWith(LISTEN_OPTION)) {
+                listen = arg.substring(LISTEN_OPTION.length());
+            } else if (arg.startsWith(WORKERS_OPTION)) {
+                workers = Integer.parseInt(arg.substring(WORKERS_OPTION.length()));
+            } else if (arg.startsWith(REJECTED_ROWS_OPTION)) {
+                // Bad rows are written to the file in the background instead of to the console
+                Metrics.setRejectedRowSink(RejectedRowSink.toFile(arg.substring(REJECTED_ROWS_OPTION.length())));
+            } else if (!arg.startsWith("-")) {
+                filepaths.add(arg);
             }
-
         }
 
+        try {
+            if (convert) {
+                for (String filepath : filepaths) {
+                    // Pay the CSV parse cost once, later runs can be pointed at the binary file instead
+                    BinaryTradeFile.convertFromCSVFile(filepath, ",", true, filepath + BinaryTradeFile.FILE_EXTENSION,
+                            true);
+                }
+                return;
+            }
+
+            // Partial sums written by workers are merged rather than read as trades
+            List<String> partialFiles = new ArrayList<>();
+            for (String filepath : filepaths) {
+                if (PartialSums.isPartialSumsFile(filepath)) {
+                    partialFiles.add(filepath);
+                }
+            }
+            filepaths.removeAll(partialFiles);
+            if (shard != null) {
+                filepaths = shard.selectFiles(filepaths);
+            }
+
+            VWAPAccumulator hourlySums;
+            if (sorted) {
+                // Sorted mode - stream a merge of time-ordered files, closing each hour as the timestamps cross it
+                SortedVWAPCalculator calculator = new SortedVWAPCalculator(new CurrencyPairDictionary());
+                SortedCSVMerger.merge(filepaths, ",", true, calculator.getCurrencyPairs(), calculator::addTrade);
+                hourlySums = calculator.toAccumulator();
+            } else if (pipeline) {
+                // Pipelined mode - read, parse and aggregate at the same time with a bounded number of blocks in flight
+                hourlySums = new PipelinedCSVReader().accumulate(filepaths);
+            } else if (chunkSize > 0) {
+                // Out-of-core mode - stream every file in bounded chunks into one combined result
+                hourlySums = new OutOfCoreVWAPCalculator(chunkSize, ",", true).accumulate(filepaths);
+            } else {
+                // Batch mode - read files in parallel within a memory budget and combine them into one result, reusing
+                // the cached sums of files that have not changed since an earlier run
+                PartialAggregateCache cache = cacheDirectory == null ? null :
+                        new PartialAggregateCache(cacheDirectory, cacheSize, cacheSampled);
+                Runtime runtime = Runtime.getRuntime();
+                hourlySums = new BatchVWAPCalculator(runtime.availableProcessors(), runtime.maxMemory() / 2,
+                        ",", true, (filepath, completedFiles, totalFiles) ->
+                        System.out.println("Processed " + filepath + " (" + completedFiles + "/" + totalFiles + ")"),
+                        cache).accumulate(filepaths);
+                if (cache != null) {
+                    System.out.println("Partial aggregate cache hits=" + cache.getHits() + " misses=" +
+                            cache.getMisses());
+                }
+            }
 
+            if (!partialFiles.isEmpty()) {
+                hourlySums.merge(ShardCoordinator.mergeFiles(partialFiles));
+            }
+            if (listen != null) {
+                // Coordinator mode - wait for every worker to send its partial sums, loopback only unless a host is
+                // given
+                int separator = listen.lastIndexOf(':');
+                InetAddress address = separator < 0 ? InetAddress.getLoopbackAddress() :
+                        InetAddress.getByName(listen.substring(0, separator));
+                try (ServerSocket server = new ServerSocket(Integer.parseInt(listen.substring(separator + 1)),
+                        workers, address)) {
+                    System.out.println("Waiting for " + workers + " workers on " + server.getLocalSocketAddress());
+                    hourlySums.merge(ShardCoordinator.receive(server, workers));
+                }
+            }
+            if (shard != null) {
+                hourlySums = shard.selectSums(hourlySums);
+            }
+
+            if (send != null) {
+                // Worker mode - hand the partial sums to a coordinator instead of calculating VWAPs
+                int separator = send.lastIndexOf(':');
+                PartialSums.send(hourlySums, send.substring(0, separator),
+                        Integer.parseInt(send.substring(separator + 1)));
+            } else if (output != null && PartialSums.isPartialSumsFile(output)) {
+                // Worker mode - write the partial sums for a coordinator to merge later
+                PartialSums.writeFile(hourlySums, output);
+            } else if (output != null) {
+                // Results go straight from the sums to the file, CSV or binary by file extension
+                try (ResultWriter writer = ResultWriter.open(output)) {
+                    writer.writeAll(hourlySums);
+                }
+            } else if (debug) {
+                // TODO: Use logging profiles
+                // Flushed rather than closed, the console is still needed for the report
+                ResultWriter writer = new ResultWriter(Channels.newChannel(System.out), ResultWriter.Format.CSV,
+                        ResultWriter.DEFAULT_DECIMAL_PLACES, ResultWriter.DEFAULT_BUFFER_SIZE);
+                writer.writeAll(hourlySums);
+                writer.flush();
+            } else {
+                // Nothing to write, but erroneous buckets are still reported
+                hourlySums.toVWAPs();
+            }
+
+            // TODO: Use a logging library e.g. log4j
+            System.out.println(Metrics.report());
+        } finally {
+            // Write out any rejected rows still queued before the JVM exits
+            Metrics.rejectedRowSink().close();
+        }
     }
-}
\ No newline at end of file
+}
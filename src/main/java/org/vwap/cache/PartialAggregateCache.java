@@ -0,0 +1,397 @@
+package org.vwap.cache;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.vwap.calculator.VWAPAccumulator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * On-disk cache of the per-(currency pair, time bucket) partial sums of input files
+ * <p>
+ * Each input file maps to one entry named after a hash of its absolute path. An entry records the fingerprint of the
+ * file it was computed from, i.e. its size, last modified time, a hash of its content and the options it was read with,
+ * followed by the serialized {@link VWAPAccumulator} and a CRC32 of everything before it. An entry is only served while
+ * the file still has the same fingerprint and is read the same way, so a changed file is recomputed and its stale entry
+ * replaced. Entries are written to a temporary file and moved into place, so a crash never leaves a partial entry
+ * behind
+ * </p>
+ * <p>
+ * By default the content hash covers the whole file, so a lookup reads every byte of it. A cache created with sampled
+ * content hashing instead hashes 64 KB from the start, middle and end of larger files, which keeps lookups cheap on
+ * large inputs at the cost of missing an in-place edit elsewhere that keeps both the size and the modification time
+ * </p>
+ * <p>
+ * The cache is bounded in bytes. Serving an entry touches its modification time, and when a new entry takes the cache
+ * over its bound the least recently used entries are deleted
+ * </p>
+ * <p>
+ * NOTE: Safe to share between threads and between processes using the same directory
+ * </p>
+ */
+public class PartialAggregateCache {
+
+    public static final String FILE_EXTENSION = ".vwpa";
+
+    private static final int MAGIC = 0x41505756;
+    private static final short VERSION = 4;
+    private static final int SAMPLE_SIZE = 64 * 1024;
+    private static final int SAMPLE_COUNT = 3;
+
+    @Getter
+    private final Path directory;
+    @Getter
+    private final long maxBytes;
+    @Getter
+    private final boolean sampledContentHash;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a cache which hashes the whole content of each file
+     *
+     * @see #PartialAggregateCache(String, long, boolean)
+     */
+    public PartialAggregateCache(String directory, long maxBytes) throws IOException {
+        this(directory, maxBytes, false);
+    }
+
+    /**
+     * @param directory          Where entries are stored, created if it does not exist
+     * @param maxBytes           The combined size that entries are evicted down to
+     * @param sampledContentHash Whether to hash only a sample of the content of larger files
+     * @throws IOException If unable to create directory
+     */
+    public PartialAggregateCache(String directory, long maxBytes, boolean sampledContentHash) throws IOException {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        this.directory = Files.createDirectories(Paths.get(directory));
+        this.maxBytes = maxBytes;
+        this.sampledContentHash = sampledContentHash;
+    }
+
+    /**
+     * Looks up the partial sums of a file
+     *
+     * @param filepath        The input file
+     * @param recordSeparator Character that separates entries in the file when it is a csv file
+     * @param containsHeader  Whether the file contains a header when it is a csv file
+     * @param bucketMillis    The width of the time buckets of the sums
+     * @return The cached sums, or null if there is no entry, the file has changed since it was cached or it was cached
+     * with different options
+     * @throws IOException If unable to read filepath
+     */
+    public VWAPAccumulator get(String filepath, String recordSeparator, boolean containsHeader, long bucketMillis)
+            throws IOException {
+        return get(entryOf(filepath), fingerprint(filepath, recordSeparator, containsHeader, bucketMillis));
+    }
+
+    /**
+     * Serves the partial sums of a file from the cache, or computes and caches them
+     * <p>
+     * The file is fingerprinted before and after computing. If it changed in between the sums are returned but not
+     * cached, since they may not match either version
+     * </p>
+     *
+     * @param filepath        The input file
+     * @param recordSeparator Character that separates entries in the file when it is a csv file
+     * @param containsHeader  Whether the file contains a header when it is a csv file
+     * @param bucketMillis    The width of the time buckets of the sums
+     * @param compute         Computes the partial sums of every trade in filepath with the given options
+     * @return The partial sums of filepath
+     * @throws IOException If unable to read filepath, compute its sums or write the entry
+     */
+    public VWAPAccumulator getOrCompute(String filepath, String recordSeparator, boolean containsHeader,
+                                        long bucketMillis, Computation compute) throws IOException {
+        Path entry = entryOf(filepath);
+        Fingerprint fingerprint = fingerprint(filepath, recordSeparator, containsHeader, bucketMillis);
+        VWAPAccumulator sums = get(entry, fingerprint);
+        if (sums != null) {
+            return sums;
+        }
+
+        sums = compute.apply(filepath);
+        if (fingerprint.equals(fingerprint(filepath, recordSeparator, containsHeader, bucketMillis))) {
+            put(entry, fingerprint, sums);
+        }
+        return sums;
+    }
+
+    /**
+     * @return The number of lookups served from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of lookups that found no valid entry
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Deletes least recently used entries until the combined size of the entries is within the bound
+     *
+     * @throws IOException If unable to list the cache directory
+     */
+    public void evict() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        List<BasicFileAttributes> attributes = new ArrayList<>();
+        long totalBytes = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + FILE_EXTENSION)) {
+            for (Path entry : stream) {
+                try {
+                    BasicFileAttributes entryAttributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                    entries.add(entry);
+                    attributes.add(entryAttributes);
+                    totalBytes += entryAttributes.size();
+                } catch (NoSuchFileException e) {
+                    // Evicted concurrently
+                }
+            }
+        }
+        if (totalBytes <= maxBytes) {
+            return;
+        }
+
+        Integer[] order = new Integer[entries.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(i -> attributes.get(i).lastModifiedTime()));
+        for (int i = 0; i < order.length && totalBytes > maxBytes; i++) {
+            Files.deleteIfExists(entries.get(order[i]));
+            totalBytes -= attributes.get(order[i]).size();
+        }
+    }
+
+    private Fingerprint fingerprint(String filepath, String recordSeparator, boolean containsHeader, long bucketMillis)
+            throws IOException {
+        return Fingerprint.of(filepath, recordSeparator, containsHeader, bucketMillis, sampledContentHash);
+    }
+
+    private Path entryOf(String filepath) {
+        byte[] pathHash = sha256().digest(Paths.get(filepath).toAbsolutePath().normalize().toString()
+                .getBytes(StandardCharsets.UTF_8));
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 16; i++) {
+            name.append(String.format("%02x", pathHash[i]));
+        }
+        return directory.resolve(name.append(FILE_EXTENSION).toString());
+    }
+
+    private VWAPAccumulator get(Path entry, Fingerprint fingerprint) throws IOException {
+        VWAPAccumulator cached = null;
+        try (InputStream file = Files.newInputStream(entry)) {
+            cached = readEntry(file, fingerprint);
+        } catch (NoSuchFileException e) {
+            // Not cached yet
+        } catch (IOException e) {
+            // Torn or unreadable entry, recompute rather than fail
+            Files.deleteIfExists(entry);
+        }
+
+        if (cached == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            // Evicted by another thread since it was read, the sums read are still valid
+        }
+        return cached;
+    }
+
+    /**
+     * Stores the partial sums of a file, replacing any previous entry, then evicts least recently used entries until
+     * the cache is within its size bound
+     */
+    private void put(Path entry, Fingerprint fingerprint, VWAPAccumulator sums) throws IOException {
+        Path temporary = Files.createTempFile(directory, entry.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(temporary))) {
+                writeEntry(file, fingerprint, sums);
+            }
+            try {
+                Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        evict();
+    }
+
+    private static void writeEntry(OutputStream file, Fingerprint fingerprint, VWAPAccumulator sums)
+            throws IOException {
+        CheckedOutputStream checked = new CheckedOutputStream(file, new CRC32());
+        DataOutputStream out = new DataOutputStream(checked);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        fingerprint.writeTo(out);
+        sums.writeTo(out);
+        out.flush();
+        out.writeLong(checked.getChecksum().getValue());
+        out.flush();
+    }
+
+    /**
+     * @return The sums held by the entry, or null if it was computed from a different version of the file
+     */
+    private static VWAPAccumulator readEntry(InputStream file, Fingerprint fingerprint) throws IOException {
+        CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(file), new CRC32());
+        DataInputStream in = new DataInputStream(checked);
+        if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+            throw new IOException("Not a partial aggregate cache entry");
+        }
+        if (!fingerprint.equals(Fingerprint.readFrom(in))) {
+            return null;
+        }
+        VWAPAccumulator sums = VWAPAccumulator.readFrom(in);
+        long checksum = checked.getChecksum().getValue();
+        if (in.readLong() != checksum) {
+            throw new IOException("Corrupt partial aggregate cache entry");
+        }
+        return sums;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required by every Java platform", e);
+        }
+    }
+
+    /**
+     * Identifies a version of a file and the options its partial sums were computed with
+     * <p>
+     * The content hash covers the whole file, or when sampled, the whole of small files and for larger files a sample
+     * from the start, middle and end. Appending to a file or rewriting it changes its size or last modified time, the
+     * content hash guards against in-place edits that keep both
+     * </p>
+     */
+    @EqualsAndHashCode
+    private static final class Fingerprint {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+        private final String recordSeparator;
+        private final boolean containsHeader;
+        private final long bucketMillis;
+        private final byte[] contentHash;
+
+        private Fingerprint(String path, long size, long lastModified, String recordSeparator, boolean containsHeader,
+                            long bucketMillis, byte[] contentHash) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.recordSeparator = recordSeparator;
+            this.containsHeader = containsHeader;
+            this.bucketMillis = bucketMillis;
+            this.contentHash = contentHash;
+        }
+
+        private static Fingerprint of(String filepath, String recordSeparator, boolean containsHeader,
+                                      long bucketMillis, boolean sampled) throws IOException {
+            Path path = Paths.get(filepath).toAbsolutePath().normalize();
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            MessageDigest digest = sha256();
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                ByteBuffer sample = ByteBuffer.allocate(SAMPLE_SIZE);
+                if (!sampled || size <= (long) SAMPLE_SIZE * SAMPLE_COUNT) {
+                    for (long position = 0; position < size; position += SAMPLE_SIZE) {
+                        digestRange(channel, position, sample, digest);
+                    }
+                } else {
+                    digestRange(channel, 0, sample, digest);
+                    digestRange(channel, size / 2 - SAMPLE_SIZE / 2, sample, digest);
+                    digestRange(channel, size - SAMPLE_SIZE, sample, digest);
+                }
+            }
+            return new Fingerprint(path.toString(), attributes.size(), attributes.lastModifiedTime().toMillis(),
+                    recordSeparator, containsHeader, bucketMillis, digest.digest());
+        }
+
+        private static void digestRange(FileChannel channel, long position, ByteBuffer sample, MessageDigest digest)
+                throws IOException {
+            sample.clear();
+            while (sample.hasRemaining()) {
+                int read = channel.read(sample, position + sample.position());
+                if (read < 0) {
+                    break;
+                }
+            }
+            sample.flip();
+            digest.update(sample);
+        }
+
+        private static Fingerprint readFrom(DataInputStream in) throws IOException {
+            String path = in.readUTF();
+            long size = in.readLong();
+            long lastModified = in.readLong();
+            String recordSeparator = in.readUTF();
+            boolean containsHeader = in.readBoolean();
+            long bucketMillis = in.readLong();
+            byte[] contentHash = new byte[in.readUnsignedByte()];
+            in.readFully(contentHash);
+            return new Fingerprint(path, size, lastModified, recordSeparator, containsHeader, bucketMillis,
+                    contentHash);
+        }
+
+        private void writeTo(DataOutputStream out) throws IOException {
+            out.writeUTF(path);
+            out.writeLong(size);
+            out.writeLong(lastModified);
+            out.writeUTF(recordSeparator);
+            out.writeBoolean(containsHeader);
+            out.writeLong(bucketMillis);
+            out.writeByte(contentHash.length);
+            out.write(contentHash);
+        }
+    }
+
+    /**
+     * Computes the partial sums of a file on a cache miss
+     */
+    @FunctionalInterface
+    public interface Computation {
+        VWAPAccumulator apply(String filepath) throws IOException;
+    }
+}
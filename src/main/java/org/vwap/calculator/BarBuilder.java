@@ -0,0 +1,242 @@
+package org.vwap.calculator;
+
+import lombok.Getter;
+import org.vwap.metrics.Metrics;
+import org.vwap.metrics.Stage;
+import org.vwap.model.CurrencyPairDictionary;
+import org.vwap.model.TradeBatch;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Calculates a configurable set of {@link BarStatistic}s per (currency pair, time bucket) in a single pass over the
+ * trades
+ * <p>
+ * Bars are held in an open-addressing table like {@link VWAPAccumulator}'s, with one primitive array per statistic
+ * rather than an object per bar. Each trade finds its slot once and then updates every requested statistic in place,
+ * so an extra statistic costs a comparison or an addition per trade instead of another grouping pass
+ * </p>
+ * <p>
+ * NOTE: Not thread safe - use one builder per thread and {@link #merge(BarBuilder)} them
+ * </p>
+ */
+public class BarBuilder {
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    @Getter
+    private final CurrencyPairDictionary currencyPairs;
+    @Getter
+    private final long bucketMillis;
+    private final Set<BarStatistic> statistics;
+    private BarColumns columns;
+    private int size;
+
+    /**
+     * @param currencyPairs The dictionary that the pair ids passed to this builder refer to
+     * @param bucketMillis  The width of a time bucket in milliseconds
+     * @param statistics    The statistics to calculate, at least one
+     */
+    public BarBuilder(CurrencyPairDictionary currencyPairs, long bucketMillis, Set<BarStatistic> statistics) {
+        if (bucketMillis <= 0) {
+            throw new IllegalArgumentException("Bucket width must be positive");
+        }
+        if (statistics.isEmpty()) {
+            throw new IllegalArgumentException("At least one bar statistic is required");
+        }
+        this.currencyPairs = currencyPairs;
+        this.bucketMillis = bucketMillis;
+        this.statistics = Collections.unmodifiableSet(EnumSet.copyOf(statistics));
+        this.columns = new BarColumns(statistics, DEFAULT_CAPACITY);
+    }
+
+    public Set<BarStatistic> getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Folds every trade of a batch into the bars in a single pass
+     * <p>
+     * NOTE: Trades without a timestamp cannot be assigned to a bucket and are skipped
+     * </p>
+     *
+     * @param trades The trades to add, which must use the same currency pair dictionary as this builder
+     */
+    public void addAll(TradeBatch trades) {
+        if (trades.getCurrencyPairs() != currencyPairs) {
+            throw new IllegalArgumentException("Trade batch uses a different currency pair dictionary");
+        }
+        addAll(trades, 0, trades.size());
+    }
+
+    /**
+     * Folds the trades at indices [from, to) of a batch into the bars
+     *
+     * @see #addAll(TradeBatch)
+     */
+    public void addAll(TradeBatch trades, int from, int to) {
+        long startTime = System.nanoTime();
+        long[] epochMillis = trades.epochMillisColumn();
+        int[] tradePairIds = trades.pairIdColumn();
+        double[] prices = trades.priceColumn();
+        int[] tradeVolumes = trades.volumeColumn();
+        for (int i = from; i < to; i++) {
+            if (epochMillis[i] != TradeBatch.NO_TIMESTAMP) {
+                addTrade(tradePairIds[i], epochMillis[i], prices[i], tradeVolumes[i]);
+            }
+        }
+        Metrics.recordStage(Stage.GROUP, startTime, to - from);
+    }
+
+    /**
+     * Folds a single trade into the bars
+     *
+     * @throws IllegalArgumentException If {@link BarStatistic#TWAP} or {@link BarStatistic#VWAP} is calculated and
+     *                                  price cannot be represented in fixed point, see {@link FixedPointVWAP}
+     */
+    public void addTrade(int pairId, long epochMilli, double price, int volume) {
+        // Only the fixed point sums use the scaled price, other statistics take any price
+        long scaledPrice = columns.priceSumHighs != null || columns.volumePriceHighs != null
+                ? FixedPointVWAP.scale(price) : 0;
+        int slot = claim(pairId, epochMilli / bucketMillis);
+        columns.addTrade(slot, epochMilli, price, scaledPrice, volume);
+        grow();
+    }
+
+    /**
+     * Folds every bar of other into this builder, translating currency pair ids if the builders use different
+     * dictionaries. Where both hold trades at the same time, other's are treated as added later
+     *
+     * @param other A builder with the same bucket width and statistics
+     */
+    public void merge(BarBuilder other) {
+        if (other.bucketMillis != bucketMillis) {
+            throw new IllegalArgumentException("Cannot merge buckets of " + other.bucketMillis + "ms into buckets of " +
+                    bucketMillis + "ms");
+        }
+        if (!other.statistics.equals(statistics)) {
+            throw new IllegalArgumentException("Cannot merge bars of " + other.statistics + " into bars of " +
+                    statistics);
+        }
+        int[] translated = new int[other.currencyPairs.size()];
+        for (int id = 0; id < translated.length; id++) {
+            translated[id] = other.currencyPairs == currencyPairs ? id :
+                    currencyPairs.intern(other.currencyPairs.nameOf(id));
+        }
+        BarColumns otherColumns = other.columns;
+        for (int otherSlot = 0; otherSlot < otherColumns.capacity(); otherSlot++) {
+            if (otherColumns.pairIds[otherSlot] != BarColumns.EMPTY) {
+                int slot = claim(translated[otherColumns.pairIds[otherSlot]], otherColumns.buckets[otherSlot]);
+                columns.merge(slot, otherColumns, otherSlot);
+                grow();
+            }
+        }
+    }
+
+    /**
+     * @return The number of (currency pair, bucket) combinations with bars
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Copies the bars into a compact result ordered by currency pair id and then chronologically
+     * <p>
+     * Buckets with a VWAP statistic but no positive volume are reported as erroneous, their VWAP is NaN
+     * </p>
+     */
+    public Bars build() {
+        // Counting sort of the occupied slots by pair id, then a primitive sort of each pair's buckets
+        int pairCount = currencyPairs.size();
+        int[] offsets = new int[pairCount + 1];
+        for (int pairId : columns.pairIds) {
+            if (pairId != BarColumns.EMPTY) {
+                offsets[pairId + 1]++;
+            }
+        }
+        for (int i = 0; i < pairCount; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        long[] sortedBuckets = new long[size];
+        int[] next = Arrays.copyOf(offsets, pairCount);
+        for (int slot = 0; slot < columns.capacity(); slot++) {
+            if (columns.pairIds[slot] != BarColumns.EMPTY) {
+                sortedBuckets[next[columns.pairIds[slot]]++] = columns.buckets[slot];
+            }
+        }
+        BarColumns rows = new BarColumns(statistics, size);
+        for (int pairId = 0; pairId < pairCount; pairId++) {
+            Arrays.sort(sortedBuckets, offsets[pairId], offsets[pairId + 1]);
+            for (int row = offsets[pairId]; row < offsets[pairId + 1]; row++) {
+                rows.copy(row, columns, slotOf(pairId, sortedBuckets[row]));
+            }
+        }
+
+        Bars bars = new Bars(currencyPairs, bucketMillis, rows, offsets);
+        if (statistics.contains(BarStatistic.VWAP)) {
+            for (int row = 0; row < bars.size(); row++) {
+                if (rows.volumes[row] <= 0) {
+                    Metrics.ZERO_VOLUME_BUCKETS.increment();
+                    Metrics.reportRejected("Erroneous data - total volume of trades is zero for " +
+                            bars.getCurrencyPair(row) + " at " + bars.getStart(row));
+                }
+            }
+        }
+        return bars;
+    }
+
+    /**
+     * @return The slot holding (pairId, bucket), claiming an empty one if there is none yet
+     */
+    private int claim(int pairId, long bucket) {
+        int slot = slotOf(pairId, bucket);
+        if (columns.pairIds[slot] == BarColumns.EMPTY) {
+            columns.claim(slot, pairId, bucket);
+            size++;
+        }
+        return slot;
+    }
+
+    /**
+     * Doubles the table once it is half full, after the slot just updated is complete
+     */
+    private void grow() {
+        if (size * 2 > columns.capacity()) {
+            BarColumns old = columns;
+            columns = new BarColumns(statistics, old.capacity() * 2);
+            for (int oldSlot = 0; oldSlot < old.capacity(); oldSlot++) {
+                if (old.pairIds[oldSlot] != BarColumns.EMPTY) {
+                    columns.copy(slotOf(old.pairIds[oldSlot], old.buckets[oldSlot]), old, oldSlot);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The slot holding (pairId, bucket), or the empty slot where it belongs
+     */
+    private int slotOf(int pairId, long bucket) {
+        int mask = columns.capacity() - 1;
+        int slot = hash(pairId, bucket) & mask;
+        while (columns.pairIds[slot] != BarColumns.EMPTY &&
+                (columns.pairIds[slot] != pairId || columns.buckets[slot] != bucket)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int hash(int pairId, long bucket) {
+        // Murmur3 finaliser, consecutive buckets of the same pair must not land in consecutive slots
+        long h = bucket * 31 + pairId;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
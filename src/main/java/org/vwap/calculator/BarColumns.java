@@ -0,0 +1,223 @@
+package org.vwap.calculator;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Bar statistics held in parallel primitive arrays indexed by slot, shared by {@link BarBuilder} and {@link Bars}
+ * <p>
+ * Only the arrays the requested statistics need are allocated, the others stay null, so every statistic left out
+ * costs neither memory nor work per trade
+ * </p>
+ */
+final class BarColumns {
+
+    static final int EMPTY = -1;
+
+    final Set<BarStatistic> statistics;
+    final int[] pairIds;
+    final long[] buckets;
+    final long[] openMillis;
+    final double[] opens;
+    final long[] closeMillis;
+    final double[] closes;
+    final double[] highs;
+    final double[] lows;
+    final long[] counts;
+    final long[] volumes;
+    final int[] minSizes;
+    final int[] maxSizes;
+    final long[] priceSumHighs;
+    final long[] priceSumLows;
+    final long[] volumePriceHighs;
+    final long[] volumePriceLows;
+
+    BarColumns(Set<BarStatistic> statistics, int capacity) {
+        this.statistics = EnumSet.copyOf(statistics);
+        pairIds = new int[capacity];
+        Arrays.fill(pairIds, EMPTY);
+        buckets = new long[capacity];
+        boolean open = statistics.contains(BarStatistic.OPEN);
+        boolean close = statistics.contains(BarStatistic.CLOSE);
+        boolean twap = statistics.contains(BarStatistic.TWAP);
+        boolean vwap = statistics.contains(BarStatistic.VWAP);
+        openMillis = open ? new long[capacity] : null;
+        opens = open ? new double[capacity] : null;
+        closeMillis = close ? new long[capacity] : null;
+        closes = close ? new double[capacity] : null;
+        highs = statistics.contains(BarStatistic.HIGH) ? new double[capacity] : null;
+        lows = statistics.contains(BarStatistic.LOW) ? new double[capacity] : null;
+        // TWAP divides the price sum by the count, VWAP the volume price sum by the volume
+        counts = twap || statistics.contains(BarStatistic.COUNT) ? new long[capacity] : null;
+        volumes = vwap || statistics.contains(BarStatistic.VOLUME) ? new long[capacity] : null;
+        minSizes = statistics.contains(BarStatistic.MIN_SIZE) ? new int[capacity] : null;
+        maxSizes = statistics.contains(BarStatistic.MAX_SIZE) ? new int[capacity] : null;
+        priceSumHighs = twap ? new long[capacity] : null;
+        priceSumLows = twap ? new long[capacity] : null;
+        volumePriceHighs = vwap ? new long[capacity] : null;
+        volumePriceLows = vwap ? new long[capacity] : null;
+    }
+
+    int capacity() {
+        return pairIds.length;
+    }
+
+    /**
+     * Claims an empty slot for (pairId, bucket), with every statistic at the value that the first trade replaces
+     */
+    void claim(int slot, int pairId, long bucket) {
+        pairIds[slot] = pairId;
+        buckets[slot] = bucket;
+        if (openMillis != null) {
+            openMillis[slot] = Long.MAX_VALUE;
+        }
+        if (closeMillis != null) {
+            closeMillis[slot] = Long.MIN_VALUE;
+        }
+        if (highs != null) {
+            highs[slot] = Double.NEGATIVE_INFINITY;
+        }
+        if (lows != null) {
+            lows[slot] = Double.POSITIVE_INFINITY;
+        }
+        if (minSizes != null) {
+            minSizes[slot] = Integer.MAX_VALUE;
+        }
+        if (maxSizes != null) {
+            maxSizes[slot] = Integer.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Folds a single trade into a claimed slot
+     *
+     * @param scaledPrice The price in the fixed point units of {@link FixedPointVWAP}
+     */
+    void addTrade(int slot, long epochMilli, double price, long scaledPrice, int volume) {
+        if (openMillis != null && epochMilli < openMillis[slot]) {
+            openMillis[slot] = epochMilli;
+            opens[slot] = price;
+        }
+        if (closeMillis != null && epochMilli >= closeMillis[slot]) {
+            closeMillis[slot] = epochMilli;
+            closes[slot] = price;
+        }
+        if (highs != null && price > highs[slot]) {
+            highs[slot] = price;
+        }
+        if (lows != null && price < lows[slot]) {
+            lows[slot] = price;
+        }
+        if (counts != null) {
+            counts[slot]++;
+        }
+        if (volumes != null) {
+            volumes[slot] += volume;
+        }
+        if (minSizes != null && volume < minSizes[slot]) {
+            minSizes[slot] = volume;
+        }
+        if (maxSizes != null && volume > maxSizes[slot]) {
+            maxSizes[slot] = volume;
+        }
+        if (priceSumHighs != null) {
+            addFixedPoint(priceSumHighs, priceSumLows, slot, scaledPrice >> 63, scaledPrice);
+        }
+        if (volumePriceHighs != null) {
+            FixedPointVWAP.addScaledVolumePrice(volumePriceHighs, volumePriceLows, slot, scaledPrice, volume);
+        }
+    }
+
+    /**
+     * Folds the statistics of a slot of other, holding trades added after those already in this slot, into a claimed
+     * slot
+     */
+    void merge(int slot, BarColumns other, int otherSlot) {
+        if (openMillis != null && other.openMillis[otherSlot] < openMillis[slot]) {
+            openMillis[slot] = other.openMillis[otherSlot];
+            opens[slot] = other.opens[otherSlot];
+        }
+        if (closeMillis != null && other.closeMillis[otherSlot] >= closeMillis[slot]) {
+            closeMillis[slot] = other.closeMillis[otherSlot];
+            closes[slot] = other.closes[otherSlot];
+        }
+        if (highs != null) {
+            highs[slot] = Math.max(highs[slot], other.highs[otherSlot]);
+        }
+        if (lows != null) {
+            lows[slot] = Math.min(lows[slot], other.lows[otherSlot]);
+        }
+        if (counts != null) {
+            counts[slot] += other.counts[otherSlot];
+        }
+        if (volumes != null) {
+            volumes[slot] += other.volumes[otherSlot];
+        }
+        if (minSizes != null) {
+            minSizes[slot] = Math.min(minSizes[slot], other.minSizes[otherSlot]);
+        }
+        if (maxSizes != null) {
+            maxSizes[slot] = Math.max(maxSizes[slot], other.maxSizes[otherSlot]);
+        }
+        if (priceSumHighs != null) {
+            addFixedPoint(priceSumHighs, priceSumLows, slot, other.priceSumHighs[otherSlot],
+                    other.priceSumLows[otherSlot]);
+        }
+        if (volumePriceHighs != null) {
+            addFixedPoint(volumePriceHighs, volumePriceLows, slot, other.volumePriceHighs[otherSlot],
+                    other.volumePriceLows[otherSlot]);
+        }
+    }
+
+    /**
+     * Copies a slot of other, which must hold the same statistics, over a slot of this
+     */
+    void copy(int slot, BarColumns other, int otherSlot) {
+        pairIds[slot] = other.pairIds[otherSlot];
+        buckets[slot] = other.buckets[otherSlot];
+        if (openMillis != null) {
+            openMillis[slot] = other.openMillis[otherSlot];
+            opens[slot] = other.opens[otherSlot];
+        }
+        if (closeMillis != null) {
+            closeMillis[slot] = other.closeMillis[otherSlot];
+            closes[slot] = other.closes[otherSlot];
+        }
+        if (highs != null) {
+            highs[slot] = other.highs[otherSlot];
+        }
+        if (lows != null) {
+            lows[slot] = other.lows[otherSlot];
+        }
+        if (counts != null) {
+            counts[slot] = other.counts[otherSlot];
+        }
+        if (volumes != null) {
+            volumes[slot] = other.volumes[otherSlot];
+        }
+        if (minSizes != null) {
+            minSizes[slot] = other.minSizes[otherSlot];
+        }
+        if (maxSizes != null) {
+            maxSizes[slot] = other.maxSizes[otherSlot];
+        }
+        if (priceSumHighs != null) {
+            priceSumHighs[slot] = other.priceSumHighs[otherSlot];
+            priceSumLows[slot] = other.priceSumLows[otherSlot];
+        }
+        if (volumePriceHighs != null) {
+            volumePriceHighs[slot] = other.volumePriceHighs[otherSlot];
+            volumePriceLows[slot] = other.volumePriceLows[otherSlot];
+        }
+    }
+
+    /**
+     * Adds a 128 bit fixed point value (high, low) to the sum held in a slot
+     */
+    private static void addFixedPoint(long[] highs, long[] lows, int slot, long high, long low) {
+        long sum = lows[slot] + low;
+        highs[slot] += high + FixedPointVWAP.carry(lows[slot], low, sum);
+        lows[slot] = sum;
+    }
+}
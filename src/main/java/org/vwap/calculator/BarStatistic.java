@@ -0,0 +1,53 @@
+package org.vwap.calculator;
+
+/**
+ * Statistics that a {@link BarBuilder} can calculate per (currency pair, time bucket) in its single pass over the
+ * trades
+ * <p>
+ * Every statistic is held as a primitive that merges exactly, so bars built from any partitioning of the trades, on
+ * any number of threads, combine into the same bars
+ * </p>
+ */
+public enum BarStatistic {
+    /**
+     * Price of the earliest trade, the first one added among trades at the same time
+     */
+    OPEN,
+    /**
+     * Highest trade price
+     */
+    HIGH,
+    /**
+     * Lowest trade price
+     */
+    LOW,
+    /**
+     * Price of the latest trade, the last one added among trades at the same time
+     */
+    CLOSE,
+    /**
+     * Number of trades
+     */
+    COUNT,
+    /**
+     * Sum of trade volumes
+     */
+    VOLUME,
+    /**
+     * Smallest trade volume
+     */
+    MIN_SIZE,
+    /**
+     * Largest trade volume
+     */
+    MAX_SIZE,
+    /**
+     * Mean price of the trades, each trade a sample in time. Weighting prices by how long they held would need the
+     * trades in time order and would not merge
+     */
+    TWAP,
+    /**
+     * Volume weighted average price, in the same exact fixed point as {@link VWAPAccumulator}
+     */
+    VWAP
+}
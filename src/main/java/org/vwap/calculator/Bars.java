@@ -0,0 +1,181 @@
+package org.vwap.calculator;
+
+import lombok.Getter;
+import org.vwap.model.CurrencyPairDictionary;
+import org.vwap.model.TradeBatch;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Bars built by a {@link BarBuilder}, one row per (currency pair, time bucket) ordered by currency pair id and then
+ * chronologically
+ * <p>
+ * Rows are held as primitive columns, one per statistic, rather than an object per bar. The rows of a currency pair
+ * are the contiguous range [{@link #firstRowOf(String)}, {@link #endRowOf(String)})
+ * </p>
+ */
+public class Bars {
+
+    @Getter
+    private final CurrencyPairDictionary currencyPairs;
+    @Getter
+    private final long bucketMillis;
+    private final BarColumns rows;
+    private final int[] pairOffsets;
+
+    Bars(CurrencyPairDictionary currencyPairs, long bucketMillis, BarColumns rows, int[] pairOffsets) {
+        this.currencyPairs = currencyPairs;
+        this.bucketMillis = bucketMillis;
+        this.rows = rows;
+        this.pairOffsets = pairOffsets;
+    }
+
+    /**
+     * Builds the bars of a batch in a single pass
+     *
+     * @param trades      The trades to build bars from, trades without a timestamp are skipped
+     * @param granularity The width of a bar
+     * @param statistics  The statistics to calculate, at least one
+     */
+    public static Bars of(TradeBatch trades, BucketGranularity granularity, Set<BarStatistic> statistics) {
+        BarBuilder builder = new BarBuilder(trades.getCurrencyPairs(), granularity.getMillis(), statistics);
+        builder.addAll(trades);
+        return builder.build();
+    }
+
+    public Set<BarStatistic> getStatistics() {
+        return Collections.unmodifiableSet(rows.statistics);
+    }
+
+    /**
+     * @return The number of rows
+     */
+    public int size() {
+        return rows.capacity();
+    }
+
+    /**
+     * @return The first row of a currency pair, equal to {@link #endRowOf(String)} if it has none
+     */
+    public int firstRowOf(String currencyPair) {
+        int pairId = currencyPairs.idOf(currencyPair);
+        return pairId < 0 || pairId + 1 >= pairOffsets.length ? 0 : pairOffsets[pairId];
+    }
+
+    /**
+     * @return One past the last row of a currency pair
+     */
+    public int endRowOf(String currencyPair) {
+        int pairId = currencyPairs.idOf(currencyPair);
+        return pairId < 0 || pairId + 1 >= pairOffsets.length ? 0 : pairOffsets[pairId + 1];
+    }
+
+    public String getCurrencyPair(int row) {
+        return currencyPairs.nameOf(rows.pairIds[row]);
+    }
+
+    /**
+     * @return The start of the bucket a row covers
+     */
+    public Instant getStart(int row) {
+        return Instant.ofEpochMilli(rows.buckets[row] * bucketMillis);
+    }
+
+    public double getOpen(int row) {
+        require(BarStatistic.OPEN);
+        return rows.opens[row];
+    }
+
+    public double getHigh(int row) {
+        require(BarStatistic.HIGH);
+        return rows.highs[row];
+    }
+
+    public double getLow(int row) {
+        require(BarStatistic.LOW);
+        return rows.lows[row];
+    }
+
+    public double getClose(int row) {
+        require(BarStatistic.CLOSE);
+        return rows.closes[row];
+    }
+
+    public long getCount(int row) {
+        require(BarStatistic.COUNT);
+        return rows.counts[row];
+    }
+
+    public long getVolume(int row) {
+        require(BarStatistic.VOLUME);
+        return rows.volumes[row];
+    }
+
+    public int getMinSize(int row) {
+        require(BarStatistic.MIN_SIZE);
+        return rows.minSizes[row];
+    }
+
+    public int getMaxSize(int row) {
+        require(BarStatistic.MAX_SIZE);
+        return rows.maxSizes[row];
+    }
+
+    /**
+     * @return The exact sum of prices rounded once to the nearest double, divided by the count
+     */
+    public double getTWAP(int row) {
+        require(BarStatistic.TWAP);
+        return FixedPointVWAP.toVolumePrice(rows.priceSumHighs[row], rows.priceSumLows[row]) / rows.counts[row];
+    }
+
+    /**
+     * @return The VWAP as {@link VWAPAccumulator} calculates it, or NaN if the total volume is not positive
+     */
+    public double getVWAP(int row) {
+        require(BarStatistic.VWAP);
+        if (rows.volumes[row] <= 0) {
+            return Double.NaN;
+        }
+        return FixedPointVWAP.toVolumePrice(rows.volumePriceHighs[row], rows.volumePriceLows[row]) /
+                rows.volumes[row];
+    }
+
+    /**
+     * @return Any statistic of a row as a double, e.g. for generic output
+     */
+    public double get(int row, BarStatistic statistic) {
+        switch (statistic) {
+            case OPEN:
+                return getOpen(row);
+            case HIGH:
+                return getHigh(row);
+            case LOW:
+                return getLow(row);
+            case CLOSE:
+                return getClose(row);
+            case COUNT:
+                return getCount(row);
+            case VOLUME:
+                return getVolume(row);
+            case MIN_SIZE:
+                return getMinSize(row);
+            case MAX_SIZE:
+                return getMaxSize(row);
+            case TWAP:
+                return getTWAP(row);
+            case VWAP:
+                return getVWAP(row);
+            default:
+                throw new IllegalArgumentException("Unknown bar statistic " + statistic);
+        }
+    }
+
+    private void require(BarStatistic statistic) {
+        if (!rows.statistics.contains(statistic)) {
+            throw new IllegalStateException(statistic + " was not calculated, bars hold " + rows.statistics);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package org.vwap.calculator;
+
+/**
+ * Receives progress of a batch of files being aggregated
+ * <p>
+ * NOTE: Called from the worker threads, so implementations must be thread safe
+ * </p>
+ */
+@FunctionalInterface
+public interface BatchProgressListener {
+
+    /**
+     * @param filepath       The file that has just been aggregated
+     * @param completedFiles The number of files aggregated so far, including this one
+     * @param totalFiles     The number of files in the batch
+     */
+    void onFileCompleted(String filepath, int completedFiles, int totalFiles);
+}
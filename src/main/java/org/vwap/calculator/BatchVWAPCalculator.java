@@ -0,0 +1,188 @@
+package org.vwap.calculator;
+
+import javafx.util.Pair;
+import lombok.Getter;
+import org.vwap.cache.PartialAggregateCache;
+import org.vwap.model.CurrencyPairDictionary;
+import org.vwap.model.TradeBatch;
+import org.vwap.util.BinaryTradeFile;
+import org.vwap.util.GzipCSVReader;
+import org.vwap.util.MappedCSVReader;
+import org.vwap.util.MappedJSONReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Calculates hourly Volume Weighted Average Prices (VWAP) across many files at once
+ * <p>
+ * Files are read on a fixed-size pool of threads, each into its own {@link VWAPAccumulator}, and the per-file partial
+ * sums are merged into one combined result. Before a file is submitted its size is reserved from a budget of bytes in
+ * flight, and the reservation is returned once the file has been folded into its partial sums. Submission blocks while
+ * the budget is exhausted, so a directory of large files is processed a few at a time instead of all being loaded at
+ * once. A file larger than the whole budget reserves all of it and is processed alone
+ * </p>
+ * <p>
+ * With a {@link PartialAggregateCache}, files that have not changed since they were cached are served from the cache
+ * and only new or changed files are read
+ * </p>
+ */
+public class BatchVWAPCalculator {
+
+    private static final int BUDGET_UNIT = 1024;
+
+    @Getter
+    private final int threads;
+    @Getter
+    private final long maxBytesInFlight;
+    private final String recordSeparator;
+    private final boolean containsHeader;
+    private final BatchProgressListener listener;
+    private final PartialAggregateCache cache;
+
+    /**
+     * Creates a calculator with one thread per core and half of the maximum heap as its budget
+     */
+    public BatchVWAPCalculator(BatchProgressListener listener) {
+        this(Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().maxMemory() / 2, ",", true, listener);
+    }
+
+    /**
+     * @param threads          The number of files read at the same time
+     * @param maxBytesInFlight The maximum combined size of the files being read at the same time
+     * @param recordSeparator  Character that separates entries in the csv files
+     * @param containsHeader   Whether the csv files contain a header
+     * @param listener         Receives progress as each file completes
+     */
+    public BatchVWAPCalculator(int threads, long maxBytesInFlight, String recordSeparator, boolean containsHeader,
+                               BatchProgressListener listener) {
+        this(threads, maxBytesInFlight, recordSeparator, containsHeader, listener, null);
+    }
+
+    /**
+     * @param threads          The number of files read at the same time
+     * @param maxBytesInFlight The maximum combined size of the files being read at the same time
+     * @param recordSeparator  Character that separates entries in the csv files
+     * @param containsHeader   Whether the csv files contain a header
+     * @param listener         Receives progress as each file completes
+     * @param cache            Serves the partial sums of files that have not changed since an earlier run, or null to
+     *                         always read every file
+     */
+    public BatchVWAPCalculator(int threads, long maxBytesInFlight, String recordSeparator, boolean containsHeader,
+                               BatchProgressListener listener, PartialAggregateCache cache) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Thread count must be positive");
+        }
+        if (maxBytesInFlight < BUDGET_UNIT) {
+            throw new IllegalArgumentException("Bytes in flight must be at least " + BUDGET_UNIT);
+        }
+        this.threads = threads;
+        this.maxBytesInFlight = maxBytesInFlight;
+        this.recordSeparator = recordSeparator;
+        this.containsHeader = containsHeader;
+        this.listener = listener;
+        this.cache = cache;
+    }
+
+    /**
+     * Folds every trade of every file into one set of partial sums
+     *
+     * @param filepaths CSV files, which may be gzip-compressed, JSON files or binary trade files
+     * @return The combined partial sums of all files
+     * @throws IOException If unable to read any of the files
+     */
+    public VWAPAccumulator accumulate(List<String> filepaths) throws IOException {
+        int budget = (int) Math.min(maxBytesInFlight / BUDGET_UNIT, Integer.MAX_VALUE);
+        Semaphore bytesInFlight = new Semaphore(budget);
+        AtomicInteger completedFiles = new AtomicInteger();
+        List<Future<VWAPAccumulator>> partials = new ArrayList<>(filepaths.size());
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(filepaths.size(), 1)));
+        try {
+            for (String filepath : filepaths) {
+                int reserved = (int) Math.max(1, Math.min(budget, (new File(filepath).length() + BUDGET_UNIT - 1) /
+                        BUDGET_UNIT));
+                bytesInFlight.acquire(reserved);
+                partials.add(executor.submit(() -> {
+                    try {
+                        VWAPAccumulator partial = accumulate(filepath);
+                        listener.onFileCompleted(filepath, completedFiles.incrementAndGet(), filepaths.size());
+                        return partial;
+                    } finally {
+                        bytesInFlight.release(reserved);
+                    }
+                }));
+            }
+
+            // Merge in argument order so that the result does not depend on which file finished first
+            VWAPAccumulator combined = new VWAPAccumulator(new CurrencyPairDictionary());
+            for (Future<VWAPAccumulator> partial : partials) {
+                combined.merge(partial.get());
+            }
+            return combined;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while aggregating files");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException("Failed to aggregate files", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Calculates Volume Weighted Average Prices (VWAP) by the hour across all of the given files
+     *
+     * @param filepaths CSV files, which may be gzip-compressed, JSON files or binary trade files
+     * @return A list of key-value pairs (HOUR, VWAP) categorised by unique currency pair and sorted in chronological order
+     * @throws IOException If unable to read any of the files
+     */
+    public Map<String, List<Pair<Instant, Double>>> calculateHourlyVWAPs(List<String> filepaths) throws IOException {
+        return accumulate(filepaths).toVWAPs();
+    }
+
+    private VWAPAccumulator accumulate(String filepath) throws IOException {
+        if (cache == null) {
+            return read(filepath);
+        }
+        return cache.getOrCompute(filepath, recordSeparator, containsHeader, VWAPAccumulator.HOUR_MILLIS, this::read);
+    }
+
+    private VWAPAccumulator read(String filepath) throws IOException {
+        if (GzipCSVReader.isGzipFile(filepath)) {
+            // The budget is reserved by compressed size, so stream the file rather than hold all of its trades
+            VWAPAccumulator partial = new VWAPAccumulator(new CurrencyPairDictionary());
+            GzipCSVReader.accumulateFromCSVFile(filepath, recordSeparator, containsHeader, partial,
+                    OutOfCoreVWAPCalculator.DEFAULT_CHUNK_SIZE);
+            return partial;
+        }
+        TradeBatch trades;
+        if (BinaryTradeFile.isBinaryTradeFile(filepath)) {
+            trades = BinaryTradeFile.read(filepath);
+        } else if (MappedJSONReader.isJSONFile(filepath)) {
+            trades = MappedJSONReader.readTradeBatchFromJSONFile(filepath);
+        } else {
+            trades = MappedCSVReader.readTradeBatchFromCSVFile(filepath, recordSeparator, containsHeader);
+        }
+        VWAPAccumulator partial = new VWAPAccumulator(trades.getCurrencyPairs());
+        partial.addAll(trades);
+        return partial;
+    }
+}
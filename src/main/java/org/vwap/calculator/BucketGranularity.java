@@ -0,0 +1,42 @@
+package org.vwap.calculator;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.Duration;
+
+/**
+ * Width of the time buckets that VWAPs are calculated over
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public final class BucketGranularity {
+
+    public static final BucketGranularity ONE_MINUTE = new BucketGranularity(60000);
+    public static final BucketGranularity FIVE_MINUTES = new BucketGranularity(5 * 60000);
+    public static final BucketGranularity FIFTEEN_MINUTES = new BucketGranularity(15 * 60000);
+    public static final BucketGranularity HOUR = new BucketGranularity(VWAPAccumulator.HOUR_MILLIS);
+    public static final BucketGranularity DAY = new BucketGranularity(24 * VWAPAccumulator.HOUR_MILLIS);
+
+    private final long millis;
+
+    private BucketGranularity(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("Bucket width must be positive");
+        }
+        this.millis = millis;
+    }
+
+    public static BucketGranularity of(Duration width) {
+        return new BucketGranularity(width.toMillis());
+    }
+
+    /**
+     * @return Whether every bucket of this granularity is made up of whole buckets of finer
+     */
+    public boolean isMultipleOf(BucketGranularity finer) {
+        return millis % finer.millis == 0;
+    }
+}
@@ -0,0 +1,243 @@
+package org.vwap.calculator;
+
+import javafx.util.Pair;
+import lombok.Getter;
+import org.vwap.metrics.Metrics;
+import org.vwap.model.CurrencyPairDictionary;
+import org.vwap.model.TradeBatch;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * VWAP sums per currency pair at a fixed granularity, from which coarser granularities and rolling windows are derived
+ * <p>
+ * Trades are grouped once at the finest granularity needed. Every coarser granularity is then a roll-up of the fine
+ * buckets and every rolling window a difference of prefix sums over them, so each extra view costs O(buckets) rather
+ * than another pass over the trades
+ * </p>
+ * <p>
+ * Price sums are carried in the 128 bit fixed point of {@link FixedPointVWAP}, so a roll-up or a window is bit for bit
+ * the VWAP that grouping the trades directly at that granularity would give
+ * </p>
+ * <p>
+ * NOTE: Buckets are aligned to the epoch, so roll-ups assume timestamps after 1970-01-01T00:00:00Z
+ * </p>
+ */
+public class BucketedVWAPs {
+
+    @Getter
+    private final CurrencyPairDictionary currencyPairs;
+    @Getter
+    private final BucketGranularity granularity;
+    private final PairBuckets[] pairBuckets;
+
+    private BucketedVWAPs(CurrencyPairDictionary currencyPairs, BucketGranularity granularity,
+                          PairBuckets[] pairBuckets) {
+        this.currencyPairs = currencyPairs;
+        this.granularity = granularity;
+        this.pairBuckets = pairBuckets;
+    }
+
+    /**
+     * Groups the trades of a batch into buckets of the given granularity in a single pass
+     *
+     * @param trades      The trades to group, trades without a timestamp are skipped
+     * @param granularity The finest granularity that will be needed
+     */
+    public static BucketedVWAPs of(TradeBatch trades, BucketGranularity granularity) {
+        VWAPAccumulator accumulator = new VWAPAccumulator(trades.getCurrencyPairs(), granularity.getMillis());
+        accumulator.addAll(trades);
+        return of(accumulator);
+    }
+
+    /**
+     * Captures the sums of an accumulator, whose bucket width becomes the granularity
+     */
+    public static BucketedVWAPs of(VWAPAccumulator accumulator) {
+        int pairCount = accumulator.getCurrencyPairs().size();
+        int[] counts = new int[pairCount];
+        accumulator.forEachSorted((pairId, bucket, volumePriceHigh, volumePriceLow, volume) -> counts[pairId]++);
+
+        PairBuckets[] pairBuckets = new PairBuckets[pairCount];
+        for (int pairId = 0; pairId < pairCount; pairId++) {
+            pairBuckets[pairId] = new PairBuckets(counts[pairId]);
+        }
+        accumulator.forEachSorted((pairId, bucket, volumePriceHigh, volumePriceLow, volume) ->
+                pairBuckets[pairId].add(bucket, volumePriceHigh, volumePriceLow, volume));
+        return new BucketedVWAPs(accumulator.getCurrencyPairs(),
+                BucketGranularity.of(Duration.ofMillis(accumulator.getBucketMillis())), pairBuckets);
+    }
+
+    /**
+     * Combines consecutive buckets into buckets of a coarser granularity, e.g. 1-minute buckets into hours
+     *
+     * @param coarser A granularity that is a whole multiple of this one
+     * @return The VWAP sums at the coarser granularity
+     */
+    public BucketedVWAPs rollUp(BucketGranularity coarser) {
+        if (!coarser.isMultipleOf(granularity)) {
+            throw new IllegalArgumentException(coarser + " is not a multiple of " + granularity);
+        }
+        long fineMillis = granularity.getMillis();
+        long coarseMillis = coarser.getMillis();
+        PairBuckets[] rolledUp = new PairBuckets[pairBuckets.length];
+        for (int pairId = 0; pairId < pairBuckets.length; pairId++) {
+            PairBuckets fine = pairBuckets[pairId];
+            PairBuckets coarse = new PairBuckets(fine.size);
+            // Fine buckets are sorted, so each coarse bucket is a contiguous run of them
+            for (int i = 0; i < fine.size; i++) {
+                long bucket = fine.buckets[i] * fineMillis / coarseMillis;
+                if (coarse.size > 0 && coarse.buckets[coarse.size - 1] == bucket) {
+                    coarse.addTo(coarse.size - 1, fine.volumePriceHighs[i], fine.volumePriceLows[i], fine.volumes[i]);
+                } else {
+                    coarse.add(bucket, fine.volumePriceHighs[i], fine.volumePriceLows[i], fine.volumes[i]);
+                }
+            }
+            rolledUp[pairId] = coarse;
+        }
+        return new BucketedVWAPs(currencyPairs, coarser, rolledUp);
+    }
+
+    /**
+     * Calculates the VWAP of every bucket
+     *
+     * @return A list of key-value pairs (BUCKET START, VWAP) categorised by unique currency pair and sorted in
+     * chronological order, with a null VWAP where the total volume is not positive
+     */
+    public Map<String, List<Pair<Instant, Double>>> toVWAPs() {
+        long width = granularity.getMillis();
+        Map<String, List<Pair<Instant, Double>>> categorisedVWAPs = new HashMap<>(pairBuckets.length);
+        for (int pairId = 0; pairId < pairBuckets.length; pairId++) {
+            PairBuckets pair = pairBuckets[pairId];
+            if (pair.size == 0) {
+                continue;
+            }
+            String currencyPair = currencyPairs.nameOf(pairId);
+            List<Pair<Instant, Double>> vwaps = new ArrayList<>(pair.size);
+            for (int i = 0; i < pair.size; i++) {
+                Instant bucketStart = Instant.ofEpochMilli(pair.buckets[i] * width);
+                vwaps.add(new Pair<>(bucketStart, vwap(currencyPair, bucketStart, pair.volumePriceHighs[i],
+                        pair.volumePriceLows[i], pair.volumes[i])));
+            }
+            categorisedVWAPs.put(currencyPair, vwaps);
+        }
+        return categorisedVWAPs;
+    }
+
+    /**
+     * Calculates a sliding-window VWAP ending at every bucket that has trades
+     * <p>
+     * The window ending at a bucket covers that bucket and the preceding buckets up to the window length, e.g. a
+     * 15-minute window over 1-minute buckets covers the bucket starting at 10:14 and those back to 10:00. Each window is
+     * resolved as a difference of two prefix sums, which is exact in 128 bit fixed point however large the prefixes
+     * </p>
+     *
+     * @param window The window length, a whole multiple of the granularity
+     * @return A list of key-value pairs (START OF LAST BUCKET IN WINDOW, VWAP) categorised by unique currency pair and
+     * sorted in chronological order
+     */
+    public Map<String, List<Pair<Instant, Double>>> rollingVWAPs(Duration window) {
+        BucketGranularity windowGranularity = BucketGranularity.of(window);
+        if (!windowGranularity.isMultipleOf(granularity)) {
+            throw new IllegalArgumentException(windowGranularity + " is not a multiple of " + granularity);
+        }
+        long width = granularity.getMillis();
+        long windowBuckets = windowGranularity.getMillis() / width;
+        Map<String, List<Pair<Instant, Double>>> categorisedVWAPs = new HashMap<>(pairBuckets.length);
+        for (int pairId = 0; pairId < pairBuckets.length; pairId++) {
+            PairBuckets pair = pairBuckets[pairId];
+            if (pair.size == 0) {
+                continue;
+            }
+            long[] volumePriceHighPrefix = new long[pair.size + 1];
+            long[] volumePriceLowPrefix = new long[pair.size + 1];
+            long[] volumePrefix = new long[pair.size + 1];
+            for (int i = 0; i < pair.size; i++) {
+                long low = volumePriceLowPrefix[i] + pair.volumePriceLows[i];
+                volumePriceHighPrefix[i + 1] = volumePriceHighPrefix[i] + pair.volumePriceHighs[i]
+                        + FixedPointVWAP.carry(volumePriceLowPrefix[i], pair.volumePriceLows[i], low);
+                volumePriceLowPrefix[i + 1] = low;
+                volumePrefix[i + 1] = volumePrefix[i] + pair.volumes[i];
+            }
+
+            String currencyPair = currencyPairs.nameOf(pairId);
+            List<Pair<Instant, Double>> vwaps = new ArrayList<>(pair.size);
+            int first = 0;
+            for (int last = 0; last < pair.size; last++) {
+                // Two pointers - the window start only ever moves forward
+                while (pair.buckets[first] <= pair.buckets[last] - windowBuckets) {
+                    first++;
+                }
+                Instant bucketStart = Instant.ofEpochMilli(pair.buckets[last] * width);
+                long volumePriceLow = volumePriceLowPrefix[last + 1] - volumePriceLowPrefix[first];
+                long volumePriceHigh = volumePriceHighPrefix[last + 1] - volumePriceHighPrefix[first]
+                        - FixedPointVWAP.borrow(volumePriceLowPrefix[last + 1], volumePriceLowPrefix[first],
+                        volumePriceLow);
+                vwaps.add(new Pair<>(bucketStart, vwap(currencyPair, bucketStart, volumePriceHigh, volumePriceLow,
+                        volumePrefix[last + 1] - volumePrefix[first])));
+            }
+            categorisedVWAPs.put(currencyPair, vwaps);
+        }
+        return categorisedVWAPs;
+    }
+
+    private static Double vwap(String currencyPair, Instant bucketStart, long volumePriceHigh, long volumePriceLow,
+                               long volume) {
+        if (volume <= 0) {
+            Metrics.ZERO_VOLUME_BUCKETS.increment();
+            Metrics.reportRejected("Erroneous data - total volume of trades is zero for " + currencyPair + " at " +
+                    bucketStart);
+            return null;
+        }
+        return FixedPointVWAP.toVolumePrice(volumePriceHigh, volumePriceLow) / volume;
+    }
+
+    /**
+     * Sorted buckets of a single currency pair held in parallel arrays
+     */
+    private static final class PairBuckets {
+        private long[] buckets;
+        private long[] volumePriceHighs;
+        private long[] volumePriceLows;
+        private long[] volumes;
+        private int size;
+
+        private PairBuckets(int capacity) {
+            buckets = new long[capacity];
+            volumePriceHighs = new long[capacity];
+            volumePriceLows = new long[capacity];
+            volumes = new long[capacity];
+        }
+
+        private void add(long bucket, long volumePriceHigh, long volumePriceLow, long volume) {
+            if (size == buckets.length) {
+                int capacity = Math.max(4, size * 2);
+                buckets = Arrays.copyOf(buckets, capacity);
+                volumePriceHighs = Arrays.copyOf(volumePriceHighs, capacity);
+                volumePriceLows = Arrays.copyOf(volumePriceLows, capacity);
+                volumes = Arrays.copyOf(volumes, capacity);
+            }
+            buckets[size] = bucket;
+            volumePriceHighs[size] = volumePriceHigh;
+            volumePriceLows[size] = volumePriceLow;
+            volumes[size] = volume;
+            size++;
+        }
+
+        /**
+         * Adds sums to those of the bucket at index i
+         */
+        private void addTo(int i, long volumePriceHigh, long volumePriceLow, long volume) {
+            long low = volumePriceLows[i] + volumePriceLow;
+            volumePriceHighs[i] += volumePriceHigh + FixedPointVWAP.carry(volumePriceLows[i], volumePriceLow, low);
+            volumePriceLows[i] = low;
+            volumes[i] += volume;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.vwap.calculator;
+
+import javafx.util.Pair;
+import lombok.Getter;
+import org.vwap.metrics.Metrics;
+import org.vwap.model.CurrencyPairDictionary;
+import org.vwap.model.Trade;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Records trades from any number of feed threads into hourly VWAP sums without a lock shared between producers
+ * <p>
+ * Every recording thread gets its own stripe: a {@link VWAPAccumulator} plus a thread-confined cache of currency pair
+ * ids. A stripe's monitor is only ever contended by a reader merging the stripes, so producers never wait on each
+ * other. Readers merge all stripes into a consistent copy on demand
+ * </p>
+ */
+public class ConcurrentVWAPRecorder {
+
+    @Getter
+    private final CurrencyPairDictionary currencyPairs = new CurrencyPairDictionary();
+    private final List<Stripe> stripes = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Stripe> threadStripe = ThreadLocal.withInitial(this::newStripe);
+
+    public void record(Trade trade) {
+        if (trade.getTimestamp() == null) {
+            throw new IllegalArgumentException("Trade has no timestamp: " + trade);
+        }
+        record(trade.getCurrencyPair(), trade.getTimestamp().toEpochMilli(), trade.getPrice(), trade.getVolume());
+    }
+
+    /**
+     * Folds a trade into the calling thread's stripe
+     * <p>
+     * A trade whose price cannot be represented in fixed point, see {@link FixedPointVWAP}, is counted in
+     * {@link Metrics#ROWS_REJECTED}, reported and dropped
+     * </p>
+     */
+    public void record(String currencyPair, long epochMilli, double price, int volume) {
+        if (!FixedPointVWAP.isRepresentable(price)) {
+            Metrics.ROWS_REJECTED.increment();
+            Metrics.reportRejected("Invalid trade, price cannot be represented in fixed point: " + currencyPair + " " +
+                    Instant.ofEpochMilli(epochMilli) + " " + price + " " + volume);
+            return;
+        }
+        Stripe stripe = threadStripe.get();
+        int pairId = stripe.pairIdOf(currencyPair);
+        synchronized (stripe) {
+            stripe.accumulator.addTrade(pairId, epochMilli, price, volume);
+        }
+    }
+
+    /**
+     * Merges the sums recorded so far by every thread
+     *
+     * @return A new accumulator holding the combined sums
+     */
+    public VWAPAccumulator snapshot() {
+        VWAPAccumulator merged = new VWAPAccumulator(currencyPairs);
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                merged.merge(stripe.accumulator);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Calculates Volume Weighted Average Prices (VWAP) by the hour from every trade recorded so far
+     *
+     * @return A list of key-value pairs (HOUR, VWAP) categorised by unique currency pair and sorted in chronological order
+     */
+    public Map<String, List<Pair<Instant, Double>>> calculateHourlyVWAPs() {
+        return snapshot().toVWAPs();
+    }
+
+    private Stripe newStripe() {
+        Stripe stripe = new Stripe(currencyPairs);
+        stripes.add(stripe);
+        return stripe;
+    }
+
+    /**
+     * Sums recorded by a single thread
+     */
+    private static final class Stripe {
+        private final VWAPAccumulator accumulator;
+        private final Map<String, Integer> pairIds = new HashMap<>();
+
+        private Stripe(CurrencyPairDictionary currencyPairs) {
+            this.accumulator = new VWAPAccumulator(currencyPairs);
+        }
+
+        /**
+         * Only called by the owning thread, the shared dictionary is consulted once per new currency pair
+         */
+        private int pairIdOf(String currencyPair) {
+            Integer pairId = pairIds.get(currencyPair);
+            if (pairId == null) {
+                pairId = accumulator.getCurrencyPairs().intern(currencyPair);
+                pairIds.put(currencyPair, pairId);
+            }
+            return pairId;
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package org.vwap.calculator;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.vwap.model.Trade;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.stream.IntStream;
+
+/**
+ * Exact VWAP sums in fixed point, sum(price * volume) as a 128 bit integer of price units of 1e-8 and sum(volume)
+ * <p>
+ * Integer addition is associative, so sums of any partitioning of the same trades merge to the same bits whatever the
+ * split or the number of threads, unlike double sums whose rounding depends on the order of additions. Prices are
+ * rounded to 8 decimal places once, on the way in, which is exact for prices quoted to 8 or fewer decimal places
+ * </p>
+ * <p>
+ * The kernel walks primitive price and volume arrays in blocks of {@value #BLOCK_SIZE} trades. Prices are rounded to
+ * integers by adding a magic constant that leaves the integer in the low mantissa bits, avoiding a checked double to
+ * long conversion, and each price times volume is summed into a single wrapping long. The loop also ORs together the
+ * prices and volumes, which bounds the magnitude of every product, so once per block it can tell whether the wrapped
+ * sum is exact. That holds for any realistic block, which is then carried into the 128 bit total. Otherwise the block
+ * is summed again with each scaled price split into three 21 bit limbs, which cannot overflow
+ * </p>
+ * <p>
+ * {@link VWAPAccumulator} keeps its bucket sums in the same fixed point, and both derive the VWAP the same way: the
+ * exact sum rounded once to the nearest double, divided by the volume
+ * </p>
+ * <p>
+ * NOTE: Not thread safe - use one sum per thread and {@link #merge(FixedPointVWAP)} them
+ * </p>
+ */
+@EqualsAndHashCode
+public class FixedPointVWAP {
+
+    public static final long PRICE_SCALE = 100000000L;
+    public static final int BLOCK_SIZE = 256;
+
+    /**
+     * Prices with an absolute value at or above this do not fit in a long once scaled
+     */
+    public static final double MAX_PRICE = Long.MAX_VALUE / (double) PRICE_SCALE;
+
+    private static final int LIMB_BITS = 21;
+    private static final long LIMB_MASK = (1L << LIMB_BITS) - 1;
+    private static final long MAX_EXACT_DOUBLE = 1L << 53;
+
+    /**
+     * Adding 1.5 * 2^52 to a double below 2^51 in magnitude rounds it half to even into the low mantissa bits
+     */
+    private static final double ROUNDING_MAGIC = 0x1.8p52;
+    private static final long ROUNDING_MAGIC_BITS = Double.doubleToRawLongBits(ROUNDING_MAGIC);
+    private static final int MAX_ROUNDING_MAGIC_BITS = 51;
+    private static final int BLOCK_BITS = 8;
+
+    private long volumePriceHigh;
+    private long volumePriceLow;
+    @Getter
+    private long volume;
+
+    /**
+     * Sums the trades at indices [from, to) of a pair of price and volume columns
+     *
+     * @return New sums of those trades
+     */
+    public static FixedPointVWAP of(double[] prices, int[] volumes, int from, int to) {
+        FixedPointVWAP sums = new FixedPointVWAP();
+        sums.addAll(prices, volumes, from, to);
+        return sums;
+    }
+
+    /**
+     * Sums the trades at indices [from, to) in parallel, split into the given number of partitions. The result is
+     * identical for every number of partitions and threads
+     *
+     * @return New sums of those trades
+     */
+    public static FixedPointVWAP parallelOf(double[] prices, int[] volumes, int from, int to, int partitions) {
+        if (partitions <= 0) {
+            throw new IllegalArgumentException("Number of partitions must be positive");
+        }
+        long length = to - from;
+        return IntStream.range(0, partitions).parallel()
+                .mapToObj(partition -> of(prices, volumes, from + (int) (length * partition / partitions),
+                        from + (int) (length * (partition + 1) / partitions)))
+                .reduce(FixedPointVWAP::merge)
+                .orElseGet(FixedPointVWAP::new);
+    }
+
+    /**
+     * Folds the trades at indices [from, to) into the sums
+     *
+     * @throws IllegalArgumentException If a price is not a number or its absolute value is not below {@link #MAX_PRICE}
+     */
+    public void addAll(double[] prices, int[] volumes, int from, int to) {
+        for (int blockStart = from; blockStart < to; blockStart += BLOCK_SIZE) {
+            int blockEnd = Math.min(blockStart + BLOCK_SIZE, to);
+            long blockVolumePrice = 0;
+            long blockVolume = 0;
+            long scaledPriceBits = 0;
+            int volumeBits = 0;
+            for (int i = blockStart; i < blockEnd; i++) {
+                long scaledPrice = scaleUnchecked(prices[i]);
+                int tradeVolume = volumes[i];
+                blockVolumePrice += scaledPrice * tradeVolume;
+                blockVolume += tradeVolume;
+                scaledPriceBits |= scaledPrice;
+                volumeBits |= tradeVolume;
+            }
+            if (isExactBlock(scaledPriceBits, volumeBits)) {
+                add(blockVolumePrice, 0);
+                volume += blockVolume;
+            } else {
+                addAllLimbs(prices, volumes, blockStart, blockEnd);
+            }
+        }
+    }
+
+    /**
+     * Folds trades into the sums, a block at a time through small price and volume columns
+     *
+     * @throws IllegalArgumentException If a price is not a number or its absolute value is not below {@link #MAX_PRICE}
+     */
+    public void addAll(List<Trade> trades) {
+        List<Trade> randomAccessTrades = trades instanceof RandomAccess ? trades : new ArrayList<>(trades);
+        int size = randomAccessTrades.size();
+        double[] prices = new double[Math.min(size, BLOCK_SIZE)];
+        int[] volumes = new int[prices.length];
+        for (int blockStart = 0; blockStart < size; blockStart += BLOCK_SIZE) {
+            int count = Math.min(BLOCK_SIZE, size - blockStart);
+            for (int i = 0; i < count; i++) {
+                Trade trade = randomAccessTrades.get(blockStart + i);
+                prices[i] = trade.getPrice();
+                volumes[i] = trade.getVolume();
+            }
+            addAll(prices, volumes, 0, count);
+        }
+    }
+
+    /**
+     * Folds a block of at most {@value #BLOCK_SIZE} trades into the sums, whatever their prices and volumes
+     */
+    private void addAllLimbs(double[] prices, int[] volumes, int from, int to) {
+        // Each limb is below 2^21 in magnitude and each volume below 2^31, so 256 products fit well within a long
+        long low = 0;
+        long middle = 0;
+        long high = 0;
+        long blockVolume = 0;
+        for (int i = from; i < to; i++) {
+            long scaledPrice = scale(prices[i]);
+            long tradeVolume = volumes[i];
+            low += (scaledPrice & LIMB_MASK) * tradeVolume;
+            middle += ((scaledPrice >> LIMB_BITS) & LIMB_MASK) * tradeVolume;
+            high += (scaledPrice >> (2 * LIMB_BITS)) * tradeVolume;
+            blockVolume += tradeVolume;
+        }
+        add(low, 0);
+        add(middle, LIMB_BITS);
+        add(high, 2 * LIMB_BITS);
+        volume += blockVolume;
+    }
+
+    /**
+     * Adds the sums of other into these sums
+     *
+     * @return These sums
+     */
+    public FixedPointVWAP merge(FixedPointVWAP other) {
+        long low = volumePriceLow + other.volumePriceLow;
+        volumePriceHigh += other.volumePriceHigh + carry(volumePriceLow, other.volumePriceLow, low);
+        volumePriceLow = low;
+        volume += other.volume;
+        return this;
+    }
+
+    /**
+     * @return sum(price * volume), rounded to the nearest double
+     */
+    public double getVolumePrice() {
+        return toVolumePrice(volumePriceHigh, volumePriceLow);
+    }
+
+    /**
+     * @return sum(price * volume) / sum(volume)
+     * @throws ArithmeticException If the total volume is not positive
+     */
+    public double getVWAP() {
+        if (volume <= 0) {
+            throw new ArithmeticException("Erroneous data - total volume of trades is zero");
+        }
+        return getVolumePrice() / volume;
+    }
+
+    /**
+     * Readers reject rows failing this check, so that one unrepresentable price cannot abort a whole run
+     *
+     * @return Whether price is a number whose absolute value is below {@link #MAX_PRICE}
+     */
+    public static boolean isRepresentable(double price) {
+        return Math.abs(price) < MAX_PRICE;
+    }
+
+    /**
+     * Adds price * volume to the 128 bit fixed point sum (highs[index], lows[index]), for running totals kept outside
+     * this package
+     *
+     * @throws IllegalArgumentException If price is not a number or its absolute value is not below {@link #MAX_PRICE}
+     */
+    public static void addVolumePrice(long[] highs, long[] lows, int index, double price, int volume) {
+        addScaledVolumePrice(highs, lows, index, scale(price), volume);
+    }
+
+    /**
+     * Adds scaledPrice * volume to the 128 bit fixed point sum (highs[index], lows[index])
+     *
+     * @param scaledPrice A price in units of 1e-8, see {@link #scale(double)}
+     */
+    static void addScaledVolumePrice(long[] highs, long[] lows, int index, long scaledPrice, int volume) {
+        // Split the scaled price into 32 bit halves so that each product with the volume fits in a long
+        long lowProduct = (scaledPrice & 0xFFFFFFFFL) * volume;
+        long highProduct = (scaledPrice >> 32) * volume;
+        long low = (highProduct << 32) + lowProduct;
+        long high = (highProduct >> 32) + (lowProduct >> 63) + carry(highProduct << 32, lowProduct, low);
+        long sum = lows[index] + low;
+        highs[index] += high + carry(lows[index], low, sum);
+        lows[index] = sum;
+    }
+
+    /**
+     * @return price in units of 1e-8, rounded half to even
+     * @throws IllegalArgumentException If price is not a number or its absolute value is not below {@link #MAX_PRICE}
+     */
+    static long scale(double price) {
+        if (!isRepresentable(price)) {
+            throw new IllegalArgumentException("Price cannot be represented in fixed point: " + price);
+        }
+        double scaled = price * PRICE_SCALE;
+        return Math.abs(scaled) < 1L << MAX_ROUNDING_MAGIC_BITS ? round(scaled) : (long) Math.rint(scaled);
+    }
+
+    /**
+     * Scales a price without checking it, for blocks whose products are summed in a wrapping long
+     *
+     * @return price in units of 1e-8, rounded half to even, if {@link #isExactBlock(long, int)} accepts its block
+     */
+    static long scaleUnchecked(double price) {
+        return round(price * PRICE_SCALE);
+    }
+
+    /**
+     * Non-negative prices below 2^priceBits and volumes below 2^volumeBits bound each of the at most 2^BLOCK_BITS
+     * products, so their wrapped sum is exact if the bound is within a long. A NaN, an infinite or a negative price, or
+     * one too large for the magic constant, always fails the check
+     *
+     * @param scaledPriceBits The OR of the prices of at most {@value #BLOCK_SIZE} trades, scaled by
+     *                        {@link #scaleUnchecked(double)}
+     * @param volumeBits      The OR of their volumes
+     * @return Whether every sum of products of those prices and volumes is exact in a wrapping long
+     */
+    static boolean isExactBlock(long scaledPriceBits, int volumeBits) {
+        int priceBits = 64 - Long.numberOfLeadingZeros(scaledPriceBits);
+        int tradeVolumeBits = 32 - Integer.numberOfLeadingZeros(volumeBits);
+        return scaledPriceBits >= 0 && volumeBits >= 0 && priceBits <= MAX_ROUNDING_MAGIC_BITS
+                && priceBits + tradeVolumeBits + BLOCK_BITS <= 63;
+    }
+
+    /**
+     * Math.rint goes through StrictMath on Java 8 and a cast is a checked conversion, this is a few plain instructions
+     *
+     * @return scaled rounded half to even, if its absolute value is below 2^51
+     */
+    private static long round(double scaled) {
+        return Double.doubleToRawLongBits(scaled + ROUNDING_MAGIC) - ROUNDING_MAGIC_BITS;
+    }
+
+    /**
+     * @return The carry out of the unsigned 64 bit addition a + b = sum, without a data dependent branch
+     */
+    static long carry(long a, long b, long sum) {
+        return ((a & b) | ((a | b) & ~sum)) >>> 63;
+    }
+
+    /**
+     * @return The borrow out of the unsigned 64 bit subtraction a - b = difference, without a data dependent branch
+     */
+    public static long borrow(long a, long b, long difference) {
+        return ((~a & b) | (~(a ^ b) & difference)) >>> 63;
+    }
+
+    /**
+     * Adds value * 2^shift, sign extended, to the 128 bit total
+     */
+    private void add(long value, int shift) {
+        long high = shift == 0 ? value >> 63 : value >> (64 - shift);
+        long low = value << shift;
+        long sum = volumePriceLow + low;
+        volumePriceHigh += high + carry(volumePriceLow, low, sum);
+        volumePriceLow = sum;
+    }
+
+    /**
+     * @return The 128 bit fixed point sum (high, low) in price units, correctly rounded to the nearest double
+     */
+    public static double toVolumePrice(long high, long low) {
+        if (high == low >> 63 && Math.abs(low) < MAX_EXACT_DOUBLE) {
+            // Both operands are exact doubles, so IEEE division rounds correctly
+            return (double) low / PRICE_SCALE;
+        }
+        BigInteger numerator = toBigInteger(high, low);
+        boolean negative = numerator.signum() < 0;
+        numerator = numerator.abs();
+        BigInteger denominator = BigInteger.valueOf(PRICE_SCALE);
+
+        // Scale so the quotient has 62 or 63 bits, then fold any remainder into a sticky bit far below the 53 bits kept
+        int shift = 62 - (numerator.bitLength() - denominator.bitLength());
+        BigInteger[] quotient = shift >= 0 ? numerator.shiftLeft(shift).divideAndRemainder(denominator)
+                : numerator.divideAndRemainder(denominator.shiftLeft(-shift));
+        long bits = quotient[0].longValue() | (quotient[1].signum() != 0 ? 1 : 0);
+        double magnitude = Math.scalb((double) bits, -shift);
+        return negative ? -magnitude : magnitude;
+    }
+
+    /**
+     * @return volumePrice rounded to the nearest 1e-8 as a 128 bit fixed point sum (high, low)
+     * @throws IllegalArgumentException If volumePrice is not finite
+     */
+    static long[] toFixedPoint(double volumePrice) {
+        if (Double.isNaN(volumePrice) || Double.isInfinite(volumePrice)) {
+            throw new IllegalArgumentException("Volume price cannot be represented in fixed point: " + volumePrice);
+        }
+        BigInteger scaled = new BigDecimal(volumePrice).movePointRight(8).setScale(0, RoundingMode.HALF_EVEN)
+                .toBigInteger();
+        return new long[]{scaled.shiftRight(64).longValue(), scaled.longValue()};
+    }
+
+    private static BigInteger toBigInteger(long high, long low) {
+        BigInteger unsignedLow = BigInteger.valueOf(low >>> 1).shiftLeft(1).add(BigInteger.valueOf(low & 1));
+        return BigInteger.valueOf(high).shiftLeft(64).add(unsignedLow);
+    }
+}
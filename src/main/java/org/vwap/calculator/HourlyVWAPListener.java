@@ -0,0 +1,17 @@
+package org.vwap.calculator;
+
+import java.time.Instant;
+
+/**
+ * Receives the final VWAP of an hour once no more trades can arrive for it
+ */
+@FunctionalInterface
+public interface HourlyVWAPListener {
+
+    /**
+     * @param currencyPair The currency pair, e.g. USD/JPY
+     * @param hour         The beginning of the closed hour
+     * @param vwap         The VWAP of the hour, or null if the total volume of its trades is zero
+     */
+    void onHourClosed(String currencyPair, Instant hour, Double vwap);
+}
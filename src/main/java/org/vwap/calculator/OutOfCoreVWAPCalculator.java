@@ -0,0 +1,83 @@
+package org.vwap.calculator;
+
+import javafx.util.Pair;
+import lombok.Getter;
+import org.vwap.model.CurrencyPairDictionary;
+import org.vwap.util.BinaryTradeFile;
+import org.vwap.util.MappedCSVReader;
+import org.vwap.util.MappedJSONReader;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Calculates hourly Volume Weighted Average Prices (VWAP) over inputs larger than the heap
+ * <p>
+ * Files are streamed in bounded chunks and each chunk is folded into per-(currency pair, hour) partial sums before the
+ * next is read, so the heap never holds more than a few chunks of trades regardless of the size or number of inputs.
+ * Because partial sums merge exactly, the result covers every trade of every file
+ * </p>
+ */
+public class OutOfCoreVWAPCalculator {
+
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    @Getter
+    private final int chunkSize;
+    private final String recordSeparator;
+    private final boolean containsHeader;
+
+    public OutOfCoreVWAPCalculator() {
+        this(DEFAULT_CHUNK_SIZE, ",", true);
+    }
+
+    /**
+     * @param chunkSize       The maximum number of CSV or JSON bytes each thread parses into memory at once
+     * @param recordSeparator Character that separates entries in the csv files
+     * @param containsHeader  Whether the csv files contain a header
+     */
+    public OutOfCoreVWAPCalculator(int chunkSize, String recordSeparator, boolean containsHeader) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.chunkSize = chunkSize;
+        this.recordSeparator = recordSeparator;
+        this.containsHeader = containsHeader;
+    }
+
+    /**
+     * Folds every trade of every file into one set of partial sums
+     *
+     * @param filepaths CSV files, which may be gzip-compressed, JSON files or binary trade files which are read one
+     *                  block at a time
+     * @return The combined partial sums of all files
+     * @throws IOException If unable to read any of the files
+     */
+    public VWAPAccumulator accumulate(List<String> filepaths) throws IOException {
+        VWAPAccumulator accumulator = new VWAPAccumulator(new CurrencyPairDictionary());
+        for (String filepath : filepaths) {
+            if (BinaryTradeFile.isBinaryTradeFile(filepath)) {
+                BinaryTradeFile.accumulate(filepath, accumulator);
+            } else if (MappedJSONReader.isJSONFile(filepath)) {
+                MappedJSONReader.accumulateFromJSONFile(filepath, accumulator, chunkSize);
+            } else {
+                MappedCSVReader.accumulateFromCSVFile(filepath, recordSeparator, containsHeader, accumulator,
+                        chunkSize);
+            }
+        }
+        return accumulator;
+    }
+
+    /**
+     * Calculates Volume Weighted Average Prices (VWAP) by the hour across all of the given files
+     *
+     * @param filepaths CSV files, which may be gzip-compressed, JSON files or binary trade files
+     * @return A list of key-value pairs (HOUR, VWAP) categorised by unique currency pair and sorted in chronological order
+     * @throws IOException If unable to read any of the files
+     */
+    public Map<String, List<Pair<Instant, Double>>> calculateHourlyVWAPs(List<String> filepaths) throws IOException {
+        return accumulate(filepaths).toVWAPs();
+    }
+}
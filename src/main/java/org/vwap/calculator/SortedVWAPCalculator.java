@@ -0,0 +1,331 @@
+package org.vwap.calculator;
+
+import javafx.util.Pair;
+import lombok.Getter;
+import org.vwap.metrics.Metrics;
+import org.vwap.metrics.Stage;
+import org.vwap.model.CurrencyPairDictionary;
+import org.vwap.model.TradeBatch;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Calculates VWAPs of trades that arrive in time order by run-length aggregation
+ * <p>
+ * Only the current bucket is open. Its sums are held in arrays indexed by currency pair id, so a trade costs a range
+ * check of its timestamp and three additions, with no hash table. When a trade crosses into a later bucket, the open
+ * sums are appended to the closed buckets of their pairs, which are therefore produced in chronological order and
+ * never need sorting
+ * </p>
+ * <p>
+ * A batch is cut into runs of at most {@value FixedPointVWAP#BLOCK_SIZE} trades within the open bucket, which go
+ * through the block kernel of {@link FixedPointVWAP}: each price times volume is added to a wrapping long per pair,
+ * and the run is carried into the 128 bit sums once it is known to be exact
+ * </p>
+ * <p>
+ * Sums are kept in the same fixed point as {@link VWAPAccumulator}, so the VWAPs are identical to its VWAPs for the
+ * same trades
+ * </p>
+ * <p>
+ * NOTE: Not thread safe - trades must be fed from a single thread
+ * </p>
+ */
+public class SortedVWAPCalculator {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    @Getter
+    private final CurrencyPairDictionary currencyPairs;
+    @Getter
+    private final long bucketMillis;
+    private long bucket = Long.MIN_VALUE;
+    private long bucketFirstMilli = Long.MAX_VALUE;
+    private long bucketLastMilli = Long.MIN_VALUE;
+    private long[] openHighs = new long[DEFAULT_CAPACITY];
+    private long[] openLows = new long[DEFAULT_CAPACITY];
+    private long[] openVolumes = new long[DEFAULT_CAPACITY];
+    private boolean[] open = new boolean[DEFAULT_CAPACITY];
+    private int[] openPairIds = new int[DEFAULT_CAPACITY];
+    private long[] runVolumePrices = new long[DEFAULT_CAPACITY];
+    private int openCount;
+    private PairRuns[] closed = new PairRuns[DEFAULT_CAPACITY];
+    private int size;
+
+    /**
+     * Creates a calculator of hourly buckets
+     *
+     * @param currencyPairs The dictionary that the pair ids passed to this calculator refer to
+     */
+    public SortedVWAPCalculator(CurrencyPairDictionary currencyPairs) {
+        this(currencyPairs, VWAPAccumulator.HOUR_MILLIS);
+    }
+
+    /**
+     * @param currencyPairs The dictionary that the pair ids passed to this calculator refer to
+     * @param bucketMillis  The width of a time bucket in milliseconds
+     */
+    public SortedVWAPCalculator(CurrencyPairDictionary currencyPairs, long bucketMillis) {
+        if (bucketMillis <= 0) {
+            throw new IllegalArgumentException("Bucket width must be positive");
+        }
+        this.currencyPairs = currencyPairs;
+        this.bucketMillis = bucketMillis;
+    }
+
+    /**
+     * Folds every trade of a time-ordered batch into the sums in a single pass
+     * <p>
+     * NOTE: Trades without a timestamp cannot be assigned to a bucket and are skipped
+     * </p>
+     *
+     * @param trades The trades to add, which must use the same currency pair dictionary as this calculator
+     * @throws IllegalArgumentException If a trade belongs to a bucket that has already been closed
+     * @see TradeBatch#isTimeOrdered()
+     */
+    public void addAll(TradeBatch trades) {
+        if (trades.getCurrencyPairs() != currencyPairs) {
+            throw new IllegalArgumentException("Trade batch uses a different currency pair dictionary");
+        }
+        long startTime = System.nanoTime();
+        long[] epochMillis = trades.epochMillisColumn();
+        int[] tradePairIds = trades.pairIdColumn();
+        double[] prices = trades.priceColumn();
+        int[] tradeVolumes = trades.volumeColumn();
+        if (currencyPairs.size() > open.length) {
+            grow(Math.max(currencyPairs.size(), open.length * 2));
+        }
+        int size = trades.size();
+        int runStart = 0;
+        while (runStart < size) {
+            long epochMilli = epochMillis[runStart];
+            if (epochMilli == TradeBatch.NO_TIMESTAMP) {
+                runStart++;
+                continue;
+            }
+            if (epochMilli < bucketFirstMilli || epochMilli > bucketLastMilli) {
+                openBucket(epochMilli);
+            }
+            // NO_TIMESTAMP is below every bucket, so it also ends a run
+            int runEnd = runStart + 1;
+            int maxRunEnd = Math.min(size, runStart + FixedPointVWAP.BLOCK_SIZE);
+            while (runEnd < maxRunEnd && epochMillis[runEnd] >= bucketFirstMilli
+                    && epochMillis[runEnd] <= bucketLastMilli) {
+                runEnd++;
+            }
+            addRun(epochMillis, tradePairIds, prices, tradeVolumes, runStart, runEnd);
+            runStart = runEnd;
+        }
+        Metrics.recordStage(Stage.GROUP, startTime, size);
+    }
+
+    /**
+     * Folds a single trade into the sums of the open bucket, first closing it if the trade belongs to a later one
+     *
+     * @throws IllegalArgumentException If the trade belongs to a bucket that has already been closed, or its price
+     *                                  cannot be represented in fixed point, see {@link FixedPointVWAP}
+     */
+    public void addTrade(int pairId, long epochMilli, double price, int volume) {
+        if (epochMilli < bucketFirstMilli || epochMilli > bucketLastMilli) {
+            openBucket(epochMilli);
+        }
+        if (pairId >= open.length) {
+            grow(Math.max(pairId + 1, open.length * 2));
+        }
+        if (!open[pairId]) {
+            open[pairId] = true;
+            openPairIds[openCount++] = pairId;
+        }
+
+        FixedPointVWAP.addVolumePrice(openHighs, openLows, pairId, price, volume);
+        openVolumes[pairId] += volume;
+    }
+
+    /**
+     * Folds trades [from, to) of the columns, which all fall in the open bucket and number at most a block, into the
+     * sums of the open bucket
+     */
+    private void addRun(long[] epochMillis, int[] pairIds, double[] prices, int[] volumes, int from, int to) {
+        long scaledPriceBits = 0;
+        int volumeBits = 0;
+        for (int i = from; i < to; i++) {
+            long scaledPrice = FixedPointVWAP.scaleUnchecked(prices[i]);
+            int volume = volumes[i];
+            runVolumePrices[pairIds[i]] += scaledPrice * volume;
+            scaledPriceBits |= scaledPrice;
+            volumeBits |= volume;
+        }
+        if (!FixedPointVWAP.isExactBlock(scaledPriceBits, volumeBits)) {
+            // A price too large, negative or not a number, take the exact and checked path one trade at a time
+            for (int i = from; i < to; i++) {
+                runVolumePrices[pairIds[i]] = 0;
+            }
+            for (int i = from; i < to; i++) {
+                addTrade(pairIds[i], epochMillis[i], prices[i], volumes[i]);
+            }
+            return;
+        }
+
+        for (int i = from; i < to; i++) {
+            int pairId = pairIds[i];
+            openVolumes[pairId] += volumes[i];
+            if (!open[pairId]) {
+                open[pairId] = true;
+                openPairIds[openCount++] = pairId;
+            }
+        }
+        // Every pair of the run is open now, the others add 0. The exact run sums are not negative
+        for (int i = 0; i < openCount; i++) {
+            int pairId = openPairIds[i];
+            long low = runVolumePrices[pairId];
+            long sum = openLows[pairId] + low;
+            openHighs[pairId] += FixedPointVWAP.carry(openLows[pairId], low, sum);
+            openLows[pairId] = sum;
+            runVolumePrices[pairId] = 0;
+        }
+    }
+
+    /**
+     * @return The number of (currency pair, bucket) combinations with sums, open or closed
+     */
+    public int size() {
+        return size + openCount;
+    }
+
+    /**
+     * Closes the open bucket and calculates the VWAP of every bucket. Trades for the closed bucket are rejected from
+     * then on
+     *
+     * @return A list of key-value pairs (BUCKET START, VWAP) categorised by unique currency pair and sorted in
+     * chronological order, with a null VWAP where the total volume is not positive
+     */
+    public Map<String, List<Pair<Instant, Double>>> toVWAPs() {
+        finish();
+        long startTime = System.nanoTime();
+        Map<String, List<Pair<Instant, Double>>> categorisedVWAPs = new HashMap<>(currencyPairs.size());
+        for (int pairId = 0; pairId < closed.length; pairId++) {
+            PairRuns runs = closed[pairId];
+            if (runs == null) {
+                continue;
+            }
+            String currencyPair = currencyPairs.nameOf(pairId);
+            List<Pair<Instant, Double>> vwaps = new ArrayList<>(runs.size);
+            for (int i = 0; i < runs.size; i++) {
+                Instant bucketStart = Instant.ofEpochMilli(runs.buckets[i] * bucketMillis);
+                Double vwap = null;
+                if (runs.volumes[i] <= 0) {
+                    Metrics.ZERO_VOLUME_BUCKETS.increment();
+                    Metrics.reportRejected("Erroneous data - total volume of trades is zero for " + currencyPair +
+                            " at " + bucketStart);
+                } else {
+                    vwap = FixedPointVWAP.toVolumePrice(runs.highs[i], runs.lows[i]) / runs.volumes[i];
+                }
+                vwaps.add(new Pair<>(bucketStart, vwap));
+            }
+            categorisedVWAPs.put(currencyPair, vwaps);
+        }
+        Metrics.recordStage(Stage.AGGREGATE, startTime, size);
+        return categorisedVWAPs;
+    }
+
+    /**
+     * Closes the open bucket and copies every bucket into an accumulator over the same dictionary, e.g. to write
+     * results or partial sums. Costs O(buckets), not O(trades)
+     */
+    public VWAPAccumulator toAccumulator() {
+        finish();
+        VWAPAccumulator accumulator = new VWAPAccumulator(currencyPairs, bucketMillis);
+        for (int pairId = 0; pairId < closed.length; pairId++) {
+            PairRuns runs = closed[pairId];
+            for (int i = 0; runs != null && i < runs.size; i++) {
+                accumulator.add(pairId, runs.buckets[i], runs.highs[i], runs.lows[i], runs.volumes[i]);
+            }
+        }
+        return accumulator;
+    }
+
+    /**
+     * Closes the open bucket and opens the one that epochMilli falls into
+     */
+    private void openBucket(long epochMilli) {
+        long next = epochMilli / bucketMillis;
+        if (next < bucket) {
+            throw new IllegalArgumentException("Trades are not in time order, " + Instant.ofEpochMilli(epochMilli) +
+                    " belongs to a closed bucket, the next open bucket starts at " +
+                    Instant.ofEpochMilli(bucket * bucketMillis));
+        }
+        closeBucket();
+        bucket = next;
+        // Division truncates towards zero, so bucket 0 also holds the milliseconds before the epoch down to -width + 1
+        bucketFirstMilli = bucket > 0 ? bucket * bucketMillis : (bucket - 1) * bucketMillis + 1;
+        bucketLastMilli = bucket >= 0 ? (bucket + 1) * bucketMillis - 1 : bucket * bucketMillis;
+    }
+
+    /**
+     * Closes the open bucket for good, so that no later trade can add a second run of the same bucket
+     */
+    private void finish() {
+        closeBucket();
+        if (bucket != Long.MIN_VALUE) {
+            bucket++;
+        }
+        bucketFirstMilli = Long.MAX_VALUE;
+        bucketLastMilli = Long.MIN_VALUE;
+    }
+
+    private void closeBucket() {
+        for (int i = 0; i < openCount; i++) {
+            int pairId = openPairIds[i];
+            if (closed[pairId] == null) {
+                closed[pairId] = new PairRuns();
+            }
+            closed[pairId].add(bucket, openHighs[pairId], openLows[pairId], openVolumes[pairId]);
+            openHighs[pairId] = 0;
+            openLows[pairId] = 0;
+            openVolumes[pairId] = 0;
+            open[pairId] = false;
+        }
+        size += openCount;
+        openCount = 0;
+    }
+
+    private void grow(int capacity) {
+        openHighs = Arrays.copyOf(openHighs, capacity);
+        openLows = Arrays.copyOf(openLows, capacity);
+        openVolumes = Arrays.copyOf(openVolumes, capacity);
+        open = Arrays.copyOf(open, capacity);
+        openPairIds = Arrays.copyOf(openPairIds, capacity);
+        runVolumePrices = Arrays.copyOf(runVolumePrices, capacity);
+        closed = Arrays.copyOf(closed, capacity);
+    }
+
+    /**
+     * Closed buckets of a single currency pair in chronological order, held in parallel arrays
+     */
+    private static final class PairRuns {
+        private long[] buckets = new long[DEFAULT_CAPACITY];
+        private long[] highs = new long[DEFAULT_CAPACITY];
+        private long[] lows = new long[DEFAULT_CAPACITY];
+        private long[] volumes = new long[DEFAULT_CAPACITY];
+        private int size;
+
+        private void add(long bucket, long high, long low, long volume) {
+            if (size == buckets.length) {
+                int capacity = size * 2;
+                buckets = Arrays.copyOf(buckets, capacity);
+                highs = Arrays.copyOf(highs, capacity);
+                lows = Arrays.copyOf(lows, capacity);
+                volumes = Arrays.copyOf(volumes, capacity);
+            }
+            buckets[size] = bucket;
+            highs[size] = high;
+            lows[size] = low;
+            volumes[size] = volume;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package org.vwap.calculator;
+
+import javafx.util.Pair;
+import lombok.Getter;
+import org.vwap.metrics.Metrics;
+import org.vwap.model.CurrencyPairDictionary;
+import org.vwap.model.Trade;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Calculates hourly Volume Weighted Average Prices (VWAP) incrementally from a live feed of trades
+ * <p>
+ * Each trade is folded into the running sums of its (currency pair, hour) bucket at O(1) cost. The watermark trails the
+ * latest trade timestamp by the allowed lateness, and once it passes the end of an hour that hour is closed and its VWAP
+ * is sent to the listener. Only open hours are held in memory, so memory is bounded by the number of currency pairs
+ * times the number of hours spanned by the allowed lateness
+ * </p>
+ * <p>
+ * For trades arriving in timestamp order the VWAPs are identical to {@link VWAPCalculator#calculateHourlyVWAPs()}
+ * </p>
+ * <p>
+ * NOTE: Not thread safe - trades must be fed from a single thread
+ * </p>
+ */
+public class StreamingVWAPCalculator {
+
+    private final VWAPAccumulator openHours = new VWAPAccumulator(new CurrencyPairDictionary());
+    private final HourlyVWAPListener listener;
+    private final long allowedLatenessMillis;
+    private long watermark = Long.MIN_VALUE;
+    private long firstOpenHour = Long.MIN_VALUE;
+
+    /**
+     * Number of trades dropped because their hour had already been closed
+     */
+    @Getter
+    private long lateTrades;
+
+    /**
+     * Creates a calculator that closes an hour as soon as a trade from a later hour arrives
+     *
+     * @param listener Receives the VWAP of each closed hour
+     */
+    public StreamingVWAPCalculator(HourlyVWAPListener listener) {
+        this(listener, 0);
+    }
+
+    /**
+     * @param listener              Receives the VWAP of each closed hour
+     * @param allowedLatenessMillis How far behind the latest trade a trade may arrive before its hour is closed
+     */
+    public StreamingVWAPCalculator(HourlyVWAPListener listener, long allowedLatenessMillis) {
+        if (allowedLatenessMillis < 0) {
+            throw new IllegalArgumentException("Allowed lateness cannot be negative");
+        }
+        this.listener = listener;
+        this.allowedLatenessMillis = allowedLatenessMillis;
+    }
+
+    public void onTrade(Trade trade) {
+        if (trade.getTimestamp() == null) {
+            throw new IllegalArgumentException("Trade has no timestamp: " + trade);
+        }
+        onTrade(trade.getCurrencyPair(), trade.getTimestamp().toEpochMilli(), trade.getPrice(), trade.getVolume());
+    }
+
+    /**
+     * Folds a trade into the VWAP of its hour, closing any hours that the advancing watermark has passed
+     * <p>
+     * A trade whose price cannot be represented in fixed point, see {@link FixedPointVWAP}, is counted in
+     * {@link Metrics#ROWS_REJECTED}, reported and dropped like a rejected row of a file, so one bad price cannot stop
+     * the feed
+     * </p>
+     *
+     * @return false if the trade arrived after its hour was closed, or its price cannot be represented, and was dropped
+     */
+    public boolean onTrade(String currencyPair, long epochMilli, double price, int volume) {
+        long hour = openHours.bucketOf(epochMilli);
+        if (hour < firstOpenHour) {
+            lateTrades++;
+            return false;
+        }
+        if (!FixedPointVWAP.isRepresentable(price)) {
+            Metrics.ROWS_REJECTED.increment();
+            Metrics.reportRejected("Invalid trade, price cannot be represented in fixed point: " + currencyPair + " " +
+                    Instant.ofEpochMilli(epochMilli) + " " + price + " " + volume);
+            return false;
+        }
+        openHours.addTrade(openHours.getCurrencyPairs().intern(currencyPair), epochMilli, price, volume);
+
+        if (epochMilli - allowedLatenessMillis > watermark) {
+            watermark = epochMilli - allowedLatenessMillis;
+            long watermarkHour = openHours.bucketOf(watermark);
+            if (watermarkHour > firstOpenHour) {
+                closeHoursBefore(watermarkHour);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Calculates the VWAPs of the hours that are still open, without closing them
+     * <p>
+     * NOTE: Hours without volume have a null VWAP but are neither counted nor reported here, that happens once when
+     * they are closed, however often a snapshot is taken
+     * </p>
+     *
+     * @return A list of key-value pairs (HOUR, VWAP) categorised by unique currency pair and sorted in chronological order
+     */
+    public Map<String, List<Pair<Instant, Double>>> snapshot() {
+        Map<String, List<Pair<Instant, Double>>> categorisedVWAPs = new HashMap<>();
+        openHours.forEachSorted((pairId, hour, volumePrice, volume) -> categorisedVWAPs
+                .computeIfAbsent(openHours.getCurrencyPairs().nameOf(pairId), pair -> new ArrayList<>())
+                .add(new Pair<>(Instant.ofEpochMilli(hour * VWAPAccumulator.HOUR_MILLIS),
+                        volume <= 0 ? null : volumePrice / volume)));
+        return categorisedVWAPs;
+    }
+
+    /**
+     * Closes every open hour, e.g. at the end of the trading day. Trades for hours up to the latest trade seen so far
+     * are late from then on
+     */
+    public void flush() {
+        openHours.removeBucketsBefore(Long.MAX_VALUE, this::emit);
+        if (watermark != Long.MIN_VALUE) {
+            firstOpenHour = openHours.bucketOf(watermark + allowedLatenessMillis) + 1;
+        }
+    }
+
+    private void closeHoursBefore(long hour) {
+        openHours.removeBucketsBefore(hour, this::emit);
+        firstOpenHour = hour;
+    }
+
+    private void emit(int pairId, long hour, double volumePrice, long volume) {
+        String currencyPair = openHours.getCurrencyPairs().nameOf(pairId);
+        Instant hourStart = Instant.ofEpochMilli(hour * VWAPAccumulator.HOUR_MILLIS);
+        if (volume <= 0) {
+            Metrics.ZERO_VOLUME_BUCKETS.increment();
+            Metrics.reportRejected("Erroneous data - total volume of trades is zero for " + currencyPair + " at " +
+                    hourStart);
+        }
+        listener.onHourClosed(currencyPair, hourStart, volume <= 0 ? null : volumePrice / volume);
+    }
+}
@@ -0,0 +1,533 @@
+package org.vwap.calculator;
+
+import javafx.util.Pair;
+import lombok.Getter;
+import org.vwap.metrics.Metrics;
+import org.vwap.metrics.Stage;
+import org.vwap.model.CurrencyPairDictionary;
+import org.vwap.model.TradeBatch;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Running VWAP sums, sum(price * volume) and sum(volume), for every (currency pair, time bucket) combination
+ * <p>
+ * Sums live in a primitive open-addressing table, so folding a trade in is a hash probe and a few integer additions
+ * with no allocation. The sums of two accumulators can be merged, which makes partial results from different threads,
+ * chunks or files combinable into an exact total
+ * </p>
+ * <p>
+ * sum(price * volume) is held as a 128 bit fixed point integer, in the units of {@link FixedPointVWAP}, so merges are
+ * associative and the result is bit for bit the same however the trades were split across threads or chunks. Visitors
+ * see it correctly rounded to a double
+ * </p>
+ * <p>
+ * NOTE: Not thread safe - use one accumulator per thread and {@link #merge(VWAPAccumulator)} them
+ * </p>
+ */
+public class VWAPAccumulator {
+
+    public static final long HOUR_MILLIS = 3600000;
+
+    private static final int EMPTY = -1;
+    private static final int DEFAULT_CAPACITY = 64;
+
+    @Getter
+    private final CurrencyPairDictionary currencyPairs;
+    @Getter
+    private final long bucketMillis;
+    private int[] pairIds;
+    private long[] buckets;
+    private long[] volumePriceHighs;
+    private long[] volumePriceLows;
+    private long[] volumes;
+    private int size;
+
+    /**
+     * Creates an accumulator of hourly buckets
+     *
+     * @param currencyPairs The dictionary that the pair ids passed to this accumulator refer to
+     */
+    public VWAPAccumulator(CurrencyPairDictionary currencyPairs) {
+        this(currencyPairs, HOUR_MILLIS);
+    }
+
+    /**
+     * @param currencyPairs The dictionary that the pair ids passed to this accumulator refer to
+     * @param bucketMillis  The width of a time bucket in milliseconds
+     */
+    public VWAPAccumulator(CurrencyPairDictionary currencyPairs, long bucketMillis) {
+        if (bucketMillis <= 0) {
+            throw new IllegalArgumentException("Bucket width must be positive");
+        }
+        this.currencyPairs = currencyPairs;
+        this.bucketMillis = bucketMillis;
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Folds every trade of a batch into the sums in a single pass
+     * <p>
+     * NOTE: Trades without a timestamp cannot be assigned to a bucket and are skipped
+     * </p>
+     *
+     * @param trades The trades to add, which must use the same currency pair dictionary as this accumulator
+     */
+    public void addAll(TradeBatch trades) {
+        if (trades.getCurrencyPairs() != currencyPairs) {
+            throw new IllegalArgumentException("Trade batch uses a different currency pair dictionary");
+        }
+        addAll(trades, 0, trades.size());
+    }
+
+    /**
+     * Folds the trades at indices [from, to) of a batch into the sums
+     *
+     * @see #addAll(TradeBatch)
+     */
+    public void addAll(TradeBatch trades, int from, int to) {
+        long startTime = System.nanoTime();
+        long[] epochMillis = trades.epochMillisColumn();
+        int[] tradePairIds = trades.pairIdColumn();
+        double[] prices = trades.priceColumn();
+        int[] tradeVolumes = trades.volumeColumn();
+        for (int i = from; i < to; i++) {
+            if (epochMillis[i] != TradeBatch.NO_TIMESTAMP) {
+                addTrade(tradePairIds[i], epochMillis[i], prices[i], tradeVolumes[i]);
+            }
+        }
+        Metrics.recordStage(Stage.GROUP, startTime, to - from);
+    }
+
+    /**
+     * Folds a single trade into the sums
+     *
+     * @throws IllegalArgumentException If price cannot be represented in fixed point, see {@link FixedPointVWAP}
+     */
+    public void addTrade(int pairId, long epochMilli, double price, int volume) {
+        // Scale before claiming a slot, so that a price that cannot be represented leaves no empty bucket behind
+        long scaledPrice = FixedPointVWAP.scale(price);
+        int slot = claimSlot(pairId, bucketOf(epochMilli));
+        FixedPointVWAP.addScaledVolumePrice(volumePriceHighs, volumePriceLows, slot, scaledPrice, volume);
+        volumes[slot] += volume;
+    }
+
+    /**
+     * Adds partial sums to a bucket
+     *
+     * @param pairId      The currency pair id
+     * @param bucket      The bucket index, i.e. epoch milliseconds divided by the bucket width
+     * @param volumePrice The sum of price * volume to add, rounded to the fixed point units of {@link FixedPointVWAP}
+     * @param volume      The sum of volume to add
+     */
+    public void add(int pairId, long bucket, double volumePrice, long volume) {
+        long[] fixedPoint = FixedPointVWAP.toFixedPoint(volumePrice);
+        add(pairId, bucket, fixedPoint[0], fixedPoint[1], volume);
+    }
+
+    /**
+     * Adds every bucket of other into this accumulator, translating currency pair ids if the accumulators use different
+     * dictionaries
+     *
+     * @param other An accumulator with the same bucket width
+     */
+    public void merge(VWAPAccumulator other) {
+        if (other.bucketMillis != bucketMillis) {
+            throw new IllegalArgumentException("Cannot merge buckets of " + other.bucketMillis + "ms into buckets of " +
+                    bucketMillis + "ms");
+        }
+        int[] translated = translatedPairIds(other.currencyPairs);
+        for (int slot = 0; slot < other.pairIds.length; slot++) {
+            if (other.pairIds[slot] != EMPTY) {
+                add(translated[other.pairIds[slot]], other.buckets[slot], other.volumePriceHighs[slot],
+                        other.volumePriceLows[slot], other.volumes[slot]);
+            }
+        }
+    }
+
+    /**
+     * Removes every bucket that starts before the given bucket, visiting the removed buckets ordered by currency pair
+     * id and then chronologically
+     *
+     * @param bucket  The first bucket to keep
+     * @param visitor Receives the sums of each removed bucket
+     */
+    public void removeBucketsBefore(long bucket, BucketVisitor visitor) {
+        forEachSorted((pairId, removed, volumePrice, volume) -> {
+            if (removed < bucket) {
+                visitor.visit(pairId, removed, volumePrice, volume);
+            }
+        });
+
+        int[] oldPairIds = pairIds;
+        long[] oldBuckets = buckets;
+        long[] oldVolumePriceHighs = volumePriceHighs;
+        long[] oldVolumePriceLows = volumePriceLows;
+        long[] oldVolumes = volumes;
+        allocate(oldPairIds.length);
+        size = 0;
+        for (int slot = 0; slot < oldPairIds.length; slot++) {
+            if (oldPairIds[slot] != EMPTY && oldBuckets[slot] >= bucket) {
+                add(oldPairIds[slot], oldBuckets[slot], oldVolumePriceHighs[slot], oldVolumePriceLows[slot],
+                        oldVolumes[slot]);
+            }
+        }
+    }
+
+    /**
+     * @return The bucket index that epochMilli falls into
+     */
+    public long bucketOf(long epochMilli) {
+        return epochMilli / bucketMillis;
+    }
+
+    /**
+     * @return The number of (currency pair, bucket) combinations with sums
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Visits every bucket ordered by currency pair id and then chronologically, without building intermediate lists
+     *
+     * @param visitor Receives the sums of each bucket
+     */
+    public void forEachSorted(BucketVisitor visitor) {
+        forEachSorted((pairId, bucket, volumePriceHigh, volumePriceLow, volume) -> visitor.visit(pairId, bucket,
+                FixedPointVWAP.toVolumePrice(volumePriceHigh, volumePriceLow), volume));
+    }
+
+    /**
+     * Visits every bucket ordered by currency pair id and then chronologically, with the exact fixed point sums
+     *
+     * @param visitor Receives the sums of each bucket
+     */
+    void forEachSorted(FixedPointBucketVisitor visitor) {
+        int[] offsets = new int[currencyPairs.size() + 1];
+        int[] slots = sortedSlots(offsets);
+        for (int pairId = 0; pairId + 1 < offsets.length; pairId++) {
+            for (int i = offsets[pairId]; i < offsets[pairId + 1]; i++) {
+                int slot = slots[i];
+                visitor.visit(pairId, buckets[slot], volumePriceHighs[slot], volumePriceLows[slot], volumes[slot]);
+            }
+        }
+    }
+
+    /**
+     * Copies the buckets of the currency pairs accepted by a filter into a new accumulator over the same dictionary
+     *
+     * @param filter Accepts the names of the currency pairs to keep
+     * @return The kept buckets
+     */
+    public VWAPAccumulator filterCurrencyPairs(Predicate<String> filter) {
+        boolean[] keep = new boolean[currencyPairs.size()];
+        for (int id = 0; id < keep.length; id++) {
+            keep[id] = filter.test(currencyPairs.nameOf(id));
+        }
+        VWAPAccumulator filtered = new VWAPAccumulator(currencyPairs, bucketMillis);
+        for (int slot = 0; slot < pairIds.length; slot++) {
+            if (pairIds[slot] != EMPTY && keep[pairIds[slot]]) {
+                filtered.add(pairIds[slot], buckets[slot], volumePriceHighs[slot], volumePriceLows[slot],
+                        volumes[slot]);
+            }
+        }
+        return filtered;
+    }
+
+    /**
+     * Calculates the VWAP of every bucket
+     * <p>
+     * Buckets whose total volume is not positive have no VWAP and are reported with a null value
+     * </p>
+     *
+     * @return A list of key-value pairs (BUCKET START, VWAP) categorised by unique currency pair and sorted in
+     * chronological order
+     */
+    public Map<String, List<Pair<Instant, Double>>> toVWAPs() {
+        long startTime = System.nanoTime();
+        Map<String, List<Pair<Instant, Double>>> categorisedVWAPs = new HashMap<>(currencyPairs.size());
+        forEachSorted((pairId, bucket, volumePrice, volume) -> {
+            String currencyPair = currencyPairs.nameOf(pairId);
+            Instant bucketStart = Instant.ofEpochMilli(bucket * bucketMillis);
+            Double vwap = null;
+            if (volume <= 0) {
+                Metrics.ZERO_VOLUME_BUCKETS.increment();
+                Metrics.reportRejected("Erroneous data - total volume of trades is zero for " + currencyPair + " at " +
+                        bucketStart);
+            } else {
+                vwap = volumePrice / volume;
+            }
+            categorisedVWAPs.computeIfAbsent(currencyPair, pair -> new ArrayList<>()).add(new Pair<>(bucketStart, vwap));
+        });
+        Metrics.recordStage(Stage.AGGREGATE, startTime, size);
+        return categorisedVWAPs;
+    }
+
+    /**
+     * Writes the bucket width, the currency pair names and the exact fixed point sums of every bucket, so that
+     * {@link #readFrom(DataInput)} restores them bit for bit
+     * <p>
+     * Buckets are written per currency pair in chronological order, each as variable-length integers: the distance
+     * from the previous bucket, the high and low halves of the price sum and the volume. Consecutive buckets of a
+     * liquid pair take around 15 bytes each
+     * </p>
+     *
+     * @param out The destination, e.g. a DataOutputStream over a file or socket
+     * @throws IOException If unable to write to out
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(bucketMillis);
+        int[] offsets = new int[currencyPairs.size() + 1];
+        int[] slots = sortedSlots(offsets);
+        int pairCount = offsets.length - 1;
+        out.writeInt(pairCount);
+        for (int id = 0; id < pairCount; id++) {
+            out.writeUTF(currencyPairs.nameOf(id));
+        }
+        out.writeInt(size);
+        for (int pairId = 0; pairId < pairCount; pairId++) {
+            writeVarLong(out, offsets[pairId + 1] - offsets[pairId]);
+            long previousBucket = 0;
+            for (int i = offsets[pairId]; i < offsets[pairId + 1]; i++) {
+                int slot = slots[i];
+                writeVarLong(out, zigZag(buckets[slot] - previousBucket));
+                writeVarLong(out, zigZag(volumePriceHighs[slot]));
+                writeVarLong(out, volumePriceLows[slot]);
+                writeVarLong(out, zigZag(volumes[slot]));
+                previousBucket = buckets[slot];
+            }
+        }
+    }
+
+    /**
+     * Reads sums written by {@link #writeTo(DataOutput)} into a new accumulator with its own dictionary
+     *
+     * @param in The source positioned at the start of the written sums
+     * @return The restored accumulator
+     * @throws IOException If unable to read from in, or the data is not a valid set of sums
+     */
+    public static VWAPAccumulator readFrom(DataInput in) throws IOException {
+        long bucketMillis = in.readLong();
+        int pairCount = in.readInt();
+        if (bucketMillis <= 0 || pairCount < 0) {
+            throw new IOException("Invalid VWAP sums header");
+        }
+        CurrencyPairDictionary currencyPairs = new CurrencyPairDictionary();
+        for (int id = 0; id < pairCount; id++) {
+            currencyPairs.intern(in.readUTF());
+        }
+        if (currencyPairs.size() != pairCount) {
+            throw new IOException("Duplicate currency pair in VWAP sums");
+        }
+
+        int bucketCount = in.readInt();
+        if (bucketCount < 0) {
+            throw new IOException("Invalid VWAP sums bucket count " + bucketCount);
+        }
+        VWAPAccumulator accumulator = new VWAPAccumulator(currencyPairs, bucketMillis);
+        int remaining = bucketCount;
+        for (int pairId = 0; pairId < pairCount; pairId++) {
+            long pairBuckets = readVarLong(in);
+            if (pairBuckets < 0 || pairBuckets > remaining) {
+                throw new IOException("Invalid VWAP sums bucket count " + pairBuckets + " for currency pair " +
+                        currencyPairs.nameOf(pairId));
+            }
+            remaining -= (int) pairBuckets;
+            long bucket = 0;
+            for (long i = 0; i < pairBuckets; i++) {
+                bucket += unZigZag(readVarLong(in));
+                long volumePriceHigh = unZigZag(readVarLong(in));
+                long volumePriceLow = readVarLong(in);
+                accumulator.add(pairId, bucket, volumePriceHigh, volumePriceLow, unZigZag(readVarLong(in)));
+            }
+        }
+        if (remaining != 0 || accumulator.size() != bucketCount) {
+            throw new IOException("VWAP sums hold " + accumulator.size() + " distinct buckets, expected " +
+                    bucketCount);
+        }
+        return accumulator;
+    }
+
+    /**
+     * Writes 7 bits per byte, low bits first, with the top bit of each byte marking that more bytes follow
+     */
+    private static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length integer in VWAP sums");
+    }
+
+    /**
+     * Maps signed values to unsigned ones so that values close to zero, of either sign, take few bytes
+     */
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Orders the occupied slots by currency pair id and then chronologically
+     *
+     * @param offsets Receives the index of the first slot of each pair id, its length is one more than the number of
+     *                pairs to visit
+     * @return The sorted slots
+     */
+    private int[] sortedSlots(int[] offsets) {
+        // Counting sort of the occupied slots by pair id, then a primitive sort of each pair's buckets
+        int pairCount = offsets.length - 1;
+        for (int pairId : pairIds) {
+            if (pairId != EMPTY) {
+                offsets[pairId + 1]++;
+            }
+        }
+        for (int i = 0; i < pairCount; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        long[] sortedBuckets = new long[size];
+        int[] next = Arrays.copyOf(offsets, pairCount);
+        for (int slot = 0; slot < pairIds.length; slot++) {
+            if (pairIds[slot] != EMPTY) {
+                sortedBuckets[next[pairIds[slot]]++] = buckets[slot];
+            }
+        }
+        int[] slots = new int[size];
+        for (int pairId = 0; pairId < pairCount; pairId++) {
+            Arrays.sort(sortedBuckets, offsets[pairId], offsets[pairId + 1]);
+            for (int i = offsets[pairId]; i < offsets[pairId + 1]; i++) {
+                slots[i] = slotOf(pairId, sortedBuckets[i]);
+            }
+        }
+        return slots;
+    }
+
+    private int[] translatedPairIds(CurrencyPairDictionary source) {
+        int[] translated = new int[source.size()];
+        for (int id = 0; id < translated.length; id++) {
+            translated[id] = source == currencyPairs ? id : currencyPairs.intern(source.nameOf(id));
+        }
+        return translated;
+    }
+
+    /**
+     * Adds a 128 bit fixed point sum (high, low) of price * volume and a sum of volume to a bucket
+     */
+    void add(int pairId, long bucket, long volumePriceHigh, long volumePriceLow, long volume) {
+        int slot = claimSlot(pairId, bucket);
+        long low = volumePriceLows[slot] + volumePriceLow;
+        volumePriceHighs[slot] += volumePriceHigh + FixedPointVWAP.carry(volumePriceLows[slot], volumePriceLow, low);
+        volumePriceLows[slot] = low;
+        volumes[slot] += volume;
+    }
+
+    /**
+     * @return The slot holding (pairId, bucket), claiming an empty slot with zero sums if there is none. The table is
+     * grown before the slot is claimed, so the slot stays valid until the next call
+     */
+    private int claimSlot(int pairId, long bucket) {
+        int slot = slotOf(pairId, bucket);
+        if (pairIds[slot] == EMPTY) {
+            if ((size + 1) * 2 > pairIds.length) {
+                resize(pairIds.length * 2);
+                slot = slotOf(pairId, bucket);
+            }
+            pairIds[slot] = pairId;
+            buckets[slot] = bucket;
+            size++;
+        }
+        return slot;
+    }
+
+    /**
+     * @return The slot holding (pairId, bucket), or the empty slot where it belongs
+     */
+    private int slotOf(int pairId, long bucket) {
+        int mask = pairIds.length - 1;
+        int slot = hash(pairId, bucket) & mask;
+        while (pairIds[slot] != EMPTY && (pairIds[slot] != pairId || buckets[slot] != bucket)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize(int capacity) {
+        int[] oldPairIds = pairIds;
+        long[] oldBuckets = buckets;
+        long[] oldVolumePriceHighs = volumePriceHighs;
+        long[] oldVolumePriceLows = volumePriceLows;
+        long[] oldVolumes = volumes;
+        allocate(capacity);
+        for (int slot = 0; slot < oldPairIds.length; slot++) {
+            if (oldPairIds[slot] != EMPTY) {
+                int newSlot = slotOf(oldPairIds[slot], oldBuckets[slot]);
+                pairIds[newSlot] = oldPairIds[slot];
+                buckets[newSlot] = oldBuckets[slot];
+                volumePriceHighs[newSlot] = oldVolumePriceHighs[slot];
+                volumePriceLows[newSlot] = oldVolumePriceLows[slot];
+                volumes[newSlot] = oldVolumes[slot];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        pairIds = new int[capacity];
+        Arrays.fill(pairIds, EMPTY);
+        buckets = new long[capacity];
+        volumePriceHighs = new long[capacity];
+        volumePriceLows = new long[capacity];
+        volumes = new long[capacity];
+    }
+
+    private static int hash(int pairId, long bucket) {
+        // Murmur3 finaliser, consecutive buckets of the same pair must not land in consecutive slots
+        long h = bucket * 31 + pairId;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    /**
+     * Receives the sums of a single (currency pair, bucket) combination
+     */
+    @FunctionalInterface
+    public interface BucketVisitor {
+        void visit(int pairId, long bucket, double volumePrice, long volume);
+    }
+
+    /**
+     * Receives the sums of a single (currency pair, bucket) combination, the price sum as 128 bit fixed point
+     */
+    @FunctionalInterface
+    interface FixedPointBucketVisitor {
+        void visit(int pairId, long bucket, long volumePriceHigh, long volumePriceLow, long volume);
+    }
+}
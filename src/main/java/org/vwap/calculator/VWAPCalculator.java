@@ -2,7 +2,10 @@ package org.vwap.calculator;
 
 import javafx.util.Pair;
 import lombok.Getter;
+import org.vwap.metrics.Metrics;
+import org.vwap.metrics.Stage;
 import org.vwap.model.Trade;
+import org.vwap.model.TradeBatch;
 
 import java.time.Instant;
 import java.util.*;
@@ -17,17 +20,24 @@ public class VWAPCalculator {
     private final ConcurrentMap<String, List<Trade>> categorisedTrades;
 
     public VWAPCalculator(List<Trade> inputStream) {
+        long startTime = System.nanoTime();
         // Group trades by currency pair concurrently
         this.categorisedTrades = inputStream.parallelStream().collect(Collectors.groupingByConcurrent(Trade::getCurrencyPair));
+        Metrics.recordStage(Stage.GROUP, startTime, inputStream.size());
     }
 
     /**
      * Calculates Volume Weighted Average Prices (VWAP) by the hour for each unique currency pair using the inputStream
      * provided in the class constructor
+     * <p>
+     * Trades whose price cannot be represented in fixed point, see {@link FixedPointVWAP}, are left out of their hour
+     * and counted in {@link Metrics#ROWS_REJECTED}
+     * </p>
      *
      * @return A list of key-value pairs (HOUR, VWAP) categorised by unique currency pair and sorted in chronological order
      */
     public Map<String, List<Pair<Instant, Double>>> calculateHourlyVWAPs() {
+        long startTime = System.nanoTime();
         Map<String, List<Pair<Instant, Double>>> categorisedHourlyVWAPs = new HashMap<>(categorisedTrades.size());
 
         categorisedTrades.forEach((currencyPair, trades) -> {
@@ -35,11 +45,8 @@ public class VWAPCalculator {
             ConcurrentMap<Long, List<Trade>> hourlyTrades = trades.parallelStream().collect(Collectors.groupingByConcurrent(
                     trade -> trade.getTimestamp().toEpochMilli() / 3600000));
 
-            List<Pair<Instant, Double>> hourlyVWAPs = new ArrayList<>(hourlyTrades.size());
-            ArrayList<Long> hours = new ArrayList<>(hourlyTrades.keySet());
-
-            // Calculate the hourly averages concurrently
-            hours.parallelStream().forEach(hour -> {
+            // Calculate the hourly averages concurrently, collecting rather than adding to a shared list
+            List<Pair<Instant, Double>> hourlyVWAPs = hourlyTrades.keySet().parallelStream().map(hour -> {
                 List<Trade> hourTrades = hourlyTrades.get(hour);
 
                 // Create a key-value pair mapping the beginning hour to the VWAP for that hour
@@ -48,36 +55,92 @@ public class VWAPCalculator {
                 try {
                     hourlyVWAP = new Pair<>(beginningHour, calculateVWAP(hourTrades));
                 } catch (ArithmeticException e) {
-                    System.err.println(e.getMessage());
+                    Metrics.ZERO_VOLUME_BUCKETS.increment();
+                    Metrics.reportRejected(e.getMessage());
                     hourlyVWAP = new Pair<>(beginningHour, null);
                     for (Trade trade : hourTrades) {
-                        System.err.println(trade.toString());
+                        Metrics.reportRejected(trade.toString());
                     }
                 }
 
-                hourlyVWAPs.add(hourlyVWAP);
-            });
+                return hourlyVWAP;
+            }).collect(Collectors.toList());
 
             // Sort the final list so we can perform a sequential, chronological read later
             hourlyVWAPs.sort(Comparator.comparing(Pair::getKey));
             categorisedHourlyVWAPs.put(currencyPair, hourlyVWAPs);
         });
+        Metrics.recordStage(Stage.AGGREGATE, startTime,
+                categorisedHourlyVWAPs.values().stream().mapToLong(List::size).sum());
         return categorisedHourlyVWAPs;
     }
 
+    /**
+     * Calculates Volume Weighted Average Prices (VWAP) by the hour for each unique currency pair directly from the
+     * columns of a TradeBatch
+     * <p>
+     * Makes a single pass over the trades, folding each one into a {@link VWAPAccumulator}, so no per-trade objects or
+     * intermediate per-hour lists are created. Trades without a timestamp cannot be assigned to an hour and are skipped
+     * </p>
+     * <p>
+     * NOTE: Time-ordered batches, e.g. read from a feed file, are detected with a scan of the timestamps and take the
+     * run-length path of {@link SortedVWAPCalculator} instead, which needs no hash table and no final sort
+     * </p>
+     *
+     * @param trades The trades to aggregate
+     * @return A list of key-value pairs (HOUR, VWAP) categorised by unique currency pair and sorted in chronological order
+     */
+    public static Map<String, List<Pair<Instant, Double>>> calculateHourlyVWAPs(TradeBatch trades) {
+        if (trades.isTimeOrdered()) {
+            SortedVWAPCalculator calculator = new SortedVWAPCalculator(trades.getCurrencyPairs());
+            calculator.addAll(trades);
+            return calculator.toVWAPs();
+        }
+        VWAPAccumulator accumulator = new VWAPAccumulator(trades.getCurrencyPairs());
+        accumulator.addAll(trades);
+        return accumulator.toVWAPs();
+    }
+
+    /**
+     * Calculates hourly bars for each unique currency pair directly from the columns of a TradeBatch
+     * <p>
+     * Every requested statistic is updated in the same single pass as the VWAP, see {@link BarBuilder}
+     * </p>
+     *
+     * @param trades     The trades to aggregate
+     * @param statistics The statistics to calculate, e.g. EnumSet.allOf(BarStatistic.class)
+     * @return One row per (currency pair, hour) ordered by currency pair and then chronologically
+     */
+    public static Bars calculateHourlyBars(TradeBatch trades, Set<BarStatistic> statistics) {
+        return Bars.of(trades, BucketGranularity.HOUR, statistics);
+    }
+
     private double calculateVWAP(List<Trade> trades) {
-        double volumePrice = 0;
-        double totalVolume = 0;
+        // The fixed-point sums do not depend on the order that the concurrent grouping collected the trades in
+        FixedPointVWAP sums = new FixedPointVWAP();
+        sums.addAll(representableTrades(trades));
+        return sums.getVWAP();
+    }
 
-        for (Trade trade : trades) {
-            volumePrice += trade.getPrice() * trade.getVolume();
-            totalVolume += trade.getVolume();
+    /**
+     * Counts in {@link Metrics#ROWS_REJECTED}, reports and drops the trades whose price cannot be represented in fixed
+     * point, like the readers do, so that one such trade cannot abort the calculation of every hour
+     *
+     * @return trades itself if every price can be represented, otherwise a copy without the others
+     */
+    private static List<Trade> representableTrades(List<Trade> trades) {
+        if (trades.stream().allMatch(trade -> FixedPointVWAP.isRepresentable(trade.getPrice()))) {
+            return trades;
         }
-
-        if (totalVolume <= 0) {
-            throw new ArithmeticException("Erroneous data - total volume of trades is zero");
-        } else {
-            return volumePrice / totalVolume;
+        List<Trade> representable = new ArrayList<>(trades.size());
+        for (Trade trade : trades) {
+            if (FixedPointVWAP.isRepresentable(trade.getPrice())) {
+                representable.add(trade);
+            } else {
+                Metrics.ROWS_REJECTED.increment();
+                Metrics.reportRejected("Invalid trade, price cannot be represented in fixed point: " + trade);
+            }
         }
+        return representable;
     }
 }
@@ -0,0 +1,398 @@
+package org.vwap.index;
+
+import org.vwap.calculator.FixedPointVWAP;
+import org.vwap.model.CurrencyPairDictionary;
+import org.vwap.model.TradeBatch;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Answers VWAP queries over arbitrary time ranges from cumulative sums, without scanning trades
+ * <p>
+ * For every currency pair the index holds the trade timestamps in chronological order next to the running totals of
+ * price * volume and of volume. The VWAP of [from, to) is then two binary searches for the ends of the range and a
+ * subtraction of the running totals at those positions, i.e. O(log n) per query. The price * volume totals are kept
+ * as 128 bit (high, low) integers in the fixed point units of {@link FixedPointVWAP}, so subtracting two large totals
+ * is exact and a range gives the same bits as summing its trades
+ * </p>
+ * <p>
+ * An index can be written to a file and opened again with {@link #open(String)}, which memory-maps the file and queries
+ * it in place, so a query process starts without reading or rebuilding anything. Layout, all values little endian:
+ * <ul>
+ * <li>Header (16 bytes): magic, version, reserved, currency pair count, reserved</li>
+ * <li>Directory: for each pair an unsigned short name length, the UTF-8 name, its trade count and data offset</li>
+ * <li>Data of each pair, 8-byte aligned: count timestamps, then count + 1 running totals of price * volume (high
+ * parts, then low parts) and of volume</li>
+ * </ul>
+ * </p>
+ * <p>
+ * NOTE: Immutable once built or opened, so any number of threads may query it concurrently
+ * </p>
+ */
+public class VWAPRangeIndex {
+
+    public static final String FILE_EXTENSION = ".vwri";
+
+    private static final int MAGIC = 0x49525756;
+    private static final short VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+
+    private final Map<String, PairIndex> pairs;
+
+    private VWAPRangeIndex(Map<String, PairIndex> pairs) {
+        this.pairs = pairs;
+    }
+
+    /**
+     * Builds an index over every trade of a batch that has a timestamp. Trades need not be sorted, trades with equal
+     * timestamps keep their batch order
+     *
+     * @param trades The trades to index
+     * @return A new index held in memory
+     * @throws IllegalArgumentException If a price cannot be represented in fixed point, see {@link FixedPointVWAP}
+     */
+    public static VWAPRangeIndex build(TradeBatch trades) {
+        CurrencyPairDictionary currencyPairs = trades.getCurrencyPairs();
+        long[] epochMillis = trades.epochMillisColumn();
+        int[] pairIds = trades.pairIdColumn();
+        double[] prices = trades.priceColumn();
+        int[] volumes = trades.volumeColumn();
+
+        // Bucket the trade indices by currency pair, in batch order
+        int pairCount = currencyPairs.size();
+        int[] offsets = new int[pairCount + 1];
+        for (int i = 0; i < trades.size(); i++) {
+            if (epochMillis[i] != TradeBatch.NO_TIMESTAMP) {
+                offsets[pairIds[i] + 1]++;
+            }
+        }
+        for (int pairId = 0; pairId < pairCount; pairId++) {
+            offsets[pairId + 1] += offsets[pairId];
+        }
+        int[] order = new int[offsets[pairCount]];
+        int[] next = new int[pairCount];
+        System.arraycopy(offsets, 0, next, 0, pairCount);
+        for (int i = 0; i < trades.size(); i++) {
+            if (epochMillis[i] != TradeBatch.NO_TIMESTAMP) {
+                order[next[pairIds[i]]++] = i;
+            }
+        }
+
+        Map<String, PairIndex> pairs = new HashMap<>(pairCount * 2);
+        int[] scratch = new int[order.length];
+        for (int pairId = 0; pairId < pairCount; pairId++) {
+            int from = offsets[pairId];
+            int to = offsets[pairId + 1];
+            if (from == to) {
+                continue;
+            }
+            sortByTime(order, scratch, from, to, epochMillis);
+
+            int count = to - from;
+            long[] times = new long[count];
+            long[] volumePriceHigh = new long[count + 1];
+            long[] volumePriceLow = new long[count + 1];
+            long[] cumulativeVolume = new long[count + 1];
+            for (int i = 0; i < count; i++) {
+                int trade = order[from + i];
+                times[i] = epochMillis[trade];
+                volumePriceHigh[i + 1] = volumePriceHigh[i];
+                volumePriceLow[i + 1] = volumePriceLow[i];
+                FixedPointVWAP.addVolumePrice(volumePriceHigh, volumePriceLow, i + 1, prices[trade], volumes[trade]);
+                cumulativeVolume[i + 1] = cumulativeVolume[i] + volumes[trade];
+            }
+            pairs.put(currencyPairs.nameOf(pairId), new PairIndex(count, LongBuffer.wrap(times),
+                    LongBuffer.wrap(volumePriceHigh), LongBuffer.wrap(volumePriceLow),
+                    LongBuffer.wrap(cumulativeVolume)));
+        }
+        return new VWAPRangeIndex(pairs);
+    }
+
+    /**
+     * Opens an index written by {@link #write(String)} by memory-mapping it, so queries read the file in place
+     *
+     * @param filepath Path to the index file
+     * @return An index backed by the mapped file
+     * @throws IOException If unable to map filepath or it is not an index file
+     */
+    public static VWAPRangeIndex open(String filepath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filepath), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                throw new IOException("Not a VWAP range index: " + filepath);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a VWAP range index: " + filepath);
+            }
+            if (header.getShort(4) != VERSION) {
+                throw new IOException("Unsupported VWAP range index version " + header.getShort(4) + ": " + filepath);
+            }
+            int pairCount = header.getInt(8);
+            if (pairCount < 0) {
+                throw new IOException("Negative currency pair count " + pairCount + ": " + filepath);
+            }
+
+            ByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE,
+                    Math.min(fileSize - HEADER_SIZE, Integer.MAX_VALUE)).order(ByteOrder.LITTLE_ENDIAN);
+            Map<String, PairIndex> pairs = new HashMap<>();
+            try {
+                for (int i = 0; i < pairCount; i++) {
+                    byte[] name = new byte[directory.getShort() & 0xFFFF];
+                    directory.get(name);
+                    long count = directory.getLong();
+                    long dataOffset = directory.getLong();
+                    if (count <= 0 || count > Integer.MAX_VALUE || dataOffset < HEADER_SIZE
+                            || dataOffset + dataSize(count) > fileSize) {
+                        throw new IOException("Truncated VWAP range index: " + filepath);
+                    }
+                    if (dataSize(count) > Integer.MAX_VALUE) {
+                        throw new IOException("Currency pair has too many trades to map: " + filepath);
+                    }
+                    MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset, dataSize(count));
+                    pairs.put(new String(name, StandardCharsets.UTF_8), PairIndex.over(data, (int) count));
+                }
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Truncated VWAP range index: " + filepath, e);
+            }
+            return new VWAPRangeIndex(pairs);
+        }
+    }
+
+    /**
+     * Writes the index to a file that {@link #open(String)} can map
+     *
+     * @param filepath Path to the index file to create or replace
+     * @throws IOException If unable to write filepath
+     */
+    public void write(String filepath) throws IOException {
+        Map<String, byte[]> names = new HashMap<>();
+        long directorySize = 0;
+        for (String currencyPair : pairs.keySet()) {
+            byte[] name = currencyPair.getBytes(StandardCharsets.UTF_8);
+            names.put(currencyPair, name);
+            directorySize += 2 + name.length + 16;
+        }
+
+        ByteBuffer directory = ByteBuffer.allocate((int) (HEADER_SIZE + directorySize)).order(ByteOrder.LITTLE_ENDIAN);
+        directory.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putInt(pairs.size()).putInt(0);
+        long dataOffset = align(HEADER_SIZE + directorySize);
+        for (Map.Entry<String, PairIndex> pair : pairs.entrySet()) {
+            byte[] name = names.get(pair.getKey());
+            directory.putShort((short) name.length).put(name).putLong(pair.getValue().count).putLong(dataOffset);
+            dataOffset = align(dataOffset + dataSize(pair.getValue().count));
+        }
+        directory.flip();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filepath), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(channel, directory);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            for (PairIndex pair : pairs.values()) {
+                padToAlignment(channel);
+                writeColumn(channel, buffer, pair.epochMillis, pair.count);
+                writeColumn(channel, buffer, pair.volumePriceHigh, pair.count + 1);
+                writeColumn(channel, buffer, pair.volumePriceLow, pair.count + 1);
+                writeColumn(channel, buffer, pair.cumulativeVolume, pair.count + 1);
+            }
+        }
+    }
+
+    /**
+     * Calculates the Volume Weighted Average Price (VWAP) of a currency pair over a time range
+     *
+     * @param currencyPair The currency pair, e.g. EUR/USD
+     * @param from         The start of the range, inclusive
+     * @param to           The end of the range, exclusive
+     * @return The VWAP, or null if the pair has no volume in the range
+     */
+    public Double vwap(String currencyPair, Instant from, Instant to) {
+        return vwap(currencyPair, from.toEpochMilli(), to.toEpochMilli());
+    }
+
+    /**
+     * @see #vwap(String, Instant, Instant)
+     */
+    public Double vwap(String currencyPair, long fromEpochMilli, long toEpochMilli) {
+        PairIndex pair = pairs.get(currencyPair);
+        if (pair == null || toEpochMilli <= fromEpochMilli) {
+            return null;
+        }
+        int first = pair.lowerBound(fromEpochMilli);
+        int last = pair.lowerBound(toEpochMilli);
+        long volume = pair.cumulativeVolume.get(last) - pair.cumulativeVolume.get(first);
+        if (volume <= 0) {
+            return null;
+        }
+        long lastLow = pair.volumePriceLow.get(last);
+        long firstLow = pair.volumePriceLow.get(first);
+        long low = lastLow - firstLow;
+        long high = pair.volumePriceHigh.get(last) - pair.volumePriceHigh.get(first)
+                - FixedPointVWAP.borrow(lastLow, firstLow, low);
+        return FixedPointVWAP.toVolumePrice(high, low) / volume;
+    }
+
+    /**
+     * @return The total volume traded in a currency pair over [from, to)
+     */
+    public long volume(String currencyPair, long fromEpochMilli, long toEpochMilli) {
+        PairIndex pair = pairs.get(currencyPair);
+        if (pair == null || toEpochMilli <= fromEpochMilli) {
+            return 0;
+        }
+        return pair.cumulativeVolume.get(pair.lowerBound(toEpochMilli))
+                - pair.cumulativeVolume.get(pair.lowerBound(fromEpochMilli));
+    }
+
+    public Set<String> getCurrencyPairs() {
+        return Collections.unmodifiableSet(pairs.keySet());
+    }
+
+    /**
+     * @return The number of trades indexed for a currency pair
+     */
+    public int size(String currencyPair) {
+        PairIndex pair = pairs.get(currencyPair);
+        return pair == null ? 0 : pair.count;
+    }
+
+    /**
+     * Stable merge sort of order[from, to) by timestamp, returning immediately for input that is already sorted
+     */
+    private static void sortByTime(int[] order, int[] scratch, int from, int to, long[] epochMillis) {
+        boolean sorted = true;
+        for (int i = from + 1; i < to && sorted; i++) {
+            sorted = epochMillis[order[i - 1]] <= epochMillis[order[i]];
+        }
+        if (sorted) {
+            return;
+        }
+        for (int width = 1; width < to - from; width *= 2) {
+            for (int left = from; left < to - width; left += 2 * width) {
+                int middle = left + width;
+                int right = Math.min(middle + width, to);
+                int i = left;
+                int j = middle;
+                int k = left;
+                while (i < middle && j < right) {
+                    scratch[k++] = epochMillis[order[j]] < epochMillis[order[i]] ? order[j++] : order[i++];
+                }
+                while (i < middle) {
+                    scratch[k++] = order[i++];
+                }
+                while (j < right) {
+                    scratch[k++] = order[j++];
+                }
+                System.arraycopy(scratch, left, order, left, right - left);
+            }
+        }
+    }
+
+    private static long dataSize(long count) {
+        return count * 8 + (count + 1) * 24;
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+
+    private static void padToAlignment(FileChannel channel) throws IOException {
+        long position = channel.position();
+        if (align(position) != position) {
+            writeFully(channel, ByteBuffer.allocate((int) (align(position) - position)));
+        }
+    }
+
+    private static void writeColumn(FileChannel channel, ByteBuffer buffer, LongBuffer column, int length)
+            throws IOException {
+        for (int offset = 0; offset < length; ) {
+            buffer.clear();
+            int count = Math.min(length - offset, buffer.capacity() / 8);
+            for (int i = 0; i < count; i++) {
+                buffer.putLong(column.get(offset + i));
+            }
+            buffer.flip();
+            writeFully(channel, buffer);
+            offset += count;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Columns of a single currency pair, either wrapped arrays or views over a mapped file. Only absolute gets are
+     * used, which never change buffer state, so sharing between threads is safe
+     */
+    private static final class PairIndex {
+        private final int count;
+        private final LongBuffer epochMillis;
+        private final LongBuffer volumePriceHigh;
+        private final LongBuffer volumePriceLow;
+        private final LongBuffer cumulativeVolume;
+
+        private PairIndex(int count, LongBuffer epochMillis, LongBuffer volumePriceHigh,
+                          LongBuffer volumePriceLow, LongBuffer cumulativeVolume) {
+            this.count = count;
+            this.epochMillis = epochMillis;
+            this.volumePriceHigh = volumePriceHigh;
+            this.volumePriceLow = volumePriceLow;
+            this.cumulativeVolume = cumulativeVolume;
+        }
+
+        private static PairIndex over(ByteBuffer data, int count) {
+            data.order(ByteOrder.LITTLE_ENDIAN);
+            LongBuffer epochMillis = slice(data, 0, count * 8).asLongBuffer();
+            long offset = count * 8L;
+            LongBuffer volumePriceHigh = slice(data, offset, (count + 1) * 8).asLongBuffer();
+            offset += (count + 1) * 8L;
+            LongBuffer volumePriceLow = slice(data, offset, (count + 1) * 8).asLongBuffer();
+            offset += (count + 1) * 8L;
+            LongBuffer cumulativeVolume = slice(data, offset, (count + 1) * 8).asLongBuffer();
+            return new PairIndex(count, epochMillis, volumePriceHigh, volumePriceLow, cumulativeVolume);
+        }
+
+        private static ByteBuffer slice(ByteBuffer data, long offset, int length) {
+            ByteBuffer slice = data.duplicate();
+            slice.position((int) offset);
+            slice.limit((int) offset + length);
+            return slice.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        /**
+         * @return The number of trades before epochMilli, i.e. the index of the first trade at or after it
+         */
+        private int lowerBound(long epochMilli) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (epochMillis.get(middle) < epochMilli) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
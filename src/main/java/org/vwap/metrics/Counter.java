@@ -0,0 +1,40 @@
+package org.vwap.metrics;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Named count that many threads can increment without contending on a single memory location
+ */
+public class Counter {
+
+    @Getter
+    private final String name;
+    private final LongAdder count = new LongAdder();
+
+    public Counter(String name) {
+        this.name = name;
+    }
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void add(long amount) {
+        count.add(amount);
+    }
+
+    public long get() {
+        return count.sum();
+    }
+
+    public void reset() {
+        count.reset();
+    }
+
+    @Override
+    public String toString() {
+        return name + "=" + get();
+    }
+}
@@ -0,0 +1,106 @@
+package org.vwap.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Process-wide counters, stage timings and the sink for rejected rows
+ * <p>
+ * Counters are incremented in bulk or on the rare bad-data paths, and stages are timed once per file or batch rather
+ * than per trade, so recording adds no measurable cost to the parsing and grouping loops
+ * </p>
+ */
+public class Metrics {
+
+    public static final Counter ROWS_READ = new Counter("rows.read");
+    public static final Counter ROWS_REJECTED = new Counter("rows.rejected");
+    public static final Counter NULL_TIMESTAMPS = new Counter("rows.nullTimestamp");
+    public static final Counter ZERO_VOLUME_BUCKETS = new Counter("buckets.zeroVolume");
+
+    private static final Map<Stage, StageMetrics> STAGES = new EnumMap<>(Stage.class);
+    private static volatile RejectedRowSink rejectedRowSink;
+
+    static {
+        for (Stage stage : Stage.values()) {
+            STAGES.put(stage, new StageMetrics(stage));
+        }
+    }
+
+    private Metrics() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    public static StageMetrics stage(Stage stage) {
+        return STAGES.get(stage);
+    }
+
+    /**
+     * Records one run of a stage that started at startNanos
+     *
+     * @param startNanos The value of System.nanoTime() when the run started
+     * @param items      The number of items the run processed
+     */
+    public static void recordStage(Stage stage, long startNanos, long items) {
+        STAGES.get(stage).record(System.nanoTime() - startNanos, items);
+    }
+
+    /**
+     * Hands a message about bad data to the rejected row sink without blocking the calling thread
+     */
+    public static void reportRejected(String message) {
+        rejectedRowSink().offer(message);
+    }
+
+    /**
+     * @return The current sink, which drains to standard error unless another has been installed
+     */
+    public static RejectedRowSink rejectedRowSink() {
+        RejectedRowSink sink = rejectedRowSink;
+        if (sink == null) {
+            synchronized (Metrics.class) {
+                sink = rejectedRowSink;
+                if (sink == null) {
+                    sink = new RejectedRowSink();
+                    rejectedRowSink = sink;
+                }
+            }
+        }
+        return sink;
+    }
+
+    /**
+     * Replaces the rejected row sink
+     *
+     * @return The previous sink, which the caller is responsible for closing, or null if none had been created
+     */
+    public static synchronized RejectedRowSink setRejectedRowSink(RejectedRowSink sink) {
+        RejectedRowSink previous = rejectedRowSink;
+        rejectedRowSink = sink;
+        return previous;
+    }
+
+    public static void reset() {
+        ROWS_READ.reset();
+        ROWS_REJECTED.reset();
+        NULL_TIMESTAMPS.reset();
+        ZERO_VOLUME_BUCKETS.reset();
+        STAGES.values().forEach(StageMetrics::reset);
+    }
+
+    /**
+     * @return A multi-line summary of every counter and stage
+     */
+    public static String report() {
+        StringBuilder report = new StringBuilder()
+                .append(ROWS_READ).append(' ').append(ROWS_REJECTED).append(' ').append(NULL_TIMESTAMPS).append(' ')
+                .append(ZERO_VOLUME_BUCKETS);
+        RejectedRowSink sink = rejectedRowSink;
+        if (sink != null) {
+            report.append(" rejected.dropped=").append(sink.getDropped());
+        }
+        for (StageMetrics stage : STAGES.values()) {
+            report.append(System.lineSeparator()).append(stage);
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,157 @@
+package org.vwap.metrics;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded, asynchronous destination for messages about rejected rows and other bad data
+ * <p>
+ * Reporting threads claim a slot in a fixed-size ring buffer with a single compare-and-set and never wait: when the
+ * buffer is full the message is dropped and counted instead. A daemon thread drains the buffer to a Writer, so a file
+ * full of bad rows costs the parsing threads no console or file I/O
+ * </p>
+ */
+public class RejectedRowSink implements AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final AtomicReferenceArray<String> slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final Counter dropped = new Counter("rejected.dropped");
+    private final Writer writer;
+    private final boolean closeWriter;
+    private final Thread drainer;
+    private volatile boolean closed;
+
+    /**
+     * Creates a sink that drains to standard error
+     */
+    public RejectedRowSink() {
+        this(new OutputStreamWriter(System.err, StandardCharsets.UTF_8), DEFAULT_CAPACITY, false);
+    }
+
+    /**
+     * @param writer      Receives one line per message, written only by the draining thread
+     * @param capacity    The maximum number of messages waiting to be written, rounded up to a power of two
+     * @param closeWriter Whether closing the sink also closes the writer
+     */
+    public RejectedRowSink(Writer writer, int capacity, boolean closeWriter) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.writer = writer;
+        this.closeWriter = closeWriter;
+        this.drainer = new Thread(this::drainUntilClosed, "rejected-row-sink");
+        this.drainer.setDaemon(true);
+        this.drainer.start();
+    }
+
+    /**
+     * Creates a sink that drains to a file, replacing any existing file
+     *
+     * @throws IOException If unable to create the file
+     */
+    public static RejectedRowSink toFile(String filepath) throws IOException {
+        BufferedWriter writer = Files.newBufferedWriter(Paths.get(filepath), StandardCharsets.UTF_8);
+        return new RejectedRowSink(writer, DEFAULT_CAPACITY, true);
+    }
+
+    /**
+     * Queues a message without blocking
+     *
+     * @return false if the buffer was full or the sink closed and the message was dropped
+     */
+    public boolean offer(String message) {
+        while (!closed) {
+            long claimed = tail.get();
+            if (claimed - head.get() > mask) {
+                break;
+            }
+            if (tail.compareAndSet(claimed, claimed + 1)) {
+                slots.lazySet((int) claimed & mask, message);
+                return true;
+            }
+        }
+        dropped.increment();
+        return false;
+    }
+
+    /**
+     * @return The number of messages dropped because the buffer was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Writes every queued message and flushes the writer, then stops the draining thread
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drain();
+        writer.flush();
+        if (closeWriter) {
+            writer.close();
+        }
+    }
+
+    private void drainUntilClosed() {
+        while (!closed) {
+            try {
+                if (drain() == 0) {
+                    writer.flush();
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+            } catch (IOException e) {
+                // Nowhere left to report to, keep draining so that producers never see a full buffer forever
+                dropped.increment();
+            }
+        }
+    }
+
+    /**
+     * Only called by one thread at a time: the drainer, or the closing thread once the drainer has stopped
+     *
+     * @return The number of messages written
+     */
+    private int drain() throws IOException {
+        int written = 0;
+        while (true) {
+            long next = head.get();
+            int slot = (int) next & mask;
+            // A claimed slot stays null until its producer has published the message
+            String message = slots.get(slot);
+            if (message == null) {
+                return written;
+            }
+            slots.set(slot, null);
+            head.set(next + 1);
+            writer.write(message);
+            writer.write(System.lineSeparator());
+            written++;
+        }
+    }
+}
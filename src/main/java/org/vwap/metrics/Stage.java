@@ -0,0 +1,19 @@
+package org.vwap.metrics;
+
+/**
+ * Stages of a VWAP calculation that are timed separately
+ */
+public enum Stage {
+    /**
+     * Parsing a file into trades, measured in rows
+     */
+    READ,
+    /**
+     * Folding trades into (currency pair, time bucket) sums, measured in trades
+     */
+    GROUP,
+    /**
+     * Turning the sums into sorted VWAPs, measured in buckets
+     */
+    AGGREGATE
+}
@@ -0,0 +1,56 @@
+package org.vwap.metrics;
+
+import lombok.Getter;
+
+/**
+ * Latency and throughput of a single {@link Stage}
+ */
+public class StageMetrics {
+
+    @Getter
+    private final Stage stage;
+    @Getter
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final Counter items;
+
+    public StageMetrics(Stage stage) {
+        this.stage = stage;
+        this.items = new Counter(stage.name().toLowerCase() + ".items");
+    }
+
+    /**
+     * Records one run of the stage
+     *
+     * @param nanos The duration of the run
+     * @param count The number of items the run processed
+     */
+    public void record(long nanos, long count) {
+        latency.record(nanos);
+        items.add(count);
+    }
+
+    public long getItems() {
+        return items.get();
+    }
+
+    /**
+     * @return Items processed per second of time spent in the stage, or 0 if nothing has been recorded
+     */
+    public double getThroughput() {
+        long nanos = latency.getTotalNanos();
+        return nanos == 0 ? 0 : items.get() * 1e9 / nanos;
+    }
+
+    public void reset() {
+        latency.reset();
+        items.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: runs=%d items=%d total=%dms p50=%.3fms p99=%.3fms max=%.3fms throughput=%.0f/s",
+                stage, latency.getCount(), getItems(), latency.getTotalNanos() / 1000000,
+                latency.getPercentileNanos(50) / 1e6, latency.getPercentileNanos(99) / 1e6,
+                latency.getMaxNanos() / 1e6, getThroughput());
+    }
+}
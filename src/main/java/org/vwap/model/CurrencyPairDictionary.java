@@ -0,0 +1,58 @@
+package org.vwap.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Assigns small, dense integer ids to currency pair names so that trades can reference their pair by id
+ * <p>
+ * NOTE: Interning is synchronized but pairs are few, so callers are expected to cache ids on their side. Looking a name
+ * up by id never locks
+ * </p>
+ */
+public class CurrencyPairDictionary {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private volatile String[] names = new String[0];
+
+    /**
+     * @param currencyPair The currency pair name, e.g. USD/JPY
+     * @return The id of currencyPair, assigning the next free id if it has not been seen before
+     */
+    public synchronized int intern(String currencyPair) {
+        Integer id = ids.get(currencyPair);
+        if (id == null) {
+            id = names.length;
+            String[] grown = Arrays.copyOf(names, id + 1);
+            grown[id] = currencyPair;
+            ids.put(currencyPair, id);
+            names = grown;
+        }
+        return id;
+    }
+
+    /**
+     * @param currencyPair The currency pair name
+     * @return The id of currencyPair, or -1 if it has not been interned
+     */
+    public synchronized int idOf(String currencyPair) {
+        Integer id = ids.get(currencyPair);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param id An id previously returned by {@link #intern(String)}
+     * @return The currency pair name for id
+     */
+    public String nameOf(int id) {
+        return names[id];
+    }
+
+    /**
+     * @return The number of interned currency pairs, ids range from 0 to size() - 1
+     */
+    public int size() {
+        return names.length;
+    }
+}
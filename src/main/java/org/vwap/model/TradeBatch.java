@@ -0,0 +1,247 @@
+package org.vwap.model;
+
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Columnar store of trades held in parallel primitive arrays
+ * <p>
+ * Each trade occupies the same index in the epoch millisecond, currency pair id, price and volume columns. Currency
+ * pairs are stored as ids into a {@link CurrencyPairDictionary}, so a batch of any size holds no per-trade objects
+ * </p>
+ * <p>
+ * NOTE: Not thread safe - fill a batch from a single thread, or fill one batch per thread and combine them with
+ * {@link #addAll(TradeBatch)}
+ * </p>
+ */
+public class TradeBatch {
+
+    /**
+     * Epoch millisecond value of a trade whose timestamp is missing or could not be parsed
+     */
+    public static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    @Getter
+    private final CurrencyPairDictionary currencyPairs;
+    private long[] epochMillis;
+    private int[] pairIds;
+    private double[] prices;
+    private int[] volumes;
+    private int size;
+
+    public TradeBatch() {
+        this(new CurrencyPairDictionary(), DEFAULT_CAPACITY);
+    }
+
+    public TradeBatch(CurrencyPairDictionary currencyPairs, int initialCapacity) {
+        this.currencyPairs = currencyPairs;
+        int capacity = Math.max(initialCapacity, 1);
+        this.epochMillis = new long[capacity];
+        this.pairIds = new int[capacity];
+        this.prices = new double[capacity];
+        this.volumes = new int[capacity];
+    }
+
+    /**
+     * Copies a list of Trade objects into a new batch
+     *
+     * @param trades The trades to copy
+     * @return A batch containing the trades in list order
+     */
+    public static TradeBatch of(List<Trade> trades) {
+        TradeBatch batch = new TradeBatch(new CurrencyPairDictionary(), trades.size());
+        for (Trade trade : trades) {
+            batch.add(trade);
+        }
+        return batch;
+    }
+
+    /**
+     * Wraps existing column arrays in a batch without copying them
+     *
+     * @param currencyPairs The dictionary that pairIds refer to
+     * @param size          The number of valid entries in every column
+     * @return A batch backed by the given arrays
+     */
+    public static TradeBatch wrap(CurrencyPairDictionary currencyPairs, long[] epochMillis, int[] pairIds,
+                                  double[] prices, int[] volumes, int size) {
+        if (size > epochMillis.length || size > pairIds.length || size > prices.length || size > volumes.length) {
+            throw new IllegalArgumentException("Columns are shorter than the batch size " + size);
+        }
+        TradeBatch batch = new TradeBatch(currencyPairs, 1);
+        batch.epochMillis = epochMillis;
+        batch.pairIds = pairIds;
+        batch.prices = prices;
+        batch.volumes = volumes;
+        batch.size = size;
+        return batch;
+    }
+
+    public void add(long epochMilli, int pairId, double price, int volume) {
+        if (size == epochMillis.length) {
+            ensureCapacity(size + (size >> 1) + 1);
+        }
+        epochMillis[size] = epochMilli;
+        pairIds[size] = pairId;
+        prices[size] = price;
+        volumes[size] = volume;
+        size++;
+    }
+
+    public void add(Trade trade) {
+        long epochMilli = trade.getTimestamp() == null ? NO_TIMESTAMP : trade.getTimestamp().toEpochMilli();
+        add(epochMilli, currencyPairs.intern(trade.getCurrencyPair()), trade.getPrice(), trade.getVolume());
+    }
+
+    /**
+     * Appends every trade of other to this batch, translating currency pair ids if the batches use different
+     * dictionaries
+     *
+     * @param other The batch to append
+     */
+    public void addAll(TradeBatch other) {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.epochMillis, 0, epochMillis, size, other.size);
+        System.arraycopy(other.prices, 0, prices, size, other.size);
+        System.arraycopy(other.volumes, 0, volumes, size, other.size);
+        if (other.currencyPairs == currencyPairs) {
+            System.arraycopy(other.pairIds, 0, pairIds, size, other.size);
+        } else {
+            int[] translated = new int[other.currencyPairs.size()];
+            for (int id = 0; id < translated.length; id++) {
+                translated[id] = currencyPairs.intern(other.currencyPairs.nameOf(id));
+            }
+            for (int i = 0; i < other.size; i++) {
+                pairIds[size + i] = translated[other.pairIds[i]];
+            }
+        }
+        size += other.size;
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity > epochMillis.length) {
+            epochMillis = Arrays.copyOf(epochMillis, capacity);
+            pairIds = Arrays.copyOf(pairIds, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+            volumes = Arrays.copyOf(volumes, capacity);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Empties the batch but keeps its columns, so a batch can be refilled without allocating
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return Whether the timestamps never decrease in batch order, ignoring trades without a timestamp
+     */
+    public boolean isTimeOrdered() {
+        long previous = Long.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            long epochMilli = epochMillis[i];
+            if (epochMilli != NO_TIMESTAMP) {
+                if (epochMilli < previous) {
+                    return false;
+                }
+                previous = epochMilli;
+            }
+        }
+        return true;
+    }
+
+    public long getEpochMilli(int index) {
+        return epochMillis[checkIndex(index)];
+    }
+
+    public int getPairId(int index) {
+        return pairIds[checkIndex(index)];
+    }
+
+    public String getCurrencyPair(int index) {
+        return currencyPairs.nameOf(pairIds[checkIndex(index)]);
+    }
+
+    public double getPrice(int index) {
+        return prices[checkIndex(index)];
+    }
+
+    public int getVolume(int index) {
+        return volumes[checkIndex(index)];
+    }
+
+    /**
+     * The backing column arrays are exposed for tight loops over the batch. Only the first {@link #size()} entries are
+     * valid, and the arrays are replaced whenever the batch grows
+     */
+    public long[] epochMillisColumn() {
+        return epochMillis;
+    }
+
+    public int[] pairIdColumn() {
+        return pairIds;
+    }
+
+    public double[] priceColumn() {
+        return prices;
+    }
+
+    public int[] volumeColumn() {
+        return volumes;
+    }
+
+    /**
+     * Creates a Trade object for a single entry of the batch
+     *
+     * @param index The index of the trade
+     * @return A new Trade holding the values at index
+     */
+    public Trade getTrade(int index) {
+        long epochMilli = getEpochMilli(index);
+        Instant timestamp = epochMilli == NO_TIMESTAMP ? null : Instant.ofEpochMilli(epochMilli);
+        return new Trade(timestamp, getCurrencyPair(index), prices[index], volumes[index]);
+    }
+
+    /**
+     * Compatibility view for code that works with Trade objects
+     * <p>
+     * NOTE: The view is read only and creates a new Trade on every call to get
+     * </p>
+     *
+     * @return A list view of this batch
+     */
+    public List<Trade> asTrades() {
+        return new TradeListView();
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return index;
+    }
+
+    private class TradeListView extends AbstractList<Trade> implements RandomAccess {
+        @Override
+        public Trade get(int index) {
+            return getTrade(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
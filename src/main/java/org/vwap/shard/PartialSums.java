@@ -0,0 +1,144 @@
+package org.vwap.shard;
+
+import org.vwap.calculator.VWAPAccumulator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Wire format for the per-(currency pair, time bucket) partial sums of one shard of the input, exchanged between
+ * worker and coordinator processes as files or over sockets
+ * <p>
+ * A frame holds a magic number and version, the exact fixed point sums written by
+ * {@link VWAPAccumulator#writeTo(java.io.DataOutput)} and a CRC32 of everything before it. Its size, and the cost of
+ * merging it, grow with the number of buckets rather than the number of trades, and because the sums are integers the
+ * merged result does not depend on the order in which frames arrive
+ * </p>
+ * <p>
+ * Over a socket the receiver answers a frame it has checked with a single byte, so a worker only reports success once
+ * its sums are in the coordinator's hands
+ * </p>
+ */
+public class PartialSums {
+
+    public static final String FILE_EXTENSION = ".vwps";
+
+    private static final int MAGIC = 0x53505756;
+    private static final short VERSION = 1;
+    private static final int ACKNOWLEDGED = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private PartialSums() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    public static boolean isPartialSumsFile(String filepath) {
+        return filepath.endsWith(FILE_EXTENSION);
+    }
+
+    /**
+     * Writes one frame, flushing but not closing out
+     */
+    public static void write(VWAPAccumulator sums, OutputStream out) throws IOException {
+        CheckedOutputStream checked = new CheckedOutputStream(out, new CRC32());
+        DataOutputStream data = new DataOutputStream(checked);
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+        sums.writeTo(data);
+        data.flush();
+        data.writeLong(checked.getChecksum().getValue());
+        data.flush();
+    }
+
+    /**
+     * Reads one frame, leaving in positioned after it
+     *
+     * @return The sums held by the frame, over their own currency pair dictionary
+     * @throws IOException If unable to read from in, or the frame is not valid partial sums
+     */
+    public static VWAPAccumulator read(InputStream in) throws IOException {
+        CheckedInputStream checked = new CheckedInputStream(in, new CRC32());
+        DataInputStream data = new DataInputStream(checked);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not partial VWAP sums");
+        }
+        short version = data.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported partial VWAP sums version " + version);
+        }
+        VWAPAccumulator sums = VWAPAccumulator.readFrom(data);
+        long checksum = checked.getChecksum().getValue();
+        if (data.readLong() != checksum) {
+            throw new IOException("Corrupt partial VWAP sums");
+        }
+        return sums;
+    }
+
+    /**
+     * Writes the sums to a temporary file then moves it into place, so a coordinator never reads a partial frame
+     */
+    public static void writeFile(VWAPAccumulator sums, String filepath) throws IOException {
+        Path target = Paths.get(filepath).toAbsolutePath();
+        Path temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporary), BUFFER_SIZE)) {
+                write(sums, out);
+            }
+            try {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    public static VWAPAccumulator readFile(String filepath) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(Paths.get(filepath)), BUFFER_SIZE)) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Sends the sums to a coordinator and waits for it to acknowledge them
+     *
+     * @throws IOException If unable to connect, or the coordinator closes the connection without acknowledging
+     */
+    public static void send(VWAPAccumulator sums, String host, int port) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port));
+            write(sums, new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+            socket.shutdownOutput();
+            if (socket.getInputStream().read() != ACKNOWLEDGED) {
+                throw new IOException("Partial VWAP sums were not acknowledged by " + host + ":" + port);
+            }
+        }
+    }
+
+    /**
+     * Reads one frame from a connected worker and acknowledges it once checked
+     */
+    static VWAPAccumulator receive(Socket socket) throws IOException {
+        VWAPAccumulator sums = read(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+        OutputStream out = socket.getOutputStream();
+        out.write(ACKNOWLEDGED);
+        out.flush();
+        return sums;
+    }
+}
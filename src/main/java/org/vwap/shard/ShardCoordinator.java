@@ -0,0 +1,116 @@
+package org.vwap.shard;
+
+import org.vwap.calculator.VWAPAccumulator;
+import org.vwap.model.CurrencyPairDictionary;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Combines the partial sums of any number of shards into one result
+ * <p>
+ * Each shard's sums are read and checked independently, in parallel, then merged one after another. Merging touches
+ * every bucket of a shard once, so the coordinator's cost grows with the number of (currency pair, time bucket)
+ * buckets, not with the number of trades the workers read
+ * </p>
+ */
+public class ShardCoordinator {
+
+    private ShardCoordinator() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * @param filepaths Files written by {@link PartialSums#writeFile(VWAPAccumulator, String)}
+     * @return The merged sums
+     * @throws IOException If unable to read a file, or a file is not valid partial sums
+     */
+    public static VWAPAccumulator mergeFiles(List<String> filepaths) throws IOException {
+        List<VWAPAccumulator> shards;
+        try {
+            shards = filepaths.parallelStream()
+                    .map(filepath -> {
+                        try {
+                            return PartialSums.readFile(filepath);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        VWAPAccumulator merged = null;
+        for (VWAPAccumulator sums : shards) {
+            merged = merge(merged, sums);
+        }
+        return merged == null ? new VWAPAccumulator(new CurrencyPairDictionary()) : merged;
+    }
+
+    /**
+     * Accepts one connection per worker and merges the sums each sends with {@link PartialSums#send}
+     *
+     * @param server  Bound socket the workers connect to, left open
+     * @param workers The number of workers to wait for
+     * @return The merged sums
+     * @throws IOException If unable to accept a worker, or a worker sends invalid partial sums
+     */
+    public static VWAPAccumulator receive(ServerSocket server, int workers) throws IOException {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("Number of workers must be positive");
+        }
+        VWAPAccumulator merged = null;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(workers,
+                Runtime.getRuntime().availableProcessors()));
+        try {
+            List<Future<VWAPAccumulator>> received = new ArrayList<>(workers);
+            for (int i = 0; i < workers; i++) {
+                Socket socket = server.accept();
+                received.add(executor.submit(() -> {
+                    try (Socket connection = socket) {
+                        return PartialSums.receive(connection);
+                    }
+                }));
+            }
+            for (Future<VWAPAccumulator> sums : received) {
+                merged = merge(merged, sums.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while receiving partial VWAP sums");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Failed to receive partial VWAP sums", cause);
+        } finally {
+            executor.shutdownNow();
+        }
+        return merged;
+    }
+
+    /**
+     * Merges into the first shard's sums, so the result keeps the bucket width the workers used
+     */
+    private static VWAPAccumulator merge(VWAPAccumulator merged, VWAPAccumulator sums) {
+        if (merged == null) {
+            return sums;
+        }
+        merged.merge(sums);
+        return merged;
+    }
+}
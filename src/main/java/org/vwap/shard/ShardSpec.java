@@ -0,0 +1,74 @@
+package org.vwap.shard;
+
+import lombok.Getter;
+import org.vwap.calculator.VWAPAccumulator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Selects one shard of the input for a worker process, written as index/count, e.g. 2/8 for the third of eight
+ * <p>
+ * By default the input files are dealt out round-robin, so each worker reads whole files. With the :pair suffix every
+ * worker reads every file and keeps only the currency pairs that hash to its shard, which spreads a single large file
+ * across workers at the cost of each one parsing all of it. Either way no bucket is counted by two workers, so the
+ * coordinator's merge equals a single-process run
+ * </p>
+ */
+@Getter
+public class ShardSpec {
+
+    private static final String BY_CURRENCY_PAIR_SUFFIX = ":pair";
+
+    private final int index;
+    private final int count;
+    private final boolean byCurrencyPair;
+
+    public ShardSpec(int index, int count, boolean byCurrencyPair) {
+        if (count <= 0 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("Invalid shard " + index + "/" + count);
+        }
+        this.index = index;
+        this.count = count;
+        this.byCurrencyPair = byCurrencyPair;
+    }
+
+    /**
+     * @param spec index/count, optionally followed by :pair to shard by currency pair instead of by file
+     */
+    public static ShardSpec parse(String spec) {
+        boolean byCurrencyPair = spec.endsWith(BY_CURRENCY_PAIR_SUFFIX);
+        String shard = byCurrencyPair ? spec.substring(0, spec.length() - BY_CURRENCY_PAIR_SUFFIX.length()) : spec;
+        int separator = shard.indexOf('/');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Shard must be written as index/count[:pair], was " + spec);
+        }
+        return new ShardSpec(Integer.parseInt(shard.substring(0, separator)),
+                Integer.parseInt(shard.substring(separator + 1)), byCurrencyPair);
+    }
+
+    /**
+     * @return The files this shard reads, every file when sharding by currency pair
+     */
+    public List<String> selectFiles(List<String> filepaths) {
+        if (byCurrencyPair) {
+            return filepaths;
+        }
+        List<String> selected = new ArrayList<>();
+        for (int i = index; i < filepaths.size(); i += count) {
+            selected.add(filepaths.get(i));
+        }
+        return selected;
+    }
+
+    /**
+     * @return The sums this shard owns, all of them when sharding by file
+     */
+    public VWAPAccumulator selectSums(VWAPAccumulator sums) {
+        return byCurrencyPair ? sums.filterCurrencyPairs(this::owns) : sums;
+    }
+
+    public boolean owns(String currencyPair) {
+        return Math.floorMod(currencyPair.hashCode(), count) == index;
+    }
+}
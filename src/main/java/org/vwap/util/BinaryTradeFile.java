@@ -0,0 +1,394 @@
+package org.vwap.util;
+
+import org.vwap.calculator.FixedPointVWAP;
+import org.vwap.calculator.VWAPAccumulator;
+import org.vwap.metrics.Metrics;
+import org.vwap.metrics.Stage;
+import org.vwap.model.CurrencyPairDictionary;
+import org.vwap.model.TradeBatch;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Provides static methods to write and read trades in a compact binary columnar format, so that text only has to be
+ * parsed once when the data lands
+ * <p>
+ * Layout, all values little endian:
+ * <ul>
+ * <li>Header (32 bytes): magic, version, flags, trade count, currency pair count, block size, dictionary length</li>
+ * <li>Currency pair dictionary: each name as an unsigned short length followed by its UTF-8 bytes, in id order</li>
+ * <li>Blocks of up to block size trades: trade count, timestamp encoding, then the epoch millisecond, price, volume
+ * and currency pair id columns back to back</li>
+ * </ul>
+ * Timestamps are stored either as raw longs or, when delta encoding is requested and every difference in the block
+ * fits in an int, as a base long followed by int differences from the previous trade
+ * </p>
+ */
+public class BinaryTradeFile {
+
+    public static final String FILE_EXTENSION = ".vwtb";
+
+    private static final int MAGIC = 0x42545756;
+    private static final short VERSION = 1;
+    private static final short FLAG_DELTA_TIMESTAMPS = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int BLOCK_HEADER_SIZE = 8;
+    private static final int DEFAULT_BLOCK_SIZE = 65536;
+    private static final int RAW_TIMESTAMPS = 0;
+    private static final int DELTA_TIMESTAMPS = 1;
+    private static final int MAX_CURRENCY_PAIRS = 65536;
+
+    private BinaryTradeFile() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * @return Whether filepath names a binary trade file
+     */
+    public static boolean isBinaryTradeFile(String filepath) {
+        return filepath.endsWith(FILE_EXTENSION);
+    }
+
+    /**
+     * Converts a CSV file of trades into the binary format
+     *
+     * @param csvFilepath           Path to the csv file to read
+     * @param recordSeparator       Character that separates entries in the provided csv file
+     * @param containsHeader        Whether the csv file contains a header
+     * @param binaryFilepath        Path to the binary file to create or replace
+     * @param deltaEncodeTimestamps Whether to store timestamps as differences where possible
+     * @throws IOException If unable to read the csv file or write the binary file
+     */
+    public static void convertFromCSVFile(String csvFilepath, String recordSeparator, boolean containsHeader,
+                                          String binaryFilepath, boolean deltaEncodeTimestamps) throws IOException {
+        TradeBatch trades = MappedCSVReader.readTradeBatchFromCSVFile(csvFilepath, recordSeparator, containsHeader);
+        write(trades, binaryFilepath, deltaEncodeTimestamps);
+    }
+
+    /**
+     * Writes a batch of trades in the binary format
+     *
+     * @param trades                The trades to write
+     * @param filepath              Path to the binary file to create or replace
+     * @param deltaEncodeTimestamps Whether to store timestamps as differences where possible
+     * @throws IOException If unable to write to filepath
+     */
+    public static void write(TradeBatch trades, String filepath, boolean deltaEncodeTimestamps) throws IOException {
+        CurrencyPairDictionary currencyPairs = trades.getCurrencyPairs();
+        if (currencyPairs.size() > MAX_CURRENCY_PAIRS) {
+            throw new IllegalArgumentException("Too many currency pairs for the binary format: " + currencyPairs.size());
+        }
+        List<byte[]> names = new ArrayList<>(currencyPairs.size());
+        long dictionaryLength = 0;
+        for (int id = 0; id < currencyPairs.size(); id++) {
+            byte[] name = currencyPairs.nameOf(id).getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            dictionaryLength += 2 + name.length;
+        }
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filepath), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + (int) dictionaryLength)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC)
+                    .putShort(VERSION)
+                    .putShort(deltaEncodeTimestamps ? FLAG_DELTA_TIMESTAMPS : 0)
+                    .putLong(trades.size())
+                    .putInt(currencyPairs.size())
+                    .putInt(DEFAULT_BLOCK_SIZE)
+                    .putLong(dictionaryLength);
+            for (byte[] name : names) {
+                header.putShort((short) name.length).put(name);
+            }
+            header.flip();
+            writeFully(channel, header);
+
+            ByteBuffer block = ByteBuffer.allocateDirect(maxBlockLength(DEFAULT_BLOCK_SIZE))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            for (int from = 0; from < trades.size(); from += DEFAULT_BLOCK_SIZE) {
+                block.clear();
+                encodeBlock(trades, from, Math.min(from + DEFAULT_BLOCK_SIZE, trades.size()), deltaEncodeTimestamps,
+                        block);
+                block.flip();
+                writeFully(channel, block);
+            }
+        }
+    }
+
+    /**
+     * Reads a binary trade file into a TradeBatch, decoding its blocks concurrently straight into the columns
+     *
+     * @param filepath Path to the binary file to read
+     * @return A TradeBatch holding the trades in file order
+     * @throws IOException If unable to read filepath or it is not a binary trade file
+     */
+    public static TradeBatch read(String filepath) throws IOException {
+        long startTime = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(Paths.get(filepath), StandardOpenOption.READ)) {
+            Layout layout = readLayout(channel);
+            int size = (int) layout.tradeCount;
+            long[] epochMillis = new long[size];
+            int[] pairIds = new int[size];
+            double[] prices = new double[size];
+            int[] volumes = new int[size];
+            try {
+                IntStream.range(0, layout.blockOffsets.size()).parallel().forEach(i -> {
+                    ByteBuffer block = mapBlock(channel, layout, i);
+                    try {
+                        decodeBlock(block, i * layout.blockSize, layout.currencyPairs.size(), epochMillis, pairIds,
+                                prices, volumes);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            Metrics.ROWS_READ.add(size);
+            Metrics.recordStage(Stage.READ, startTime, size);
+            return TradeBatch.wrap(layout.currencyPairs, epochMillis, pairIds, prices, volumes, size);
+        }
+    }
+
+    /**
+     * Folds every trade of a binary trade file into an accumulator one block at a time, so memory use is bounded by the
+     * block size rather than the file size
+     *
+     * @param filepath    Path to the binary file to read
+     * @param accumulator The accumulator to add the trades to
+     * @throws IOException If unable to read filepath or it is not a binary trade file
+     */
+    public static void accumulate(String filepath, VWAPAccumulator accumulator) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filepath), StandardOpenOption.READ)) {
+            Layout layout = readLayout(channel);
+            int[] translated = new int[layout.currencyPairs.size()];
+            for (int id = 0; id < translated.length; id++) {
+                translated[id] = accumulator.getCurrencyPairs().intern(layout.currencyPairs.nameOf(id));
+            }
+            TradeBatch block = TradeBatch.wrap(accumulator.getCurrencyPairs(), new long[layout.blockSize],
+                    new int[layout.blockSize], new double[layout.blockSize], new int[layout.blockSize], 0);
+            int[] pairIds = block.pairIdColumn();
+            for (int i = 0; i < layout.blockOffsets.size(); i++) {
+                long startTime = System.nanoTime();
+                ByteBuffer buffer = mapBlock(channel, layout, i);
+                int count = decodeBlock(buffer, 0, translated.length, block.epochMillisColumn(), pairIds,
+                        block.priceColumn(), block.volumeColumn());
+                for (int j = 0; j < count; j++) {
+                    pairIds[j] = translated[pairIds[j]];
+                }
+                Metrics.ROWS_READ.add(count);
+                Metrics.recordStage(Stage.READ, startTime, count);
+                accumulator.addAll(block, 0, count);
+            }
+        }
+    }
+
+    private static void encodeBlock(TradeBatch trades, int from, int to, boolean deltaEncodeTimestamps,
+                                    ByteBuffer block) {
+        long[] epochMillis = trades.epochMillisColumn();
+        int count = to - from;
+        boolean delta = deltaEncodeTimestamps && deltasFitInInt(epochMillis, from, to);
+        block.putInt(count).putInt(delta ? DELTA_TIMESTAMPS : RAW_TIMESTAMPS);
+        if (delta) {
+            block.putLong(epochMillis[from]);
+            long previous = epochMillis[from];
+            for (int i = from; i < to; i++) {
+                block.putInt((int) (epochMillis[i] - previous));
+                previous = epochMillis[i];
+            }
+        } else {
+            block.asLongBuffer().put(epochMillis, from, count);
+            block.position(block.position() + count * 8);
+        }
+        block.asDoubleBuffer().put(trades.priceColumn(), from, count);
+        block.position(block.position() + count * 8);
+        block.asIntBuffer().put(trades.volumeColumn(), from, count);
+        block.position(block.position() + count * 4);
+        int[] pairIds = trades.pairIdColumn();
+        for (int i = from; i < to; i++) {
+            block.putShort((short) pairIds[i]);
+        }
+    }
+
+    private static boolean deltasFitInInt(long[] epochMillis, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            long previous = epochMillis[i - 1];
+            long delta = epochMillis[i] - previous;
+            // The subtraction itself overflows when comparing against NO_TIMESTAMP
+            boolean overflowed = ((epochMillis[i] ^ previous) & (epochMillis[i] ^ delta)) < 0;
+            if (overflowed || delta < Integer.MIN_VALUE || delta > Integer.MAX_VALUE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes a block into the column arrays starting at index offset
+     *
+     * @param pairCount The size of the currency pair dictionary of the file
+     * @return The number of trades in the block
+     * @throws IOException If a pair id is not in the dictionary or a price cannot be represented in fixed point
+     */
+    private static int decodeBlock(ByteBuffer block, int offset, int pairCount, long[] epochMillis, int[] pairIds,
+                                   double[] prices, int[] volumes) throws IOException {
+        int count = block.getInt();
+        int encoding = block.getInt();
+        if (encoding == DELTA_TIMESTAMPS) {
+            long epochMilli = block.getLong();
+            for (int i = 0; i < count; i++) {
+                epochMilli += block.getInt();
+                epochMillis[offset + i] = epochMilli;
+            }
+        } else {
+            block.asLongBuffer().get(epochMillis, offset, count);
+            block.position(block.position() + count * 8);
+        }
+        block.asDoubleBuffer().get(prices, offset, count);
+        block.position(block.position() + count * 8);
+        for (int i = offset; i < offset + count; i++) {
+            if (!FixedPointVWAP.isRepresentable(prices[i])) {
+                throw new IOException("Price cannot be represented in fixed point in binary trade file: " + prices[i]);
+            }
+        }
+        block.asIntBuffer().get(volumes, offset, count);
+        block.position(block.position() + count * 4);
+        for (int i = 0; i < count; i++) {
+            int pairId = block.getShort() & 0xFFFF;
+            if (pairId >= pairCount) {
+                throw new IOException("Currency pair id " + pairId + " is not in the dictionary of the binary trade " +
+                        "file");
+            }
+            pairIds[offset + i] = pairId;
+        }
+        return count;
+    }
+
+    private static ByteBuffer mapBlock(FileChannel channel, Layout layout, int block) {
+        long start = layout.blockOffsets.get(block);
+        long end = block + 1 < layout.blockOffsets.size() ? layout.blockOffsets.get(block + 1) : layout.fileSize;
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Layout readLayout(FileChannel channel) throws IOException {
+        Layout layout = new Layout();
+        layout.fileSize = channel.size();
+        ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a binary trade file");
+        }
+        short version = header.getShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary trade file version: " + version);
+        }
+        header.getShort();
+        layout.tradeCount = header.getLong();
+        if (layout.tradeCount < 0 || layout.tradeCount > Integer.MAX_VALUE) {
+            throw new IOException("Binary trade file holds an unsupported number of trades: " + layout.tradeCount);
+        }
+        int pairCount = header.getInt();
+        layout.blockSize = header.getInt();
+        long dictionaryLength = header.getLong();
+        if (pairCount < 0 || layout.blockSize <= 0 || dictionaryLength < 0 ||
+                dictionaryLength > layout.fileSize - HEADER_SIZE) {
+            throw new IOException("Corrupt binary trade file header");
+        }
+
+        ByteBuffer dictionary = readFully(channel, HEADER_SIZE, (int) dictionaryLength);
+        try {
+            for (int id = 0; id < pairCount; id++) {
+                byte[] name = new byte[dictionary.getShort() & 0xFFFF];
+                dictionary.get(name);
+                String currencyPair = new String(name, StandardCharsets.UTF_8);
+                if (layout.currencyPairs.intern(currencyPair) != id) {
+                    throw new IOException("Duplicate currency pair in binary trade file: " + currencyPair);
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Currency pair dictionary overruns its length in binary trade file", e);
+        }
+
+        // Block lengths follow from their counts, so only the 8 byte block headers need to be read. A corrupt header
+        // would otherwise send the walk to a bogus offset, or loop forever on a count of 0
+        long offset = HEADER_SIZE + dictionaryLength;
+        long remaining = layout.tradeCount;
+        while (remaining > 0) {
+            ByteBuffer blockHeader = readFully(channel, offset, BLOCK_HEADER_SIZE);
+            int count = blockHeader.getInt();
+            int encoding = blockHeader.getInt();
+            if (count <= 0 || count > layout.blockSize || count > remaining) {
+                throw new IOException("Invalid trade count " + count + " in block at offset " + offset);
+            }
+            // Blocks are decoded at block index * block size, so only the last may be short
+            if (count != layout.blockSize && count != remaining) {
+                throw new IOException("Block at offset " + offset + " is short but is not the last block");
+            }
+            if (encoding != RAW_TIMESTAMPS && encoding != DELTA_TIMESTAMPS) {
+                throw new IOException("Unknown timestamp encoding " + encoding + " in block at offset " + offset);
+            }
+            long blockEnd = offset + blockLength(count, encoding);
+            if (blockEnd > layout.fileSize) {
+                throw new IOException("Block at offset " + offset + " runs past the end of the binary trade file");
+            }
+            layout.blockOffsets.add(offset);
+            offset = blockEnd;
+            remaining -= count;
+        }
+        return layout;
+    }
+
+    private static long blockLength(int count, int encoding) {
+        long timestamps = encoding == DELTA_TIMESTAMPS ? 8 + 4L * count : 8L * count;
+        return BLOCK_HEADER_SIZE + timestamps + 8L * count + 4L * count + 2L * count;
+    }
+
+    private static int maxBlockLength(int blockSize) {
+        return (int) Math.max(blockLength(blockSize, RAW_TIMESTAMPS), blockLength(blockSize, DELTA_TIMESTAMPS));
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of binary trade file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Where everything lives in a binary trade file
+     */
+    private static final class Layout {
+        private final CurrencyPairDictionary currencyPairs = new CurrencyPairDictionary();
+        private final List<Long> blockOffsets = new ArrayList<>();
+        private long fileSize;
+        private long tradeCount;
+        private int blockSize;
+    }
+}
@@ -1,15 +1,19 @@
 package org.vwap.util;
 
+import org.vwap.calculator.FixedPointVWAP;
+import org.vwap.metrics.Metrics;
+import org.vwap.metrics.Stage;
 import org.vwap.model.Trade;
 
 import java.io.*;
 import java.nio.file.Files;
 import java.time.Instant;
 import java.time.format.DateTimeParseException;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Provides static methods to map trade data from different file types into Trade objects
@@ -26,7 +30,7 @@ public class FileReader {
      * Expects CSV entries to follow the format TIMESTAMP,CURRENCY_PAIR,PRICE,VOLUME
      * </p
      * <p>
-     * NOTE: File read is multithreaded to improve performance - the returned list will not be sequential
+     * NOTE: File read is multithreaded to improve performance. Files ending in .gz are decompressed as they are read
      * </p>
      *
      * @param filepath        Path to the csv file to read
@@ -45,12 +49,13 @@ public class FileReader {
             throw new IllegalArgumentException("Line separator cannot be empty");
         }
 
-        // Need to create a synchronized list to handle parallel writes
-        List<Trade> trades = Collections.synchronizedList(new ArrayList<>());
-
         System.out.println("Reading from: " + filepath);
         File initialFile = new File(filepath);
         InputStream inputStream = Files.newInputStream(initialFile.toPath());
+        if (GzipCSVReader.isGzipFile(filepath)) {
+            // Decompressed as it is read, so the archive never has to be unpacked to disk
+            inputStream = new GZIPInputStream(inputStream, 64 * 1024);
+        }
 
         BufferedReader br = new BufferedReader(new InputStreamReader(inputStream));
         if (containsHeader) {
@@ -58,12 +63,15 @@ public class FileReader {
             br.readLine();
         }
         AtomicInteger totalLines = new AtomicInteger();
-        br.lines().parallel().forEach(line -> {
+        // Collect rather than add to a shared list, so parsing threads never contend on a single monitor
+        List<Trade> trades = br.lines().parallel().map(line -> {
             totalLines.getAndIncrement();
             String[] csvValues = line.split(recordSeparator);
 
             if (csvValues.length != 4) {
-                System.err.println("Invalid CSV entry, should contain 4 data points: " + line);
+                Metrics.ROWS_REJECTED.increment();
+                Metrics.reportRejected("Invalid CSV entry, should contain 4 data points: " + line);
+                return null;
             } else {
                 Instant timestamp = null;
                 String currencyPair;
@@ -73,7 +81,8 @@ public class FileReader {
                 try {
                     timestamp = Instant.parse(csvValues[0]);
                 } catch (DateTimeParseException e) {
-                    System.err.println("Invalid timestamp: " + csvValues[0]);
+                    Metrics.NULL_TIMESTAMPS.increment();
+                    Metrics.reportRejected("Invalid timestamp: " + csvValues[0]);
                 }
 
                 currencyPair = csvValues[1];
@@ -81,18 +90,25 @@ public class FileReader {
                 try {
                     price = Double.parseDouble(csvValues[2]);
                 } catch (NumberFormatException e) {
-                    System.err.println("Invalid price: " + csvValues[2]);
+                    Metrics.reportRejected("Invalid price: " + csvValues[2]);
+                }
+                if (!FixedPointVWAP.isRepresentable(price)) {
+                    Metrics.ROWS_REJECTED.increment();
+                    Metrics.reportRejected("Invalid CSV entry, price cannot be represented in fixed point: " + line);
+                    return null;
                 }
                 try {
                     volume = Integer.parseInt(csvValues[3]);
                 } catch (NumberFormatException e) {
-                    System.err.println("Invalid volume: " + csvValues[3]);
+                    Metrics.reportRejected("Invalid volume: " + csvValues[3]);
                 }
 
-                trades.add(new Trade(timestamp, currencyPair, price, volume));
+                return new Trade(timestamp, currencyPair, price, volume);
             }
-        });
+        }).filter(Objects::nonNull).collect(Collectors.toList());
 
+        Metrics.ROWS_READ.add(totalLines.get());
+        Metrics.recordStage(Stage.READ, startTime, totalLines.get());
         long endTime = System.nanoTime();
         long totalTime = endTime - startTime;
         System.out.println("Successfully converted " + totalLines + " csv entries into " + trades.size() +
@@ -103,17 +119,17 @@ public class FileReader {
     /**
      * Converts trade data from a JSON file into Trade objects
      * <p>
-     * NOTE: Method implementation still in progress
+     * Expects a JSON array of objects with the fields timestamp, currencyPair, price and volume
+     * </p>
+     * <p>
+     * NOTE: The file is tokenized in parallel without building a document tree, see {@link MappedJSONReader}
      * </p>
      *
      * @param filepath Path to the JSON file to read
      * @return A list of Trade objects
+     * @throws IOException If unable to read filepath, or if the file is not a JSON array of objects
      */
-    public static List<Trade> readFromJSONFile(String filepath) {
-        List<Trade> result = new ArrayList<>();
-
-        // TODO: Implement logic
-
-        return result;
+    public static List<Trade> readFromJSONFile(String filepath) throws IOException {
+        return MappedJSONReader.readFromJSONFile(filepath);
     }
 }
@@ -0,0 +1,542 @@
+package org.vwap.util;
+
+import org.vwap.calculator.VWAPAccumulator;
+import org.vwap.metrics.Metrics;
+import org.vwap.metrics.Stage;
+import org.vwap.model.CurrencyPairDictionary;
+import org.vwap.model.TradeBatch;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Provides static methods to read trade data from gzip-compressed CSV files without decompressing them to disk
+ * <p>
+ * Decompressed bytes are inflated straight into a parse buffer and parsed a buffer at a time, so only a few MB of
+ * uncompressed text are held at once. A gzip file may be a series of independently compressed members, as written by
+ * concatenating gzip files, pigz or the block-indexed BGZF format. Such files are cut at member headers into segments
+ * which are inflated and parsed in parallel, and the lines that span two segments are stitched back together in file
+ * order. A file with a single member is inflated by a single thread
+ * </p>
+ * <p>
+ * Bytes that look like a member header can also occur inside compressed data. Every segment is therefore only accepted
+ * if the members before it end exactly where it starts, otherwise its range is inflated again as part of the previous
+ * segment, so the trades are always identical to those of the uncompressed file
+ * </p>
+ */
+public class GzipCSVReader {
+
+    public static final String FILE_EXTENSION = ".gz";
+
+    private static final int INPUT_BUFFER_SIZE = 64 * 1024;
+    private static final int OUTPUT_BUFFER_SIZE = 4 * 1024 * 1024;
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int DEFLATE = 8;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+    private static final int RESERVED_FLAGS = 0xE0;
+    private static final int HEADER_PROBE_SIZE = 18;
+
+    private GzipCSVReader() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * @return Whether the file is named as a gzip-compressed file
+     */
+    public static boolean isGzipFile(String filepath) {
+        return filepath.endsWith(FILE_EXTENSION);
+    }
+
+    /**
+     * Converts trade data from a gzip-compressed CSV file into a columnar TradeBatch
+     *
+     * @param filepath        Path to the compressed csv file to read
+     * @param recordSeparator Character that separates entries in the provided csv file
+     * @param containsHeader  Whether the csv file contains a header
+     * @param currencyPairs   Dictionary to intern currency pairs into, which may be shared between several files
+     * @return A TradeBatch holding the same trades, in the same order, as the uncompressed file
+     * @throws IOException If unable to open filepath, or if it is not a valid gzip file
+     * @see MappedCSVReader#readTradeBatchFromCSVFile(String, String, boolean, CurrencyPairDictionary)
+     */
+    public static TradeBatch readTradeBatchFromCSVFile(String filepath, String recordSeparator, boolean containsHeader,
+                                                       CurrencyPairDictionary currencyPairs) throws IOException {
+        long startTime = System.nanoTime();
+        byte[] separator = checkArguments(filepath, recordSeparator);
+
+        System.out.println("Reading from: " + filepath);
+        List<Segment> segments = inflate(filepath, separator, currencyPairs, null, OUTPUT_BUFFER_SIZE);
+        int totalTrades = 0;
+        for (Segment segment : segments) {
+            totalTrades += segment.chunk.trades.size();
+        }
+        TradeBatch trades = new TradeBatch(currencyPairs, totalTrades);
+        int totalLines = stitch(segments, containsHeader, separator, currencyPairs, trades, null);
+
+        long endTime = System.nanoTime();
+        long totalTime = endTime - startTime;
+        System.out.println("Successfully converted " + totalLines + " csv entries into " + trades.size() +
+                " trades from " + filepath + " Total runtime: " + totalTime / 1000000 + " milliseconds");
+        return trades;
+    }
+
+    /**
+     * Folds the trades of a gzip-compressed CSV file into an accumulator without ever holding the whole file in memory
+     *
+     * @param filepath        Path to the compressed csv file to read
+     * @param recordSeparator Character that separates entries in the provided csv file
+     * @param containsHeader  Whether the csv file contains a header
+     * @param accumulator     The accumulator to add the trades to
+     * @param chunkSize       The maximum number of uncompressed bytes parsed at once by each thread
+     * @throws IOException If unable to open filepath, or if it is not a valid gzip file
+     * @see MappedCSVReader#accumulateFromCSVFile(String, String, boolean, VWAPAccumulator, int)
+     */
+    public static void accumulateFromCSVFile(String filepath, String recordSeparator, boolean containsHeader,
+                                             VWAPAccumulator accumulator, int chunkSize) throws IOException {
+        long startTime = System.nanoTime();
+        byte[] separator = checkArguments(filepath, recordSeparator);
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+
+        System.out.println("Reading from: " + filepath);
+        CurrencyPairDictionary currencyPairs = accumulator.getCurrencyPairs();
+        List<Segment> segments = inflate(filepath, separator, currencyPairs, accumulator,
+                Math.min(chunkSize, OUTPUT_BUFFER_SIZE));
+        VWAPAccumulator fileSums = new VWAPAccumulator(currencyPairs, accumulator.getBucketMillis());
+        stitch(segments, containsHeader, separator, currencyPairs, null, fileSums);
+        for (Segment segment : segments) {
+            fileSums.merge(segment.sums);
+        }
+        accumulator.merge(fileSums);
+
+        long endTime = System.nanoTime();
+        long totalTime = endTime - startTime;
+        System.out.println("Successfully accumulated " + fileSums.size() + " buckets from " + filepath +
+                " Total runtime: " + totalTime / 1000000 + " milliseconds");
+    }
+
+    private static byte[] checkArguments(String filepath, String recordSeparator) {
+        if (filepath.isEmpty()) {
+            throw new IllegalArgumentException("File path cannot be empty");
+        }
+        if (recordSeparator.isEmpty()) {
+            throw new IllegalArgumentException("Line separator cannot be empty");
+        }
+        return recordSeparator.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Inflates and parses the file in segments, concurrently where it has several members
+     *
+     * @param template Accumulator whose bucket size the segment sums use, or null to keep the parsed trades instead
+     * @return The accepted segments in file order, which together cover every member of the file
+     */
+    private static List<Segment> inflate(String filepath, byte[] separator, CurrencyPairDictionary currencyPairs,
+                                         VWAPAccumulator template, int bufferSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filepath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] starts;
+            Segment[] candidates;
+            try {
+                starts = segmentStarts(channel, size);
+                candidates = IntStream.range(0, starts.length).parallel()
+                        .mapToObj(i -> new Segment(channel, starts[i], i + 1 < starts.length ? starts[i + 1] : size,
+                                separator, currencyPairs, template, bufferSize))
+                        .toArray(Segment[]::new);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            // Follow the members from the start of the file, skipping segments that began at false headers and
+            // filling any gap they leave behind
+            List<Segment> segments = new ArrayList<>(candidates.length);
+            long position = 0;
+            int next = 0;
+            while (true) {
+                while (next < candidates.length && candidates[next].start < position) {
+                    next++;
+                }
+                Segment segment = next < candidates.length && candidates[next].start == position ? candidates[next++]
+                        : new Segment(channel, position, next < candidates.length ? candidates[next].start : size,
+                        separator, currencyPairs, template, bufferSize);
+                if (segment.failure instanceof IOException) {
+                    throw (IOException) segment.failure;
+                } else if (segment.failure != null) {
+                    throw (RuntimeException) segment.failure;
+                }
+                segments.add(segment);
+                Metrics.ROWS_READ.add(segment.chunk.lines);
+                if (segment.lastMember) {
+                    return segments;
+                }
+                position = segment.end;
+            }
+        }
+    }
+
+    /**
+     * @return Offset 0 and, for each further slice of the file, the first offset in it that looks like a member header
+     */
+    private static long[] segmentStarts(FileChannel channel, long size) {
+        int count = (int) MappedCSVReader.chunkCount(size, MappedCSVReader.MAX_CHUNK_SIZE);
+        return IntStream.range(0, count).parallel()
+                .mapToLong(i -> i == 0 ? 0 : nextMemberStart(channel, size * i / count, size * (i + 1) / count, size))
+                .filter(start -> start >= 0)
+                .distinct()
+                .sorted()
+                .toArray();
+    }
+
+    /**
+     * @return The first offset in [from, to) that looks like the start of a member, or -1 if there is none
+     */
+    private static long nextMemberStart(FileChannel channel, long from, long to, long size) {
+        ByteBuffer buffer = ByteBuffer.allocate(INPUT_BUFFER_SIZE);
+        try {
+            for (long offset = from; offset < to; offset += buffer.capacity() - 2) {
+                buffer.clear();
+                int read = channel.read(buffer, offset);
+                for (int i = 0; i + 2 < read && offset + i < to; i++) {
+                    if ((buffer.get(i) & 0xFF) == (GZIP_MAGIC & 0xFF) && isMemberStart(channel, offset + i, size)) {
+                        return offset + i;
+                    }
+                }
+                if (read < buffer.capacity()) {
+                    break;
+                }
+            }
+            return -1;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A plausibility check of the fixed part of a member header. A BGZF block also records its own compressed size,
+     * so the block that follows it must start with a header too
+     */
+    private static boolean isMemberStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_PROBE_SIZE);
+        channel.read(header, position);
+        if (header.position() < 10 || !hasMemberHeader(header) || (header.get(3) & RESERVED_FLAGS) != 0) {
+            return false;
+        }
+        int extraFlags = header.get(8) & 0xFF;
+        if (extraFlags != 0 && extraFlags != 2 && extraFlags != 4) {
+            return false;
+        }
+        boolean bgzf = header.position() == HEADER_PROBE_SIZE && (header.get(3) & FEXTRA) != 0
+                && header.get(12) == 'B' && header.get(13) == 'C' && header.get(14) == 2 && header.get(15) == 0;
+        if (bgzf) {
+            long next = position + ((header.get(16) & 0xFF) | (header.get(17) & 0xFF) << 8) + 1;
+            return next == size || next < size && hasMemberHeader(channel, next);
+        }
+        return true;
+    }
+
+    private static boolean hasMemberHeader(FileChannel channel, long position) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(3);
+        channel.read(magic, position);
+        return magic.position() == 3 && hasMemberHeader(magic);
+    }
+
+    /**
+     * @return Whether the buffer starts with the gzip magic number and the deflate compression method
+     */
+    private static boolean hasMemberHeader(ByteBuffer buffer) {
+        return (buffer.get(0) & 0xFF) == (GZIP_MAGIC & 0xFF) && (buffer.get(1) & 0xFF) == GZIP_MAGIC >>> 8
+                && buffer.get(2) == DEFLATE;
+    }
+
+    /**
+     * Parses the lines that span segments, and the segments themselves, into trades or sums in file order
+     *
+     * @return The number of lines parsed from the fragments that were stitched together
+     */
+    private static int stitch(List<Segment> segments, boolean containsHeader, byte[] separator,
+                              CurrencyPairDictionary currencyPairs, TradeBatch trades, VWAPAccumulator sums) {
+        MappedCSVReader.Chunk stitched = new MappedCSVReader.Chunk(currencyPairs, 16);
+        int totalLines = 0;
+        boolean skipHeader = containsHeader;
+        byte[] carry = new byte[0];
+        for (Segment segment : segments) {
+            totalLines += segment.chunk.lines;
+            if (segment.head == null) {
+                // Not a single line ends in this segment
+                carry = concat(carry, segment.tail);
+                continue;
+            }
+            parseFragment(concat(carry, segment.head), skipHeader, separator, stitched);
+            skipHeader = false;
+            if (trades != null) {
+                trades.addAll(stitched.trades);
+                trades.addAll(segment.chunk.trades);
+                stitched.trades.clear();
+            }
+            carry = segment.tail;
+        }
+        if (carry.length > 0) {
+            parseFragment(carry, skipHeader, separator, stitched);
+            if (trades != null) {
+                trades.addAll(stitched.trades);
+            }
+        }
+        if (sums != null) {
+            sums.addAll(stitched.trades);
+        }
+        Metrics.ROWS_READ.add(stitched.lines);
+        return totalLines + stitched.lines;
+    }
+
+    private static void parseFragment(byte[] fragment, boolean skipHeader, byte[] separator,
+                                      MappedCSVReader.Chunk chunk) {
+        ByteBuffer buffer = ByteBuffer.wrap(fragment);
+        int start = skipHeader ? MappedCSVReader.skipLine(buffer, 0, fragment.length) : 0;
+        MappedCSVReader.parseLines(buffer, start, fragment.length, separator, chunk);
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] bytes = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, bytes, first.length, second.length);
+        return bytes;
+    }
+
+    /**
+     * The members from a starting offset up to a limit, inflated and parsed as one stream
+     * <p>
+     * The text before the first newline and after the last one may belong to lines that continue in the neighbouring
+     * segments, so they are kept as head and tail rather than parsed. A failure is recorded rather than thrown, since
+     * a segment that began at a false header is discarded
+     * </p>
+     */
+    private static final class Segment {
+        final long start;
+        final MappedCSVReader.Chunk chunk;
+        final VWAPAccumulator sums;
+        final byte[] separator;
+        long end;
+        boolean lastMember;
+        byte[] head;
+        byte[] tail;
+        Exception failure;
+
+        private byte[] bytes;
+        private ByteBuffer buffer;
+        private int length;
+
+        Segment(FileChannel channel, long start, long limit, byte[] separator, CurrencyPairDictionary currencyPairs,
+                VWAPAccumulator template, int bufferSize) {
+            long startTime = System.nanoTime();
+            this.start = start;
+            this.separator = separator;
+            this.chunk = new MappedCSVReader.Chunk(currencyPairs, 16);
+            this.sums = template == null ? null : new VWAPAccumulator(currencyPairs, template.getBucketMillis());
+            this.bytes = new byte[bufferSize];
+            this.buffer = ByteBuffer.wrap(bytes);
+
+            MemberInput input = new MemberInput(channel, start);
+            Inflater inflater = new Inflater(true);
+            try {
+                long size = channel.size();
+                do {
+                    inflateMember(input, inflater);
+                    // Like GZIPInputStream, anything after a member that is not another member is ignored
+                    lastMember = input.offset() >= size || !hasMemberHeader(channel, input.offset());
+                } while (!lastMember && input.offset() < limit);
+                end = input.offset();
+                drain();
+                tail = Arrays.copyOf(bytes, length);
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+            } finally {
+                inflater.end();
+                bytes = null;
+                buffer = null;
+            }
+            Metrics.recordStage(Stage.READ, startTime, chunk.lines);
+        }
+
+        private void inflateMember(MemberInput input, Inflater inflater) throws IOException {
+            readHeader(input);
+            inflater.reset();
+            CRC32 crc = new CRC32();
+            long size = 0;
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    input.feed(inflater);
+                }
+                int count;
+                try {
+                    count = inflater.inflate(bytes, length, bytes.length - length);
+                } catch (DataFormatException e) {
+                    throw new ZipException(e.getMessage() == null ? "Invalid deflate data" : e.getMessage());
+                }
+                if (count == 0 && inflater.needsDictionary()) {
+                    throw new ZipException("Unsupported preset dictionary");
+                }
+                crc.update(bytes, length, count);
+                size += count;
+                length += count;
+                if (length == bytes.length) {
+                    drain();
+                }
+            }
+            input.unread(inflater.getRemaining());
+
+            if (input.readInt() != (int) crc.getValue() || input.readInt() != (int) size) {
+                throw new ZipException("Corrupt GZIP trailer");
+            }
+        }
+
+        /**
+         * Parses every complete line in the buffer and moves the partial line at its end to the front
+         */
+        private void drain() {
+            int lastLineEnd = length;
+            while (lastLineEnd > 0 && bytes[lastLineEnd - 1] != '\n') {
+                lastLineEnd--;
+            }
+            if (lastLineEnd == 0) {
+                if (length == bytes.length) {
+                    // A line longer than the buffer
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                    buffer = ByteBuffer.wrap(bytes);
+                }
+                return;
+            }
+
+            int from = 0;
+            if (head == null) {
+                while (bytes[from++] != '\n') {
+                    // The first line may begin in the previous segment
+                }
+                head = Arrays.copyOf(bytes, from);
+            }
+            MappedCSVReader.parseLines(buffer, from, lastLineEnd, separator, chunk);
+            if (sums != null) {
+                sums.addAll(chunk.trades);
+                chunk.trades.clear();
+            }
+            System.arraycopy(bytes, lastLineEnd, bytes, 0, length - lastLineEnd);
+            length -= lastLineEnd;
+        }
+
+        /**
+         * Reads a member header, checking its optional header CRC like GZIPInputStream does
+         */
+        private static void readHeader(MemberInput input) throws IOException {
+            CRC32 crc = new CRC32();
+            if (input.readUnsignedShort(crc) != GZIP_MAGIC) {
+                throw new ZipException("Not in GZIP format");
+            }
+            if (input.readUnsignedByte(crc) != DEFLATE) {
+                throw new ZipException("Unsupported compression method");
+            }
+            int flags = input.readUnsignedByte(crc);
+            for (int i = 0; i < 6; i++) {
+                input.readUnsignedByte(crc);
+            }
+            if ((flags & FEXTRA) != 0) {
+                int extraLength = input.readUnsignedShort(crc);
+                for (int i = 0; i < extraLength; i++) {
+                    input.readUnsignedByte(crc);
+                }
+            }
+            if ((flags & FNAME) != 0) {
+                while (input.readUnsignedByte(crc) != 0) {
+                    // Skip the zero-terminated file name
+                }
+            }
+            if ((flags & FCOMMENT) != 0) {
+                while (input.readUnsignedByte(crc) != 0) {
+                    // Skip the zero-terminated comment
+                }
+            }
+            if ((flags & FHCRC) != 0 && input.readUnsignedShort(null) != ((int) crc.getValue() & 0xFFFF)) {
+                throw new ZipException("Corrupt GZIP header");
+            }
+        }
+    }
+
+    /**
+     * Buffered positional reads of compressed bytes, shared by the headers, deflate data and trailers of a segment
+     */
+    private static final class MemberInput {
+        private final FileChannel channel;
+        private final byte[] bytes = new byte[INPUT_BUFFER_SIZE];
+        private final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        private long bufferOffset;
+        private int length;
+        private int position;
+
+        MemberInput(FileChannel channel, long offset) {
+            this.channel = channel;
+            this.bufferOffset = offset;
+        }
+
+        long offset() {
+            return bufferOffset + position;
+        }
+
+        int readUnsignedByte(CRC32 crc) throws IOException {
+            if (position == length) {
+                fill();
+            }
+            int value = bytes[position++] & 0xFF;
+            if (crc != null) {
+                crc.update(value);
+            }
+            return value;
+        }
+
+        int readUnsignedShort(CRC32 crc) throws IOException {
+            return readUnsignedByte(crc) | readUnsignedByte(crc) << 8;
+        }
+
+        int readInt() throws IOException {
+            return readUnsignedShort(null) | readUnsignedShort(null) << 16;
+        }
+
+        void feed(Inflater inflater) throws IOException {
+            if (position == length) {
+                fill();
+            }
+            inflater.setInput(bytes, position, length - position);
+            position = length;
+        }
+
+        /**
+         * Returns bytes given to the inflater but not consumed by it, which belong to the trailer
+         */
+        void unread(int count) {
+            position -= count;
+        }
+
+        private void fill() throws IOException {
+            bufferOffset += length;
+            position = 0;
+            buffer.clear();
+            length = Math.max(channel.read(buffer, bufferOffset), 0);
+            if (length == 0) {
+                throw new EOFException("Unexpected end of ZLIB input stream");
+            }
+        }
+    }
+}
@@ -0,0 +1,753 @@
+package org.vwap.util;
+
+import org.vwap.calculator.FixedPointVWAP;
+import org.vwap.calculator.VWAPAccumulator;
+import org.vwap.metrics.Metrics;
+import org.vwap.metrics.Stage;
+import org.vwap.model.CurrencyPairDictionary;
+import org.vwap.model.Trade;
+import org.vwap.model.TradeBatch;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Provides static methods to map trade data from CSV files into a {@link TradeBatch} using memory-mapped I/O
+ * <p>
+ * The file is mapped with FileChannel.map and cut into newline-aligned chunks which are parsed concurrently. Timestamps,
+ * currency pairs, prices and volumes are parsed straight from the mapped bytes into primitives, so well-formed lines do
+ * not allocate any intermediate Strings
+ * </p>
+ */
+public class MappedCSVReader {
+
+    private static final long NO_TIMESTAMP = TradeBatch.NO_TIMESTAMP;
+
+    static final int MAX_CHUNK_SIZE = 256 * 1024 * 1024;
+    static final int SCAN_BUFFER_SIZE = 8192;
+
+    private static final int MIN_CHUNK_SIZE = 1024 * 1024;
+    private static final int MAX_FAST_PATH_DIGITS = 15;
+    private static final long DAYS_0000_TO_1970 = 719528L;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private MappedCSVReader() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Converts trade data from a CSV file into Trade objects
+     * <p>
+     * Expects CSV entries to follow the format TIMESTAMP,CURRENCY_PAIR,PRICE,VOLUME and produces the same trades as
+     * {@link FileReader#readFromCSVFile(String, String, boolean)}, except that the record separator is matched literally
+     * rather than as a regular expression and timestamps are truncated to millisecond precision
+     * </p>
+     * <p>
+     * NOTE: Chunks are parsed concurrently but the returned list preserves the order of the file
+     * </p>
+     *
+     * @param filepath        Path to the csv file to read
+     * @param recordSeparator Character that separates entries in the provided csv file
+     * @param containsHeader  Whether the csv file contains a header
+     * @return A list of Trade objects
+     * @throws IOException If unable to open or map filepath
+     */
+    public static List<Trade> readFromCSVFile(String filepath, String recordSeparator, boolean containsHeader)
+            throws IOException {
+        return new ArrayList<>(readTradeBatchFromCSVFile(filepath, recordSeparator, containsHeader).asTrades());
+    }
+
+    /**
+     * Converts trade data from a CSV file into a columnar TradeBatch with its own currency pair dictionary
+     *
+     * @see #readTradeBatchFromCSVFile(String, String, boolean, CurrencyPairDictionary)
+     */
+    public static TradeBatch readTradeBatchFromCSVFile(String filepath, String recordSeparator, boolean containsHeader)
+            throws IOException {
+        return readTradeBatchFromCSVFile(filepath, recordSeparator, containsHeader, new CurrencyPairDictionary());
+    }
+
+    /**
+     * Converts trade data from a CSV file into a columnar TradeBatch
+     * <p>
+     * Expects CSV entries to follow the format TIMESTAMP,CURRENCY_PAIR,PRICE,VOLUME. Invalid timestamps are stored as
+     * {@link TradeBatch#NO_TIMESTAMP}, invalid prices and volumes as 0
+     * </p>
+     * <p>
+     * NOTE: Files ending in .gz are decompressed on the fly by {@link GzipCSVReader}
+     * </p>
+     *
+     * @param filepath        Path to the csv file to read
+     * @param recordSeparator Character that separates entries in the provided csv file
+     * @param containsHeader  Whether the csv file contains a header
+     * @param currencyPairs   Dictionary to intern currency pairs into, which may be shared between several files
+     * @return A TradeBatch holding the trades in file order
+     * @throws IOException If unable to open or map filepath
+     */
+    public static TradeBatch readTradeBatchFromCSVFile(String filepath, String recordSeparator, boolean containsHeader,
+                                                       CurrencyPairDictionary currencyPairs) throws IOException {
+        if (GzipCSVReader.isGzipFile(filepath)) {
+            return GzipCSVReader.readTradeBatchFromCSVFile(filepath, recordSeparator, containsHeader, currencyPairs);
+        }
+        long startTime = System.nanoTime();
+        if (filepath.isEmpty()) {
+            throw new IllegalArgumentException("File path cannot be empty");
+        }
+        if (recordSeparator.isEmpty()) {
+            throw new IllegalArgumentException("Line separator cannot be empty");
+        }
+        byte[] separator = recordSeparator.getBytes(StandardCharsets.UTF_8);
+
+        System.out.println("Reading from: " + filepath);
+        List<Chunk> chunks;
+        try (FileChannel channel = FileChannel.open(Paths.get(filepath), StandardOpenOption.READ)) {
+            long[] bounds = chunkBounds(channel, containsHeader, MAX_CHUNK_SIZE);
+            try {
+                chunks = IntStream.range(0, bounds.length - 1).parallel()
+                        .mapToObj(i -> parseChunk(channel, bounds[i], bounds[i + 1], separator, currencyPairs))
+                        .collect(Collectors.toList());
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+
+        int totalTrades = 0;
+        int totalLines = 0;
+        for (Chunk chunk : chunks) {
+            totalTrades += chunk.trades.size();
+            totalLines += chunk.lines;
+        }
+        TradeBatch trades = new TradeBatch(currencyPairs, totalTrades);
+        for (Chunk chunk : chunks) {
+            trades.addAll(chunk.trades);
+        }
+
+        long endTime = System.nanoTime();
+        long totalTime = endTime - startTime;
+        System.out.println("Successfully converted " + totalLines + " csv entries into " + trades.size() +
+                " trades from " + filepath + " Total runtime: " + totalTime / 1000000 + " milliseconds");
+        return trades;
+    }
+
+    /**
+     * Folds the trades of a CSV file into an accumulator without ever holding the whole file in memory
+     * <p>
+     * The file is cut into newline-aligned chunks of roughly chunkSize bytes. Each chunk is parsed, folded into partial
+     * sums and discarded, so peak memory is set by the chunk size times the number of parsing threads rather than by
+     * the size of the file. Partial sums are merged exactly, trades without a timestamp are skipped
+     * </p>
+     * <p>
+     * NOTE: Files ending in .gz are decompressed on the fly by {@link GzipCSVReader}
+     * </p>
+     *
+     * @param filepath        Path to the csv file to read
+     * @param recordSeparator Character that separates entries in the provided csv file
+     * @param containsHeader  Whether the csv file contains a header
+     * @param accumulator     The accumulator to add the trades to
+     * @param chunkSize       The maximum number of bytes parsed into memory at once by each thread
+     * @throws IOException If unable to open or map filepath
+     */
+    public static void accumulateFromCSVFile(String filepath, String recordSeparator, boolean containsHeader,
+                                             VWAPAccumulator accumulator, int chunkSize) throws IOException {
+        if (GzipCSVReader.isGzipFile(filepath)) {
+            GzipCSVReader.accumulateFromCSVFile(filepath, recordSeparator, containsHeader, accumulator, chunkSize);
+            return;
+        }
+        long startTime = System.nanoTime();
+        if (filepath.isEmpty()) {
+            throw new IllegalArgumentException("File path cannot be empty");
+        }
+        if (recordSeparator.isEmpty()) {
+            throw new IllegalArgumentException("Line separator cannot be empty");
+        }
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        byte[] separator = recordSeparator.getBytes(StandardCharsets.UTF_8);
+        CurrencyPairDictionary currencyPairs = accumulator.getCurrencyPairs();
+
+        System.out.println("Reading from: " + filepath);
+        VWAPAccumulator fileSums;
+        try (FileChannel channel = FileChannel.open(Paths.get(filepath), StandardOpenOption.READ)) {
+            long[] bounds = chunkBounds(channel, containsHeader, chunkSize);
+            try {
+                fileSums = IntStream.range(0, bounds.length - 1).parallel()
+                        .mapToObj(i -> {
+                            Chunk chunk = parseChunk(channel, bounds[i], bounds[i + 1], separator, currencyPairs);
+                            VWAPAccumulator chunkSums = new VWAPAccumulator(currencyPairs, accumulator.getBucketMillis());
+                            chunkSums.addAll(chunk.trades);
+                            return chunkSums;
+                        })
+                        .reduce((left, right) -> {
+                            left.merge(right);
+                            return left;
+                        })
+                        .orElseGet(() -> new VWAPAccumulator(currencyPairs, accumulator.getBucketMillis()));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        accumulator.merge(fileSums);
+
+        long endTime = System.nanoTime();
+        long totalTime = endTime - startTime;
+        System.out.println("Successfully accumulated " + fileSums.size() + " buckets from " + filepath +
+                " Total runtime: " + totalTime / 1000000 + " milliseconds");
+    }
+
+    /**
+     * Splits the file into chunks which all begin at the start of a line
+     *
+     * @param maxChunkSize The largest chunk to produce, lines longer than this still form a single chunk
+     * @return Offsets of the chunk boundaries, starting after the header and ending at the end of the file
+     */
+    private static long[] chunkBounds(FileChannel channel, boolean containsHeader, int maxChunkSize)
+            throws IOException {
+        long size = channel.size();
+        long start = containsHeader ? skipLine(channel, 0, size) : 0;
+        long length = size - start;
+        if (length <= 0) {
+            return new long[]{start, start};
+        }
+
+        long chunkCount = chunkCount(length, maxChunkSize);
+        long[] bounds = new long[(int) chunkCount + 1];
+        bounds[0] = start;
+        for (int i = 1; i < chunkCount; i++) {
+            long nominal = start + length / chunkCount * i;
+            bounds[i] = Math.max(bounds[i - 1], nextLineStart(channel, nominal, size));
+        }
+        bounds[(int) chunkCount] = size;
+
+        // Collapse empty chunks left behind by very long lines
+        return Arrays.stream(bounds).distinct().toArray();
+    }
+
+    /**
+     * @return Enough chunks to keep every core busy, without any chunk below 1MB or above maxChunkSize
+     */
+    static long chunkCount(long length, int maxChunkSize) {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        long chunkCount = Math.min(parallelism * 4L, length / MIN_CHUNK_SIZE);
+        chunkCount = Math.max(chunkCount, (length + maxChunkSize - 1) / maxChunkSize);
+        return Math.max(chunkCount, 1);
+    }
+
+    /**
+     * @return The offset of the first line that starts at or after position
+     */
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long offset = position - 1;
+        while (offset < size) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+        return size;
+    }
+
+    /**
+     * @return The offset of the line following the one that starts at position
+     */
+    private static long skipLine(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long offset = position;
+        boolean sawCarriageReturn = false;
+        while (offset < size) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (sawCarriageReturn) {
+                    return b == '\n' ? offset + i + 1 : offset + i;
+                } else if (b == '\n') {
+                    return offset + i + 1;
+                } else if (b == '\r') {
+                    sawCarriageReturn = true;
+                }
+            }
+            offset += read;
+        }
+        return size;
+    }
+
+    private static Chunk parseChunk(FileChannel channel, long start, long end, byte[] separator,
+                                    CurrencyPairDictionary currencyPairs) {
+        long startTime = System.nanoTime();
+        int length = (int) (end - start);
+        Chunk chunk = new Chunk(currencyPairs, Math.max(16, length / 40));
+        if (length == 0) {
+            return chunk;
+        }
+
+        MappedByteBuffer buffer;
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        parseLines(buffer, 0, length, separator, chunk);
+        Metrics.ROWS_READ.add(chunk.lines);
+        Metrics.recordStage(Stage.READ, startTime, chunk.lines);
+        return chunk;
+    }
+
+    /**
+     * Parses every line between start and end of a buffer into a chunk. Lines end at \n, \r or \r\n
+     */
+    static void parseLines(ByteBuffer buffer, int start, int end, byte[] separator, Chunk chunk) {
+        int[] fieldStarts = new int[4];
+        int[] fieldEnds = new int[4];
+        int position = start;
+        while (position < end) {
+            int lineEnd = position;
+            byte b = 0;
+            while (lineEnd < end) {
+                b = buffer.get(lineEnd);
+                if (b == '\n' || b == '\r') {
+                    break;
+                }
+                lineEnd++;
+            }
+            parseLine(buffer, position, lineEnd, separator, fieldStarts, fieldEnds, chunk);
+            position = lineEnd + 1;
+            if (b == '\r' && position < end && buffer.get(position) == '\n') {
+                position++;
+            }
+        }
+    }
+
+    /**
+     * @return The position of the line following the one that starts at position, or end if it is the last line
+     */
+    static int skipLine(ByteBuffer buffer, int position, int end) {
+        for (int i = position; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == '\n') {
+                return i + 1;
+            } else if (b == '\r') {
+                return i + 1 < end && buffer.get(i + 1) == '\n' ? i + 2 : i + 1;
+            }
+        }
+        return end;
+    }
+
+    private static void parseLine(ByteBuffer buffer, int start, int end, byte[] separator,
+                                  int[] fieldStarts, int[] fieldEnds, Chunk chunk) {
+        chunk.lines++;
+
+        // Mirror String.split: separators match left to right and trailing empty fields are discarded
+        int fieldCount = 0;
+        int lastNonEmptyField = 0;
+        int fieldStart = start;
+        int i = start;
+        while (true) {
+            boolean atSeparator = i < end && matches(buffer, i, end, separator);
+            if (i == end || atSeparator) {
+                if (fieldCount < 4) {
+                    fieldStarts[fieldCount] = fieldStart;
+                    fieldEnds[fieldCount] = i;
+                }
+                fieldCount++;
+                if (i > fieldStart) {
+                    lastNonEmptyField = fieldCount;
+                }
+                if (i == end) {
+                    break;
+                }
+                i += separator.length;
+                fieldStart = i;
+            } else {
+                i++;
+            }
+        }
+
+        if (lastNonEmptyField != 4) {
+            Metrics.ROWS_REJECTED.increment();
+            Metrics.reportRejected("Invalid CSV entry, should contain 4 data points: " + string(buffer, start, end));
+            return;
+        }
+
+        long epochMilli = parseTimestamp(buffer, fieldStarts[0], fieldEnds[0]);
+        int pairId = chunk.pairs.intern(buffer, fieldStarts[1], fieldEnds[1]);
+
+        double price = 0;
+        try {
+            price = parseDouble(buffer, fieldStarts[2], fieldEnds[2]);
+        } catch (NumberFormatException e) {
+            Metrics.reportRejected("Invalid price: " + string(buffer, fieldStarts[2], fieldEnds[2]));
+        }
+        if (!FixedPointVWAP.isRepresentable(price)) {
+            Metrics.ROWS_REJECTED.increment();
+            Metrics.reportRejected("Invalid CSV entry, price cannot be represented in fixed point: " +
+                    string(buffer, start, end));
+            return;
+        }
+
+        int volume = 0;
+        try {
+            volume = parseInt(buffer, fieldStarts[3], fieldEnds[3]);
+        } catch (NumberFormatException e) {
+            Metrics.reportRejected("Invalid volume: " + string(buffer, fieldStarts[3], fieldEnds[3]));
+        }
+
+        chunk.trades.add(epochMilli, pairId, price, volume);
+    }
+
+    private static boolean matches(ByteBuffer buffer, int position, int end, byte[] separator) {
+        if (end - position < separator.length) {
+            return false;
+        }
+        for (int i = 0; i < separator.length; i++) {
+            if (buffer.get(position + i) != separator[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses an ISO-8601 instant such as 2024-10-24T10:15:30.00Z into epoch milliseconds, falling back to
+     * {@link Instant#parse(CharSequence)} for any form outside of the common UTC layout
+     *
+     * @return The epoch milliseconds, or {@link #NO_TIMESTAMP} if the timestamp is invalid
+     */
+    static long parseTimestamp(ByteBuffer buffer, int start, int end) {
+        long epochMilli = parseTimestampFast(buffer, start, end);
+        if (epochMilli != NO_TIMESTAMP) {
+            return epochMilli;
+        }
+
+        String text = string(buffer, start, end);
+        try {
+            return Instant.parse(text).toEpochMilli();
+        } catch (DateTimeParseException | ArithmeticException e) {
+            Metrics.NULL_TIMESTAMPS.increment();
+            Metrics.reportRejected("Invalid timestamp: " + text);
+            return NO_TIMESTAMP;
+        }
+    }
+
+    private static long parseTimestampFast(ByteBuffer buffer, int start, int end) {
+        int length = end - start;
+        if (length < 20 || buffer.get(start + 4) != '-' || buffer.get(start + 7) != '-'
+                || buffer.get(start + 10) != 'T' || buffer.get(start + 13) != ':' || buffer.get(start + 16) != ':'
+                || buffer.get(end - 1) != 'Z') {
+            return NO_TIMESTAMP;
+        }
+        int year = digits(buffer, start, 4);
+        int month = digits(buffer, start + 5, 2);
+        int day = digits(buffer, start + 8, 2);
+        int hour = digits(buffer, start + 11, 2);
+        int minute = digits(buffer, start + 14, 2);
+        int second = digits(buffer, start + 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return NO_TIMESTAMP;
+        }
+
+        int millis = 0;
+        if (length > 20) {
+            int fractionDigits = length - 21;
+            if (buffer.get(start + 19) != '.' || fractionDigits < 1 || fractionDigits > 9) {
+                return NO_TIMESTAMP;
+            }
+            int fraction = digits(buffer, start + 20, fractionDigits);
+            if (fraction < 0) {
+                return NO_TIMESTAMP;
+            }
+            for (int i = fractionDigits; i < 3; i++) {
+                fraction *= 10;
+            }
+            for (int i = 3; i < fractionDigits; i++) {
+                fraction /= 10;
+            }
+            millis = fraction;
+        }
+
+        long seconds = epochDay(year, month, day) * 86400L + hour * 3600L + minute * 60L + second;
+        return seconds * 1000L + millis;
+    }
+
+    /**
+     * @return The decimal value of count ASCII digits starting at position, or -1 if any byte is not a digit
+     */
+    private static int digits(ByteBuffer buffer, int position, int count) {
+        int value = 0;
+        for (int i = 0; i < count; i++) {
+            int digit = buffer.get(position + i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    /**
+     * Same arithmetic as LocalDate.toEpochDay for non-negative years
+     */
+    private static long epochDay(int year, int month, int day) {
+        long total = 365L * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (!isLeapYear(year)) {
+                total--;
+            }
+        }
+        return total - DAYS_0000_TO_1970;
+    }
+
+    /**
+     * Parses a plain decimal such as 142.497 without allocating. Values with more than 15 significant digits, an
+     * exponent or any other syntax accepted by {@link Double#parseDouble(String)} are handed to that method, so the
+     * result is always identical to it
+     *
+     * @throws NumberFormatException If the bytes do not contain a parsable double
+     */
+    static double parseDouble(ByteBuffer buffer, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int fractionDigits = 0;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                seenDigit = true;
+                if (seenPoint) {
+                    fractionDigits++;
+                }
+                if (mantissa != 0 || b != '0') {
+                    if (++significantDigits > MAX_FAST_PATH_DIGITS) {
+                        return Double.parseDouble(string(buffer, start, end));
+                    }
+                    mantissa = mantissa * 10 + (b - '0');
+                }
+            } else if (b == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                return Double.parseDouble(string(buffer, start, end));
+            }
+        }
+        if (!seenDigit || fractionDigits >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(string(buffer, start, end));
+        }
+
+        // Both operands are exact doubles, so a single correctly rounded division gives the correctly rounded result
+        double value = fractionDigits == 0 ? mantissa : mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a decimal int without allocating, with the same overflow rules as {@link Integer#parseInt(String)}
+     *
+     * @throws NumberFormatException If the bytes do not contain a parsable int
+     */
+    static int parseInt(ByteBuffer buffer, int start, int end) {
+        int i = start;
+        if (i == end) {
+            throw new NumberFormatException();
+        }
+        boolean negative = false;
+        int limit = -Integer.MAX_VALUE;
+        byte first = buffer.get(i);
+        if (first < '0') {
+            if (first == '-') {
+                negative = true;
+                limit = Integer.MIN_VALUE;
+            } else if (first != '+') {
+                return Integer.parseInt(string(buffer, start, end));
+            }
+            if (++i == end) {
+                throw new NumberFormatException();
+            }
+        }
+
+        int multiplyMin = limit / 10;
+        int result = 0;
+        for (; i < end; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                // Let the JDK decide on anything unusual, such as non-ASCII digits
+                return Integer.parseInt(string(buffer, start, end));
+            }
+            if (result < multiplyMin) {
+                throw new NumberFormatException();
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw new NumberFormatException();
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    static String string(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parsed trades of a single chunk of the file
+     */
+    static final class Chunk {
+        final TradeBatch trades;
+        final PairTable pairs;
+        int lines;
+
+        Chunk(CurrencyPairDictionary currencyPairs, int capacity) {
+            this(new TradeBatch(currencyPairs, capacity), new PairTable(currencyPairs));
+        }
+
+        Chunk(TradeBatch trades, PairTable pairs) {
+            this.trades = trades;
+            this.pairs = pairs;
+        }
+    }
+
+    /**
+     * Open-addressing table that caches the dictionary id of currency pair bytes, so each chunk allocates a String and
+     * touches the shared dictionary only once per distinct pair
+     */
+    static final class PairTable {
+        private final CurrencyPairDictionary currencyPairs;
+        private int[] slots = new int[64];
+        private int[] hashes = new int[32];
+        private byte[][] keys = new byte[32][];
+        private int[] ids = new int[32];
+        private int size;
+
+        PairTable(CurrencyPairDictionary currencyPairs) {
+            this.currencyPairs = currencyPairs;
+            Arrays.fill(slots, -1);
+        }
+
+        int intern(ByteBuffer buffer, int start, int end) {
+            int hash = 1;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + buffer.get(i);
+            }
+            int mask = slots.length - 1;
+            for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+                int entry = slots[slot];
+                if (entry < 0) {
+                    return insert(slot, hash, buffer, start, end);
+                }
+                if (hashes[entry] == hash && equalTo(keys[entry], buffer, start, end)) {
+                    return ids[entry];
+                }
+            }
+        }
+
+        private int insert(int slot, int hash, ByteBuffer buffer, int start, int end) {
+            if (size == keys.length) {
+                hashes = Arrays.copyOf(hashes, size * 2);
+                keys = Arrays.copyOf(keys, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            byte[] key = new byte[end - start];
+            for (int i = 0; i < key.length; i++) {
+                key[i] = buffer.get(start + i);
+            }
+            int entry = size++;
+            hashes[entry] = hash;
+            keys[entry] = key;
+            ids[entry] = currencyPairs.intern(new String(key, StandardCharsets.UTF_8));
+            slots[slot] = entry;
+            if (size * 2 > slots.length) {
+                rehash();
+            }
+            return ids[entry];
+        }
+
+        private void rehash() {
+            slots = new int[slots.length * 2];
+            Arrays.fill(slots, -1);
+            int mask = slots.length - 1;
+            for (int entry = 0; entry < size; entry++) {
+                int slot = mix(hashes[entry]) & mask;
+                while (slots[slot] >= 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = entry;
+            }
+        }
+
+        private static boolean equalTo(byte[] key, ByteBuffer buffer, int start, int end) {
+            if (key.length != end - start) {
+                return false;
+            }
+            for (int i = 0; i < key.length; i++) {
+                if (key[i] != buffer.get(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
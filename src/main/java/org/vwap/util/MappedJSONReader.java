@@ -0,0 +1,686 @@
+package org.vwap.util;
+
+import org.vwap.calculator.FixedPointVWAP;
+import org.vwap.calculator.VWAPAccumulator;
+import org.vwap.metrics.Metrics;
+import org.vwap.metrics.Stage;
+import org.vwap.model.CurrencyPairDictionary;
+import org.vwap.model.Trade;
+import org.vwap.model.TradeBatch;
+import org.vwap.util.MappedCSVReader.Chunk;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.vwap.util.MappedCSVReader.parseDouble;
+import static org.vwap.util.MappedCSVReader.parseInt;
+import static org.vwap.util.MappedCSVReader.parseTimestamp;
+import static org.vwap.util.MappedCSVReader.string;
+
+/**
+ * Provides static methods to map trade data from JSON files into a {@link TradeBatch} using memory-mapped I/O
+ * <p>
+ * Expects a JSON array of flat objects with the fields timestamp, currencyPair, price and volume, in any order. The file
+ * is tokenized straight from the mapped bytes without building a document tree: each object is scanned once and its
+ * values are parsed into primitives by the same routines as {@link MappedCSVReader}, so heap use does not grow with the
+ * size of the file beyond the trades themselves. Like the CSV reader, the file is cut into chunks at object boundaries
+ * which are parsed concurrently
+ * </p>
+ * <p>
+ * NOTE: Chunk boundaries are the commas between the objects of the array. A comma or brace inside a string or a nested
+ * value can not be told apart from a separator by looking at the bytes around it, so finding them tracks strings and
+ * nesting depth from the start of the file. That pass is split into slices combined by a prefix, so it runs in
+ * parallel like the parse. A backslash escapes the next byte wherever it appears, which only differs from JSON for
+ * files that are malformed anyway
+ * </p>
+ */
+public class MappedJSONReader {
+
+    public static final String FILE_EXTENSION = ".json";
+
+    private static final byte[] TIMESTAMP = "timestamp".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CURRENCY_PAIR = "currencyPair".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] PRICE = "price".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] VOLUME = "volume".getBytes(StandardCharsets.UTF_8);
+
+    private MappedJSONReader() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * @return Whether filepath names a JSON file
+     */
+    public static boolean isJSONFile(String filepath) {
+        return filepath.endsWith(FILE_EXTENSION);
+    }
+
+    /**
+     * Converts trade data from a JSON file into Trade objects
+     * <p>
+     * NOTE: Chunks are parsed concurrently but the returned list preserves the order of the file
+     * </p>
+     *
+     * @param filepath Path to the JSON file to read
+     * @return A list of Trade objects
+     * @throws IOException If unable to open or map filepath, or if the file is not a JSON array of objects
+     */
+    public static List<Trade> readFromJSONFile(String filepath) throws IOException {
+        return new ArrayList<>(readTradeBatchFromJSONFile(filepath).asTrades());
+    }
+
+    /**
+     * Converts trade data from a JSON file into a columnar TradeBatch with its own currency pair dictionary
+     *
+     * @see #readTradeBatchFromJSONFile(String, CurrencyPairDictionary)
+     */
+    public static TradeBatch readTradeBatchFromJSONFile(String filepath) throws IOException {
+        return readTradeBatchFromJSONFile(filepath, new CurrencyPairDictionary());
+    }
+
+    /**
+     * Converts trade data from a JSON file into a columnar TradeBatch
+     * <p>
+     * Objects missing any of the four fields are skipped. Invalid timestamps are stored as
+     * {@link TradeBatch#NO_TIMESTAMP}, invalid prices and volumes as 0. Other fields are ignored
+     * </p>
+     *
+     * @param filepath      Path to the JSON file to read
+     * @param currencyPairs Dictionary to intern currency pairs into, which may be shared between several files
+     * @return A TradeBatch holding the trades in file order
+     * @throws IOException If unable to open or map filepath, or if the file is not a JSON array of objects
+     */
+    public static TradeBatch readTradeBatchFromJSONFile(String filepath, CurrencyPairDictionary currencyPairs)
+            throws IOException {
+        long startTime = System.nanoTime();
+        if (filepath.isEmpty()) {
+            throw new IllegalArgumentException("File path cannot be empty");
+        }
+
+        System.out.println("Reading from: " + filepath);
+        List<Chunk> chunks;
+        try (FileChannel channel = FileChannel.open(Paths.get(filepath), StandardOpenOption.READ)) {
+            long[] bounds = chunkBounds(channel, MappedCSVReader.MAX_CHUNK_SIZE);
+            try {
+                chunks = IntStream.range(0, bounds.length - 1).parallel()
+                        .mapToObj(i -> parseChunk(channel, bounds[i], bounds[i + 1], currencyPairs))
+                        .collect(Collectors.toList());
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+
+        int totalTrades = 0;
+        int totalObjects = 0;
+        for (Chunk chunk : chunks) {
+            totalTrades += chunk.trades.size();
+            totalObjects += chunk.lines;
+        }
+        TradeBatch trades = new TradeBatch(currencyPairs, totalTrades);
+        for (Chunk chunk : chunks) {
+            trades.addAll(chunk.trades);
+        }
+
+        long endTime = System.nanoTime();
+        long totalTime = endTime - startTime;
+        System.out.println("Successfully converted " + totalObjects + " json entries into " + trades.size() +
+                " trades from " + filepath + " Total runtime: " + totalTime / 1000000 + " milliseconds");
+        return trades;
+    }
+
+    /**
+     * Folds the trades of a JSON file into an accumulator without ever holding the whole file in memory
+     *
+     * @param filepath    Path to the JSON file to read
+     * @param accumulator The accumulator to add the trades to
+     * @param chunkSize   The maximum number of bytes parsed into memory at once by each thread
+     * @throws IOException If unable to open or map filepath, or if the file is not a JSON array of objects
+     * @see MappedCSVReader#accumulateFromCSVFile(String, String, boolean, VWAPAccumulator, int)
+     */
+    public static void accumulateFromJSONFile(String filepath, VWAPAccumulator accumulator, int chunkSize)
+            throws IOException {
+        long startTime = System.nanoTime();
+        if (filepath.isEmpty()) {
+            throw new IllegalArgumentException("File path cannot be empty");
+        }
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        CurrencyPairDictionary currencyPairs = accumulator.getCurrencyPairs();
+
+        System.out.println("Reading from: " + filepath);
+        VWAPAccumulator fileSums;
+        try (FileChannel channel = FileChannel.open(Paths.get(filepath), StandardOpenOption.READ)) {
+            long[] bounds = chunkBounds(channel, chunkSize);
+            try {
+                fileSums = IntStream.range(0, bounds.length - 1).parallel()
+                        .mapToObj(i -> {
+                            Chunk chunk = parseChunk(channel, bounds[i], bounds[i + 1], currencyPairs);
+                            VWAPAccumulator chunkSums = new VWAPAccumulator(currencyPairs, accumulator.getBucketMillis());
+                            chunkSums.addAll(chunk.trades);
+                            return chunkSums;
+                        })
+                        .reduce((left, right) -> {
+                            left.merge(right);
+                            return left;
+                        })
+                        .orElseGet(() -> new VWAPAccumulator(currencyPairs, accumulator.getBucketMillis()));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        accumulator.merge(fileSums);
+
+        long endTime = System.nanoTime();
+        long totalTime = endTime - startTime;
+        System.out.println("Successfully accumulated " + fileSums.size() + " buckets from " + filepath +
+                " Total runtime: " + totalTime / 1000000 + " milliseconds");
+    }
+
+    /**
+     * Splits the file into chunks which all begin at a comma between two objects of the array
+     * <p>
+     * The file is cut into one slice per chunk at the nominal boundaries, and the slices are scanned in parallel for
+     * how each changes the state of the structural pass: the parity of its unescaped quotes, and its change in nesting
+     * depth both if it starts outside and if it starts inside a string. A prefix over those few values gives the state
+     * at the start of every slice, from which the first separator of each is then found in parallel, usually within a
+     * few bytes
+     * </p>
+     *
+     * @param maxChunkSize The largest chunk to produce, objects longer than this still form a single chunk
+     * @return Offsets of the chunk boundaries, starting at the beginning and ending at the end of the file
+     */
+    private static long[] chunkBounds(FileChannel channel, int maxChunkSize) throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            return new long[]{0, 0};
+        }
+
+        int chunkCount = (int) MappedCSVReader.chunkCount(size, maxChunkSize);
+        long step = size / chunkCount;
+        long[] bounds = new long[chunkCount + 1];
+        try {
+            Slice[] slices = IntStream.range(0, chunkCount).parallel()
+                    .mapToObj(i -> scanSlice(channel, i * step, i == chunkCount - 1 ? size : (i + 1) * step))
+                    .toArray(Slice[]::new);
+            boolean[] inString = new boolean[chunkCount];
+            int[] depths = new int[chunkCount];
+            for (int i = 1; i < chunkCount; i++) {
+                Slice previous = slices[i - 1];
+                inString[i] = inString[i - 1] ^ previous.oddQuotes;
+                depths[i] = depths[i - 1] + (inString[i - 1] ? previous.depthIfInside : previous.depthIfOutside);
+            }
+            IntStream.range(1, chunkCount).parallel().forEach(i -> bounds[i] =
+                    nextSeparator(channel, i * step, size, slices[i].escaped, inString[i], depths[i]));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        bounds[chunkCount] = size;
+
+        // Every nominal offset that a long object runs past finds the same separator, so collapse the repeats
+        return Arrays.stream(bounds).distinct().toArray();
+    }
+
+    /**
+     * Scans the bytes [from, to) without knowing whether from is inside a string or how deeply it is nested
+     */
+    private static Slice scanSlice(FileChannel channel, long from, long to) {
+        ByteBuffer buffer = ByteBuffer.allocate(MappedCSVReader.SCAN_BUFFER_SIZE);
+        byte[] bytes = buffer.array();
+        Slice slice = new Slice();
+        try {
+            slice.escaped = isEscaped(channel, from);
+            boolean escaped = slice.escaped;
+            boolean quoted = false;
+            for (long offset = from; offset < to; ) {
+                buffer.clear();
+                buffer.limit((int) Math.min(bytes.length, to - offset));
+                int read = channel.read(buffer, offset);
+                if (read <= 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    byte b = bytes[i];
+                    if (escaped) {
+                        escaped = false;
+                    } else if (b == '\\') {
+                        escaped = true;
+                    } else if (b == '"') {
+                        quoted = !quoted;
+                    } else if (b == '{' || b == '[') {
+                        // Outside a string exactly when the quotes seen so far match the state at from
+                        if (quoted) {
+                            slice.depthIfInside++;
+                        } else {
+                            slice.depthIfOutside++;
+                        }
+                    } else if (b == '}' || b == ']') {
+                        if (quoted) {
+                            slice.depthIfInside--;
+                        } else {
+                            slice.depthIfOutside--;
+                        }
+                    }
+                }
+                offset += read;
+            }
+            slice.oddQuotes = quoted;
+            return slice;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return The offset of the first comma between two objects of the array at or after position, or size if there is
+     * none
+     */
+    private static long nextSeparator(FileChannel channel, long position, long size, boolean escaped,
+                                      boolean inString, int depth) {
+        ByteBuffer buffer = ByteBuffer.allocate(MappedCSVReader.SCAN_BUFFER_SIZE);
+        byte[] bytes = buffer.array();
+        try {
+            for (long offset = position; offset < size; ) {
+                buffer.clear();
+                int read = channel.read(buffer, offset);
+                if (read <= 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    byte b = bytes[i];
+                    if (escaped) {
+                        escaped = false;
+                    } else if (b == '\\') {
+                        escaped = true;
+                    } else if (b == '"') {
+                        inString = !inString;
+                    } else if (inString) {
+                        continue;
+                    } else if (b == '{' || b == '[') {
+                        depth++;
+                    } else if (b == '}' || b == ']') {
+                        depth--;
+                    } else if (b == ',' && depth == 1) {
+                        return offset + i;
+                    }
+                }
+                offset += read;
+            }
+            return size;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return Whether the byte at position follows an odd run of backslashes
+     */
+    private static boolean isEscaped(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        boolean escaped = false;
+        for (long offset = position - 1; offset >= 0; offset--) {
+            buffer.clear();
+            if (channel.read(buffer, offset) <= 0 || buffer.get(0) != '\\') {
+                break;
+            }
+            escaped = !escaped;
+        }
+        return escaped;
+    }
+
+    private static Chunk parseChunk(FileChannel channel, long start, long end, CurrencyPairDictionary currencyPairs) {
+        long startTime = System.nanoTime();
+        int length = (int) (end - start);
+        Chunk chunk = new Chunk(currencyPairs, Math.max(16, length / 100));
+        if (length == 0) {
+            return chunk;
+        }
+
+        MappedByteBuffer buffer;
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Tokenizer tokenizer = new Tokenizer(buffer, length, start);
+        // Separators between objects and the brackets of the array are structural noise at this level
+        while (true) {
+            byte b = tokenizer.skipWhitespace();
+            if (b == '[' || b == ',' || b == ']') {
+                tokenizer.position++;
+            } else if (b == '{') {
+                parseObject(tokenizer, chunk);
+            } else if (tokenizer.position == length) {
+                Metrics.ROWS_READ.add(chunk.lines);
+                Metrics.recordStage(Stage.READ, startTime, chunk.lines);
+                return chunk;
+            } else {
+                throw tokenizer.malformed("Expected an object");
+            }
+        }
+    }
+
+    private static void parseObject(Tokenizer tokenizer, Chunk chunk) {
+        ByteBuffer buffer = tokenizer.buffer;
+        int objectStart = tokenizer.position++;
+        chunk.lines++;
+
+        long epochMilli = TradeBatch.NO_TIMESTAMP;
+        int pairId = -1;
+        double price = 0;
+        int volume = 0;
+        int fieldsFound = 0;
+
+        if (tokenizer.skipWhitespace() == '}') {
+            tokenizer.position++;
+        } else {
+            while (true) {
+                int keyStart = tokenizer.string();
+                int keyEnd = tokenizer.valueEnd;
+                tokenizer.expect(':');
+                tokenizer.skipWhitespace();
+
+                if (keyMatches(buffer, keyStart, keyEnd, TIMESTAMP)) {
+                    fieldsFound |= 1;
+                    epochMilli = parseTimestampValue(tokenizer);
+                } else if (keyMatches(buffer, keyStart, keyEnd, CURRENCY_PAIR)) {
+                    fieldsFound |= 2;
+                    pairId = parseCurrencyPairValue(tokenizer, chunk);
+                } else if (keyMatches(buffer, keyStart, keyEnd, PRICE)) {
+                    fieldsFound |= 4;
+                    int valueStart = tokenizer.scalar();
+                    try {
+                        price = parseDouble(buffer, valueStart, tokenizer.valueEnd);
+                    } catch (NumberFormatException e) {
+                        Metrics.reportRejected("Invalid price: " + string(buffer, valueStart, tokenizer.valueEnd));
+                    }
+                } else if (keyMatches(buffer, keyStart, keyEnd, VOLUME)) {
+                    fieldsFound |= 8;
+                    int valueStart = tokenizer.scalar();
+                    try {
+                        volume = parseInt(buffer, valueStart, tokenizer.valueEnd);
+                    } catch (NumberFormatException e) {
+                        Metrics.reportRejected("Invalid volume: " + string(buffer, valueStart, tokenizer.valueEnd));
+                    }
+                } else {
+                    tokenizer.skipValue();
+                }
+
+                byte b = tokenizer.skipWhitespace();
+                tokenizer.position++;
+                if (b == '}') {
+                    break;
+                } else if (b != ',') {
+                    tokenizer.position--;
+                    throw tokenizer.malformed("Expected ',' or '}'");
+                }
+                tokenizer.skipWhitespace();
+            }
+        }
+
+        if (fieldsFound != 15 || pairId < 0) {
+            Metrics.ROWS_REJECTED.increment();
+            Metrics.reportRejected("Invalid JSON entry, should contain 4 data points: " +
+                    string(buffer, objectStart, tokenizer.position));
+            return;
+        }
+        if (!FixedPointVWAP.isRepresentable(price)) {
+            Metrics.ROWS_REJECTED.increment();
+            Metrics.reportRejected("Invalid JSON entry, price cannot be represented in fixed point: " +
+                    string(buffer, objectStart, tokenizer.position));
+            return;
+        }
+        chunk.trades.add(epochMilli, pairId, price, volume);
+    }
+
+    private static long parseTimestampValue(Tokenizer tokenizer) {
+        if (tokenizer.buffer.get(tokenizer.position) != '"') {
+            int valueStart = tokenizer.scalar();
+            Metrics.NULL_TIMESTAMPS.increment();
+            Metrics.reportRejected("Invalid timestamp: " + string(tokenizer.buffer, valueStart, tokenizer.valueEnd));
+            return TradeBatch.NO_TIMESTAMP;
+        }
+        int valueStart = tokenizer.string();
+        if (!tokenizer.escaped) {
+            return parseTimestamp(tokenizer.buffer, valueStart, tokenizer.valueEnd);
+        }
+        String text = unescape(tokenizer.buffer, valueStart, tokenizer.valueEnd);
+        try {
+            return Instant.parse(text).toEpochMilli();
+        } catch (DateTimeParseException | ArithmeticException e) {
+            Metrics.NULL_TIMESTAMPS.increment();
+            Metrics.reportRejected("Invalid timestamp: " + text);
+            return TradeBatch.NO_TIMESTAMP;
+        }
+    }
+
+    /**
+     * @return The dictionary id of the currency pair, or -1 if the value is not a string
+     */
+    private static int parseCurrencyPairValue(Tokenizer tokenizer, Chunk chunk) {
+        if (tokenizer.buffer.get(tokenizer.position) != '"') {
+            tokenizer.skipValue();
+            return -1;
+        }
+        int valueStart = tokenizer.string();
+        if (tokenizer.escaped) {
+            return chunk.trades.getCurrencyPairs().intern(unescape(tokenizer.buffer, valueStart, tokenizer.valueEnd));
+        }
+        return chunk.pairs.intern(tokenizer.buffer, valueStart, tokenizer.valueEnd);
+    }
+
+    private static boolean keyMatches(ByteBuffer buffer, int start, int end, byte[] key) {
+        if (end - start != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(start + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the escape sequences of a JSON string, e.g. USD\/JPY
+     */
+    private static String unescape(ByteBuffer buffer, int start, int end) {
+        String raw = string(buffer, start, end);
+        StringBuilder text = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c != '\\' || i + 1 == raw.length()) {
+                text.append(c);
+                continue;
+            }
+            char escape = raw.charAt(++i);
+            switch (escape) {
+                case 'b':
+                    text.append('\b');
+                    break;
+                case 'f':
+                    text.append('\f');
+                    break;
+                case 'n':
+                    text.append('\n');
+                    break;
+                case 'r':
+                    text.append('\r');
+                    break;
+                case 't':
+                    text.append('\t');
+                    break;
+                case 'u':
+                    if (i + 4 < raw.length()) {
+                        try {
+                            text.append((char) Integer.parseInt(raw.substring(i + 1, i + 5), 16));
+                            i += 4;
+                            break;
+                        } catch (NumberFormatException e) {
+                            // Keep the sequence as it is
+                        }
+                    }
+                    text.append('\\').append(escape);
+                    break;
+                default:
+                    text.append(escape);
+            }
+        }
+        return text.toString();
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    /**
+     * How a slice of the file changes the state of the structural pass, whatever that state is at its start
+     */
+    private static final class Slice {
+        private boolean escaped;
+        private boolean oddQuotes;
+        private int depthIfOutside;
+        private int depthIfInside;
+    }
+
+    /**
+     * Cursor over the bytes of a chunk. Methods that read a token leave position just after it and report the end of
+     * its content in valueEnd
+     */
+    private static final class Tokenizer {
+        private final ByteBuffer buffer;
+        private final int length;
+        private final long fileOffset;
+        private int position;
+        private int valueEnd;
+        private boolean escaped;
+
+        private Tokenizer(ByteBuffer buffer, int length, long fileOffset) {
+            this.buffer = buffer;
+            this.length = length;
+            this.fileOffset = fileOffset;
+        }
+
+        /**
+         * @return The byte at the new position, or 0 at the end of the chunk
+         */
+        private byte skipWhitespace() {
+            while (position < length) {
+                byte b = buffer.get(position);
+                if (!isWhitespace(b)) {
+                    return b;
+                }
+                position++;
+            }
+            return 0;
+        }
+
+        private void expect(char c) {
+            if (skipWhitespace() != c) {
+                throw malformed("Expected '" + c + "'");
+            }
+            position++;
+        }
+
+        /**
+         * Reads a string token
+         *
+         * @return The offset of the first byte inside the quotes
+         */
+        private int string() {
+            if (position == length || buffer.get(position) != '"') {
+                throw malformed("Expected a string");
+            }
+            int start = ++position;
+            escaped = false;
+            while (position < length) {
+                byte b = buffer.get(position);
+                if (b == '"') {
+                    valueEnd = position++;
+                    return start;
+                }
+                if (b == '\\') {
+                    escaped = true;
+                    position++;
+                }
+                position++;
+            }
+            throw malformed("Unterminated string");
+        }
+
+        /**
+         * Reads a number or literal, or the content of a string, for parsing as a number
+         *
+         * @return The offset of the first byte of the value
+         */
+        private int scalar() {
+            if (position < length && buffer.get(position) == '"') {
+                return string();
+            }
+            int start = position;
+            while (position < length) {
+                byte b = buffer.get(position);
+                if (isWhitespace(b) || b == ',' || b == '}' || b == ']') {
+                    break;
+                }
+                position++;
+            }
+            if (position == start) {
+                throw malformed("Expected a value");
+            }
+            valueEnd = position;
+            return start;
+        }
+
+        /**
+         * Skips a value of any type, including nested objects and arrays
+         */
+        private void skipValue() {
+            byte first = position < length ? buffer.get(position) : 0;
+            if (first == '"') {
+                string();
+                return;
+            }
+            if (first != '{' && first != '[') {
+                scalar();
+                return;
+            }
+            int depth = 0;
+            while (position < length) {
+                byte b = buffer.get(position);
+                if (b == '"') {
+                    string();
+                    continue;
+                }
+                if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    depth--;
+                }
+                position++;
+                if (depth == 0) {
+                    return;
+                }
+            }
+            throw malformed("Unterminated value");
+        }
+
+        private UncheckedIOException malformed(String message) {
+            return new UncheckedIOException(new IOException("Malformed JSON at offset " + (fileOffset + position) +
+                    ": " + message));
+        }
+    }
+}
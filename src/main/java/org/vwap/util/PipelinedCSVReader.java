@@ -0,0 +1,373 @@
+package org.vwap.util;
+
+import lombok.Getter;
+import org.vwap.calculator.VWAPAccumulator;
+import org.vwap.metrics.Metrics;
+import org.vwap.metrics.Stage;
+import org.vwap.model.CurrencyPairDictionary;
+import org.vwap.model.TradeBatch;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Folds CSV files into hourly sums with reading, parsing and aggregation running at the same time
+ * <p>
+ * Three pools of threads are connected by {@link RingBuffer}s. I/O threads read newline-aligned blocks of raw bytes,
+ * parser threads turn each block into a {@link TradeBatch} and aggregator threads fold the batches into their own
+ * {@link VWAPAccumulator}, which are merged once every file has been read. While one block is being parsed the next is
+ * already being read, so the total time approaches the slower of I/O and compute rather than their sum
+ * </p>
+ * <p>
+ * Blocks and batches are allocated once and recycled through free rings, so a stage that runs ahead waits for a free
+ * block or batch instead of allocating more. Memory is bounded by the block size times the number of blocks, plus one
+ * carry-over block per I/O thread, whatever the size or number of files
+ * </p>
+ * <p>
+ * NOTE: Partial sums merge exactly, so the result does not depend on the number of threads in any stage. Files ending
+ * in .gz are decompressed by their I/O thread as they are read
+ * </p>
+ */
+public class PipelinedCSVReader {
+
+    public static final int DEFAULT_BLOCK_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Typical length of a trade line, used to size the preallocated batches
+     */
+    private static final int BYTES_PER_LINE = 40;
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    @Getter
+    private final int ioThreads;
+    @Getter
+    private final int parserThreads;
+    @Getter
+    private final int aggregatorThreads;
+    @Getter
+    private final int blockSize;
+    @Getter
+    private final int blockCount;
+    private final String recordSeparator;
+    private final boolean containsHeader;
+
+    /**
+     * Creates a pipeline with one I/O thread, a parser for every other core and an aggregator per four cores
+     */
+    public PipelinedCSVReader() {
+        this(1, Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+                Math.max(1, Runtime.getRuntime().availableProcessors() / 4), DEFAULT_BLOCK_SIZE,
+                2 * Runtime.getRuntime().availableProcessors(), ",", true);
+    }
+
+    /**
+     * @param ioThreads         The number of files read at once
+     * @param parserThreads     The number of blocks parsed at once
+     * @param aggregatorThreads The number of batches folded into sums at once
+     * @param blockSize         The number of bytes read at once, which must exceed the longest line
+     * @param blockCount        The number of raw blocks, and of parsed batches, that exist at any time
+     * @param recordSeparator   Character that separates entries in the csv files
+     * @param containsHeader    Whether the csv files contain a header
+     */
+    public PipelinedCSVReader(int ioThreads, int parserThreads, int aggregatorThreads, int blockSize, int blockCount,
+                              String recordSeparator, boolean containsHeader) {
+        if (ioThreads <= 0 || parserThreads <= 0 || aggregatorThreads <= 0) {
+            throw new IllegalArgumentException("Thread count must be positive");
+        }
+        if (blockSize <= 0 || blockCount <= 0) {
+            throw new IllegalArgumentException("Block size and count must be positive");
+        }
+        if (recordSeparator.isEmpty()) {
+            throw new IllegalArgumentException("Line separator cannot be empty");
+        }
+        this.ioThreads = ioThreads;
+        this.parserThreads = parserThreads;
+        this.aggregatorThreads = aggregatorThreads;
+        this.blockSize = blockSize;
+        this.blockCount = blockCount;
+        this.recordSeparator = recordSeparator;
+        this.containsHeader = containsHeader;
+    }
+
+    /**
+     * Folds every trade of every file into one set of partial sums
+     * <p>
+     * NOTE: Only CSV files go through the pipeline, binary trade files and JSON files are folded in by their own readers
+     * </p>
+     *
+     * @param filepaths CSV, JSON or binary trade files
+     * @return The combined partial sums of all files
+     * @throws IOException If unable to read any of the files, or a line is longer than the block size
+     */
+    public VWAPAccumulator accumulate(List<String> filepaths) throws IOException {
+        VWAPAccumulator accumulator = new VWAPAccumulator(new CurrencyPairDictionary());
+        List<String> csvFiles = new ArrayList<>();
+        for (String filepath : filepaths) {
+            if (filepath.isEmpty()) {
+                throw new IllegalArgumentException("File path cannot be empty");
+            } else if (BinaryTradeFile.isBinaryTradeFile(filepath)) {
+                BinaryTradeFile.accumulate(filepath, accumulator);
+            } else if (MappedJSONReader.isJSONFile(filepath)) {
+                MappedJSONReader.accumulateFromJSONFile(filepath, accumulator, blockSize);
+            } else {
+                csvFiles.add(filepath);
+            }
+        }
+        if (!csvFiles.isEmpty()) {
+            long startTime = System.nanoTime();
+            Run run = new Run(csvFiles, accumulator.getCurrencyPairs());
+            run.execute();
+            for (VWAPAccumulator sums : run.partialSums) {
+                accumulator.merge(sums);
+            }
+            long totalTime = System.nanoTime() - startTime;
+            System.out.println("Successfully accumulated " + accumulator.size() + " buckets from " + csvFiles.size() +
+                    " csv files Total runtime: " + totalTime / 1000000 + " milliseconds");
+        }
+        return accumulator;
+    }
+
+    /**
+     * @return A channel over the bytes of the file, decompressed as they are read if the file ends in .gz
+     */
+    static ReadableByteChannel open(String filepath) throws IOException {
+        if (GzipCSVReader.isGzipFile(filepath)) {
+            return Channels.newChannel(new GZIPInputStream(Files.newInputStream(Paths.get(filepath)),
+                    GZIP_BUFFER_SIZE));
+        }
+        return FileChannel.open(Paths.get(filepath), StandardOpenOption.READ);
+    }
+
+    /**
+     * @return The offset just past the last \n in the first length bytes, or -1 if there is none
+     */
+    static int lastLineEnd(byte[] bytes, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (bytes[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Raw bytes of whole lines of a file
+     */
+    private static final class Block {
+        final byte[] bytes;
+        final ByteBuffer buffer;
+        int length;
+        boolean skipHeader;
+
+        Block(int size) {
+            bytes = new byte[size];
+            buffer = ByteBuffer.wrap(bytes);
+        }
+    }
+
+    @FunctionalInterface
+    private interface StageTask {
+        void run() throws Exception;
+    }
+
+    /**
+     * The rings, threads and outcome of a single call to {@link #accumulate(List)}
+     */
+    private final class Run {
+        final List<String> filepaths;
+        final CurrencyPairDictionary currencyPairs;
+        final byte[] separator = recordSeparator.getBytes(StandardCharsets.UTF_8);
+        final RingBuffer<Block> freeBlocks = new RingBuffer<>(blockCount);
+        final RingBuffer<Block> filledBlocks = new RingBuffer<>(blockCount);
+        final RingBuffer<TradeBatch> freeBatches = new RingBuffer<>(blockCount);
+        final RingBuffer<TradeBatch> parsedBatches = new RingBuffer<>(blockCount);
+        final VWAPAccumulator[] partialSums = new VWAPAccumulator[aggregatorThreads];
+        final AtomicInteger nextFile = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final List<Thread> threads = new ArrayList<>();
+
+        Run(List<String> filepaths, CurrencyPairDictionary currencyPairs) throws IOException {
+            this.filepaths = filepaths;
+            this.currencyPairs = currencyPairs;
+            try {
+                for (int i = 0; i < blockCount; i++) {
+                    freeBlocks.put(new Block(blockSize));
+                    freeBatches.put(new TradeBatch(currencyPairs, Math.max(16, blockSize / BYTES_PER_LINE)));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while allocating blocks");
+            }
+        }
+
+        void execute() throws IOException {
+            AtomicInteger readers = new AtomicInteger(ioThreads);
+            AtomicInteger parsers = new AtomicInteger(parserThreads);
+            for (int i = 0; i < ioThreads; i++) {
+                start("pipeline-io-" + i, this::read, readers, filledBlocks);
+            }
+            for (int i = 0; i < parserThreads; i++) {
+                start("pipeline-parser-" + i, this::parse, parsers, parsedBatches);
+            }
+            for (int i = 0; i < aggregatorThreads; i++) {
+                int index = i;
+                start("pipeline-aggregator-" + i, () -> aggregate(index), new AtomicInteger(1), null);
+            }
+
+            try {
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+            } catch (InterruptedException e) {
+                abort(e);
+                for (Thread thread : threads) {
+                    thread.interrupt();
+                }
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading csv files");
+            }
+
+            Throwable cause = failure.get();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else if (cause != null) {
+                throw new IOException("Failed to read csv files", cause);
+            }
+        }
+
+        /**
+         * Starts a stage thread. The last thread of a stage to finish closes the ring it feeds, which tells the next
+         * stage that no more items are coming
+         */
+        private void start(String name, StageTask task, AtomicInteger running, RingBuffer<?> downstream) {
+            Thread thread = new Thread(() -> {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    abort(e);
+                } finally {
+                    if (running.decrementAndGet() == 0 && downstream != null) {
+                        downstream.close();
+                    }
+                }
+            }, name);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+
+        /**
+         * Records the first failure and closes every ring, so all stages stop instead of waiting on each other
+         */
+        private void abort(Throwable cause) {
+            if (failure.compareAndSet(null, cause)) {
+                freeBlocks.close();
+                filledBlocks.close();
+                freeBatches.close();
+                parsedBatches.close();
+            }
+        }
+
+        private boolean aborted() {
+            return failure.get() != null;
+        }
+
+        /**
+         * I/O stage: reads files into free blocks, cut after the last complete line. The partial line at the end of a
+         * block is carried over to the start of the next
+         */
+        private void read() throws IOException, InterruptedException {
+            byte[] carry = new byte[blockSize];
+            for (int file = nextFile.getAndIncrement(); file < filepaths.size() && !aborted();
+                 file = nextFile.getAndIncrement()) {
+                String filepath = filepaths.get(file);
+                System.out.println("Reading from: " + filepath);
+                try (ReadableByteChannel channel = open(filepath)) {
+                    int carried = 0;
+                    boolean firstBlock = true;
+                    boolean endOfFile = false;
+                    while (!endOfFile) {
+                        Block block = freeBlocks.take();
+                        if (block == null) {
+                            return;
+                        }
+                        System.arraycopy(carry, 0, block.bytes, 0, carried);
+                        ByteBuffer buffer = block.buffer;
+                        buffer.clear();
+                        buffer.position(carried);
+                        while (buffer.hasRemaining() && !endOfFile) {
+                            endOfFile = channel.read(buffer) < 0;
+                        }
+
+                        int length = buffer.position();
+                        int end = endOfFile ? length : lastLineEnd(block.bytes, length);
+                        if (end < 0) {
+                            throw new IOException("Line longer than the block size of " + blockSize + " bytes in " +
+                                    filepath);
+                        }
+                        carried = length - end;
+                        System.arraycopy(block.bytes, end, carry, 0, carried);
+                        block.length = end;
+                        block.skipHeader = firstBlock && containsHeader;
+                        firstBlock = false;
+                        filledBlocks.put(block);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Parser stage: parses a block into a free batch, then hands the block back to the I/O stage
+         */
+        private void parse() throws InterruptedException {
+            MappedCSVReader.PairTable pairs = new MappedCSVReader.PairTable(currencyPairs);
+            Block block;
+            while ((block = filledBlocks.take()) != null && !aborted()) {
+                TradeBatch trades = freeBatches.take();
+                if (trades == null) {
+                    return;
+                }
+                long startTime = System.nanoTime();
+                trades.clear();
+                MappedCSVReader.Chunk chunk = new MappedCSVReader.Chunk(trades, pairs);
+                int start = block.skipHeader ? MappedCSVReader.skipLine(block.buffer, 0, block.length) : 0;
+                MappedCSVReader.parseLines(block.buffer, start, block.length, separator, chunk);
+                Metrics.ROWS_READ.add(chunk.lines);
+                Metrics.recordStage(Stage.READ, startTime, chunk.lines);
+
+                freeBlocks.put(block);
+                parsedBatches.put(trades);
+            }
+        }
+
+        /**
+         * Aggregator stage: folds batches into this thread's own sums, then hands each batch back to the parsers
+         */
+        private void aggregate(int index) throws InterruptedException {
+            VWAPAccumulator sums = new VWAPAccumulator(currencyPairs);
+            partialSums[index] = sums;
+            TradeBatch trades;
+            while ((trades = parsedBatches.take()) != null && !aborted()) {
+                sums.addAll(trades);
+                freeBatches.put(trades);
+            }
+        }
+    }
+}
@@ -0,0 +1,405 @@
+package org.vwap.util;
+
+import javafx.util.Pair;
+import org.vwap.calculator.HourlyVWAPListener;
+import org.vwap.calculator.VWAPAccumulator;
+import org.vwap.metrics.Metrics;
+import org.vwap.model.CurrencyPairDictionary;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes VWAP results to a channel through one large direct buffer, as CSV or as a compact binary format
+ * <p>
+ * Timestamps and numbers are formatted straight into the buffer and currency pair names are encoded once, so writing
+ * a row allocates nothing and the cost is dominated by the channel writes. Rows can be written from a finished
+ * accumulator, from a result map, or one at a time as a {@link HourlyVWAPListener} while trades are still being
+ * aggregated, e.g. from a StreamingVWAPCalculator
+ * </p>
+ * <p>
+ * CSV rows are {@code timestamp,currency pair,vwap} below a header, with timestamps as printed by
+ * {@link Instant#toString()} and the VWAP rounded to a fixed number of decimal places with trailing zeros removed. A
+ * bucket without a VWAP has an empty last column
+ * </p>
+ * <p>
+ * Binary layout, all values little endian: magic, version and reserved (8 bytes), then a stream of records each
+ * starting with an unsigned short currency pair id. An id of 0xFFFF defines the next currency pair id and is followed by
+ * an unsigned short name length and the UTF-8 name. Any other id is followed by the bucket start in epoch milliseconds
+ * and the VWAP as a double, NaN when the bucket has no VWAP. {@link #readBinary(String)} reads the file back
+ * </p>
+ * <p>
+ * NOTE: Not thread safe - rows must be written from a single thread
+ * </p>
+ */
+public class ResultWriter implements HourlyVWAPListener, AutoCloseable {
+
+    public static final String BINARY_FILE_EXTENSION = ".vwr";
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+    public static final int DEFAULT_DECIMAL_PLACES = 8;
+
+    private static final int MAGIC = 0x52575756;
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int DEFINITION = 0xFFFF;
+    private static final int MAX_CURRENCY_PAIRS = DEFINITION;
+    private static final int MAX_ROW_SIZE = 96;
+    private static final byte[] CSV_HEADER = "timestamp,currency_pair,vwap\n".getBytes(StandardCharsets.US_ASCII);
+    private static final long MILLIS_PER_DAY = 86400000;
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /**
+     * Output formats
+     */
+    public enum Format {
+        CSV, BINARY;
+
+        /**
+         * @return BINARY if filepath ends with {@link #BINARY_FILE_EXTENSION}, otherwise CSV
+         */
+        public static Format of(String filepath) {
+            return filepath.endsWith(BINARY_FILE_EXTENSION) ? BINARY : CSV;
+        }
+    }
+
+    private final WritableByteChannel channel;
+    private final Format format;
+    private final int decimalPlaces;
+    private final double maxFixedPoint;
+    private final ByteBuffer buffer;
+    private final byte[] digits = new byte[20];
+    private final Map<String, Integer> pairIds = new HashMap<>();
+    private final List<byte[]> names = new ArrayList<>();
+
+    /**
+     * @param channel       The destination, closed with the writer
+     * @param format        The output format
+     * @param decimalPlaces The number of decimal places CSV values are rounded to, at most 17
+     * @param bufferSize    The size of the direct buffer rows are collected in before each write
+     */
+    public ResultWriter(WritableByteChannel channel, Format format, int decimalPlaces, int bufferSize) {
+        if (decimalPlaces < 0 || decimalPlaces > 17) {
+            throw new IllegalArgumentException("Decimal places must be between 0 and 17");
+        }
+        if (bufferSize < MAX_ROW_SIZE) {
+            throw new IllegalArgumentException("Buffer size must be at least " + MAX_ROW_SIZE + " bytes");
+        }
+        this.channel = channel;
+        this.format = format;
+        this.decimalPlaces = decimalPlaces;
+        this.maxFixedPoint = (double) Long.MAX_VALUE / POWERS_OF_TEN[decimalPlaces];
+        this.buffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+        if (format == Format.CSV) {
+            buffer.put(CSV_HEADER);
+        } else {
+            buffer.putInt(MAGIC).putShort(VERSION).putShort((short) 0);
+        }
+    }
+
+    /**
+     * Creates or replaces a result file, in the binary format if filepath ends with {@link #BINARY_FILE_EXTENSION}
+     * and as CSV otherwise
+     *
+     * @param filepath Path to the result file
+     * @return A writer that must be closed to write out the last rows
+     * @throws IOException If unable to create filepath
+     */
+    public static ResultWriter open(String filepath) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(filepath), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        return new ResultWriter(channel, Format.of(filepath), DEFAULT_DECIMAL_PLACES, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Writes the VWAP of every bucket of an accumulator, ordered by currency pair and then chronologically, without
+     * building the result map
+     * <p>
+     * Buckets whose total volume is not positive are reported as erroneous data, as by
+     * {@link VWAPAccumulator#toVWAPs()}, and written without a VWAP
+     * </p>
+     *
+     * @param accumulator The sums to write
+     * @throws IOException If unable to write to the channel
+     */
+    public void writeAll(VWAPAccumulator accumulator) throws IOException {
+        CurrencyPairDictionary currencyPairs = accumulator.getCurrencyPairs();
+        int[] ids = new int[currencyPairs.size()];
+        for (int pairId = 0; pairId < ids.length; pairId++) {
+            ids[pairId] = idOf(currencyPairs.nameOf(pairId));
+        }
+        long bucketMillis = accumulator.getBucketMillis();
+        try {
+            accumulator.forEachSorted((pairId, bucket, volumePrice, volume) -> {
+                if (volume <= 0) {
+                    Metrics.ZERO_VOLUME_BUCKETS.increment();
+                    Metrics.reportRejected("Erroneous data - total volume of trades is zero for " +
+                            currencyPairs.nameOf(pairId) + " at " + Instant.ofEpochMilli(bucket * bucketMillis));
+                }
+                try {
+                    writeRow(ids[pairId], bucket * bucketMillis, volume <= 0 ? Double.NaN : volumePrice / volume);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Writes results as returned by the calculators, a null VWAP is written as a bucket without a VWAP
+     *
+     * @param categorisedVWAPs Lists of key-value pairs (BUCKET START, VWAP) categorised by currency pair
+     * @throws IOException If unable to write to the channel
+     */
+    public void writeAll(Map<String, List<Pair<Instant, Double>>> categorisedVWAPs) throws IOException {
+        for (Map.Entry<String, List<Pair<Instant, Double>>> entry : categorisedVWAPs.entrySet()) {
+            int id = idOf(entry.getKey());
+            for (Pair<Instant, Double> vwap : entry.getValue()) {
+                writeRow(id, vwap.getKey().toEpochMilli(), vwap.getValue() == null ? Double.NaN : vwap.getValue());
+            }
+        }
+    }
+
+    /**
+     * Writes a single row
+     *
+     * @param currencyPair The currency pair, e.g. USD/JPY
+     * @param epochMilli   The start of the bucket
+     * @param vwap         The VWAP of the bucket, or NaN if it has none
+     * @throws IOException If unable to write to the channel
+     */
+    public void write(String currencyPair, long epochMilli, double vwap) throws IOException {
+        writeRow(idOf(currencyPair), epochMilli, vwap);
+    }
+
+    /**
+     * Writes each closed hour as it arrives, so results leave the process while later hours are still aggregated
+     *
+     * @throws UncheckedIOException If unable to write to the channel
+     */
+    @Override
+    public void onHourClosed(String currencyPair, Instant hour, Double vwap) {
+        try {
+            write(currencyPair, hour.toEpochMilli(), vwap == null ? Double.NaN : vwap);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes out any buffered rows without closing the channel
+     *
+     * @throws IOException If unable to write to the channel
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads a binary result file back into the shape returned by the calculators
+     *
+     * @param filepath Path to the binary result file
+     * @return A list of key-value pairs (BUCKET START, VWAP) categorised by currency pair in file order
+     * @throws IOException If unable to read filepath or it is not a binary result file
+     */
+    public static Map<String, List<Pair<Instant, Double>>> readBinary(String filepath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filepath), StandardOpenOption.READ)) {
+            ByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (file.remaining() < HEADER_SIZE || file.getInt() != MAGIC) {
+                throw new IOException("Not a binary result file: " + filepath);
+            }
+            short version = file.getShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported binary result file version " + version + ": " + filepath);
+            }
+            file.getShort();
+
+            List<String> currencyPairs = new ArrayList<>();
+            Map<String, List<Pair<Instant, Double>>> categorisedVWAPs = new LinkedHashMap<>();
+            try {
+                while (file.hasRemaining()) {
+                    int id = file.getShort() & 0xFFFF;
+                    if (id == DEFINITION) {
+                        byte[] name = new byte[file.getShort() & 0xFFFF];
+                        file.get(name);
+                        currencyPairs.add(new String(name, StandardCharsets.UTF_8));
+                    } else if (id < currencyPairs.size()) {
+                        Instant bucketStart = Instant.ofEpochMilli(file.getLong());
+                        double vwap = file.getDouble();
+                        categorisedVWAPs.computeIfAbsent(currencyPairs.get(id), pair -> new ArrayList<>())
+                                .add(new Pair<>(bucketStart, Double.isNaN(vwap) ? null : vwap));
+                    } else {
+                        throw new IOException("Undefined currency pair id " + id + " in " + filepath);
+                    }
+                }
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Truncated binary result file: " + filepath, e);
+            }
+            return categorisedVWAPs;
+        }
+    }
+
+    private int idOf(String currencyPair) throws IOException {
+        Integer id = pairIds.get(currencyPair);
+        if (id != null) {
+            return id;
+        }
+        if (names.size() == MAX_CURRENCY_PAIRS) {
+            throw new IllegalArgumentException("Too many currency pairs for the result format: " + names.size());
+        }
+        byte[] name = currencyPair.getBytes(StandardCharsets.UTF_8);
+        id = names.size();
+        names.add(name);
+        pairIds.put(currencyPair, id);
+        if (format == Format.BINARY) {
+            ensureRemaining(4 + name.length);
+            buffer.putShort((short) DEFINITION).putShort((short) name.length).put(name);
+        }
+        return id;
+    }
+
+    private void writeRow(int id, long epochMilli, double vwap) throws IOException {
+        if (format == Format.BINARY) {
+            ensureRemaining(18);
+            buffer.putShort((short) id).putLong(epochMilli).putDouble(vwap);
+            return;
+        }
+        byte[] name = names.get(id);
+        ensureRemaining(MAX_ROW_SIZE + name.length);
+        putTimestamp(epochMilli);
+        buffer.put((byte) ',').put(name).put((byte) ',');
+        if (!Double.isNaN(vwap)) {
+            putDecimal(vwap);
+        }
+        buffer.put((byte) '\n');
+    }
+
+    private void ensureRemaining(int length) throws IOException {
+        if (buffer.remaining() < length) {
+            flush();
+            if (buffer.remaining() < length) {
+                throw new IllegalArgumentException("Row of " + length + " bytes does not fit in the buffer");
+            }
+        }
+    }
+
+    /**
+     * Formats epochMilli as {@link Instant#toString()} does, e.g. 2024-10-24T10:00:00Z or 2024-10-24T10:00:00.250Z
+     */
+    private void putTimestamp(long epochMilli) {
+        long days = Math.floorDiv(epochMilli, MILLIS_PER_DAY);
+        int millisOfDay = (int) Math.floorMod(epochMilli, MILLIS_PER_DAY);
+
+        // Civil date from days since the epoch, proleptic Gregorian calendar
+        long shifted = days + 719468;
+        long era = Math.floorDiv(shifted, 146097);
+        int dayOfEra = (int) (shifted - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999) {
+            // Instant.toString() uses signed or expanded years out here, rare enough to format the slow way
+            buffer.put(Instant.ofEpochMilli(epochMilli).toString().getBytes(StandardCharsets.US_ASCII));
+            return;
+        }
+
+        putDigits((int) year, 4);
+        buffer.put((byte) '-');
+        putDigits(month, 2);
+        buffer.put((byte) '-');
+        putDigits(day, 2);
+        buffer.put((byte) 'T');
+        putDigits(millisOfDay / 3600000, 2);
+        buffer.put((byte) ':');
+        putDigits(millisOfDay / 60000 % 60, 2);
+        buffer.put((byte) ':');
+        putDigits(millisOfDay / 1000 % 60, 2);
+        if (millisOfDay % 1000 != 0) {
+            buffer.put((byte) '.');
+            putDigits(millisOfDay % 1000, 3);
+        }
+        buffer.put((byte) 'Z');
+    }
+
+    /**
+     * Formats value rounded to the configured decimal places, without trailing zeros. Values too large for fixed point
+     * and infinities fall back to {@link Double#toString(double)}
+     */
+    private void putDecimal(double value) {
+        double magnitude = Math.abs(value);
+        if (!(magnitude < maxFixedPoint)) {
+            buffer.put(Double.toString(value).getBytes(StandardCharsets.US_ASCII));
+            return;
+        }
+        long scaled = Math.round(magnitude * POWERS_OF_TEN[decimalPlaces]);
+        if (value < 0 && scaled != 0) {
+            buffer.put((byte) '-');
+        }
+        long integer = scaled / POWERS_OF_TEN[decimalPlaces];
+        long fraction = scaled % POWERS_OF_TEN[decimalPlaces];
+        putDigits(integer, 1);
+        if (fraction != 0) {
+            int places = decimalPlaces;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                places--;
+            }
+            buffer.put((byte) '.');
+            putDigits(fraction, places);
+        }
+    }
+
+    /**
+     * Writes a non-negative value in decimal, left padded with zeros to at least width digits
+     */
+    private void putDigits(long value, int width) {
+        int start = digits.length;
+        do {
+            digits[--start] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        while (digits.length - start < width) {
+            digits[--start] = '0';
+        }
+        buffer.put(digits, start, digits.length - start);
+    }
+}
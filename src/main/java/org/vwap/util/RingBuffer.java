@@ -0,0 +1,119 @@
+package org.vwap.util;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded, blocking ring buffer that hands items from one pipeline stage to the next
+ * <p>
+ * The slots are allocated once, up front. A producer that finds the buffer full waits until a consumer takes an item,
+ * so a fast stage is held back by a slow one instead of queueing unbounded work. Closing the buffer lets consumers
+ * drain what is left and then see null, which is how the end of a stream travels down the pipeline
+ * </p>
+ * <p>
+ * NOTE: Any number of threads may put and take concurrently
+ * </p>
+ *
+ * @param <T> The type of item held
+ */
+public class RingBuffer<T> {
+
+    private final Object[] slots;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private int head;
+    private int size;
+    private boolean closed;
+
+    /**
+     * @param capacity The maximum number of items held at once
+     */
+    public RingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.slots = new Object[capacity];
+    }
+
+    /**
+     * Adds an item, waiting for a free slot if the buffer is full
+     *
+     * @throws IllegalStateException If the buffer is closed
+     * @throws InterruptedException  If interrupted while waiting
+     */
+    public void put(T item) throws InterruptedException {
+        if (item == null) {
+            throw new IllegalArgumentException("Item cannot be null");
+        }
+        lock.lockInterruptibly();
+        try {
+            while (size == slots.length && !closed) {
+                notFull.await();
+            }
+            if (closed) {
+                throw new IllegalStateException("Ring buffer is closed");
+            }
+            int tail = head + size;
+            slots[tail < slots.length ? tail : tail - slots.length] = item;
+            size++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the oldest item, waiting for one if the buffer is empty
+     *
+     * @return The oldest item, or null once the buffer is closed and empty
+     * @throws InterruptedException If interrupted while waiting
+     */
+    @SuppressWarnings("unchecked")
+    public T take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (size == 0 && !closed) {
+                notEmpty.await();
+            }
+            if (size == 0) {
+                return null;
+            }
+            T item = (T) slots[head];
+            slots[head] = null;
+            head = head + 1 == slots.length ? 0 : head + 1;
+            size--;
+            notFull.signal();
+            return item;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting items and wakes every waiting thread. Items already in the buffer can still be taken
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+}
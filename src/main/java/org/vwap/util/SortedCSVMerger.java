@@ -0,0 +1,230 @@
+package org.vwap.util;
+
+import org.vwap.metrics.Metrics;
+import org.vwap.metrics.Stage;
+import org.vwap.model.CurrencyPairDictionary;
+import org.vwap.model.TradeBatch;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Streams a k-way merge of CSV files that are each in time order, e.g. one file per venue, as a single time-ordered
+ * sequence of trades
+ * <p>
+ * Each file is read through its own block buffer, so memory is bounded by the number of files times the block size
+ * whatever their length. A heap orders the files by the timestamp of their next trade, and the file at the top hands
+ * over its whole run of trades that come before the next file's head before the heap is touched again, so files that
+ * interleave coarsely cost little more than a plain scan
+ * </p>
+ * <p>
+ * NOTE: Trades at the same time are visited in file order. Trades without a timestamp are skipped, and files ending in
+ * .gz are decompressed as they are read
+ * </p>
+ */
+public class SortedCSVMerger {
+
+    private SortedCSVMerger() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Visits the trades of several time-ordered CSV files in time order, reading each file in blocks of
+     * {@link PipelinedCSVReader#DEFAULT_BLOCK_SIZE} bytes
+     *
+     * @see #merge(List, String, boolean, CurrencyPairDictionary, int, TradeVisitor)
+     */
+    public static void merge(List<String> filepaths, String recordSeparator, boolean containsHeader,
+                             CurrencyPairDictionary currencyPairs, TradeVisitor visitor) throws IOException {
+        merge(filepaths, recordSeparator, containsHeader, currencyPairs, PipelinedCSVReader.DEFAULT_BLOCK_SIZE,
+                visitor);
+    }
+
+    /**
+     * Visits the trades of several time-ordered CSV files in time order
+     *
+     * @param filepaths       Paths to the csv files to merge, each in time order
+     * @param recordSeparator Character that separates entries in the provided csv files
+     * @param containsHeader  Whether the csv files contain a header
+     * @param currencyPairs   Dictionary that the pair ids passed to visitor refer to
+     * @param blockSize       The number of bytes read from each file at once, larger than any line
+     * @param visitor         Receives every trade, in time order
+     * @throws IOException If unable to read a file, or a file is not in time order
+     */
+    public static void merge(List<String> filepaths, String recordSeparator, boolean containsHeader,
+                             CurrencyPairDictionary currencyPairs, int blockSize, TradeVisitor visitor)
+            throws IOException {
+        if (recordSeparator.isEmpty()) {
+            throw new IllegalArgumentException("Line separator cannot be empty");
+        }
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        byte[] separator = recordSeparator.getBytes(StandardCharsets.UTF_8);
+        long startTime = System.nanoTime();
+        long trades = 0;
+
+        List<Cursor> cursors = new ArrayList<>(filepaths.size());
+        PriorityQueue<Cursor> heap = new PriorityQueue<>(Math.max(1, filepaths.size()));
+        try {
+            for (String filepath : filepaths) {
+                System.out.println("Reading from: " + filepath);
+                Cursor cursor = new Cursor(cursors.size(), filepath, separator, containsHeader, currencyPairs,
+                        blockSize);
+                cursors.add(cursor);
+                if (cursor.advance()) {
+                    heap.add(cursor);
+                }
+            }
+
+            while (!heap.isEmpty()) {
+                Cursor cursor = heap.poll();
+                Cursor next = heap.peek();
+                boolean more;
+                // Hand over the run of this file that comes before the next file's head without touching the heap
+                do {
+                    visitor.visit(cursor.pairId(), cursor.epochMilli, cursor.price(), cursor.volume());
+                    trades++;
+                    more = cursor.advance();
+                } while (more && (next == null || cursor.compareTo(next) < 0));
+                if (more) {
+                    heap.add(cursor);
+                }
+            }
+        } finally {
+            for (Cursor cursor : cursors) {
+                cursor.channel.close();
+            }
+        }
+
+        long totalTime = System.nanoTime() - startTime;
+        System.out.println("Successfully merged " + trades + " trades from " + filepaths.size() +
+                " files Total runtime: " + totalTime / 1000000 + " milliseconds");
+    }
+
+    /**
+     * Receives a single trade of the merged sequence
+     */
+    @FunctionalInterface
+    public interface TradeVisitor {
+        void visit(int pairId, long epochMilli, double price, int volume);
+    }
+
+    /**
+     * Position in one file: the trade it is on, within the parsed batch of the block last read
+     */
+    private static final class Cursor implements Comparable<Cursor> {
+        private final int index;
+        private final String filepath;
+        private final ReadableByteChannel channel;
+        private final byte[] separator;
+        private final byte[] bytes;
+        private final ByteBuffer buffer;
+        private final TradeBatch trades;
+        private final MappedCSVReader.PairTable pairs;
+        private boolean skipHeader;
+        private boolean endOfFile;
+        private int carried;
+        private int position = -1;
+        private long epochMilli = Long.MIN_VALUE;
+
+        private Cursor(int index, String filepath, byte[] separator, boolean containsHeader,
+                       CurrencyPairDictionary currencyPairs, int blockSize) throws IOException {
+            this.index = index;
+            this.filepath = filepath;
+            this.channel = PipelinedCSVReader.open(filepath);
+            this.separator = separator;
+            this.bytes = new byte[blockSize];
+            this.buffer = ByteBuffer.wrap(bytes);
+            this.trades = new TradeBatch(currencyPairs, Math.max(16, blockSize / 40));
+            this.pairs = new MappedCSVReader.PairTable(currencyPairs);
+            this.skipHeader = containsHeader;
+        }
+
+        /**
+         * Moves to the next trade with a timestamp, reading the next block when the current one is used up
+         *
+         * @return false at the end of the file
+         * @throws IOException If unable to read the file, or the trade is earlier than the previous one
+         */
+        private boolean advance() throws IOException {
+            while (true) {
+                long[] epochMillis = trades.epochMillisColumn();
+                while (++position < trades.size()) {
+                    long next = epochMillis[position];
+                    if (next != TradeBatch.NO_TIMESTAMP) {
+                        if (next < epochMilli) {
+                            throw new IOException(filepath + " is not in time order, " + Instant.ofEpochMilli(next) +
+                                    " follows " + Instant.ofEpochMilli(epochMilli));
+                        }
+                        epochMilli = next;
+                        return true;
+                    }
+                }
+                if (!readBlock()) {
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * Reads and parses the next block, cut after its last complete line. The partial line at the end is carried
+         * over to the start of the following block
+         *
+         * @return false if the file has been read to the end
+         */
+        private boolean readBlock() throws IOException {
+            if (endOfFile) {
+                return false;
+            }
+            long startTime = System.nanoTime();
+            buffer.clear();
+            buffer.position(carried);
+            while (buffer.hasRemaining() && !endOfFile) {
+                endOfFile = channel.read(buffer) < 0;
+            }
+            int length = buffer.position();
+            int end = endOfFile ? length : PipelinedCSVReader.lastLineEnd(bytes, length);
+            if (end < 0) {
+                throw new IOException("Line longer than the block size of " + bytes.length + " bytes in " + filepath);
+            }
+
+            trades.clear();
+            MappedCSVReader.Chunk chunk = new MappedCSVReader.Chunk(trades, pairs);
+            int start = skipHeader ? MappedCSVReader.skipLine(buffer, 0, end) : 0;
+            skipHeader = false;
+            MappedCSVReader.parseLines(buffer, start, end, separator, chunk);
+            Metrics.ROWS_READ.add(chunk.lines);
+            Metrics.recordStage(Stage.READ, startTime, chunk.lines);
+
+            carried = length - end;
+            System.arraycopy(bytes, end, bytes, 0, carried);
+            position = -1;
+            return true;
+        }
+
+        private int pairId() {
+            return trades.pairIdColumn()[position];
+        }
+
+        private double price() {
+            return trades.priceColumn()[position];
+        }
+
+        private int volume() {
+            return trades.volumeColumn()[position];
+        }
+
+        @Override
+        public int compareTo(Cursor other) {
+            int byTime = Long.compare(epochMilli, other.epochMilli);
+            return byTime != 0 ? byTime : Integer.compare(index, other.index);
+        }
+    }
+}
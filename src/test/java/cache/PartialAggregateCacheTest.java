@@ -0,0 +1,174 @@
+package cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.vwap.cache.PartialAggregateCache;
+import org.vwap.calculator.BatchVWAPCalculator;
+import org.vwap.calculator.VWAPAccumulator;
+import org.vwap.model.CurrencyPairDictionary;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.vwap.calculator.VWAPAccumulator.HOUR_MILLIS;
+
+public class PartialAggregateCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void givenUnchangedFile_whenGetOrCompute_thenServeFromCache() throws IOException {
+        // Given
+        PartialAggregateCache cache = new PartialAggregateCache(tempDir.resolve("cache").toString(), 1024 * 1024);
+        String filepath = writeCSV("day1.csv", "2024-10-24T10:15:30.00Z,USD/JPY,142.497,30995\n");
+        AtomicInteger computations = new AtomicInteger();
+
+        // When
+        VWAPAccumulator first = cache.getOrCompute(filepath, ",", true, HOUR_MILLIS,
+                path -> sums(computations, 142.497, 30995));
+        VWAPAccumulator second = cache.getOrCompute(filepath, ",", true, HOUR_MILLIS,
+                path -> sums(computations, 142.497, 30995));
+
+        // Then
+        assertEquals(1, computations.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(first.toVWAPs(), second.toVWAPs());
+    }
+
+    @Test
+    void givenChangedFile_whenGet_thenInvalidateEntry() throws IOException {
+        // Given
+        PartialAggregateCache cache = new PartialAggregateCache(tempDir.resolve("cache").toString(), 1024 * 1024);
+        String filepath = writeCSV("day1.csv", "2024-10-24T10:15:30.00Z,USD/JPY,142.497,30995\n");
+        FileTime modified = Files.getLastModifiedTime(tempDir.resolve("day1.csv"));
+        cache.getOrCompute(filepath, ",", true, HOUR_MILLIS, path -> sums(new AtomicInteger(), 142.497, 30995));
+
+        // When - same size and modification time, different content
+        writeCSV("day1.csv", "2024-10-24T10:15:30.00Z,USD/JPY,999.999,30995\n");
+        Files.setLastModifiedTime(tempDir.resolve("day1.csv"), modified);
+
+        // Then
+        assertNull(cache.get(filepath, ",", true, HOUR_MILLIS));
+        VWAPAccumulator recomputed = cache.getOrCompute(filepath, ",", true, HOUR_MILLIS,
+                path -> sums(new AtomicInteger(), 999.999, 30995));
+        assertEquals(999.999, recomputed.toVWAPs().get("USD/JPY").get(0).getValue(), 1e-9);
+        assertEquals(999.999, cache.get(filepath, ",", true, HOUR_MILLIS).toVWAPs().get("USD/JPY").get(0).getValue(),
+                1e-9);
+    }
+
+    @Test
+    void givenEditOutsideSampledRanges_whenGet_thenInvalidateOnlyWithFullContentHash() throws IOException {
+        // Given - a file larger than the three 64 KB samples, edited in place between them
+        byte[] content = new byte[512 * 1024];
+        Arrays.fill(content, (byte) 'a');
+        Path file = tempDir.resolve("large.csv");
+        Files.write(file, content);
+        FileTime modified = Files.getLastModifiedTime(file);
+        PartialAggregateCache full = new PartialAggregateCache(tempDir.resolve("full").toString(), 1024 * 1024);
+        PartialAggregateCache sampled = new PartialAggregateCache(tempDir.resolve("sampled").toString(), 1024 * 1024,
+                true);
+        full.getOrCompute(file.toString(), ",", true, HOUR_MILLIS, path -> sums(new AtomicInteger(), 1, 1));
+        sampled.getOrCompute(file.toString(), ",", true, HOUR_MILLIS, path -> sums(new AtomicInteger(), 1, 1));
+
+        // When
+        content[100 * 1024] = 'b';
+        Files.write(file, content);
+        Files.setLastModifiedTime(file, modified);
+
+        // Then
+        assertNull(full.get(file.toString(), ",", true, HOUR_MILLIS));
+        assertNotNull(sampled.get(file.toString(), ",", true, HOUR_MILLIS));
+    }
+
+    @Test
+    void givenDifferentReadOptions_whenGet_thenMiss() throws IOException {
+        // Given
+        PartialAggregateCache cache = new PartialAggregateCache(tempDir.resolve("cache").toString(), 1024 * 1024);
+        String filepath = writeCSV("day1.csv", "2024-10-24T10:15:30.00Z,USD/JPY,142.497,30995\n");
+        cache.getOrCompute(filepath, ",", true, HOUR_MILLIS, path -> sums(new AtomicInteger(), 142.497, 30995));
+
+        // Then - a different separator, header flag or bucket width would have produced different sums
+        assertNull(cache.get(filepath, ";", true, HOUR_MILLIS));
+        assertNull(cache.get(filepath, ",", false, HOUR_MILLIS));
+        assertNull(cache.get(filepath, ",", true, 60000));
+        assertNotNull(cache.get(filepath, ",", true, HOUR_MILLIS));
+    }
+
+    @Test
+    void givenCacheOverItsBound_whenGetOrCompute_thenEvictLeastRecentlyUsed() throws IOException {
+        // Given - room for roughly two entries
+        Path directory = tempDir.resolve("cache");
+        String first = writeCSV("day1.csv", "a\n");
+        String second = writeCSV("day2.csv", "b\n");
+        String third = writeCSV("day3.csv", "c\n");
+        PartialAggregateCache sizing = new PartialAggregateCache(tempDir.resolve("sizing").toString(), 1024 * 1024);
+        sizing.getOrCompute(first, ",", true, HOUR_MILLIS, path -> sums(new AtomicInteger(), 1, 1));
+        long entrySize;
+        try (Stream<Path> entries = Files.list(tempDir.resolve("sizing"))) {
+            entrySize = Files.size(entries.findFirst().orElseThrow(IllegalStateException::new));
+        }
+        PartialAggregateCache cache = new PartialAggregateCache(directory.toString(), entrySize * 2 + entrySize / 2);
+
+        // When - the first entry is used again before the third is added
+        cache.getOrCompute(first, ",", true, HOUR_MILLIS, path -> sums(new AtomicInteger(), 1, 1));
+        cache.getOrCompute(second, ",", true, HOUR_MILLIS, path -> sums(new AtomicInteger(), 2, 1));
+        setAllEntriesModified(directory, 1000);
+        cache.get(first, ",", true, HOUR_MILLIS);
+        cache.getOrCompute(third, ",", true, HOUR_MILLIS, path -> sums(new AtomicInteger(), 3, 1));
+
+        // Then
+        assertNotNull(cache.get(first, ",", true, HOUR_MILLIS));
+        assertNull(cache.get(second, ",", true, HOUR_MILLIS));
+        assertNotNull(cache.get(third, ",", true, HOUR_MILLIS));
+    }
+
+    @Test
+    void givenCache_whenBatchRunTwice_thenSecondRunReadsNoFiles() throws IOException {
+        // Given
+        List<String> filepaths = Arrays.asList(
+                writeCSV("day1.csv", "Timestamp,Currency-pair,Price,Volume\n2024-10-24T10:15:30.00Z,USD/JPY,142.497,30995\n"),
+                writeCSV("day2.csv", "Timestamp,Currency-pair,Price,Volume\n2024-10-25T10:15:30.00Z,USD/JPY,139.392,2890000\n"));
+        PartialAggregateCache cache = new PartialAggregateCache(tempDir.resolve("cache").toString(), 1024 * 1024);
+        BatchVWAPCalculator calculator = new BatchVWAPCalculator(2, 1024 * 1024, ",", true,
+                (filepath, completedFiles, totalFiles) -> { }, cache);
+
+        // When
+        VWAPAccumulator first = calculator.accumulate(filepaths);
+        VWAPAccumulator second = calculator.accumulate(filepaths);
+
+        // Then
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.getHits());
+        assertEquals(first.toVWAPs(), second.toVWAPs());
+    }
+
+    private static VWAPAccumulator sums(AtomicInteger computations, double price, int volume) {
+        computations.incrementAndGet();
+        VWAPAccumulator sums = new VWAPAccumulator(new CurrencyPairDictionary());
+        sums.addTrade(sums.getCurrencyPairs().intern("USD/JPY"), 1729764930000L, price, volume);
+        return sums;
+    }
+
+    private String writeCSV(String name, String content) throws IOException {
+        Path path = tempDir.resolve(name);
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+        return path.toString();
+    }
+
+    private static void setAllEntriesModified(Path directory, long epochMilli) throws IOException {
+        try (Stream<Path> entries = Files.list(directory)) {
+            for (Path entry : (Iterable<Path>) entries::iterator) {
+                Files.setLastModifiedTime(entry, FileTime.fromMillis(epochMilli));
+            }
+        }
+    }
+}
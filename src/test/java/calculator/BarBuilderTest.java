@@ -0,0 +1,178 @@
+package calculator;
+
+import javafx.util.Pair;
+import org.junit.jupiter.api.Test;
+import org.vwap.calculator.BarBuilder;
+import org.vwap.calculator.BarStatistic;
+import org.vwap.calculator.Bars;
+import org.vwap.calculator.BucketGranularity;
+import org.vwap.calculator.VWAPAccumulator;
+import org.vwap.calculator.VWAPCalculator;
+import org.vwap.model.CurrencyPairDictionary;
+import org.vwap.model.Trade;
+import org.vwap.model.TradeBatch;
+import util.TestTrades;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BarBuilderTest {
+
+    @Test
+    void givenTrades_whenHourlyBarsWithAllStatistics_thenMatchEachStatisticCalculatedSeparately() {
+        // Given
+        List<Trade> trades = TestTrades.generateRandomTrades(20000, 37);
+        TradeBatch batch = TradeBatch.of(trades);
+
+        // When
+        Bars bars = VWAPCalculator.calculateHourlyBars(batch, EnumSet.allOf(BarStatistic.class));
+
+        // Then
+        VWAPAccumulator accumulator = new VWAPAccumulator(batch.getCurrencyPairs());
+        accumulator.addAll(batch);
+        Map<String, List<Pair<Instant, Double>>> vwaps = accumulator.toVWAPs();
+        assertEquals(accumulator.size(), bars.size());
+        for (String currencyPair : vwaps.keySet()) {
+            List<Pair<Instant, Double>> hourlyVWAPs = vwaps.get(currencyPair);
+            assertEquals(hourlyVWAPs.size(), bars.endRowOf(currencyPair) - bars.firstRowOf(currencyPair));
+            for (int i = 0; i < hourlyVWAPs.size(); i++) {
+                int row = bars.firstRowOf(currencyPair) + i;
+                Instant start = hourlyVWAPs.get(i).getKey();
+                assertEquals(currencyPair, bars.getCurrencyPair(row));
+                assertEquals(start, bars.getStart(row));
+                assertEquals(hourlyVWAPs.get(i).getValue(), bars.getVWAP(row), 0.0);
+                assertSameStatistics(hourTrades(trades, currencyPair, start), bars, row);
+            }
+        }
+    }
+
+    @Test
+    void givenPartitionsWithSeparateDictionaries_whenMerged_thenMatchSinglePass() {
+        // Given
+        List<Trade> trades = TestTrades.generateRandomTrades(20000, 41);
+        BarBuilder expected = builder(TradeBatch.of(trades));
+
+        // When
+        BarBuilder merged = builder(TradeBatch.of(trades.subList(0, 7000)));
+        merged.merge(builder(TradeBatch.of(trades.subList(7000, 12000))));
+        merged.merge(builder(TradeBatch.of(trades.subList(12000, trades.size()))));
+
+        // Then
+        Bars expectedBars = expected.build();
+        Bars mergedBars = merged.build();
+        assertEquals(expectedBars.size(), mergedBars.size());
+        for (int expectedRow = 0; expectedRow < expectedBars.size(); expectedRow++) {
+            String currencyPair = expectedBars.getCurrencyPair(expectedRow);
+            int row = mergedBars.firstRowOf(currencyPair) + expectedRow - expectedBars.firstRowOf(currencyPair);
+            assertEquals(expectedBars.getStart(expectedRow), mergedBars.getStart(row));
+            for (BarStatistic statistic : BarStatistic.values()) {
+                assertEquals(expectedBars.get(expectedRow, statistic), mergedBars.get(row, statistic), 0.0,
+                        statistic.name());
+            }
+        }
+    }
+
+    @Test
+    void givenSubsetOfStatistics_whenBuilt_thenOnlyThoseAreAvailable() {
+        // Given - a single hour of zero volume trades
+        TradeBatch trades = new TradeBatch();
+        trades.add(new Trade(Instant.parse("2024-01-02T10:15:00Z"), "EUR/USD", 1.5, 0));
+        trades.add(new Trade(Instant.parse("2024-01-02T10:45:00Z"), "EUR/USD", 1.25, 0));
+
+        // When
+        Bars bars = Bars.of(trades, BucketGranularity.HOUR, EnumSet.of(BarStatistic.CLOSE, BarStatistic.VWAP));
+
+        // Then
+        assertEquals(EnumSet.of(BarStatistic.CLOSE, BarStatistic.VWAP), bars.getStatistics());
+        assertEquals(1, bars.size());
+        assertEquals(Instant.parse("2024-01-02T10:00:00Z"), bars.getStart(0));
+        assertEquals(1.25, bars.getClose(0));
+        assertTrue(Double.isNaN(bars.getVWAP(0)));
+        assertThrows(IllegalStateException.class, () -> bars.getOpen(0));
+        assertThrows(IllegalStateException.class, () -> bars.get(0, BarStatistic.VOLUME));
+        assertEquals(0, bars.firstRowOf("USD/JPY"));
+        assertEquals(0, bars.endRowOf("USD/JPY"));
+    }
+
+    @Test
+    void givenPriceBeyondFixedPoint_whenAddTrade_thenOnlyFixedPointStatisticsReject() {
+        // Given
+        CurrencyPairDictionary currencyPairs = new CurrencyPairDictionary();
+        int pairId = currencyPairs.intern("EUR/USD");
+        long epochMilli = Instant.parse("2024-01-02T10:15:00Z").toEpochMilli();
+        BarBuilder highLow = new BarBuilder(currencyPairs, VWAPAccumulator.HOUR_MILLIS,
+                EnumSet.of(BarStatistic.HIGH, BarStatistic.LOW));
+        BarBuilder vwap = new BarBuilder(currencyPairs, VWAPAccumulator.HOUR_MILLIS, EnumSet.of(BarStatistic.VWAP));
+
+        // When
+        highLow.addTrade(pairId, epochMilli, 1e20, 10);
+        highLow.addTrade(pairId, epochMilli, 1.5, 10);
+        Bars bars = highLow.build();
+
+        // Then
+        assertEquals(1e20, bars.getHigh(0));
+        assertEquals(1.5, bars.getLow(0));
+        assertThrows(IllegalArgumentException.class, () -> vwap.addTrade(pairId, epochMilli, 1e20, 10));
+    }
+
+    private static BarBuilder builder(TradeBatch trades) {
+        BarBuilder builder = new BarBuilder(trades.getCurrencyPairs(), VWAPAccumulator.HOUR_MILLIS,
+                EnumSet.allOf(BarStatistic.class));
+        builder.addAll(trades);
+        return builder;
+    }
+
+    private static List<Trade> hourTrades(List<Trade> trades, String currencyPair, Instant start) {
+        List<Trade> hourTrades = new ArrayList<>();
+        for (Trade trade : trades) {
+            if (trade.getCurrencyPair().equals(currencyPair) &&
+                    trade.getTimestamp().toEpochMilli() / VWAPAccumulator.HOUR_MILLIS ==
+                            start.toEpochMilli() / VWAPAccumulator.HOUR_MILLIS) {
+                hourTrades.add(trade);
+            }
+        }
+        return hourTrades;
+    }
+
+    private static void assertSameStatistics(List<Trade> hourTrades, Bars bars, int row) {
+        Trade open = hourTrades.get(0);
+        Trade close = hourTrades.get(0);
+        double high = Double.NEGATIVE_INFINITY;
+        double low = Double.POSITIVE_INFINITY;
+        long volume = 0;
+        int minSize = Integer.MAX_VALUE;
+        int maxSize = Integer.MIN_VALUE;
+        BigDecimal priceSum = BigDecimal.ZERO;
+        for (Trade trade : hourTrades) {
+            if (trade.getTimestamp().isBefore(open.getTimestamp())) {
+                open = trade;
+            }
+            if (!trade.getTimestamp().isBefore(close.getTimestamp())) {
+                close = trade;
+            }
+            high = Math.max(high, trade.getPrice());
+            low = Math.min(low, trade.getPrice());
+            volume += trade.getVolume();
+            minSize = Math.min(minSize, trade.getVolume());
+            maxSize = Math.max(maxSize, trade.getVolume());
+            priceSum = priceSum.add(BigDecimal.valueOf(trade.getPrice()));
+        }
+        assertEquals(open.getPrice(), bars.getOpen(row));
+        assertEquals(high, bars.getHigh(row));
+        assertEquals(low, bars.getLow(row));
+        assertEquals(close.getPrice(), bars.getClose(row));
+        assertEquals(hourTrades.size(), bars.getCount(row));
+        assertEquals(volume, bars.getVolume(row));
+        assertEquals(minSize, bars.getMinSize(row));
+        assertEquals(maxSize, bars.getMaxSize(row));
+        assertEquals(priceSum.divide(BigDecimal.valueOf(hourTrades.size()), MathContext.DECIMAL64).doubleValue(),
+                bars.getTWAP(row), 1e-9);
+    }
+}
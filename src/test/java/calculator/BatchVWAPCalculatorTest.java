@@ -0,0 +1,81 @@
+package calculator;
+
+import javafx.util.Pair;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.vwap.calculator.BatchVWAPCalculator;
+import org.vwap.calculator.VWAPCalculator;
+import org.vwap.model.Trade;
+import org.vwap.model.TradeBatch;
+import org.vwap.util.BinaryTradeFile;
+import util.TestTrades;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchVWAPCalculatorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void givenSeveralFiles_whenCalculateHourlyVWAPs_thenCombineEveryFileAndReportProgress() throws IOException {
+        // Given
+        List<Trade> all = new ArrayList<>();
+        List<String> filepaths = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            List<Trade> trades = TestTrades.generateRandomTrades(5000, 100 + i);
+            all.addAll(trades);
+            filepaths.add(writeCSV("venue" + i + ".csv", trades));
+        }
+        String binaryPath = tempDir.resolve("venue6" + BinaryTradeFile.FILE_EXTENSION).toString();
+        List<Trade> binaryTrades = TestTrades.generateRandomTrades(5000, 106);
+        BinaryTradeFile.write(TradeBatch.of(binaryTrades), binaryPath, true);
+        all.addAll(binaryTrades);
+        filepaths.add(binaryPath);
+        List<Integer> progress = new CopyOnWriteArrayList<>();
+
+        // When - a budget smaller than two files forces them through a few at a time
+        long budget = Files.size(tempDir.resolve("venue0.csv")) * 3 / 2;
+        Map<String, List<Pair<Instant, Double>>> actual = new BatchVWAPCalculator(3, budget, ",", true,
+                (filepath, completedFiles, totalFiles) -> progress.add(completedFiles))
+                .calculateHourlyVWAPs(filepaths);
+
+        // Then
+        OutOfCoreVWAPCalculatorTest.assertSameVWAPs(new VWAPCalculator(all).calculateHourlyVWAPs(), actual);
+        Collections.sort(progress);
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6, 7), progress);
+    }
+
+    @Test
+    void givenMissingFile_whenCalculateHourlyVWAPs_thenThrowIOException() throws IOException {
+        // Given
+        String existing = writeCSV("venue.csv", TestTrades.generateRandomTrades(100, 7));
+        String missing = tempDir.resolve("missing.csv").toString();
+        BatchVWAPCalculator calculator = new BatchVWAPCalculator(2, 1024 * 1024, ",", true,
+                (filepath, completedFiles, totalFiles) -> { });
+
+        // Then
+        assertThrows(NoSuchFileException.class, () ->
+                // When
+                calculator.calculateHourlyVWAPs(Arrays.asList(existing, missing)));
+    }
+
+    private String writeCSV(String name, List<Trade> trades) throws IOException {
+        Path path = tempDir.resolve(name);
+        Files.write(path, TestTrades.toCSV(trades, "\n").getBytes(StandardCharsets.UTF_8));
+        return path.toString();
+    }
+}
@@ -0,0 +1,115 @@
+package calculator;
+
+import javafx.util.Pair;
+import org.junit.jupiter.api.Test;
+import org.vwap.calculator.BucketGranularity;
+import org.vwap.calculator.BucketedVWAPs;
+import org.vwap.calculator.VWAPAccumulator;
+import org.vwap.calculator.VWAPCalculator;
+import org.vwap.model.Trade;
+import org.vwap.model.TradeBatch;
+import util.TestTrades;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BucketedVWAPsTest {
+
+    @Test
+    void givenMinuteBuckets_whenRollUpToHour_thenMatchHourlyCalculation() {
+        // Given
+        List<Trade> trades = TestTrades.generateRandomTrades(20000, 29);
+        BucketedVWAPs minutes = BucketedVWAPs.of(TradeBatch.of(trades), BucketGranularity.ONE_MINUTE);
+
+        // When
+        Map<String, List<Pair<Instant, Double>>> actual = minutes.rollUp(BucketGranularity.HOUR).toVWAPs();
+
+        // Then - bit for bit, as both sum the trades of each hour exactly
+        assertEquals(new VWAPCalculator(trades).calculateHourlyVWAPs(), actual);
+    }
+
+    @Test
+    void givenMinuteBuckets_whenRollUp_thenMatchGroupingAtCoarserGranularity() {
+        // Given
+        TradeBatch trades = TradeBatch.of(TestTrades.generateRandomTrades(20000, 31));
+        BucketedVWAPs minutes = BucketedVWAPs.of(trades, BucketGranularity.ONE_MINUTE);
+
+        for (BucketGranularity granularity : Arrays.asList(BucketGranularity.FIVE_MINUTES,
+                BucketGranularity.FIFTEEN_MINUTES, BucketGranularity.DAY)) {
+            // When
+            BucketedVWAPs rolledUp = minutes.rollUp(granularity);
+
+            // Then
+            VWAPAccumulator grouped = new VWAPAccumulator(trades.getCurrencyPairs(), granularity.getMillis());
+            grouped.addAll(trades);
+            assertEquals(granularity, rolledUp.getGranularity());
+            assertEquals(grouped.toVWAPs(), rolledUp.toVWAPs());
+        }
+    }
+
+    @Test
+    void givenMinuteBuckets_whenRollingVWAPs_thenEachWindowCoversPrecedingBuckets() {
+        // Given - trades at 10:00, 10:02 and 10:05
+        TradeBatch trades = new TradeBatch();
+        trades.add(new Trade(Instant.parse("2024-01-02T10:00:30Z"), "EUR/USD", 1.0, 100));
+        trades.add(new Trade(Instant.parse("2024-01-02T10:02:10Z"), "EUR/USD", 2.0, 300));
+        trades.add(new Trade(Instant.parse("2024-01-02T10:05:00Z"), "EUR/USD", 4.0, 100));
+        BucketedVWAPs minutes = BucketedVWAPs.of(trades, BucketGranularity.ONE_MINUTE);
+
+        // When
+        List<Pair<Instant, Double>> actual = minutes.rollingVWAPs(Duration.ofMinutes(5)).get("EUR/USD");
+
+        // Then - the 10:05 window spans 10:01 to 10:05 and excludes the 10:00 trade
+        assertEquals(3, actual.size());
+        assertEquals(Instant.parse("2024-01-02T10:00:00Z"), actual.get(0).getKey());
+        assertEquals(1.0, actual.get(0).getValue());
+        assertEquals(Instant.parse("2024-01-02T10:02:00Z"), actual.get(1).getKey());
+        assertEquals(700.0 / 400, actual.get(1).getValue());
+        assertEquals(Instant.parse("2024-01-02T10:05:00Z"), actual.get(2).getKey());
+        assertEquals(1000.0 / 400, actual.get(2).getValue());
+    }
+
+    @Test
+    void givenMinuteBuckets_whenRollingHourEndsOnTheHour_thenEqualHourlyVWAP() {
+        // Given - a large price early on, whose prefix sum a double difference would not cancel exactly
+        List<Trade> trades = TestTrades.generateRandomTrades(20000, 37);
+        trades.add(new Trade(Instant.parse("2024-10-20T09:00:00Z"), "EUR/USD", 12345678.12345678, Integer.MAX_VALUE));
+        TradeBatch batch = TradeBatch.of(trades);
+        BucketedVWAPs minutes = BucketedVWAPs.of(batch, BucketGranularity.ONE_MINUTE);
+        Map<String, List<Pair<Instant, Double>>> hourly = minutes.rollUp(BucketGranularity.HOUR).toVWAPs();
+
+        // When
+        Map<String, List<Pair<Instant, Double>>> rolling = minutes.rollingVWAPs(Duration.ofHours(1));
+
+        // Then - each window ending in the last minute of an hour covers exactly that hour
+        int compared = 0;
+        for (Map.Entry<String, List<Pair<Instant, Double>>> entry : rolling.entrySet()) {
+            for (Pair<Instant, Double> window : entry.getValue()) {
+                Instant windowEnd = window.getKey().plus(Duration.ofMinutes(1));
+                if (windowEnd.toEpochMilli() % Duration.ofHours(1).toMillis() == 0) {
+                    Instant hour = windowEnd.minus(Duration.ofHours(1));
+                    assertTrue(hourly.get(entry.getKey()).contains(new Pair<>(hour, window.getValue())));
+                    compared++;
+                }
+            }
+        }
+        assertTrue(compared > 0);
+    }
+
+    @Test
+    void givenGranularityThatIsNotAMultiple_whenRollUp_thenThrowIllegalArgumentException() {
+        // Given
+        BucketedVWAPs fiveMinutes = BucketedVWAPs.of(new TradeBatch(), BucketGranularity.FIVE_MINUTES);
+
+        // Then
+        assertThrows(IllegalArgumentException.class, () ->
+                // When
+                fiveMinutes.rollUp(BucketGranularity.ONE_MINUTE));
+        assertThrows(IllegalArgumentException.class, () -> fiveMinutes.rollingVWAPs(Duration.ofMinutes(7)));
+    }
+}
@@ -0,0 +1,142 @@
+package calculator;
+
+import javafx.util.Pair;
+import org.junit.jupiter.api.Test;
+import org.vwap.calculator.ConcurrentVWAPRecorder;
+import org.vwap.calculator.VWAPAccumulator;
+import org.vwap.calculator.VWAPCalculator;
+import org.vwap.metrics.Metrics;
+import org.vwap.model.Trade;
+import util.TestTrades;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrentVWAPRecorderTest {
+
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8};
+
+    @Test
+    void givenManyProducerThreads_whenRecord_thenMatchSingleThreadedCalculation() throws Exception {
+        // Given
+        List<Trade> trades = TestTrades.generateRandomTrades(50000, 11);
+        Map<String, List<Pair<Instant, Double>>> expected = new VWAPCalculator(trades).calculateHourlyVWAPs();
+
+        for (int threads : THREAD_COUNTS) {
+            // When
+            ConcurrentVWAPRecorder recorder = new ConcurrentVWAPRecorder();
+            recordConcurrently(recorder, trades, threads);
+
+            // Then
+            assertSameVWAPs(expected, recorder.calculateHourlyVWAPs());
+        }
+    }
+
+    @Test
+    void givenReaderDuringRecording_whenSnapshot_thenVolumeOnlyGrows() throws Exception {
+        // Given
+        List<Trade> trades = TestTrades.generateRandomTrades(200000, 13);
+        ConcurrentVWAPRecorder recorder = new ConcurrentVWAPRecorder();
+        AtomicBoolean recording = new AtomicBoolean(true);
+        CountDownLatch reading = new CountDownLatch(1);
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+
+        // When - recording starts once the reader has taken its first snapshot, so the two overlap
+        Future<Integer> snapshots = reader.submit(() -> {
+            long previousVolume = 0;
+            int count = 0;
+            do {
+                long volume = totalVolume(recorder.snapshot());
+                assertTrue(volume >= previousVolume);
+                previousVolume = volume;
+                count++;
+                reading.countDown();
+            } while (recording.get());
+            return count;
+        });
+        assertTrue(reading.await(10, TimeUnit.SECONDS));
+        recordConcurrently(recorder, trades, 4);
+        recording.set(false);
+
+        // Then
+        assertTrue(snapshots.get() > 0);
+        reader.shutdown();
+        long expectedVolume = trades.stream().mapToLong(Trade::getVolume).sum();
+        assertEquals(expectedVolume, totalVolume(recorder.snapshot()));
+    }
+
+    @Test
+    void givenUnrepresentablePrices_whenRecord_thenTradesAreRejected() {
+        // Given
+        ConcurrentVWAPRecorder recorder = new ConcurrentVWAPRecorder();
+        long epochMilli = Instant.parse("2024-10-24T10:15:30.00Z").toEpochMilli();
+        long rejected = Metrics.ROWS_REJECTED.get();
+
+        // When
+        recorder.record("EUR/USD", epochMilli, Double.NaN, 100);
+        recorder.record("EUR/USD", epochMilli, Double.NEGATIVE_INFINITY, 100);
+        recorder.record("EUR/USD", epochMilli, 1.5, 100);
+
+        // Then
+        assertEquals(2, Metrics.ROWS_REJECTED.get() - rejected);
+        assertEquals(1.5, recorder.calculateHourlyVWAPs().get("EUR/USD").get(0).getValue());
+    }
+
+    /**
+     * Splits the trades evenly between the given number of threads and records them all at once
+     */
+    private static void recordConcurrently(ConcurrentVWAPRecorder recorder, List<Trade> trades, int threads)
+            throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> producers = new ArrayList<>(threads);
+        int share = (trades.size() + threads - 1) / threads;
+        for (int i = 0; i < threads; i++) {
+            List<Trade> partition = trades.subList(Math.min(i * share, trades.size()),
+                    Math.min((i + 1) * share, trades.size()));
+            producers.add(executor.submit(() -> {
+                ready.countDown();
+                start.await();
+                partition.forEach(recorder::record);
+                return null;
+            }));
+        }
+        ready.await();
+        start.countDown();
+        for (Future<?> producer : producers) {
+            producer.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    private static long totalVolume(VWAPAccumulator accumulator) {
+        long[] volume = new long[1];
+        accumulator.forEachSorted((pairId, bucket, volumePrice, bucketVolume) -> volume[0] += bucketVolume);
+        return volume[0];
+    }
+
+    private static void assertSameVWAPs(Map<String, List<Pair<Instant, Double>>> expected,
+                                        Map<String, List<Pair<Instant, Double>>> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        expected.forEach((currencyPair, hourlyVWAPs) -> {
+            List<Pair<Instant, Double>> actualVWAPs = actual.get(currencyPair);
+            assertEquals(hourlyVWAPs.size(), actualVWAPs.size());
+            for (int i = 0; i < hourlyVWAPs.size(); i++) {
+                assertEquals(hourlyVWAPs.get(i).getKey(), actualVWAPs.get(i).getKey());
+                assertEquals(hourlyVWAPs.get(i).getValue(), actualVWAPs.get(i).getValue(), 1e-9);
+            }
+        });
+    }
+}
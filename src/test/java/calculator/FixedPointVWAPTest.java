@@ -0,0 +1,145 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import org.vwap.calculator.FixedPointVWAP;
+import org.vwap.model.Trade;
+import util.TestTrades;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FixedPointVWAPTest {
+
+    @Test
+    void givenTrades_whenSumInParallel_thenBitForBitEqualAcrossPartitionsAndThreads() throws Exception {
+        // Given
+        double[] prices = new double[100003];
+        int[] volumes = new int[prices.length];
+        Random random = new Random(17);
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = random.nextInt(100000000) / 10000.0;
+            volumes[i] = random.nextInt(Integer.MAX_VALUE);
+        }
+        FixedPointVWAP expected = FixedPointVWAP.of(prices, volumes, 0, prices.length);
+
+        // When / Then
+        for (int threads : new int[]{1, 2, 3, 8}) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                for (int partitions : new int[]{1, 2, 7, 64, 1000}) {
+                    FixedPointVWAP actual = pool.submit(() ->
+                            FixedPointVWAP.parallelOf(prices, volumes, 0, prices.length, partitions)).get();
+                    assertEquals(expected, actual);
+                    assertEquals(Double.doubleToLongBits(expected.getVWAP()), Double.doubleToLongBits(actual.getVWAP()));
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void givenLargePricesAndVolumes_whenSum_thenMatchExactDecimalArithmetic() {
+        // Given - products and totals far beyond the range of a long
+        double[] prices = {92233720368.54, 1.00000001, 150000.5, -42.125};
+        int[] volumes = {Integer.MAX_VALUE, Integer.MAX_VALUE, 2890000, 7};
+        BigDecimal volumePrice = BigDecimal.ZERO;
+        long volume = 0;
+        for (int i = 0; i < prices.length; i++) {
+            volumePrice = volumePrice.add(BigDecimal.valueOf(prices[i]).multiply(BigDecimal.valueOf(volumes[i])));
+            volume += volumes[i];
+        }
+
+        // When
+        FixedPointVWAP sums = FixedPointVWAP.of(prices, volumes, 0, prices.length);
+
+        // Then
+        assertEquals(volume, sums.getVolume());
+        assertEquals(volumePrice.doubleValue(), sums.getVolumePrice(), Math.ulp(volumePrice.doubleValue()) * 2);
+        assertEquals(volumePrice.doubleValue() / volume, sums.getVWAP(), 1e-6);
+    }
+
+    @Test
+    void givenBlocksWithSmallAndOutlyingTrades_whenSum_thenMatchExactDecimalArithmetic() {
+        // Given - one block of ordinary trades each side of blocks with a negative price, a huge volume and a huge price
+        Random random = new Random(11);
+        int blockSize = FixedPointVWAP.BLOCK_SIZE;
+        double[] prices = new double[5 * blockSize];
+        int[] volumes = new int[prices.length];
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = (100000000 + random.nextInt(50000000)) / 1e8;
+            volumes[i] = random.nextInt(1000000);
+        }
+        prices[blockSize + 7] = -3.25;
+        volumes[2 * blockSize + 3] = Integer.MAX_VALUE;
+        prices[3 * blockSize + 100] = 12345678.5;
+        BigDecimal volumePrice = BigDecimal.ZERO;
+        long volume = 0;
+        for (int i = 0; i < prices.length; i++) {
+            volumePrice = volumePrice.add(BigDecimal.valueOf(prices[i]).multiply(BigDecimal.valueOf(volumes[i])));
+            volume += volumes[i];
+        }
+
+        // When
+        FixedPointVWAP sums = FixedPointVWAP.of(prices, volumes, 0, prices.length);
+
+        // Then
+        assertEquals(volume, sums.getVolume());
+        assertEquals(volumePrice.doubleValue(), sums.getVolumePrice());
+    }
+
+    @Test
+    void givenTradeList_whenSum_thenEqualSumOfColumns() {
+        // Given - a list long enough for several blocks, one of which holds a negative price
+        List<Trade> trades = TestTrades.generateRandomTrades(5 * FixedPointVWAP.BLOCK_SIZE + 17, 5);
+        trades.set(FixedPointVWAP.BLOCK_SIZE + 3, new Trade(Instant.EPOCH, "EUR/USD", -1.25, 700));
+        double[] prices = trades.stream().mapToDouble(Trade::getPrice).toArray();
+        int[] volumes = trades.stream().mapToInt(Trade::getVolume).toArray();
+
+        // When
+        FixedPointVWAP sums = new FixedPointVWAP();
+        sums.addAll(new LinkedList<>(trades));
+
+        // Then
+        assertEquals(FixedPointVWAP.of(prices, volumes, 0, prices.length), sums);
+    }
+
+    @Test
+    void givenSplitSums_whenMerge_thenEqualSingleSum() {
+        // Given
+        double[] prices = new double[1000];
+        int[] volumes = new int[prices.length];
+        Random random = new Random(3);
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = (random.nextDouble() - 0.5) * 1e6;
+            volumes[i] = random.nextInt(5000000) - 1000;
+        }
+
+        // When
+        FixedPointVWAP merged = FixedPointVWAP.of(prices, volumes, 600, 1000)
+                .merge(FixedPointVWAP.of(prices, volumes, 0, 300))
+                .merge(FixedPointVWAP.of(prices, volumes, 300, 600));
+
+        // Then
+        assertEquals(FixedPointVWAP.of(prices, volumes, 0, prices.length), merged);
+    }
+
+    @Test
+    void givenZeroVolumeOrUnrepresentablePrice_whenSum_thenThrow() {
+        // Given
+        double[] prices = {142.497, 139.392};
+        int[] volumes = {0, 0};
+
+        // When / Then
+        assertThrows(ArithmeticException.class, () -> FixedPointVWAP.of(prices, volumes, 0, 2).getVWAP());
+        assertThrows(IllegalArgumentException.class, () -> FixedPointVWAP.of(new double[]{Double.NaN}, new int[]{1},
+                0, 1));
+        assertThrows(IllegalArgumentException.class, () -> FixedPointVWAP.of(new double[]{1e11}, new int[]{1}, 0, 1));
+    }
+}
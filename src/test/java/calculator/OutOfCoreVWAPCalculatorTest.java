@@ -0,0 +1,86 @@
+package calculator;
+
+import javafx.util.Pair;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.vwap.calculator.OutOfCoreVWAPCalculator;
+import org.vwap.calculator.VWAPCalculator;
+import org.vwap.model.Trade;
+import org.vwap.model.TradeBatch;
+import org.vwap.util.BinaryTradeFile;
+import util.TestTrades;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OutOfCoreVWAPCalculatorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void givenSeveralFilesAndSmallChunks_whenCalculateHourlyVWAPs_thenMatchInMemoryCalculation() throws IOException {
+        // Given - chunks far smaller than the files
+        List<Trade> first = TestTrades.generateRandomTrades(30000, 19);
+        List<Trade> second = TestTrades.generateRandomTrades(30000, 23);
+        Path firstPath = writeCSV("first.csv", first);
+        Path secondPath = writeCSV("second.csv", second);
+        String binaryPath = tempDir.resolve("second.csv" + BinaryTradeFile.FILE_EXTENSION).toString();
+        BinaryTradeFile.write(TradeBatch.of(second), binaryPath, true);
+        List<Trade> all = new ArrayList<>(first);
+        all.addAll(second);
+
+        // When
+        OutOfCoreVWAPCalculator calculator = new OutOfCoreVWAPCalculator(16 * 1024, ",", true);
+        Map<String, List<Pair<Instant, Double>>> fromCSV =
+                calculator.calculateHourlyVWAPs(Arrays.asList(firstPath.toString(), secondPath.toString()));
+        Map<String, List<Pair<Instant, Double>>> fromCSVAndBinary =
+                calculator.calculateHourlyVWAPs(Arrays.asList(firstPath.toString(), binaryPath));
+
+        // Then
+        Map<String, List<Pair<Instant, Double>>> expected = new VWAPCalculator(all).calculateHourlyVWAPs();
+        assertSameVWAPs(expected, fromCSV);
+        assertSameVWAPs(expected, fromCSVAndBinary);
+    }
+
+    @Test
+    void givenNonPositiveChunkSize_whenConstructed_thenThrowIllegalArgumentException() {
+        // Then
+        assertThrows(IllegalArgumentException.class, () ->
+                // When
+                new OutOfCoreVWAPCalculator(0, ",", true));
+    }
+
+    private Path writeCSV(String name, List<Trade> trades) throws IOException {
+        Path path = tempDir.resolve(name);
+        String csv = trades.stream()
+                .map(trade -> trade.getTimestamp() + "," + trade.getCurrencyPair() + "," + trade.getPrice() + "," +
+                        trade.getVolume())
+                .collect(Collectors.joining("\n", "Timestamp,Currency-pair,Price,Volume\n", "\n"));
+        Files.write(path, csv.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    static void assertSameVWAPs(Map<String, List<Pair<Instant, Double>>> expected,
+                                Map<String, List<Pair<Instant, Double>>> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        expected.forEach((currencyPair, hourlyVWAPs) -> {
+            List<Pair<Instant, Double>> actualVWAPs = actual.get(currencyPair);
+            assertEquals(hourlyVWAPs.size(), actualVWAPs.size());
+            for (int i = 0; i < hourlyVWAPs.size(); i++) {
+                assertEquals(hourlyVWAPs.get(i).getKey(), actualVWAPs.get(i).getKey());
+                assertEquals(hourlyVWAPs.get(i).getValue(), actualVWAPs.get(i).getValue(), 1e-9);
+            }
+        });
+    }
+}
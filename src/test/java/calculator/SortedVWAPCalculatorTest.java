@@ -0,0 +1,102 @@
+package calculator;
+
+import javafx.util.Pair;
+import org.junit.jupiter.api.Test;
+import org.vwap.calculator.SortedVWAPCalculator;
+import org.vwap.calculator.VWAPAccumulator;
+import org.vwap.calculator.VWAPCalculator;
+import org.vwap.model.CurrencyPairDictionary;
+import org.vwap.model.Trade;
+import org.vwap.model.TradeBatch;
+import util.TestTrades;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SortedVWAPCalculatorTest {
+
+    @Test
+    void givenTimeOrderedTrades_whenRunLengthAggregated_thenMatchAccumulator() {
+        // Given - including a zero volume hour and trades without a timestamp
+        List<Trade> trades = new ArrayList<>(TestTrades.generateRandomTrades(20000, 43));
+        trades.sort(Comparator.comparing(Trade::getTimestamp));
+        trades.add(new Trade(Instant.parse("2024-10-23T10:15:00Z"), "EUR/USD", 1.1, 0));
+        trades.add(5000, new Trade(null, "EUR/USD", 1.1, 100));
+        TradeBatch batch = TradeBatch.of(trades);
+        VWAPAccumulator accumulator = new VWAPAccumulator(batch.getCurrencyPairs());
+        accumulator.addAll(batch);
+        Map<String, List<Pair<Instant, Double>>> expected = accumulator.toVWAPs();
+
+        // When
+        SortedVWAPCalculator calculator = new SortedVWAPCalculator(batch.getCurrencyPairs());
+        calculator.addAll(batch);
+        Map<String, List<Pair<Instant, Double>>> actual = calculator.toVWAPs();
+
+        // Then - the same fixed point sums, so identical VWAPs
+        assertTrue(batch.isTimeOrdered());
+        assertEquals(accumulator.size(), calculator.size());
+        assertEquals(expected, actual);
+        assertEquals(expected, calculator.toAccumulator().toVWAPs());
+        assertEquals(expected, VWAPCalculator.calculateHourlyVWAPs(batch));
+    }
+
+    @Test
+    void givenRunsWithOutlyingTrades_whenRunLengthAggregated_thenMatchAccumulator() {
+        // Given - trades that fail the exactness check of their run, which is then summed one trade at a time
+        List<Trade> trades = new ArrayList<>(TestTrades.generateRandomTrades(5000, 53));
+        trades.sort(Comparator.comparing(Trade::getTimestamp));
+        trades.set(300, new Trade(trades.get(300).getTimestamp(), "EUR/USD", -3.25, 1000));
+        trades.set(1200, new Trade(trades.get(1200).getTimestamp(), "USD/JPY", 142.5, Integer.MAX_VALUE));
+        trades.set(4000, new Trade(trades.get(4000).getTimestamp(), "AUD/USD", 12345678.5, 2000000000));
+        TradeBatch batch = TradeBatch.of(trades);
+        VWAPAccumulator accumulator = new VWAPAccumulator(batch.getCurrencyPairs());
+        accumulator.addAll(batch);
+
+        // When
+        SortedVWAPCalculator calculator = new SortedVWAPCalculator(batch.getCurrencyPairs());
+        calculator.addAll(batch);
+
+        // Then
+        assertEquals(accumulator.size(), calculator.size());
+        assertEquals(accumulator.toVWAPs(), calculator.toVWAPs());
+    }
+
+    @Test
+    void givenUnorderedTrades_whenCalculateHourlyVWAPs_thenFallBackToAccumulator() {
+        // Given
+        TradeBatch batch = TradeBatch.of(TestTrades.generateRandomTrades(5000, 47));
+        VWAPAccumulator accumulator = new VWAPAccumulator(batch.getCurrencyPairs());
+        accumulator.addAll(batch);
+
+        // When
+        Map<String, List<Pair<Instant, Double>>> actual = VWAPCalculator.calculateHourlyVWAPs(batch);
+
+        // Then
+        assertFalse(batch.isTimeOrdered());
+        assertEquals(accumulator.toVWAPs(), actual);
+    }
+
+    @Test
+    void givenTradeFromClosedHour_whenAdded_thenThrowIllegalArgumentException() {
+        // Given
+        SortedVWAPCalculator calculator = new SortedVWAPCalculator(new CurrencyPairDictionary());
+        int pairId = calculator.getCurrencyPairs().intern("EUR/USD");
+        long tenAM = Instant.parse("2024-10-20T10:00:00Z").toEpochMilli();
+        calculator.addTrade(pairId, tenAM + 1000, 1.1, 100);
+        calculator.addTrade(pairId, tenAM + 10, 1.2, 100);
+        calculator.addTrade(pairId, tenAM + VWAPAccumulator.HOUR_MILLIS, 1.3, 100);
+
+        // Then
+        assertThrows(IllegalArgumentException.class, () ->
+                // When
+                calculator.addTrade(pairId, tenAM + 2000, 1.1, 100));
+        assertEquals(2, calculator.toVWAPs().get("EUR/USD").size());
+        assertThrows(IllegalArgumentException.class, () ->
+                calculator.addTrade(pairId, tenAM + VWAPAccumulator.HOUR_MILLIS + 1, 1.1, 100));
+    }
+}
@@ -0,0 +1,138 @@
+package calculator;
+
+import javafx.util.Pair;
+import org.junit.jupiter.api.Test;
+import org.vwap.calculator.StreamingVWAPCalculator;
+import org.vwap.calculator.VWAPCalculator;
+import org.vwap.metrics.Metrics;
+import org.vwap.model.Trade;
+import util.TestTrades;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamingVWAPCalculatorTest {
+
+    @Test
+    void givenTradesInTimestampOrder_whenFlushed_thenClosedHoursMatchBatchCalculation() {
+        // Given
+        List<Trade> trades = TestTrades.generateRandomTrades(20000, 7);
+        trades.sort(Comparator.comparing(Trade::getTimestamp));
+        Map<String, List<Pair<Instant, Double>>> closedHours = new HashMap<>();
+        StreamingVWAPCalculator calculator = new StreamingVWAPCalculator((currencyPair, hour, vwap) ->
+                closedHours.computeIfAbsent(currencyPair, pair -> new ArrayList<>()).add(new Pair<>(hour, vwap)));
+
+        // When
+        trades.forEach(calculator::onTrade);
+        calculator.flush();
+
+        // Then
+        Map<String, List<Pair<Instant, Double>>> expected = new VWAPCalculator(trades).calculateHourlyVWAPs();
+        assertEquals(expected.keySet(), closedHours.keySet());
+        expected.forEach((currencyPair, hourlyVWAPs) -> {
+            List<Pair<Instant, Double>> actual = closedHours.get(currencyPair);
+            assertEquals(hourlyVWAPs.size(), actual.size());
+            for (int i = 0; i < hourlyVWAPs.size(); i++) {
+                assertEquals(hourlyVWAPs.get(i).getKey(), actual.get(i).getKey());
+                assertEquals(hourlyVWAPs.get(i).getValue(), actual.get(i).getValue(), 1e-9);
+            }
+        });
+        assertTrue(calculator.snapshot().isEmpty());
+    }
+
+    @Test
+    void givenTradeFromNextHour_whenOnTrade_thenPreviousHourIsClosed() {
+        // Given
+        List<String> closed = new ArrayList<>();
+        StreamingVWAPCalculator calculator = new StreamingVWAPCalculator((currencyPair, hour, vwap) ->
+                closed.add(hour + " VWAP(" + currencyPair + ") = " + vwap));
+        calculator.onTrade(new Trade(Instant.parse("2024-10-24T10:15:30.00Z"), "USD/JPY", 142.497, 30995));
+        calculator.onTrade(new Trade(Instant.parse("2024-10-24T10:15:31.00Z"), "USD/JPY", 139.392, 2890000));
+
+        // When
+        Map<String, List<Pair<Instant, Double>>> openHours = calculator.snapshot();
+        calculator.onTrade(new Trade(Instant.parse("2024-10-24T11:00:00.00Z"), "AUD/USD", 0.6899, 444134));
+
+        // Then
+        assertEquals(139.42494749734252, openHours.get("USD/JPY").get(0).getValue());
+        assertEquals(1, closed.size());
+        assertEquals("2024-10-24T10:00:00Z VWAP(USD/JPY) = 139.42494749734252", closed.get(0));
+        assertEquals(0.6899, calculator.snapshot().get("AUD/USD").get(0).getValue());
+    }
+
+    @Test
+    void givenTradeForClosedHour_whenOnTrade_thenTradeIsDropped() {
+        // Given
+        StreamingVWAPCalculator calculator = new StreamingVWAPCalculator((currencyPair, hour, vwap) -> {
+        }, 60000);
+        calculator.onTrade(new Trade(Instant.parse("2024-10-24T10:59:30.00Z"), "USD/JPY", 142.497, 30995));
+        calculator.onTrade(new Trade(Instant.parse("2024-10-24T11:00:30.00Z"), "USD/JPY", 139.392, 2890000));
+
+        // When
+        boolean withinLateness = calculator.onTrade("USD/JPY", Instant.parse("2024-10-24T10:59:45.00Z").toEpochMilli(),
+                142.0, 100);
+        calculator.onTrade(new Trade(Instant.parse("2024-10-24T11:01:30.00Z"), "USD/JPY", 139.392, 2890000));
+        boolean afterClose = calculator.onTrade("USD/JPY", Instant.parse("2024-10-24T10:59:50.00Z").toEpochMilli(),
+                142.0, 100);
+
+        // Then
+        assertTrue(withinLateness);
+        assertFalse(afterClose);
+        assertEquals(1, calculator.getLateTrades());
+    }
+
+    @Test
+    void givenUnrepresentablePrice_whenOnTrade_thenTradeIsRejectedAndFeedContinues() {
+        // Given
+        Map<String, Double> closed = new HashMap<>();
+        StreamingVWAPCalculator calculator = new StreamingVWAPCalculator((currencyPair, hour, vwap) ->
+                closed.put(currencyPair, vwap));
+        long rejected = Metrics.ROWS_REJECTED.get();
+        long epochMilli = Instant.parse("2024-10-24T10:15:30.00Z").toEpochMilli();
+
+        // When
+        boolean nan = calculator.onTrade("USD/JPY", epochMilli, Double.NaN, 100);
+        boolean huge = calculator.onTrade("USD/JPY", epochMilli + 1, 1e20, 100);
+        boolean valid = calculator.onTrade("USD/JPY", epochMilli + 2, 142.0, 100);
+        calculator.flush();
+
+        // Then
+        assertFalse(nan);
+        assertFalse(huge);
+        assertTrue(valid);
+        assertEquals(2, Metrics.ROWS_REJECTED.get() - rejected);
+        assertEquals(142.0, closed.get("USD/JPY"));
+        assertEquals(0, calculator.getLateTrades());
+    }
+
+    @Test
+    void givenZeroVolumeHour_whenSnapshotRepeatedly_thenCountedOnlyWhenClosed() {
+        // Given
+        List<String> closed = new ArrayList<>();
+        StreamingVWAPCalculator calculator = new StreamingVWAPCalculator((currencyPair, hour, vwap) ->
+                closed.add(currencyPair + " " + hour + " " + vwap));
+        calculator.onTrade(new Trade(Instant.parse("2024-10-24T10:15:30.00Z"), "USD/JPY", 142.497, 0));
+        calculator.onTrade(new Trade(Instant.parse("2024-10-24T10:16:30.00Z"), "EUR/GBP", 0.83, 100));
+        long zeroVolumeBuckets = Metrics.ZERO_VOLUME_BUCKETS.get();
+
+        // When
+        Map<String, List<Pair<Instant, Double>>> first = calculator.snapshot();
+        Map<String, List<Pair<Instant, Double>>> second = calculator.snapshot();
+        long afterSnapshots = Metrics.ZERO_VOLUME_BUCKETS.get();
+        calculator.flush();
+
+        // Then
+        assertEquals(first, second);
+        assertNull(first.get("USD/JPY").get(0).getValue());
+        assertEquals(0.83, first.get("EUR/GBP").get(0).getValue());
+        assertEquals(zeroVolumeBuckets, afterSnapshots);
+        assertEquals(zeroVolumeBuckets + 1, Metrics.ZERO_VOLUME_BUCKETS.get());
+        assertEquals(2, closed.size());
+    }
+}
@@ -0,0 +1,144 @@
+package calculator;
+
+import javafx.util.Pair;
+import org.junit.jupiter.api.Test;
+import org.vwap.calculator.VWAPAccumulator;
+import org.vwap.calculator.VWAPCalculator;
+import org.vwap.model.CurrencyPairDictionary;
+import org.vwap.model.Trade;
+import org.vwap.model.TradeBatch;
+import util.TestTrades;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VWAPAccumulatorTest {
+
+    @Test
+    void givenUnsortedTradeBatch_whenToVWAPs_thenMatchListCalculation() {
+        // Given
+        List<Trade> trades = TestTrades.generateRandomTrades(20000, 42);
+
+        // When
+        VWAPAccumulator accumulator = new VWAPAccumulator(new CurrencyPairDictionary());
+        TradeBatch batch = new TradeBatch(accumulator.getCurrencyPairs(), trades.size());
+        trades.forEach(batch::add);
+        accumulator.addAll(batch);
+        Map<String, List<Pair<Instant, Double>>> actual = accumulator.toVWAPs();
+
+        // Then
+        Map<String, List<Pair<Instant, Double>>> expected = new VWAPCalculator(trades).calculateHourlyVWAPs();
+        assertEquals(expected.keySet(), actual.keySet());
+        expected.forEach((currencyPair, hourlyVWAPs) -> {
+            List<Pair<Instant, Double>> actualVWAPs = actual.get(currencyPair);
+            assertEquals(hourlyVWAPs.size(), actualVWAPs.size());
+            for (int i = 0; i < hourlyVWAPs.size(); i++) {
+                assertEquals(hourlyVWAPs.get(i).getKey(), actualVWAPs.get(i).getKey());
+                assertEquals(hourlyVWAPs.get(i).getValue(), actualVWAPs.get(i).getValue(), 1e-9);
+            }
+        });
+    }
+
+    @Test
+    void givenAccumulatorsWithDifferentDictionaries_whenMerge_thenSumsAreCombined() {
+        // Given
+        VWAPAccumulator first = new VWAPAccumulator(new CurrencyPairDictionary());
+        first.addTrade(first.getCurrencyPairs().intern("USD/JPY"), 1000, 142.497, 30995);
+        VWAPAccumulator second = new VWAPAccumulator(new CurrencyPairDictionary());
+        second.addTrade(second.getCurrencyPairs().intern("AUD/USD"), 2000, 0.6899, 444134);
+        second.addTrade(second.getCurrencyPairs().intern("USD/JPY"), 3000, 139.392, 2890000);
+
+        // When
+        first.merge(second);
+        Map<String, List<Pair<Instant, Double>>> vwaps = first.toVWAPs();
+
+        // Then
+        assertEquals(2, first.size());
+        assertEquals(139.42494749734252, vwaps.get("USD/JPY").get(0).getValue());
+        assertEquals(0.6899, vwaps.get("AUD/USD").get(0).getValue());
+    }
+
+    @Test
+    void givenDifferentBucketWidths_whenMerge_thenThrowIllegalArgumentException() {
+        // Given
+        CurrencyPairDictionary currencyPairs = new CurrencyPairDictionary();
+        VWAPAccumulator hourly = new VWAPAccumulator(currencyPairs);
+        VWAPAccumulator minutely = new VWAPAccumulator(currencyPairs, 60000);
+
+        // Then
+        assertThrows(IllegalArgumentException.class, () ->
+                // When
+                hourly.merge(minutely));
+    }
+
+    @Test
+    void givenAccumulator_whenWriteToAndReadFrom_thenSumsAreIdentical() throws IOException {
+        // Given
+        List<Trade> trades = TestTrades.generateRandomTrades(5000, 11);
+        TradeBatch batch = TradeBatch.of(trades);
+        VWAPAccumulator accumulator = new VWAPAccumulator(batch.getCurrencyPairs(), 60000);
+        accumulator.addAll(batch);
+
+        // When
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        accumulator.writeTo(new DataOutputStream(bytes));
+        VWAPAccumulator restored = VWAPAccumulator.readFrom(new DataInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())));
+
+        // Then
+        assertEquals(accumulator.getBucketMillis(), restored.getBucketMillis());
+        assertEquals(accumulator.size(), restored.size());
+        assertEquals(accumulator.toVWAPs(), restored.toVWAPs());
+    }
+
+    @Test
+    void givenManyBuckets_whenForEachSorted_thenBucketsAreVisitedInOrder() {
+        // Given
+        VWAPAccumulator accumulator = new VWAPAccumulator(new CurrencyPairDictionary());
+        int pairId = accumulator.getCurrencyPairs().intern("EUR/USD");
+        for (long hour = 999; hour >= 0; hour--) {
+            accumulator.add(pairId, hour, hour, 1);
+        }
+
+        // When
+        List<Long> visited = new ArrayList<>();
+        accumulator.forEachSorted((id, bucket, volumePrice, volume) -> visited.add(bucket));
+
+        // Then
+        assertEquals(1000, visited.size());
+        for (int i = 0; i < visited.size(); i++) {
+            assertEquals(i, visited.get(i));
+        }
+    }
+
+    @Test
+    void givenDifferentSplits_whenMergeInAnyOrder_thenVWAPsAreBitForBitEqual() {
+        // Given
+        List<Trade> trades = TestTrades.generateRandomTrades(50000, 23);
+        TradeBatch batch = TradeBatch.of(trades);
+        VWAPAccumulator whole = new VWAPAccumulator(batch.getCurrencyPairs());
+        whole.addAll(batch);
+
+        for (int partitions : new int[]{2, 7, 64}) {
+            // When - sum each partition separately and merge them back to front
+            VWAPAccumulator merged = new VWAPAccumulator(new CurrencyPairDictionary());
+            for (int partition = partitions - 1; partition >= 0; partition--) {
+                VWAPAccumulator partial = new VWAPAccumulator(batch.getCurrencyPairs());
+                partial.addAll(batch, batch.size() * partition / partitions, batch.size() * (partition + 1) / partitions);
+                merged.merge(partial);
+            }
+
+            // Then
+            assertEquals(whole.toVWAPs(), merged.toVWAPs());
+        }
+    }
+}
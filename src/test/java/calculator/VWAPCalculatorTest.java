@@ -3,7 +3,9 @@ package calculator;
 import javafx.util.Pair;
 import org.junit.jupiter.api.Test;
 import org.vwap.calculator.VWAPCalculator;
+import org.vwap.metrics.Metrics;
 import org.vwap.model.Trade;
+import org.vwap.model.TradeBatch;
 
 import java.time.Instant;
 import java.util.ArrayList;
@@ -42,7 +44,7 @@ public class VWAPCalculatorTest {
         // Then
         assertEquals(139.42494749734252, hourlyVWAPs.get("USD/JPY").get(0).getValue());
         assertEquals(0.6899, hourlyVWAPs.get("AUD/USD").get(0).getValue());
-        assertEquals(0.4725046592104985, hourlyVWAPs.get("NZD/GBP").get(0).getValue());
+        assertEquals(0.47250465921049856, hourlyVWAPs.get("NZD/GBP").get(0).getValue());
     }
 
     @Test
@@ -63,7 +65,25 @@ public class VWAPCalculatorTest {
         assertNull(hourlyVWAPs.get("USD/JPY").get(0).getValue()); // The average should be null
         assertEquals(hourlyVWAPs.get("USD/JPY").get(0).getKey(), Instant.parse("2024-10-24T10:00:00Z")); // But we should still log the timestamp
         assertEquals(0.6899, hourlyVWAPs.get("AUD/USD").get(0).getValue());
-        assertEquals(0.4725046592104985, hourlyVWAPs.get("NZD/GBP").get(0).getValue());
+        assertEquals(0.47250465921049856, hourlyVWAPs.get("NZD/GBP").get(0).getValue());
+    }
+
+    @Test
+    void givenUnrepresentablePrices_whenCalculateHourlyVWAPs_thenTradesAreRejectedAndOthersProceed() {
+        // Given
+        List<Trade> trades = generateTestTrades();
+        trades.add(new Trade(Instant.parse("2024-10-24T10:15:35.00Z"), "USD/JPY", Double.NaN, 100));
+        trades.add(new Trade(Instant.parse("2024-10-24T10:15:36.00Z"), "AUD/USD", 1e20, 100));
+        long rejected = Metrics.ROWS_REJECTED.get();
+
+        // When
+        Map<String, List<Pair<Instant, Double>>> hourlyVWAPs = new VWAPCalculator(trades).calculateHourlyVWAPs();
+
+        // Then
+        assertEquals(2, Metrics.ROWS_REJECTED.get() - rejected);
+        assertEquals(139.42494749734252, hourlyVWAPs.get("USD/JPY").get(0).getValue());
+        assertEquals(0.6899, hourlyVWAPs.get("AUD/USD").get(0).getValue());
+        assertEquals(0.47250465921049856, hourlyVWAPs.get("NZD/GBP").get(0).getValue());
     }
 
     @Test
@@ -99,6 +119,22 @@ public class VWAPCalculatorTest {
         assertEquals(Instant.parse("2024-10-24T10:00:00.00Z"), hourlyVWAPs.get("AUD/USD").get(2).getKey());
     }
 
+    @Test
+    void givenTradeBatch_whenCalculateHourlyVWAPs_thenMatchListCalculation() {
+        // Given
+        List<Trade> trades = generateTestTrades();
+        trades.add(new Trade(Instant.parse("2024-10-24T11:15:34.00Z"), "NZD/GBP", 0.4725, 8226295));
+        trades.add(new Trade(Instant.parse("2024-10-24T02:15:34.00Z"), "USD/JPY", 0.4725, 8226295));
+        trades.add(new Trade(Instant.parse("2024-10-24T02:17:34.00Z"), "USD/JPY", 0.4726, 0));
+
+        // When
+        Map<String, List<Pair<Instant, Double>>> expected = new VWAPCalculator(trades).calculateHourlyVWAPs();
+        Map<String, List<Pair<Instant, Double>>> actual = VWAPCalculator.calculateHourlyVWAPs(TradeBatch.of(trades));
+
+        // Then
+        assertEquals(expected, actual);
+    }
+
     private List<Trade> generateTestTrades() {
         List<Trade> trades = new ArrayList<>(5);
 
@@ -0,0 +1,170 @@
+package index;
+
+import javafx.util.Pair;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.vwap.calculator.VWAPAccumulator;
+import org.vwap.index.VWAPRangeIndex;
+import org.vwap.model.Trade;
+import org.vwap.model.TradeBatch;
+import util.TestTrades;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VWAPRangeIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void givenUnsortedTrades_whenQueryRandomRanges_thenMatchFullScan() {
+        // Given
+        List<Trade> trades = TestTrades.generateRandomTrades(20000, 7);
+        VWAPRangeIndex index = VWAPRangeIndex.build(TradeBatch.of(trades));
+
+        // When / Then
+        assertRangesMatchFullScan(index, trades, new Random(1), 500);
+    }
+
+    @Test
+    void givenWholeHourRanges_whenQuery_thenBitEqualToAccumulatedHourlyVWAPs() {
+        // Given
+        TradeBatch batch = TradeBatch.of(TestTrades.generateRandomTrades(20000, 11));
+        VWAPRangeIndex index = VWAPRangeIndex.build(batch);
+        VWAPAccumulator accumulator = new VWAPAccumulator(batch.getCurrencyPairs());
+        accumulator.addAll(batch);
+
+        // When
+        Map<String, List<Pair<Instant, Double>>> hourlyVWAPs = accumulator.toVWAPs();
+
+        // Then
+        assertEquals(index.getCurrencyPairs(), hourlyVWAPs.keySet());
+        hourlyVWAPs.forEach((currencyPair, vwaps) -> {
+            for (Pair<Instant, Double> vwap : vwaps) {
+                long from = vwap.getKey().toEpochMilli();
+                assertEquals(vwap.getValue(), index.vwap(currencyPair, from, from + VWAPAccumulator.HOUR_MILLIS));
+            }
+        });
+    }
+
+    @Test
+    void givenRangeBoundaries_whenQuery_thenFromIsInclusiveAndToIsExclusive() {
+        // Given
+        List<Trade> trades = new ArrayList<>();
+        trades.add(new Trade(Instant.ofEpochMilli(1000), "USD/JPY", 100.0, 10));
+        trades.add(new Trade(Instant.ofEpochMilli(2000), "USD/JPY", 200.0, 30));
+        trades.add(new Trade(null, "USD/JPY", 999.0, 1000));
+        VWAPRangeIndex index = VWAPRangeIndex.build(TradeBatch.of(trades));
+
+        // When / Then
+        assertEquals(100.0, index.vwap("USD/JPY", 1000, 2000), 1e-9);
+        assertEquals(175.0, index.vwap("USD/JPY", 1000, 2001), 1e-9);
+        assertEquals(40, index.volume("USD/JPY", 0, Long.MAX_VALUE));
+        assertNull(index.vwap("USD/JPY", 2001, 3000));
+        assertNull(index.vwap("EUR/GBP", 0, Long.MAX_VALUE));
+        assertEquals(2, index.size("USD/JPY"));
+    }
+
+    @Test
+    void givenWrittenIndex_whenOpen_thenAnswerSameQueries() throws IOException {
+        // Given
+        List<Trade> trades = TestTrades.generateRandomTrades(10000, 3);
+        VWAPRangeIndex built = VWAPRangeIndex.build(TradeBatch.of(trades));
+        String filepath = tempDir.resolve("trades" + VWAPRangeIndex.FILE_EXTENSION).toString();
+
+        // When
+        built.write(filepath);
+        VWAPRangeIndex opened = VWAPRangeIndex.open(filepath);
+
+        // Then
+        assertEquals(built.getCurrencyPairs(), opened.getCurrencyPairs());
+        Random random = new Random(5);
+        for (int i = 0; i < 500; i++) {
+            String currencyPair = TestTrades.CURRENCY_PAIRS[random.nextInt(TestTrades.CURRENCY_PAIRS.length)];
+            long from = TestTrades.START_MILLIS + (long) (random.nextDouble() * TestTrades.SPAN_MILLIS);
+            long to = from + (long) (random.nextDouble() * TestTrades.SPAN_MILLIS);
+            assertEquals(built.vwap(currencyPair, from, to), opened.vwap(currencyPair, from, to));
+        }
+        assertRangesMatchFullScan(opened, trades, new Random(6), 100);
+    }
+
+    @Test
+    void givenCorruptPairCount_whenOpen_thenThrowIOException() throws IOException {
+        // Given
+        Path index = tempDir.resolve("trades" + VWAPRangeIndex.FILE_EXTENSION);
+        VWAPRangeIndex.build(TradeBatch.of(TestTrades.generateRandomTrades(100, 3))).write(index.toString());
+        byte[] bytes = Files.readAllBytes(index);
+        Path negative = tempDir.resolve("negative" + VWAPRangeIndex.FILE_EXTENSION);
+        Files.write(negative, ByteBuffer.wrap(bytes.clone()).order(ByteOrder.LITTLE_ENDIAN).putInt(8, -1).array());
+        Path overstated = tempDir.resolve("overstated" + VWAPRangeIndex.FILE_EXTENSION);
+        Files.write(overstated,
+                ByteBuffer.wrap(bytes.clone()).order(ByteOrder.LITTLE_ENDIAN).putInt(8, 100000).array());
+
+        // When / Then
+        assertThrows(IOException.class, () -> VWAPRangeIndex.open(negative.toString()));
+        assertThrows(IOException.class, () -> VWAPRangeIndex.open(overstated.toString()));
+    }
+
+    @Test
+    void givenSharedIndex_whenQueriedFromManyThreads_thenEveryQueryMatchesFullScan() throws Exception {
+        // Given
+        List<Trade> trades = TestTrades.generateRandomTrades(5000, 9);
+        VWAPRangeIndex index = VWAPRangeIndex.build(TradeBatch.of(trades));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        // When
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < 8; thread++) {
+            long seed = thread;
+            futures.add(executor.submit(() -> assertRangesMatchFullScan(index, trades, new Random(seed), 200)));
+        }
+
+        // Then
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void assertRangesMatchFullScan(VWAPRangeIndex index, List<Trade> trades, Random random,
+                                                  int queries) {
+        for (int i = 0; i < queries; i++) {
+            String currencyPair = TestTrades.CURRENCY_PAIRS[random.nextInt(TestTrades.CURRENCY_PAIRS.length)];
+            long from = TestTrades.START_MILLIS + (long) (random.nextDouble() * TestTrades.SPAN_MILLIS);
+            long to = from + (long) (random.nextDouble() * TestTrades.SPAN_MILLIS / 8);
+            double volumePrice = 0;
+            long volume = 0;
+            for (Trade trade : trades) {
+                long epochMilli = trade.getTimestamp().toEpochMilli();
+                if (trade.getCurrencyPair().equals(currencyPair) && epochMilli >= from && epochMilli < to) {
+                    volumePrice += trade.getPrice() * trade.getVolume();
+                    volume += trade.getVolume();
+                }
+            }
+            Double actual = index.vwap(currencyPair, Instant.ofEpochMilli(from), Instant.ofEpochMilli(to));
+            assertEquals(volume, index.volume(currencyPair, from, to));
+            if (volume == 0) {
+                assertNull(actual);
+            } else {
+                assertEquals(volumePrice / volume, actual, 1e-9);
+            }
+        }
+    }
+}
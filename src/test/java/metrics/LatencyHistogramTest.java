@@ -0,0 +1,50 @@
+package metrics;
+
+import org.junit.jupiter.api.Test;
+import org.vwap.metrics.LatencyHistogram;
+import org.vwap.metrics.Metrics;
+import org.vwap.metrics.Stage;
+import org.vwap.util.MappedCSVReader;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    void givenRecordedDurations_whenGetPercentileNanos_thenReturnUpperBoundOfBucket() {
+        // Given
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // When
+        for (int i = 0; i < 99; i++) {
+            histogram.record(1000);
+        }
+        histogram.record(1000000);
+
+        // Then - 1000ns falls in [512, 1024)
+        assertEquals(100, histogram.getCount());
+        assertEquals(1023, histogram.getPercentileNanos(50));
+        assertEquals(1023, histogram.getPercentileNanos(99));
+        assertEquals(1000000, histogram.getPercentileNanos(100));
+        assertEquals(99 * 1000 + 1000000, histogram.getTotalNanos());
+    }
+
+    @Test
+    void givenFileWithBadRows_whenReadFromCSVFile_thenCountRowsAndTimeReadStage() throws IOException {
+        // Given
+        Metrics.reset();
+
+        // When
+        MappedCSVReader.readFromCSVFile("./src/test/resources/5_record_entry.csv", ",", false);
+        MappedCSVReader.readFromCSVFile("./src/test/resources/erroneous_date.csv", ",", false);
+
+        // Then
+        assertEquals(10, Metrics.ROWS_READ.get());
+        assertEquals(1, Metrics.ROWS_REJECTED.get());
+        assertEquals(1, Metrics.NULL_TIMESTAMPS.get());
+        assertEquals(10, Metrics.stage(Stage.READ).getItems());
+        assertTrue(Metrics.stage(Stage.READ).getLatency().getCount() >= 2);
+    }
+}
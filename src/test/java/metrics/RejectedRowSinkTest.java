@@ -0,0 +1,82 @@
+package metrics;
+
+import org.junit.jupiter.api.Test;
+import org.vwap.metrics.RejectedRowSink;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RejectedRowSinkTest {
+
+    @Test
+    void givenManyReportingThreads_whenClose_thenEveryQueuedMessageIsWrittenOnce() throws IOException {
+        // Given
+        StringWriter writer = new StringWriter();
+        RejectedRowSink sink = new RejectedRowSink(writer, 1 << 16, true);
+
+        // When
+        IntStream.range(0, 40000).parallel().forEach(i -> assertTrue(sink.offer("row " + i)));
+        sink.close();
+
+        // Then
+        Set<String> lines = new HashSet<>(Arrays.asList(writer.toString().split(System.lineSeparator())));
+        assertEquals(40000, lines.size());
+        assertTrue(lines.contains("row 0"));
+        assertTrue(lines.contains("row 39999"));
+        assertEquals(0, sink.getDropped());
+    }
+
+    @Test
+    void givenBlockedWriter_whenBufferIsFull_thenDropWithoutBlocking() throws IOException, InterruptedException {
+        // Given - a writer that holds the draining thread until released
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        StringWriter written = new StringWriter();
+        Writer blocking = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                written.write(buffer, offset, length);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        RejectedRowSink sink = new RejectedRowSink(blocking, 4, true);
+        sink.offer("first");
+        writing.await();
+
+        // When - the drainer is stuck on the first message, so only the buffer's capacity fits
+        int accepted = 0;
+        for (int i = 0; i < 10; i++) {
+            if (sink.offer("row " + i)) {
+                accepted++;
+            }
+        }
+        release.countDown();
+        sink.close();
+
+        // Then
+        assertEquals(4, accepted);
+        assertEquals(6, sink.getDropped());
+        assertTrue(written.toString().contains("row 3"));
+    }
+}
@@ -0,0 +1,82 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+import org.vwap.model.CurrencyPairDictionary;
+import org.vwap.model.Trade;
+import org.vwap.model.TradeBatch;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TradeBatchTest {
+
+    @Test
+    void givenTrades_whenOf_thenColumnsHoldTradesInOrder() {
+        // Given
+        List<Trade> trades = new ArrayList<>();
+        trades.add(new Trade(Instant.parse("2024-10-24T10:15:30.00Z"), "USD/JPY", 142.497, 30995));
+        trades.add(new Trade(null, "AUD/USD", 0.6899, 444134));
+        trades.add(new Trade(Instant.parse("2024-10-24T10:15:31.00Z"), "USD/JPY", 139.392, 2890000));
+
+        // When
+        TradeBatch batch = TradeBatch.of(trades);
+
+        // Then
+        assertEquals(3, batch.size());
+        assertEquals(2, batch.getCurrencyPairs().size());
+        assertEquals(batch.getPairId(0), batch.getPairId(2));
+        assertEquals(TradeBatch.NO_TIMESTAMP, batch.getEpochMilli(1));
+        assertEquals(139.392, batch.getPrice(2));
+        assertEquals(444134, batch.getVolume(1));
+        assertEquals(trades.toString(), batch.asTrades().toString());
+    }
+
+    @Test
+    void givenBatchesWithDifferentDictionaries_whenAddAll_thenPairIdsAreTranslated() {
+        // Given
+        CurrencyPairDictionary first = new CurrencyPairDictionary();
+        first.intern("EUR/USD");
+        TradeBatch target = new TradeBatch(first, 1);
+        TradeBatch source = new TradeBatch(new CurrencyPairDictionary(), 1);
+        source.add(1000, source.getCurrencyPairs().intern("USD/JPY"), 142.497, 10);
+        source.add(2000, source.getCurrencyPairs().intern("EUR/USD"), 1.0841, 20);
+
+        // When
+        target.addAll(source);
+
+        // Then
+        assertEquals(2, target.size());
+        assertEquals("USD/JPY", target.getCurrencyPair(0));
+        assertEquals("EUR/USD", target.getCurrencyPair(1));
+        assertEquals(0, target.getPairId(1));
+        assertEquals(2000, target.getEpochMilli(1));
+    }
+
+    @Test
+    void givenIndexOutOfRange_whenGet_thenThrowIndexOutOfBoundsException() {
+        // Given
+        TradeBatch batch = new TradeBatch();
+
+        // Then
+        assertThrows(IndexOutOfBoundsException.class, () ->
+                // When
+                batch.getPrice(0));
+    }
+
+    @Test
+    void givenTradesWithoutTimestamps_whenIsTimeOrdered_thenOnlyTimestampsAreCompared() {
+        // Given
+        TradeBatch batch = new TradeBatch();
+        batch.add(new Trade(Instant.ofEpochMilli(1000), "EUR/USD", 1.1, 100));
+        batch.add(new Trade(null, "EUR/USD", 1.1, 100));
+        batch.add(new Trade(Instant.ofEpochMilli(1000), "USD/JPY", 150.0, 100));
+
+        // When / Then
+        assertTrue(batch.isTimeOrdered());
+        batch.add(new Trade(Instant.ofEpochMilli(999), "EUR/USD", 1.1, 100));
+        assertFalse(batch.isTimeOrdered());
+    }
+}
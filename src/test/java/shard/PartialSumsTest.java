@@ -0,0 +1,95 @@
+package shard;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.vwap.calculator.VWAPAccumulator;
+import org.vwap.model.CurrencyPairDictionary;
+import org.vwap.shard.PartialSums;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PartialSumsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void givenSums_whenWrittenAndReadFromFile_thenSumsAreIdentical() throws IOException {
+        // Given
+        VWAPAccumulator sums = randomSums(5000, 3);
+        String file = tempDir.resolve("shard" + PartialSums.FILE_EXTENSION).toString();
+
+        // When
+        PartialSums.writeFile(sums, file);
+        VWAPAccumulator read = PartialSums.readFile(file);
+
+        // Then
+        assertTrue(PartialSums.isPartialSumsFile(file));
+        assertEquals(sums.size(), read.size());
+        assertEquals(sums.toVWAPs(), read.toVWAPs());
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        PartialSums.write(sums, expected);
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        PartialSums.write(read, actual);
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+    }
+
+    @Test
+    void givenConsecutiveHourlyBuckets_whenWritten_thenFrameIsCompact() throws IOException {
+        // Given - four pairs trading every minute for 30 days
+        VWAPAccumulator sums = new VWAPAccumulator(new CurrencyPairDictionary());
+        String[] pairs = {"USD/JPY", "EUR/GBP", "AUD/USD", "NZD/GBP"};
+        Instant start = Instant.parse("2024-10-01T00:00:00Z");
+        for (int minute = 0; minute < 30 * 24 * 60; minute++) {
+            for (String pair : pairs) {
+                sums.addTrade(sums.getCurrencyPairs().intern(pair), start.plusSeconds(minute * 60L).toEpochMilli(),
+                        100 + minute % 7 / 100.0, 1000);
+            }
+        }
+
+        // When
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        PartialSums.write(sums, frame);
+
+        // Then - well under the 36 bytes per bucket of fixed width fields
+        assertEquals(4 * 30 * 24, sums.size());
+        assertTrue(frame.size() < sums.size() * 20, "Frame of " + frame.size() + " bytes");
+        assertEquals(sums.toVWAPs(), PartialSums.read(new ByteArrayInputStream(frame.toByteArray())).toVWAPs());
+    }
+
+    @Test
+    void givenCorruptFrame_whenRead_thenThrowIOException() throws IOException {
+        // Given
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        PartialSums.write(randomSums(100, 5), frame);
+        byte[] bytes = frame.toByteArray();
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(tempDir.resolve("corrupt" + PartialSums.FILE_EXTENSION), bytes);
+
+        // Then
+        assertThrows(IOException.class, () ->
+                // When
+                PartialSums.readFile(tempDir.resolve("corrupt" + PartialSums.FILE_EXTENSION).toString()));
+    }
+
+    private static VWAPAccumulator randomSums(int trades, long seed) {
+        VWAPAccumulator sums = new VWAPAccumulator(new CurrencyPairDictionary());
+        Random random = new Random(seed);
+        String[] pairs = {"USD/JPY", "EUR/GBP", "AUD/USD", "NZD/GBP"};
+        Instant timestamp = Instant.parse("2024-10-20T10:00:00Z");
+        for (int i = 0; i < trades; i++) {
+            timestamp = timestamp.plusMillis(random.nextInt(60000));
+            sums.addTrade(sums.getCurrencyPairs().intern(pairs[random.nextInt(pairs.length)]), timestamp.toEpochMilli(),
+                    Math.round(random.nextDouble() * 1000000) / 10000.0, random.nextInt(3000));
+        }
+        return sums;
+    }
+}
@@ -0,0 +1,140 @@
+package shard;
+
+import javafx.util.Pair;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.vwap.Main;
+import org.vwap.calculator.BatchVWAPCalculator;
+import org.vwap.calculator.VWAPAccumulator;
+import org.vwap.shard.PartialSums;
+import org.vwap.shard.ShardCoordinator;
+import org.vwap.shard.ShardSpec;
+import util.TestTrades;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardCoordinatorTest {
+
+    private static final String[] PAIRS = {"USD/JPY", "EUR/GBP", "AUD/USD", "NZD/GBP", "USD/CHF", "EUR/USD"};
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void givenFilesShardedByFile_whenPartialFilesMerged_thenMatchSingleProcess() throws IOException {
+        // Given
+        List<String> files = writeCSVFiles(5);
+        List<String> partialFiles = new ArrayList<>();
+        for (int index = 0; index < 3; index++) {
+            ShardSpec shard = ShardSpec.parse(index + "/3");
+            String partialFile = tempDir.resolve("shard" + index + PartialSums.FILE_EXTENSION).toString();
+            PartialSums.writeFile(shard.selectSums(calculator().accumulate(shard.selectFiles(files))), partialFile);
+            partialFiles.add(partialFile);
+        }
+
+        // When
+        VWAPAccumulator merged = ShardCoordinator.mergeFiles(partialFiles);
+
+        // Then
+        assertEquals(calculator().accumulate(files).toVWAPs(), merged.toVWAPs());
+    }
+
+    @Test
+    void givenFilesShardedByCurrencyPair_whenSelected_thenEveryPairHasExactlyOneShard() throws IOException {
+        // Given
+        List<String> files = writeCSVFiles(2);
+        VWAPAccumulator sums = calculator().accumulate(files);
+
+        // When
+        int buckets = 0;
+        for (int index = 0; index < 4; index++) {
+            ShardSpec shard = ShardSpec.parse(index + "/4:pair");
+            assertEquals(files, shard.selectFiles(files));
+            buckets += shard.selectSums(sums).size();
+        }
+
+        // Then
+        assertEquals(sums.size(), buckets);
+        for (String pair : PAIRS) {
+            int owners = 0;
+            for (int index = 0; index < 4; index++) {
+                owners += new ShardSpec(index, 4, true).owns(pair) ? 1 : 0;
+            }
+            assertEquals(1, owners);
+        }
+    }
+
+    @Test
+    void givenWorkerProcesses_whenSentOverLoopback_thenMatchSingleProcess() throws Exception {
+        // Given - separate JVMs, each sending the pairs of its shard to the coordinator
+        List<String> files = writeCSVFiles(3);
+        int workers = 3;
+        VWAPAccumulator merged;
+        List<Process> processes = new ArrayList<>();
+        try (ServerSocket server = new ServerSocket(0, workers, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout((int) TimeUnit.MINUTES.toMillis(2));
+            for (int index = 0; index < workers; index++) {
+                List<String> command = new ArrayList<>(Arrays.asList(
+                        Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                        "-cp", classpath(), Main.class.getName(), "-shard=" + index + "/" + workers + ":pair",
+                        "-send=" + server.getInetAddress().getHostAddress() + ":" + server.getLocalPort()));
+                command.addAll(files);
+                processes.add(new ProcessBuilder(command).redirectErrorStream(true)
+                        .redirectOutput(tempDir.resolve("worker" + index + ".log").toFile()).start());
+            }
+
+            // When
+            merged = ShardCoordinator.receive(server, workers);
+        } finally {
+            for (Process process : processes) {
+                if (!process.waitFor(1, TimeUnit.MINUTES)) {
+                    process.destroyForcibly();
+                }
+            }
+        }
+
+        // Then
+        for (Process process : processes) {
+            assertEquals(0, process.exitValue());
+        }
+        assertEquals(calculator().accumulate(files).toVWAPs(), merged.toVWAPs());
+    }
+
+    private List<String> writeCSVFiles(int count) throws IOException {
+        List<String> files = new ArrayList<>();
+        for (int file = 0; file < count; file++) {
+            String csv = TestTrades.toCSV(TestTrades.generateRandomTrades(5000, 17 + file), "\n");
+            Path path = tempDir.resolve("trades" + file + ".csv");
+            Files.write(path, csv.getBytes(StandardCharsets.UTF_8));
+            files.add(path.toString());
+        }
+        return files;
+    }
+
+    private static BatchVWAPCalculator calculator() {
+        return new BatchVWAPCalculator(2, 64L * 1024 * 1024, ",", true, (filepath, completedFiles, totalFiles) -> {
+        });
+    }
+
+    /**
+     * The application classes and their runtime dependency, wherever the test runner loaded them from
+     */
+    private static String classpath() throws URISyntaxException {
+        return Paths.get(Main.class.getProtectionDomain().getCodeSource().getLocation().toURI()) + File.pathSeparator +
+                Paths.get(Pair.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+    }
+}
@@ -0,0 +1,193 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.vwap.calculator.VWAPAccumulator;
+import org.vwap.calculator.VWAPCalculator;
+import org.vwap.model.CurrencyPairDictionary;
+import org.vwap.model.TradeBatch;
+import org.vwap.util.BinaryTradeFile;
+import org.vwap.util.MappedCSVReader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinaryTradeFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void givenCSVFile_whenConvertAndRead_thenReturnSameTrades() throws IOException {
+        // Given
+        String csvPath = "./src/test/resources/erroneous_date.csv";
+        String binaryPath = tempDir.resolve("erroneous_date.vwtb").toString();
+
+        // When
+        BinaryTradeFile.convertFromCSVFile(csvPath, ",", false, binaryPath, true);
+        TradeBatch trades = BinaryTradeFile.read(binaryPath);
+
+        // Then
+        TradeBatch expected = MappedCSVReader.readTradeBatchFromCSVFile(csvPath, ",", false);
+        assertEquals(expected.asTrades().toString(), trades.asTrades().toString());
+        assertEquals(TradeBatch.NO_TIMESTAMP, trades.getEpochMilli(2));
+    }
+
+    @Test
+    void givenSeveralBlocks_whenWriteAndRead_thenRoundTripWithAndWithoutDeltas() throws IOException {
+        // Given - more trades than fit in one block, with gaps too wide for an int delta in places
+        TradeBatch trades = generateTrades(200000);
+        Path deltaPath = tempDir.resolve("delta.vwtb");
+        Path rawPath = tempDir.resolve("raw.vwtb");
+
+        // When
+        BinaryTradeFile.write(trades, deltaPath.toString(), true);
+        BinaryTradeFile.write(trades, rawPath.toString(), false);
+        TradeBatch fromDeltas = BinaryTradeFile.read(deltaPath.toString());
+        TradeBatch fromRaw = BinaryTradeFile.read(rawPath.toString());
+
+        // Then
+        assertTrue(Files.size(deltaPath) < Files.size(rawPath));
+        for (TradeBatch actual : new TradeBatch[]{fromDeltas, fromRaw}) {
+            assertEquals(trades.size(), actual.size());
+            for (int i = 0; i < trades.size(); i++) {
+                assertEquals(trades.getEpochMilli(i), actual.getEpochMilli(i));
+                assertEquals(trades.getCurrencyPair(i), actual.getCurrencyPair(i));
+                assertEquals(trades.getPrice(i), actual.getPrice(i));
+                assertEquals(trades.getVolume(i), actual.getVolume(i));
+            }
+        }
+    }
+
+    @Test
+    void givenBinaryFile_whenAccumulate_thenMatchBatchCalculation() throws IOException {
+        // Given
+        TradeBatch trades = generateTrades(150000);
+        Path path = tempDir.resolve("trades.vwtb");
+        BinaryTradeFile.write(trades, path.toString(), true);
+
+        // When
+        VWAPAccumulator accumulator = new VWAPAccumulator(new CurrencyPairDictionary());
+        BinaryTradeFile.accumulate(path.toString(), accumulator);
+
+        // Then
+        assertEquals(VWAPCalculator.calculateHourlyVWAPs(trades), accumulator.toVWAPs());
+    }
+
+    @Test
+    void givenCSVFile_whenRead_thenThrowIOException() {
+        // Then
+        assertThrows(IOException.class, () ->
+                // When
+                BinaryTradeFile.read("./src/test/resources/test_data.csv"));
+    }
+
+    @Test
+    void givenCorruptBlockHeaders_whenRead_thenThrowIOException() throws IOException {
+        // Given - the first block header follows the 32 byte file header and the currency pair dictionary
+        Path path = tempDir.resolve("trades.vwtb");
+        BinaryTradeFile.write(generateTrades(100000), path.toString(), true);
+        byte[] bytes = Files.readAllBytes(path);
+        ByteBuffer header = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        int blockSize = header.getInt(20);
+        int firstBlock = 32 + (int) header.getLong(24);
+        int[][] corruptions = {{firstBlock, 0}, {firstBlock, -1}, {firstBlock, blockSize + 1}, {firstBlock + 4, 7}};
+
+        for (int[] corruption : corruptions) {
+            Path corrupt = tempDir.resolve("corrupt.vwtb");
+            ByteBuffer corrupted = ByteBuffer.wrap(bytes.clone()).order(ByteOrder.LITTLE_ENDIAN);
+            corrupted.putInt(corruption[0], corruption[1]);
+            Files.write(corrupt, corrupted.array());
+
+            // Then
+            assertThrows(IOException.class, () ->
+                    // When
+                    BinaryTradeFile.read(corrupt.toString()));
+        }
+        Path truncated = tempDir.resolve("truncated.vwtb");
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 1));
+        assertThrows(IOException.class, () -> BinaryTradeFile.read(truncated.toString()));
+    }
+
+    @Test
+    void givenShortBlockBeforeTheLast_whenRead_thenThrowIOException() throws IOException {
+        // Given - the short last block of a file, repeated, so the first of the two is short but not last
+        Path path = tempDir.resolve("trades.vwtb");
+        BinaryTradeFile.write(generateTrades(65536 + 10), path.toString(), false);
+        byte[] bytes = Files.readAllBytes(path);
+        ByteBuffer header = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        int blocksStart = 32 + (int) header.getLong(24);
+        int lastBlockLength = 8 + 10 * (8 + 8 + 4 + 2);
+        ByteBuffer corrupt = ByteBuffer.allocate(blocksStart + 2 * lastBlockLength).order(ByteOrder.LITTLE_ENDIAN);
+        corrupt.put(bytes, 0, blocksStart).putLong(8, 20);
+        corrupt.put(bytes, bytes.length - lastBlockLength, lastBlockLength);
+        corrupt.put(bytes, bytes.length - lastBlockLength, lastBlockLength);
+        Path shortBlock = tempDir.resolve("short.vwtb");
+        Files.write(shortBlock, corrupt.array());
+
+        // Then
+        assertThrows(IOException.class, () ->
+                // When
+                BinaryTradeFile.read(shortBlock.toString()));
+    }
+
+    @Test
+    void givenCorruptPairIdsOrNames_whenReadOrAccumulate_thenThrowIOException() throws IOException {
+        // Given - pair names of equal length, so one can be overwritten by another
+        Path path = tempDir.resolve("trades.vwtb");
+        BinaryTradeFile.write(generateTrades(1000), path.toString(), true);
+        byte[] bytes = Files.readAllBytes(path);
+        byte[] unknownPairId = bytes.clone();
+        unknownPairId[unknownPairId.length - 2] = (byte) 0xFF;
+        unknownPairId[unknownPairId.length - 1] = (byte) 0xFF;
+        byte[] duplicateName = bytes.clone();
+        int nameLength = duplicateName[32] & 0xFF;
+        System.arraycopy(duplicateName, 34, duplicateName, 34 + nameLength + 2, nameLength);
+
+        for (byte[] corrupt : new byte[][]{unknownPairId, duplicateName}) {
+            Path corruptPath = tempDir.resolve("corrupt.vwtb");
+            Files.write(corruptPath, corrupt);
+
+            // Then
+            assertThrows(IOException.class, () ->
+                    // When
+                    BinaryTradeFile.read(corruptPath.toString()));
+            assertThrows(IOException.class, () -> BinaryTradeFile.accumulate(corruptPath.toString(),
+                    new VWAPAccumulator(new CurrencyPairDictionary())));
+        }
+    }
+
+    @Test
+    void givenUnrepresentablePrice_whenRead_thenThrowIOException() throws IOException {
+        // Given
+        TradeBatch trades = generateTrades(1000);
+        trades.priceColumn()[500] = Double.NaN;
+        Path path = tempDir.resolve("trades.vwtb");
+        BinaryTradeFile.write(trades, path.toString(), true);
+
+        // Then
+        assertThrows(IOException.class, () ->
+                // When
+                BinaryTradeFile.read(path.toString()));
+    }
+
+    private static TradeBatch generateTrades(int count) {
+        Random random = new Random(3);
+        TradeBatch trades = new TradeBatch(new CurrencyPairDictionary(), count);
+        String[] pairs = {"USD/JPY", "EUR/GBP", "AUD/USD"};
+        long epochMilli = 1729764930000L;
+        for (int i = 0; i < count; i++) {
+            epochMilli += i % 70000 == 0 ? 5000000000L : random.nextInt(1000);
+            trades.add(epochMilli, trades.getCurrencyPairs().intern(pairs[random.nextInt(pairs.length)]),
+                    random.nextInt(100000) / 100.0, random.nextInt(3000));
+        }
+        return trades;
+    }
+}
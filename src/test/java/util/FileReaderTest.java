@@ -1,11 +1,14 @@
 package util;
 
-import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.vwap.model.Trade;
 import org.vwap.util.FileReader;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Instant;
 import java.util.List;
 
@@ -125,6 +128,22 @@ public class FileReaderTest {
         assertEquals(0, trades.get(4).getPrice());
     }
 
+    @Test
+    void givenUnrepresentablePrices_whenReadFromCSVFile_thenSkipEntries(@TempDir Path tempDir) throws IOException {
+        // Given
+        Path file = tempDir.resolve("unrepresentable.csv");
+        Files.write(file, ("2024-10-20T10:00:00Z,EUR/USD,1.5,100\n" +
+                "2024-10-20T10:10:00Z,EUR/USD,NaN,100\n" +
+                "2024-10-20T10:20:00Z,EUR/USD,1e20,100\n").getBytes(StandardCharsets.UTF_8));
+
+        // When
+        List<Trade> trades = FileReader.readFromCSVFile(file.toString(), ",", false);
+
+        // Then
+        assertEquals(1, trades.size());
+        assertEquals(1.5, trades.get(0).getPrice());
+    }
+
     @Test
     void givenErroneousPrice_whenReadFromCSVFile_thenVolume0() throws IOException {
         // Given
@@ -140,9 +159,7 @@ public class FileReaderTest {
     }
 
     @Test
-    @Disabled
-        // TODO: For Test Driven Development (TDD) - This will fail since the logic for the method under test has not been implemented yet
-    void givenCorrectFile_whenReadFromJSONFile_thenReturnTrades() {
+    void givenCorrectFile_whenReadFromJSONFile_thenReturnTrades() throws IOException {
         // Given
         String filePath = "./src/test/resources/test_data.json";
 
@@ -151,5 +168,9 @@ public class FileReaderTest {
 
         // Then
         assertEquals(5, trades.size());
+        assertEquals(30995, trades.get(0).getVolume());
+        assertEquals(139.392, trades.get(1).getPrice());
+        assertEquals("AUD/USD", trades.get(2).getCurrencyPair());
+        assertEquals(Instant.parse("2024-10-24T10:15:33.00Z"), trades.get(3).getTimestamp());
     }
 }
@@ -0,0 +1,186 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.vwap.calculator.VWAPAccumulator;
+import org.vwap.model.CurrencyPairDictionary;
+import org.vwap.model.Trade;
+import org.vwap.model.TradeBatch;
+import org.vwap.util.FileReader;
+import org.vwap.util.GzipCSVReader;
+import org.vwap.util.MappedCSVReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GzipCSVReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void givenSingleMemberFileWithTrailingZeros_whenRead_thenMatchUncompressedFile() throws IOException {
+        // Given - trailing bytes after the last member are ignored, as GZIPInputStream does
+        byte[] csv = csv(20000, 3, "\r\n", null);
+        byte[] gzip = gzip(csv, 0, csv.length, Deflater.DEFAULT_COMPRESSION);
+
+        // When / Then
+        assertSameAsUncompressed(csv, concat(gzip, new byte[100]));
+    }
+
+    @Test
+    void givenMultiMemberFile_whenRead_thenMatchUncompressedFile() throws IOException {
+        // Given - members cut at arbitrary bytes rather than at line ends, several megabytes so that the file is split
+        byte[] csv = csv(200000, 5, "\n", null);
+        ByteArrayOutputStream members = new ByteArrayOutputStream();
+        Random random = new Random(5);
+        for (int start = 0; start < csv.length; ) {
+            int end = Math.min(csv.length, start + 1 + random.nextInt(300000));
+            members.write(gzip(csv, start, end, Deflater.BEST_SPEED));
+            start = end;
+        }
+
+        // When / Then
+        assertSameAsUncompressed(csv, members.toByteArray());
+    }
+
+    @Test
+    void givenBlockIndexedFile_whenRead_thenMatchUncompressedFile() throws IOException {
+        // Given
+        byte[] csv = csv(200000, 7, "\n", null);
+
+        // When / Then
+        assertSameAsUncompressed(csv, bgzf(csv));
+    }
+
+    @Test
+    void givenHeaderBytesInsideCompressedData_whenRead_thenMatchUncompressedFile() throws IOException {
+        // Given - stored blocks copy every line verbatim, so the file is full of bytes that look like member headers
+        String fakeHeader = new String(new byte[]{0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff},
+                StandardCharsets.ISO_8859_1);
+        byte[] csv = csv(60000, 11, "\n", fakeHeader);
+        byte[] gzip = gzip(csv, 0, csv.length, Deflater.NO_COMPRESSION);
+
+        // When / Then
+        assertSameAsUncompressed(csv, gzip);
+    }
+
+    @Test
+    void givenCorruptFile_whenRead_thenThrowIOException() throws IOException {
+        // Given
+        byte[] csv = csv(1000, 13, "\n", null);
+        byte[] gzip = gzip(csv, 0, csv.length, Deflater.DEFAULT_COMPRESSION);
+        gzip[gzip.length - 6] ^= 1;
+        Path file = tempDir.resolve("corrupt.csv.gz");
+        Files.write(file, gzip);
+
+        // Then
+        assertThrows(IOException.class, () ->
+                // When
+                MappedCSVReader.readTradeBatchFromCSVFile(file.toString(), ",", true));
+    }
+
+    private void assertSameAsUncompressed(byte[] csv, byte[] gzip) throws IOException {
+        Path plainFile = tempDir.resolve("trades.csv");
+        Path gzipFile = tempDir.resolve("trades.csv" + GzipCSVReader.FILE_EXTENSION);
+        Files.write(plainFile, csv);
+        Files.write(gzipFile, gzip);
+
+        TradeBatch expected = MappedCSVReader.readTradeBatchFromCSVFile(plainFile.toString(), ",", true);
+        TradeBatch actual = GzipCSVReader.readTradeBatchFromCSVFile(gzipFile.toString(), ",", true,
+                new CurrencyPairDictionary());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getEpochMilli(i), actual.getEpochMilli(i));
+            assertEquals(expected.getCurrencyPair(i), actual.getCurrencyPair(i));
+            assertEquals(expected.getPrice(i), actual.getPrice(i));
+            assertEquals(expected.getVolume(i), actual.getVolume(i));
+        }
+
+        VWAPAccumulator expectedSums = new VWAPAccumulator(new CurrencyPairDictionary());
+        MappedCSVReader.accumulateFromCSVFile(plainFile.toString(), ",", true, expectedSums, 1024 * 1024);
+        VWAPAccumulator actualSums = new VWAPAccumulator(new CurrencyPairDictionary());
+        GzipCSVReader.accumulateFromCSVFile(gzipFile.toString(), ",", true, actualSums, 64 * 1024);
+        assertEquals(expectedSums.toVWAPs(), actualSums.toVWAPs());
+
+        assertEquals(FileReader.readFromCSVFile(plainFile.toString(), ",", true).size(),
+                FileReader.readFromCSVFile(gzipFile.toString(), ",", true).size());
+    }
+
+    /**
+     * @param pairSuffix Appended to the currency pair of every 100th trade, or null. Encoded a byte per character, so
+     *                   that it can hold any bytes
+     */
+    private static byte[] csv(int lines, long seed, String lineSeparator, String pairSuffix) {
+        List<Trade> trades = TestTrades.generateRandomTrades(lines, seed);
+        for (int i = 0; pairSuffix != null && i < trades.size(); i += 100) {
+            trades.get(i).setCurrencyPair(trades.get(i).getCurrencyPair() + pairSuffix);
+        }
+        return TestTrades.toCSV(trades, lineSeparator).getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] gzip(byte[] bytes, int start, int end, int level) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed) {
+            {
+                def.setLevel(level);
+            }
+        }) {
+            out.write(bytes, start, end - start);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Compresses in the BGZF layout: members of at most 64KB, each recording its compressed size in an extra field,
+     * followed by an empty member
+     */
+    private static byte[] bgzf(byte[] bytes) {
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        byte[] compressed = new byte[70000];
+        int length;
+        for (int start = 0; ; start += length) {
+            length = Math.min(60000, bytes.length - start);
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            deflater.setInput(bytes, start, length);
+            deflater.finish();
+            int compressedLength = deflater.deflate(compressed);
+            deflater.end();
+            CRC32 crc = new CRC32();
+            crc.update(bytes, start, length);
+
+            int blockSize = 18 + compressedLength + 8;
+            blocks.write(new byte[]{0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0,
+                    (byte) (blockSize - 1), (byte) ((blockSize - 1) >> 8)}, 0, 18);
+            blocks.write(compressed, 0, compressedLength);
+            writeInt(blocks, (int) crc.getValue());
+            writeInt(blocks, length);
+            if (length == 0) {
+                return blocks.toByteArray();
+            }
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        for (int i = 0; i < 4; i++) {
+            out.write(value >>> (8 * i));
+        }
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] bytes = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, bytes, first.length, second.length);
+        return bytes;
+    }
+}
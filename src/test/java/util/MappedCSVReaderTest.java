@@ -0,0 +1,187 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.vwap.calculator.SortedVWAPCalculator;
+import org.vwap.calculator.VWAPAccumulator;
+import org.vwap.metrics.Metrics;
+import org.vwap.model.CurrencyPairDictionary;
+import org.vwap.model.Trade;
+import org.vwap.model.TradeBatch;
+import org.vwap.util.FileReader;
+import org.vwap.util.MappedCSVReader;
+import org.vwap.util.PipelinedCSVReader;
+import org.vwap.util.SortedCSVMerger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedCSVReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void givenCorrectFile_whenReadFromCSVFile_thenReturnTrades() throws IOException {
+        // Given
+        String filePath = "./src/test/resources/test_data.csv";
+        String recordSeparator = ",";
+
+        // When
+        List<Trade> trades = MappedCSVReader.readFromCSVFile(filePath, recordSeparator, false);
+
+        // Then
+        assertEquals(5, trades.size());
+        assertEquals(30995, trades.get(0).getVolume());
+        assertEquals(139.392, trades.get(1).getPrice());
+        assertEquals("AUD/USD", trades.get(2).getCurrencyPair());
+        assertEquals(Instant.parse("2024-10-24T10:15:33.00Z"), trades.get(3).getTimestamp());
+    }
+
+    @Test
+    void givenCorrectFile_whenReadTradeBatchFromCSVFile_thenReturnColumns() throws IOException {
+        // Given
+        String filePath = "./src/test/resources/test_data.csv";
+        String recordSeparator = ",";
+
+        // When
+        TradeBatch trades = MappedCSVReader.readTradeBatchFromCSVFile(filePath, recordSeparator, false);
+
+        // Then
+        assertEquals(5, trades.size());
+        assertEquals(3, trades.getCurrencyPairs().size());
+        assertEquals(30995, trades.getVolume(0));
+        assertEquals(139.392, trades.getPrice(1));
+        assertEquals("AUD/USD", trades.getCurrencyPair(2));
+        assertEquals(Instant.parse("2024-10-24T10:15:33.00Z").toEpochMilli(), trades.getEpochMilli(3));
+    }
+
+    @Test
+    void givenFileWithHeaderAndSpaceSeparator_whenReadFromCSVFile_thenReturnTrades() throws IOException {
+        // Given
+        String filePath = "./src/test/resources/test_data_space_separator_with_header";
+        String recordSeparator = " ";
+
+        // When
+        List<Trade> trades = MappedCSVReader.readFromCSVFile(filePath, recordSeparator, true);
+
+        // Then
+        assertEquals(5, trades.size());
+        assertEquals(30995, trades.get(0).getVolume());
+        assertEquals(139.392, trades.get(1).getPrice());
+        assertEquals("AUD/USD", trades.get(2).getCurrencyPair());
+        assertEquals(Instant.parse("2024-10-24T10:15:33.00Z"), trades.get(3).getTimestamp());
+    }
+
+    @Test
+    void givenIncorrectFilepath_whenReadFromCSVFile_thenThrowIOException() {
+        // Given
+        String filePath = "./src/test/resources/file_does_not_exist.csv";
+        String recordSeparator = ",";
+
+        // Then
+        assertThrows(IOException.class, () ->
+                // When
+                MappedCSVReader.readFromCSVFile(filePath, recordSeparator, true));
+    }
+
+    @Test
+    void givenEmptyFilepath_whenReadFromCSVFile_thenThrowIllegalArgumentException() {
+        // Then
+        assertThrows(IllegalArgumentException.class, () ->
+                // When
+                MappedCSVReader.readFromCSVFile("", ",", false));
+    }
+
+    @Test
+    void givenEmptyRecordSeparator_whenReadFromCSVFile_thenThrowIllegalArgumentException() {
+        // Then
+        assertThrows(IllegalArgumentException.class, () ->
+                // When
+                MappedCSVReader.readFromCSVFile("./src/test/resources/test_data.csv", "", false));
+    }
+
+    @Test
+    void givenErroneousFiles_whenReadFromCSVFile_thenMatchFileReader() throws IOException {
+        String[] filePaths = {
+                "./src/test/resources/5_record_entry.csv",
+                "./src/test/resources/erroneous_date.csv",
+                "./src/test/resources/erroneous_price.csv",
+                "./src/test/resources/erroneous_volume.csv"
+        };
+
+        for (String filePath : filePaths) {
+            // When
+            List<Trade> expected = FileReader.readFromCSVFile(filePath, ",", false);
+            List<Trade> actual = MappedCSVReader.readFromCSVFile(filePath, ",", false);
+
+            // Then
+            assertSameTrades(expected, actual);
+        }
+    }
+
+    @Test
+    void givenLargeFileWithCarriageReturns_whenReadFromCSVFile_thenMatchFileReaderAcrossChunks() throws IOException {
+        // Given - large enough to be split into several chunks
+        Path file = tempDir.resolve("large.csv");
+        String csv = TestTrades.toCSV(TestTrades.generateRandomTrades(100000, 42), "\r\n");
+        Files.write(file, csv.getBytes(StandardCharsets.UTF_8));
+
+        // When
+        List<Trade> expected = FileReader.readFromCSVFile(file.toString(), ",", true);
+        List<Trade> actual = MappedCSVReader.readFromCSVFile(file.toString(), ",", true);
+
+        // Then
+        assertEquals(100000, actual.size());
+        assertSameTrades(expected, actual);
+    }
+
+    @Test
+    void givenUnrepresentablePrices_whenReadInEveryMode_thenRowsAreRejected() throws IOException {
+        // Given
+        Path file = tempDir.resolve("unrepresentable.csv");
+        Files.write(file, ("Timestamp,Currency-pair,Price,Volume\n" +
+                "2024-10-20T10:00:00Z,EUR/USD,1.5,100\n" +
+                "2024-10-20T10:10:00Z,EUR/USD,NaN,100\n" +
+                "2024-10-20T10:20:00Z,EUR/USD,1e20,100\n" +
+                "2024-10-20T10:30:00Z,EUR/USD,2.5,300\n").getBytes(StandardCharsets.UTF_8));
+        long rejected = Metrics.ROWS_REJECTED.get();
+
+        // When
+        TradeBatch trades = MappedCSVReader.readTradeBatchFromCSVFile(file.toString(), ",", true);
+        VWAPAccumulator chunked = new VWAPAccumulator(new CurrencyPairDictionary());
+        MappedCSVReader.accumulateFromCSVFile(file.toString(), ",", true, chunked, 1024 * 1024);
+        VWAPAccumulator pipelined = new PipelinedCSVReader().accumulate(Collections.singletonList(file.toString()));
+        SortedVWAPCalculator sorted = new SortedVWAPCalculator(new CurrencyPairDictionary());
+        SortedCSVMerger.merge(Collections.singletonList(file.toString()), ",", true, sorted.getCurrencyPairs(),
+                sorted::addTrade);
+
+        // Then
+        assertEquals(2, trades.size());
+        assertEquals(8, Metrics.ROWS_REJECTED.get() - rejected);
+        Double vwap = (1.5 * 100 + 2.5 * 300) / 400;
+        assertEquals(vwap, chunked.toVWAPs().get("EUR/USD").get(0).getValue());
+        assertEquals(vwap, pipelined.toVWAPs().get("EUR/USD").get(0).getValue());
+        assertEquals(vwap, sorted.toVWAPs().get("EUR/USD").get(0).getValue());
+    }
+
+    private static void assertSameTrades(List<Trade> expected, List<Trade> actual) {
+        assertEquals(expected.size(), actual.size());
+
+        // FileReader does not preserve the order of the file
+        Comparator<Trade> order = Comparator.comparing(Trade::toString);
+        expected.sort(order);
+        actual.sort(order);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).toString(), actual.get(i).toString());
+        }
+    }
+}
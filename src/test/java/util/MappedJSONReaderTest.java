@@ -0,0 +1,209 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.vwap.calculator.VWAPAccumulator;
+import org.vwap.metrics.Metrics;
+import org.vwap.model.CurrencyPairDictionary;
+import org.vwap.model.Trade;
+import org.vwap.model.TradeBatch;
+import org.vwap.util.MappedCSVReader;
+import org.vwap.util.MappedJSONReader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedJSONReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void givenCorrectFile_whenReadTradeBatchFromJSONFile_thenReturnColumns() throws IOException {
+        // Given
+        String filePath = "./src/test/resources/test_data.json";
+
+        // When
+        TradeBatch trades = MappedJSONReader.readTradeBatchFromJSONFile(filePath);
+
+        // Then
+        assertEquals(5, trades.size());
+        assertEquals(3, trades.getCurrencyPairs().size());
+        assertEquals(30995, trades.getVolume(0));
+        assertEquals(139.392, trades.getPrice(1));
+        assertEquals("AUD/USD", trades.getCurrencyPair(2));
+        assertEquals(Instant.parse("2024-10-24T10:15:33.00Z").toEpochMilli(), trades.getEpochMilli(3));
+    }
+
+    @Test
+    void givenUnusualButValidObjects_whenReadFromJSONFile_thenParseFieldsInAnyOrder() throws IOException {
+        // Given
+        Path file = tempDir.resolve("unusual.json");
+        String json = "[{\"volume\":10,\"venue\":{\"name\":\"X\",\"ids\":[1,2]},\"price\":\"1.5\"," +
+                "\"currencyPair\":\"USD\\/JPY\",\"timestamp\":\"2024-10-24T10:15:30Z\"},\n" +
+                "{\"timestamp\":\"not a time\",\"currencyPair\":\"EUR/GBP\",\"price\":null,\"volume\":2.5},\n" +
+                "{\"timestamp\":\"2024-10-24T10:15:30Z\",\"currencyPair\":\"EUR/GBP\",\"price\":1.0},\n" +
+                "{}]";
+        Files.write(file, json.getBytes(StandardCharsets.UTF_8));
+
+        // When
+        List<Trade> trades = MappedJSONReader.readFromJSONFile(file.toString());
+
+        // Then - objects missing a field are skipped, invalid values are handled like the CSV readers
+        assertEquals(2, trades.size());
+        assertEquals(new Trade(Instant.parse("2024-10-24T10:15:30Z"), "USD/JPY", 1.5, 10).toString(),
+                trades.get(0).toString());
+        assertEquals(new Trade(null, "EUR/GBP", 0, 0).toString(), trades.get(1).toString());
+    }
+
+    @Test
+    void givenLargeFile_whenReadFromJSONFile_thenMatchCSVAcrossChunks() throws IOException {
+        // Given - the same trades as CSV and as JSON, large enough to be split into several chunks
+        Path csvFile = tempDir.resolve("large.csv");
+        Path jsonFile = tempDir.resolve("large.json");
+        StringBuilder csv = new StringBuilder();
+        StringBuilder json = new StringBuilder("[\n");
+        Random random = new Random(42);
+        String[] pairs = {"USD/JPY", "EUR/GBP", "AUD/USD", "NZD/GBP"};
+        Instant timestamp = Instant.parse("2024-10-20T10:00:00Z");
+        for (int i = 0; i < 50000; i++) {
+            timestamp = timestamp.plusMillis(random.nextInt(5000));
+            String pair = pairs[random.nextInt(pairs.length)];
+            double price = Math.round(random.nextDouble() * 1000000) / 10000.0;
+            int volume = random.nextInt(3000);
+            csv.append(timestamp).append(',').append(pair).append(',').append(price).append(',').append(volume)
+                    .append('\n');
+            json.append(i == 0 ? "  " : ",\n  ").append("{ \"timestamp\": \"").append(timestamp)
+                    .append("\", \"currencyPair\": \"").append(pair).append("\", \"price\": ").append(price)
+                    .append(", \"volume\": ").append(volume).append(" }");
+        }
+        json.append("\n]\n");
+        Files.write(csvFile, csv.toString().getBytes(StandardCharsets.UTF_8));
+        Files.write(jsonFile, json.toString().getBytes(StandardCharsets.UTF_8));
+
+        // When
+        List<Trade> expected = MappedCSVReader.readFromCSVFile(csvFile.toString(), ",", false);
+        List<Trade> actual = MappedJSONReader.readFromJSONFile(jsonFile.toString());
+        VWAPAccumulator accumulated = new VWAPAccumulator(new CurrencyPairDictionary());
+        MappedJSONReader.accumulateFromJSONFile(jsonFile.toString(), accumulated, 64 * 1024);
+
+        // Then
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).toString(), actual.get(i).toString());
+        }
+        TradeBatch expectedBatch = TradeBatch.of(expected);
+        VWAPAccumulator fromCSV = new VWAPAccumulator(expectedBatch.getCurrencyPairs());
+        fromCSV.addAll(expectedBatch);
+        assertEquals(fromCSV.size(), accumulated.size());
+    }
+
+    @Test
+    void givenNestedValuesLargerThanChunks_whenAccumulateFromJSONFile_thenSplitOnlyBetweenObjects() throws IOException {
+        // Given - objects whose extra fields hold nested arrays longer than a chunk, and strings that look like the
+        // separators between objects
+        Path file = tempDir.resolve("nested.json");
+        List<Trade> trades = new ArrayList<>();
+        StringBuilder json = new StringBuilder("[");
+        Instant timestamp = Instant.parse("2024-10-20T10:00:00Z");
+        for (int i = 0; i < 200; i++) {
+            Trade trade = new Trade(timestamp.plusSeconds(i * 7), i % 3 == 0 ? "EUR/USD" : "USD/JPY",
+                    1 + i / 100.0, 100 + i);
+            trades.add(trade);
+            json.append(i == 0 ? "" : ",").append("{\"note\": \"},{\\\"[\", \"depth\": [");
+            for (int j = 0; j < (i % 10 == 0 ? 600 : 1); j++) {
+                json.append(j == 0 ? "" : ",").append("[{\"a\": \"x},{\"}, [1, 2]]");
+            }
+            json.append("], \"timestamp\": \"").append(trade.getTimestamp()).append("\", \"currencyPair\": \"")
+                    .append(trade.getCurrencyPair()).append("\", \"price\": ").append(trade.getPrice())
+                    .append(", \"volume\": ").append(trade.getVolume()).append('}');
+        }
+        json.append(']');
+        Files.write(file, json.toString().getBytes(StandardCharsets.UTF_8));
+        TradeBatch expectedBatch = TradeBatch.of(trades);
+        VWAPAccumulator expected = new VWAPAccumulator(expectedBatch.getCurrencyPairs());
+        expected.addAll(expectedBatch);
+
+        // When
+        VWAPAccumulator actual = new VWAPAccumulator(new CurrencyPairDictionary());
+        MappedJSONReader.accumulateFromJSONFile(file.toString(), actual, 4 * 1024);
+
+        // Then
+        assertEquals(expected.toVWAPs(), actual.toVWAPs());
+    }
+
+    @Test
+    void givenEscapeRunsAcrossSlices_whenAccumulateFromJSONFile_thenSplitOnlyBetweenObjects() throws IOException {
+        // Given - strings of escaped quotes, backslashes and separators of every length, so that slices of the file
+        // start inside and outside strings and right after a backslash
+        Path file = tempDir.resolve("escapes.json");
+        String[] pieces = {"\\\\", "\\\"", "},{", "[", "]", "x"};
+        Random random = new Random(17);
+        List<Trade> trades = new ArrayList<>();
+        StringBuilder json = new StringBuilder("[");
+        Instant timestamp = Instant.parse("2024-10-20T10:00:00Z");
+        for (int i = 0; i < 2000; i++) {
+            Trade trade = new Trade(timestamp.plusSeconds(i * 11), i % 2 == 0 ? "EUR/USD" : "USD/JPY",
+                    1 + i / 1000.0, 100 + i);
+            trades.add(trade);
+            json.append(i == 0 ? "" : ",").append("{\"note\": \"");
+            for (int j = random.nextInt(40); j > 0; j--) {
+                json.append(pieces[random.nextInt(pieces.length)]);
+            }
+            json.append("\", \"timestamp\": \"").append(trade.getTimestamp()).append("\", \"currencyPair\": \"")
+                    .append(trade.getCurrencyPair()).append("\", \"price\": ").append(trade.getPrice())
+                    .append(", \"volume\": ").append(trade.getVolume()).append('}');
+        }
+        json.append(']');
+        Files.write(file, json.toString().getBytes(StandardCharsets.UTF_8));
+        TradeBatch expectedBatch = TradeBatch.of(trades);
+        VWAPAccumulator expected = new VWAPAccumulator(expectedBatch.getCurrencyPairs());
+        expected.addAll(expectedBatch);
+
+        // When
+        VWAPAccumulator actual = new VWAPAccumulator(new CurrencyPairDictionary());
+        MappedJSONReader.accumulateFromJSONFile(file.toString(), actual, 1024);
+
+        // Then
+        assertEquals(expected.toVWAPs(), actual.toVWAPs());
+    }
+
+    @Test
+    void givenUnrepresentablePrices_whenReadTradeBatchFromJSONFile_thenObjectsAreRejected() throws IOException {
+        // Given
+        Path file = tempDir.resolve("unrepresentable.json");
+        Files.write(file, ("[{\"timestamp\": \"2024-10-24T10:15:30Z\", \"currencyPair\": \"EUR/USD\", \"price\": 1e20, " +
+                "\"volume\": 100}, {\"timestamp\": \"2024-10-24T10:15:31Z\", \"currencyPair\": \"EUR/USD\", " +
+                "\"price\": \"NaN\", \"volume\": 100}, {\"timestamp\": \"2024-10-24T10:15:32Z\", " +
+                "\"currencyPair\": \"EUR/USD\", \"price\": 1.5, \"volume\": 100}]").getBytes(StandardCharsets.UTF_8));
+        long rejected = Metrics.ROWS_REJECTED.get();
+
+        // When
+        TradeBatch trades = MappedJSONReader.readTradeBatchFromJSONFile(file.toString());
+
+        // Then
+        assertEquals(1, trades.size());
+        assertEquals(1.5, trades.getPrice(0));
+        assertEquals(2, Metrics.ROWS_REJECTED.get() - rejected);
+    }
+
+    @Test
+    void givenMalformedFile_whenReadFromJSONFile_thenThrowIOException() throws IOException {
+        // Given
+        Path file = tempDir.resolve("malformed.json");
+        Files.write(file, "[{\"timestamp\": \"2024-10-24T10:15:30Z\" \"price\": 1}]".getBytes(StandardCharsets.UTF_8));
+
+        // Then
+        assertThrows(IOException.class, () ->
+                // When
+                MappedJSONReader.readFromJSONFile(file.toString()));
+    }
+}
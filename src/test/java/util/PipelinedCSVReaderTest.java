@@ -0,0 +1,93 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.vwap.calculator.VWAPAccumulator;
+import org.vwap.model.CurrencyPairDictionary;
+import org.vwap.util.GzipCSVReader;
+import org.vwap.util.MappedCSVReader;
+import org.vwap.util.PipelinedCSVReader;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PipelinedCSVReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void givenSeveralFilesAndSmallBlocks_whenAccumulate_thenMatchMappedReaderForEveryStageParallelism()
+            throws IOException {
+        // Given - blocks far smaller than the files, so lines are split across blocks
+        Path first = writeCSV("first.csv", 20000, 5, "\n");
+        Path second = writeCSV("second.csv", 20000, 7, "\r\n");
+        List<String> filepaths = Arrays.asList(first.toString(), second.toString());
+        VWAPAccumulator expected = new VWAPAccumulator(new CurrencyPairDictionary());
+        for (String filepath : filepaths) {
+            MappedCSVReader.accumulateFromCSVFile(filepath, ",", true, expected, 1024 * 1024);
+        }
+
+        // When / Then
+        int[][] configurations = {{1, 1, 1, 1}, {1, 3, 2, 4}, {2, 4, 1, 2}, {2, 2, 3, 16}};
+        for (int[] configuration : configurations) {
+            PipelinedCSVReader reader = new PipelinedCSVReader(configuration[0], configuration[1], configuration[2],
+                    1000, configuration[3], ",", true);
+            VWAPAccumulator actual = reader.accumulate(filepaths);
+            assertEquals(expected.toVWAPs(), actual.toVWAPs());
+        }
+    }
+
+    @Test
+    void givenGzipFile_whenAccumulate_thenMatchUncompressedFile() throws IOException {
+        // Given
+        Path file = writeCSV("trades.csv", 20000, 13, "\n");
+        Path gzipFile = tempDir.resolve("trades.csv" + GzipCSVReader.FILE_EXTENSION);
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzipFile))) {
+            Files.copy(file, out);
+        }
+        PipelinedCSVReader reader = new PipelinedCSVReader(1, 2, 1, 1000, 4, ",", true);
+
+        // When
+        VWAPAccumulator actual = reader.accumulate(Arrays.asList(gzipFile.toString()));
+
+        // Then
+        assertEquals(reader.accumulate(Arrays.asList(file.toString())).toVWAPs(), actual.toVWAPs());
+    }
+
+    @Test
+    void givenLineLongerThanBlock_whenAccumulate_thenThrowIOException() throws IOException {
+        // Given
+        Path file = writeCSV("long.csv", 10, 11, "\n");
+
+        // Then
+        IOException exception = assertThrows(IOException.class, () ->
+                // When
+                new PipelinedCSVReader(1, 2, 1, 16, 2, ",", true).accumulate(Arrays.asList(file.toString())));
+        assertTrue(exception.getMessage().contains("block size"));
+    }
+
+    @Test
+    void givenNonPositiveThreadsOrBlocks_whenConstructed_thenThrowIllegalArgumentException() {
+        // Then
+        assertThrows(IllegalArgumentException.class, () ->
+                // When
+                new PipelinedCSVReader(1, 0, 1, 1024, 4, ",", true));
+        assertThrows(IllegalArgumentException.class, () -> new PipelinedCSVReader(1, 1, 1, 1024, 0, ",", true));
+    }
+
+    private Path writeCSV(String filename, int lines, long seed, String lineSeparator) throws IOException {
+        String csv = TestTrades.toCSV(TestTrades.generateRandomTrades(lines, seed), lineSeparator);
+        Path file = tempDir.resolve(filename);
+        Files.write(file, csv.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,144 @@
+package util;
+
+import javafx.util.Pair;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.vwap.calculator.StreamingVWAPCalculator;
+import org.vwap.calculator.VWAPAccumulator;
+import org.vwap.model.TradeBatch;
+import org.vwap.util.MappedCSVReader;
+import org.vwap.util.ResultWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResultWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void givenAccumulator_whenWriteCSV_thenRowsMatchToVWAPs() throws IOException {
+        // Given
+        TradeBatch trades = MappedCSVReader.readTradeBatchFromCSVFile("./src/test/resources/test_data.csv", ",", false);
+        VWAPAccumulator accumulator = new VWAPAccumulator(trades.getCurrencyPairs());
+        accumulator.addAll(trades);
+
+        // When
+        String csv = writeCSV(accumulator, ResultWriter.DEFAULT_DECIMAL_PLACES, 128);
+
+        // Then
+        String[] rows = csv.split("\n");
+        assertEquals("timestamp,currency_pair,vwap", rows[0]);
+        Map<String, List<Pair<Instant, Double>>> expected = accumulator.toVWAPs();
+        assertEquals(expected.values().stream().mapToInt(List::size).sum(), rows.length - 1);
+        Map<String, Integer> next = new HashMap<>();
+        for (int row = 1; row < rows.length; row++) {
+            String[] columns = rows[row].split(",", -1);
+            int index = next.merge(columns[1], 1, Integer::sum) - 1;
+            Pair<Instant, Double> vwap = expected.get(columns[1]).get(index);
+            assertEquals(vwap.getKey().toString(), columns[0]);
+            if (vwap.getValue() == null) {
+                assertEquals("", columns[2]);
+            } else {
+                assertEquals(vwap.getValue(), Double.parseDouble(columns[2]), 1e-8);
+            }
+        }
+    }
+
+    @Test
+    void givenEdgeCaseValues_whenWriteCSV_thenFormatLikeJavaTime() throws IOException {
+        // Given
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ResultWriter writer = new ResultWriter(Channels.newChannel(bytes), ResultWriter.Format.CSV, 4, 1024);
+        Random random = new Random(3);
+        long[] epochMillis = new long[1000];
+        for (int i = 0; i < epochMillis.length; i++) {
+            epochMillis[i] = (long) (random.nextDouble() * 253402300799999L) - 31067798400000L;
+        }
+
+        // When
+        writer.write("USD/JPY", 0, 1.5);
+        writer.write("USD/JPY", 951782400250L, -0.00001);
+        writer.write("USD/JPY", -1, -2.00005);
+        writer.write("USD/JPY", 0, 1e300);
+        writer.write("USD/JPY", 0, Double.NaN);
+        for (long epochMilli : epochMillis) {
+            writer.write("EUR/USD", epochMilli, 0);
+        }
+        writer.close();
+
+        // Then
+        String[] rows = new String(bytes.toByteArray(), StandardCharsets.US_ASCII).split("\n");
+        assertEquals("1970-01-01T00:00:00Z,USD/JPY,1.5", rows[1]);
+        assertEquals("2000-02-29T00:00:00.250Z,USD/JPY,0", rows[2]);
+        assertEquals("1969-12-31T23:59:59.999Z,USD/JPY,-2.0001", rows[3]);
+        assertEquals("1970-01-01T00:00:00Z,USD/JPY," + 1e300, rows[4]);
+        assertEquals("1970-01-01T00:00:00Z,USD/JPY,", rows[5]);
+        for (int i = 0; i < epochMillis.length; i++) {
+            assertEquals(Instant.ofEpochMilli(epochMillis[i]) + ",EUR/USD,0", rows[6 + i]);
+        }
+    }
+
+    @Test
+    void givenAccumulator_whenWriteAndReadBinary_thenReturnExactVWAPs() throws IOException {
+        // Given
+        TradeBatch trades = MappedCSVReader.readTradeBatchFromCSVFile("./src/test/resources/test_data.csv", ",", false);
+        VWAPAccumulator accumulator = new VWAPAccumulator(trades.getCurrencyPairs());
+        accumulator.addAll(trades);
+        String filepath = tempDir.resolve("vwaps" + ResultWriter.BINARY_FILE_EXTENSION).toString();
+
+        // When
+        try (ResultWriter writer = ResultWriter.open(filepath)) {
+            writer.writeAll(accumulator);
+        }
+
+        // Then
+        assertEquals(accumulator.toVWAPs(), ResultWriter.readBinary(filepath));
+    }
+
+    @Test
+    void givenStreamingCalculator_whenHoursClose_thenRowsAreWrittenBeforeFlush() throws IOException {
+        // Given
+        Path filepath = tempDir.resolve("vwaps.csv");
+        ResultWriter writer = new ResultWriter(Files.newByteChannel(filepath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE), ResultWriter.Format.CSV, ResultWriter.DEFAULT_DECIMAL_PLACES, 128);
+        StreamingVWAPCalculator calculator = new StreamingVWAPCalculator(writer);
+        long hour = Instant.parse("2024-10-24T10:00:00Z").toEpochMilli();
+
+        // When
+        for (int i = 0; i < 10; i++) {
+            calculator.onTrade("USD/JPY", hour + i * VWAPAccumulator.HOUR_MILLIS, 100 + i, 10);
+        }
+
+        // Then - nine hours closed, the buffer has spilled to the file before the writer is closed
+        assertTrue(Files.size(filepath) > 0);
+        calculator.flush();
+        writer.close();
+        List<String> rows = Files.readAllLines(filepath);
+        assertEquals(11, rows.size());
+        assertEquals("2024-10-24T19:00:00Z,USD/JPY,109", rows.get(10));
+    }
+
+    private static String writeCSV(VWAPAccumulator accumulator, int decimalPlaces, int bufferSize)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ResultWriter writer = new ResultWriter(Channels.newChannel(bytes), ResultWriter.Format.CSV,
+                decimalPlaces, bufferSize)) {
+            writer.writeAll(accumulator);
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,85 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+import org.vwap.util.RingBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RingBufferTest {
+
+    @Test
+    void givenClosedBuffer_whenTake_thenDrainInOrderThenReturnNull() throws InterruptedException {
+        // Given
+        RingBuffer<Integer> buffer = new RingBuffer<>(3);
+        for (int i = 0; i < 3; i++) {
+            buffer.put(i);
+        }
+        assertEquals(0, buffer.take());
+        buffer.put(3);
+
+        // When
+        buffer.close();
+
+        // Then
+        assertThrows(IllegalStateException.class, () -> buffer.put(4));
+        assertEquals(1, buffer.take());
+        assertEquals(2, buffer.take());
+        assertEquals(3, buffer.take());
+        assertNull(buffer.take());
+    }
+
+    @Test
+    void givenSmallBuffer_whenManyProducersAndConsumers_thenEveryItemIsTakenOnce() throws InterruptedException {
+        // Given - far more items than slots, so producers wait on consumers
+        RingBuffer<Long> buffer = new RingBuffer<>(4);
+        int itemsPerProducer = 20000;
+        AtomicLong total = new AtomicLong();
+        AtomicLong count = new AtomicLong();
+        List<Thread> producers = new ArrayList<>();
+        List<Thread> consumers = new ArrayList<>();
+
+        // When
+        for (int p = 0; p < 3; p++) {
+            producers.add(new Thread(() -> {
+                try {
+                    for (long i = 1; i <= itemsPerProducer; i++) {
+                        buffer.put(i);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+        for (int c = 0; c < 3; c++) {
+            consumers.add(new Thread(() -> {
+                try {
+                    Long item;
+                    while ((item = buffer.take()) != null) {
+                        assertTrue(buffer.size() <= buffer.capacity());
+                        total.addAndGet(item);
+                        count.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+        producers.forEach(Thread::start);
+        consumers.forEach(Thread::start);
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        buffer.close();
+        for (Thread consumer : consumers) {
+            consumer.join();
+        }
+
+        // Then
+        assertEquals(3L * itemsPerProducer, count.get());
+        assertEquals(3L * itemsPerProducer * (itemsPerProducer + 1) / 2, total.get());
+    }
+}
@@ -0,0 +1,104 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.vwap.calculator.SortedVWAPCalculator;
+import org.vwap.calculator.VWAPAccumulator;
+import org.vwap.model.CurrencyPairDictionary;
+import org.vwap.model.Trade;
+import org.vwap.util.MappedCSVReader;
+import org.vwap.util.SortedCSVMerger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SortedCSVMergerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void givenTimeOrderedVenueFiles_whenMerged_thenTradesAreVisitedInTimeOrder() throws IOException {
+        // Given - venues on whole minutes so that timestamps collide across files, one of them compressed
+        List<String> files = Arrays.asList(writeVenueFile(0, 3000, false), writeVenueFile(1, 5000, true),
+                writeVenueFile(2, 1000, false));
+        List<long[]> visited = new ArrayList<>();
+
+        // When - blocks of a few lines, so every file is read in many blocks
+        SortedCSVMerger.merge(files, ",", true, new CurrencyPairDictionary(), 256,
+                (pairId, epochMilli, price, volume) -> visited.add(new long[]{epochMilli, volume / 10000}));
+
+        // Then - ties are visited in file order
+        assertEquals(9000, visited.size());
+        for (int i = 1; i < visited.size(); i++) {
+            long[] previous = visited.get(i - 1);
+            long[] trade = visited.get(i);
+            assertTrue(previous[0] < trade[0] || previous[0] == trade[0] && previous[1] <= trade[1]);
+        }
+    }
+
+    @Test
+    void givenTimeOrderedVenueFiles_whenMergedIntoRunLengthAggregation_thenMatchAccumulatedFiles() throws IOException {
+        // Given
+        List<String> files = Arrays.asList(writeVenueFile(0, 4000, false), writeVenueFile(1, 4000, false),
+                writeVenueFile(2, 4000, true));
+        VWAPAccumulator expected = new VWAPAccumulator(new CurrencyPairDictionary());
+        for (String file : files) {
+            MappedCSVReader.accumulateFromCSVFile(file, ",", true, expected, 1024 * 1024);
+        }
+
+        // When
+        SortedVWAPCalculator calculator = new SortedVWAPCalculator(new CurrencyPairDictionary());
+        SortedCSVMerger.merge(files, ",", true, calculator.getCurrencyPairs(), calculator::addTrade);
+
+        // Then
+        assertEquals(expected.toVWAPs(), calculator.toVWAPs());
+    }
+
+    @Test
+    void givenFileNotInTimeOrder_whenMerged_thenThrowIOException() throws IOException {
+        // Given
+        Path file = tempDir.resolve("unordered.csv");
+        Files.write(file, ("Timestamp,Currency-pair,Price,Volume\n" +
+                "2024-10-20T10:00:02Z,EUR/USD,1.1,100\n" +
+                "2024-10-20T10:00:01Z,EUR/USD,1.1,100\n").getBytes(StandardCharsets.UTF_8));
+
+        // Then
+        assertThrows(IOException.class, () ->
+                // When
+                SortedCSVMerger.merge(Arrays.asList(writeVenueFile(0, 10, false), file.toString()), ",", true,
+                        new CurrencyPairDictionary(), (pairId, epochMilli, price, volume) -> {
+                        }));
+    }
+
+    /**
+     * Writes a time-ordered file for a venue whose trade volumes are venue * 10000 plus up to 2999, on whole minutes so
+     * that timestamps collide within and across files
+     */
+    private String writeVenueFile(int venue, int lines, boolean compressed) throws IOException {
+        List<Trade> trades = TestTrades.generateRandomTrades(lines, venue);
+        for (Trade trade : trades) {
+            trade.setTimestamp(trade.getTimestamp().truncatedTo(ChronoUnit.MINUTES));
+            trade.setVolume(venue * 10000 + trade.getVolume());
+        }
+        trades.sort(Comparator.comparing(Trade::getTimestamp));
+        byte[] bytes = TestTrades.toCSV(trades, "\n").getBytes(StandardCharsets.UTF_8);
+        Path file = tempDir.resolve("venue" + venue + (compressed ? ".csv.gz" : ".csv"));
+        try (OutputStream out = compressed ? new GZIPOutputStream(Files.newOutputStream(file)) :
+                Files.newOutputStream(file)) {
+            out.write(bytes);
+        }
+        return file.toString();
+    }
+}
@@ -0,0 +1,49 @@
+package util;
+
+import org.vwap.model.Trade;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reproducible random trades, and their text as a CSV file, shared by the tests of every package
+ */
+public final class TestTrades {
+
+    public static final String[] CURRENCY_PAIRS = {"USD/JPY", "EUR/GBP", "AUD/USD", "NZD/GBP", "EUR/USD"};
+    public static final long START_MILLIS = Instant.parse("2024-10-20T10:00:00Z").toEpochMilli();
+    public static final long SPAN_MILLIS = 48 * 3600000L;
+
+    private TestTrades() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * @return count trades of the {@link #CURRENCY_PAIRS} at random times within {@link #SPAN_MILLIS} of
+     * {@link #START_MILLIS}, the same trades for the same seed
+     */
+    public static List<Trade> generateRandomTrades(int count, long seed) {
+        Random random = new Random(seed);
+        List<Trade> trades = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            trades.add(new Trade(Instant.ofEpochMilli(START_MILLIS + (long) (random.nextDouble() * SPAN_MILLIS)),
+                    CURRENCY_PAIRS[random.nextInt(CURRENCY_PAIRS.length)], 0.5 + random.nextInt(10000) / 100.0,
+                    500 + random.nextInt(2500)));
+        }
+        return trades;
+    }
+
+    /**
+     * @return The trades as the text of a CSV file with a header line, as read by every reader
+     */
+    public static String toCSV(List<Trade> trades, String lineSeparator) {
+        StringBuilder csv = new StringBuilder("Timestamp,Currency-pair,Price,Volume").append(lineSeparator);
+        for (Trade trade : trades) {
+            csv.append(trade.getTimestamp()).append(',').append(trade.getCurrencyPair()).append(',')
+                    .append(trade.getPrice()).append(',').append(trade.getVolume()).append(lineSeparator);
+        }
+        return csv.toString();
+    }
+}